@@ -314,6 +314,45 @@ public final class Utils {
         return output;
     }
 
+    /**
+     * Packs a device address of the form "XX:XX:XX:XX:XX:XX" into the lower 48 bits of a long,
+     * without allocating. Hex digits are parsed case-insensitively.
+     *
+     * @return the packed address, or -1 if the address is null or malformed
+     */
+    public static long getLongFromAddress(@Nullable String address) {
+        if (address == null || address.length() != BD_ADDR_LEN * 3 - 1) {
+            return -1;
+        }
+        long output = 0;
+        for (int i = 0; i < address.length(); i++) {
+            if (i % 3 == 2) {
+                if (address.charAt(i) != ':') {
+                    return -1;
+                }
+                continue;
+            }
+            int digit = Character.digit(address.charAt(i), BD_UUID_LEN);
+            if (digit < 0) {
+                return -1;
+            }
+            output = (output << 4) | digit;
+        }
+        return output;
+    }
+
+    /** Returns the "XX:XX:XX:XX:XX:XX" form of an address packed by {@link #getLongFromAddress}. */
+    public static String getAddressStringFromLong(long address) {
+        return String.format(
+                "%02X:%02X:%02X:%02X:%02X:%02X",
+                (address >> 40) & 0xFF,
+                (address >> 32) & 0xFF,
+                (address >> 24) & 0xFF,
+                (address >> 16) & 0xFF,
+                (address >> 8) & 0xFF,
+                address & 0xFF);
+    }
+
     public static int byteArrayToInt(byte[] valueBuf) {
         return byteArrayToInt(valueBuf, 0);
     }
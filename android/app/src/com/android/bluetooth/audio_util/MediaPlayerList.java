@@ -1023,6 +1023,8 @@ public class MediaPlayerList {
         // Always have items in the queue
         if (data.queue.size() == 0) {
             Log.i(TAG, "sendMediaUpdate: Creating a one item queue for a player with no queue");
+            // The queue can be shared with the player, so it isn't modified.
+            data.queue = new ArrayList<Metadata>();
             data.queue.add(data.metadata);
         }
 
@@ -55,6 +55,10 @@ public class MediaPlayerWrapper {
 
     private MediaData mCurrentData;
 
+    // Only converts the queue items that changed, and keeps the same list while the queue is
+    // unchanged so that comparing it to the sent one is cheap.
+    private final QueueMetadataCache mQueueCache;
+
     @GuardedBy("mCallbackLock")
     private MediaControllerListener mControllerCallbacks = null;
 
@@ -95,8 +99,9 @@ public class MediaPlayerWrapper {
                         PLAYBACK_STATE_CHANGE_EVENT_LOGGER_SIZE,
                         PLAYBACK_STATE_CHANGE_LOGGER_EVENT_TITLE);
 
+        mQueueCache = new QueueMetadataCache(context);
         mCurrentData = new MediaData(null, null, null);
-        mCurrentData.queue = Util.toMetadataList(mContext, getQueue());
+        mCurrentData.queue = getConvertedQueue();
         mCurrentData.metadata = Util.toMetadata(mContext, getMetadata());
         mCurrentData.state = getPlaybackState();
     }
@@ -120,6 +125,11 @@ public class MediaPlayerWrapper {
         return mMediaController.getQueue();
     }
 
+    private List<Metadata> getConvertedQueue() {
+        mQueueCache.update(getQueue());
+        return mQueueCache.getQueue();
+    }
+
     protected MediaMetadata getMetadata() {
         return mMediaController.getMetadata();
     }
@@ -307,7 +317,7 @@ public class MediaPlayerWrapper {
                 new MediaData(
                         Util.toMetadata(mContext, getMetadata()),
                         getPlaybackState(),
-                        Util.toMetadataList(mContext, getQueue()));
+                        getConvertedQueue());
 
         synchronized (mCallbackLock) {
             mControllerCallbacks = new MediaControllerListener(mMediaController, mLooper);
@@ -344,7 +354,7 @@ public class MediaPlayerWrapper {
                     new MediaData(
                             Util.toMetadata(mContext, getMetadata()),
                             getPlaybackState(),
-                            Util.toMetadataList(mContext, getQueue()));
+                            getConvertedQueue());
 
             mControllerCallbacks = new MediaControllerListener(mMediaController, mLooper);
         }
@@ -356,7 +366,7 @@ public class MediaPlayerWrapper {
                 new MediaData(
                         Util.toMetadata(mContext, getMetadata()),
                         getPlaybackState(),
-                        Util.toMetadataList(mContext, getQueue()));
+                        getConvertedQueue());
 
         if (newData.equals(mCurrentData)) {
             // This may happen if the controller is fully synced by the time the
@@ -396,7 +406,7 @@ public class MediaPlayerWrapper {
             Log.e(TAG, "Timeout while waiting for metadata to sync for " + mPackageName);
             Log.e(TAG, "  └ Current Metadata: " + Util.toMetadata(mContext, getMetadata()));
             Log.e(TAG, "  └ Current Playstate: " + getPlaybackState());
-            List<Metadata> current_queue = Util.toMetadataList(mContext, getQueue());
+            List<Metadata> current_queue = getConvertedQueue();
             for (int i = 0; i < current_queue.size(); i++) {
                 Log.e(TAG, "  └ QueueItem(" + i + "): " + current_queue.get(i));
             }
@@ -541,7 +551,16 @@ public class MediaPlayerWrapper {
                 e("The callback queue isn't the current queue");
             }
 
-            List<Metadata> current_queue = Util.toMetadataList(mContext, queue);
+            mQueueCache.update(queue);
+            List<Metadata> current_queue = mQueueCache.getQueue();
+            Log.v(
+                    TAG,
+                    "onQueueChanged(): "
+                            + mQueueCache.getLastTranslatedCount()
+                            + " of "
+                            + current_queue.size()
+                            + " items converted");
+            // Same list if the queue didn't change since the last update.
             if (current_queue.equals(mCurrentData.queue)) {
                 Log.w(
                         TAG,
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.audio_util;
+
+import android.content.Context;
+import android.media.MediaDescription;
+import android.media.session.MediaSession;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The queue of a media player translated to audio_util's Metadata, as by {@link
+ * Util#toMetadataList}, where only the queue items added or changed since the previous update are
+ * translated again.
+ *
+ * <p>Queue items are matched by queue ID. The list returned by {@link #getQueue()} is only replaced
+ * when its contents change, so an unchanged queue can be detected by comparing references. The
+ * returned lists and their items are shared and must not be modified.
+ */
+class QueueMetadataCache {
+    private static final String TAG = "AudioQueueMetadataCache";
+
+    private static class Entry {
+        final MediaDescription mDescription;
+        Metadata mMetadata;
+
+        Entry(MediaDescription description, Metadata metadata) {
+            mDescription = description;
+            mMetadata = metadata;
+        }
+    }
+
+    private final Context mContext;
+    private HashMap<Long, Entry> mEntries = new HashMap<>();
+    private List<Metadata> mQueue = new ArrayList<>();
+    private int mLastTranslatedCount;
+
+    QueueMetadataCache(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Update the queue from the queue items of the player.
+     *
+     * @return true if the translated queue changed
+     */
+    boolean update(List<MediaSession.QueueItem> items) {
+        int size = items == null ? 0 : items.size();
+        HashMap<Long, Entry> entries = new HashMap<>();
+        ArrayList<Metadata> queue = new ArrayList<>(size);
+        boolean changed = size != mQueue.size();
+        int translated = 0;
+        String numTracks = "" + size;
+
+        for (int i = 0; i < size; i++) {
+            MediaSession.QueueItem item = items.get(i);
+            Entry entry = item == null ? null : mEntries.get(item.getQueueId());
+            if (entry == null || !sameDescription(entry.mDescription, item.getDescription())) {
+                Metadata data = Util.toMetadata(mContext, item);
+                if (Util.isEmptyData(data)) {
+                    Log.e(TAG, "Received an empty Metadata item in list. Returning an empty queue");
+                    return replaceQueue(new HashMap<>(), new ArrayList<>());
+                }
+                entry = new Entry(item.getDescription(), data);
+                translated++;
+            }
+
+            // Translated items are shared, the position is updated on a copy.
+            String trackNum = "" + (i + 1);
+            if (!trackNum.equals(entry.mMetadata.trackNum)
+                    || !numTracks.equals(entry.mMetadata.numTracks)) {
+                Metadata data = entry.mMetadata.clone();
+                data.trackNum = trackNum;
+                data.numTracks = numTracks;
+                entry.mMetadata = data;
+            }
+
+            if (!changed) {
+                Metadata previous = mQueue.get(i);
+                changed = previous != entry.mMetadata && !previous.equals(entry.mMetadata);
+            }
+            entries.put(item.getQueueId(), entry);
+            queue.add(entry.mMetadata);
+        }
+
+        mLastTranslatedCount = translated;
+        if (!changed) {
+            mEntries = entries;
+            return false;
+        }
+        return replaceQueue(entries, queue);
+    }
+
+    private boolean replaceQueue(HashMap<Long, Entry> entries, List<Metadata> queue) {
+        mEntries = entries;
+        if (queue.isEmpty() && mQueue.isEmpty()) {
+            return false;
+        }
+        mQueue = queue;
+        return true;
+    }
+
+    /** Get the translated queue, empty if the player has no queue. */
+    List<Metadata> getQueue() {
+        return mQueue;
+    }
+
+    /** Get the number of queue items translated by the last update. */
+    int getLastTranslatedCount() {
+        return mLastTranslatedCount;
+    }
+
+    private static boolean sameDescription(MediaDescription a, MediaDescription b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        return Objects.equals(a.getMediaId(), b.getMediaId())
+                && TextUtils.equals(a.getTitle(), b.getTitle())
+                && TextUtils.equals(a.getSubtitle(), b.getSubtitle())
+                && TextUtils.equals(a.getDescription(), b.getDescription())
+                && Objects.equals(a.getIconUri(), b.getIconUri())
+                // Bitmaps are compared by identity, comparing pixels costs more than translating.
+                && a.getIconBitmap() == b.getIconBitmap()
+                && sameExtras(a.getExtras(), b.getExtras());
+    }
+
+    @SuppressWarnings("deprecation") // Values of any type are compared
+    private static boolean sameExtras(Bundle a, Bundle b) {
+        if (a == null || b == null) return a == b;
+        if (!a.keySet().equals(b.keySet())) return false;
+        for (String key : a.keySet()) {
+            if (!Objects.equals(a.get(key), b.get(key))) return false;
+        }
+        return true;
+    }
+}
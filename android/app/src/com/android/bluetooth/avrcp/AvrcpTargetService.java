@@ -595,7 +595,8 @@ public class AvrcpTargetService extends ProfileService {
      */
     @VisibleForTesting
     public static boolean isQueueUpdated(List<Metadata> currentQueue, List<Metadata> newQueue) {
-        if (newQueue == null && currentQueue == null) {
+        // Media players keep sending the same list while their queue doesn't change.
+        if (newQueue == currentQueue) {
             return false;
         }
         if (newQueue == null || currentQueue == null || currentQueue.size() != newQueue.size()) {
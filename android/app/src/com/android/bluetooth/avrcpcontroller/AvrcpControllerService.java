@@ -341,6 +341,7 @@ public class AvrcpControllerService extends ProfileService {
         if (device != null) {
             setActiveDevice(device);
         }
+        requestedNode.markViewed();
 
         List<MediaItem> contents = requestedNode.getContents();
 
@@ -140,8 +140,13 @@ class AvrcpControllerStateMachine extends StateMachine {
 
     GetFolderList mGetFolderList = null;
 
+    // Whether the next items of a folder are requested before the current ones are stored
+    private final boolean mBrowsePrefetch;
+
     // Number of items to get in a single fetch
     static final int ITEM_PAGE_SIZE = 20;
+    // Number of items to get in a single fetch once grown, when prefetching
+    static final int MAX_ITEM_PAGE_SIZE = 160;
     static final int CMD_TIMEOUT_MILLIS = 10000;
     static final int ABS_VOL_TIMEOUT_MILLIS = 1000; // 1s
 
@@ -172,7 +177,13 @@ class AvrcpControllerStateMachine extends StateMachine {
         mAddressedPlayer = apb.build();
         mAvailablePlayerList.put(mAddressedPlayerId, mAddressedPlayer);
 
-        mBrowseTree = new BrowseTree(mDevice);
+        mBrowseTree =
+                new BrowseTree(
+                        mDevice,
+                        service.getResources()
+                                .getInteger(R.integer.avrcp_controller_browse_tree_max_nodes));
+        mBrowsePrefetch =
+                service.getResources().getBoolean(R.bool.avrcp_controller_browse_prefetch);
         mDisconnected = new Disconnected();
         mConnecting = new Connecting();
         mConnected = new Connected();
@@ -847,6 +858,7 @@ class AvrcpControllerStateMachine extends StateMachine {
         boolean mAbort;
         BrowseTree.BrowseNode mBrowseNode;
         BrowseTree.BrowseNode mNextStep;
+        int mPageSize;
 
         @Override
         public void enter() {
@@ -855,6 +867,7 @@ class AvrcpControllerStateMachine extends StateMachine {
             sendMessageDelayed(MESSAGE_INTERNAL_CMD_TIMEOUT, CMD_TIMEOUT_MILLIS);
             super.enter();
             mAbort = false;
+            mPageSize = ITEM_PAGE_SIZE;
             Message msg = getCurrentMessage();
             if (msg.what == MESSAGE_GET_FOLDER_ITEMS) {
                 mBrowseNode = (BrowseTree.BrowseNode) msg.obj;
@@ -885,6 +898,16 @@ class AvrcpControllerStateMachine extends StateMachine {
                     ArrayList<AvrcpItem> folderList = (ArrayList<AvrcpItem>) msg.obj;
                     int endIndicator = mBrowseNode.getExpectedChildren() - 1;
                     debug("GetFolderList: End " + endIndicator + " received " + folderList.size());
+                    int fetched = mBrowseNode.getChildrenCount() + folderList.size();
+                    boolean complete =
+                            fetched >= endIndicator || folderList.size() == 0 || mAbort;
+                    if (mBrowsePrefetch && !complete) {
+                        // Request the next items right away, so that the remote prepares them
+                        // while these ones are stored and sent to the browser. Each request asks
+                        // for more items to save round trips on large folders.
+                        mPageSize = Math.min(mPageSize * 2, MAX_ITEM_PAGE_SIZE);
+                        fetchContents(mBrowseNode, fetched);
+                    }
 
                     // Queue up image download if the item has an image and we don't have it yet
                     // Only do this if the feature is enabled.
@@ -901,17 +924,20 @@ class AvrcpControllerStateMachine extends StateMachine {
                     int newSize = mBrowseNode.addChildren(folderList);
                     debug("GetFolderList: Added " + newSize + " items to the browse tree");
                     notifyNodeChanged(mBrowseNode);
+                    if (mBrowseTree.trim(mBrowseNode)) {
+                        removeUnusedArtworkFromBrowseTree();
+                    }
 
-                    if (mBrowseNode.getChildrenCount() >= endIndicator
-                            || folderList.size() == 0
-                            || mAbort) {
+                    if (complete) {
                         // If we have fetched all the elements or if the remotes sends us 0 elements
                         // (which can lead us into a loop since mCurrInd does not proceed) we simply
                         // abort.
                         transitionTo(mConnected);
                     } else {
-                        // Fetch the next set of items.
-                        fetchContents(mBrowseNode);
+                        // Fetch the next set of items, unless they were already requested.
+                        if (!mBrowsePrefetch) {
+                            fetchContents(mBrowseNode);
+                        }
                         // Reset the timeout message since we are doing a new fetch now.
                         removeMessages(MESSAGE_INTERNAL_CMD_TIMEOUT);
                         sendMessageDelayed(MESSAGE_INTERNAL_CMD_TIMEOUT, CMD_TIMEOUT_MILLIS);
@@ -1062,12 +1088,11 @@ class AvrcpControllerStateMachine extends StateMachine {
         }
 
         private void fetchContents(BrowseTree.BrowseNode target) {
-            int start = target.getChildrenCount();
-            int end =
-                    Math.min(
-                                    target.getExpectedChildren(),
-                                    target.getChildrenCount() + ITEM_PAGE_SIZE)
-                            - 1;
+            fetchContents(target, target.getChildrenCount());
+        }
+
+        private void fetchContents(BrowseTree.BrowseNode target, int start) {
+            int end = Math.min(target.getExpectedChildren(), start + mPageSize) - 1;
             debug(
                     "GetFolderList: fetchContents(title="
                             + target.getID()
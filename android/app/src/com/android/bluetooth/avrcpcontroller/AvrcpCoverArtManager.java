@@ -23,6 +23,7 @@ import android.net.Uri;
 import android.os.SystemProperties;
 import android.util.Log;
 
+import com.android.bluetooth.btservice.AdapterService;
 import com.android.obex.ResponseCodes;
 
 import java.util.Map;
@@ -139,7 +140,19 @@ public class AvrcpCoverArtManager {
 
     public AvrcpCoverArtManager(AvrcpControllerService service, Callback callback) {
         mService = service;
-        mCoverArtStorage = new AvrcpCoverArtStorage(mService);
+        // Memory is unbounded and there is no disk tier unless configured.
+        int memoryKb = 0;
+        long diskKb = 0;
+        AdapterService adapterService = AdapterService.getAdapterService();
+        if (adapterService != null) {
+            memoryKb = adapterService.getAvrcpControllerCoverArtMemoryKb();
+            diskKb = adapterService.getAvrcpControllerCoverArtDiskKb();
+        }
+        mCoverArtStorage =
+                new AvrcpCoverArtStorage(
+                        mService,
+                        Math.max(0, Math.min(memoryKb, Integer.MAX_VALUE / 1024)) * 1024,
+                        Math.max(0, diskKb) * 1024);
         mCallback = callback;
         mDownloadScheme = SystemProperties.get(AVRCP_CONTROLLER_COVER_ART_SCHEME, SCHEME_THUMBNAIL);
         mCoverArtStorage.clear();
@@ -19,30 +19,134 @@ package com.android.bluetooth.avrcpcontroller;
 import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.util.Log;
+import android.util.LruCache;
 
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Objects;
 
-/** An abstraction of the cover art image storage mechanism. */
+/**
+ * An abstraction of the cover art image storage mechanism.
+ *
+ * <p>Images are kept in memory up to a byte budget shared by all devices, measured by the
+ * allocation size of the bitmaps, and the least recently used images are evicted first. Evicted
+ * images are optionally compressed into an on-disk tier with its own byte budget, so that they can
+ * be served again without being downloaded from the device.
+ *
+ * <p>Images are compressed, written and decoded without holding the storage lock. Evicted images
+ * are kept aside until the call that evicted them has written them to disk.
+ */
 public class AvrcpCoverArtStorage {
     private static final String TAG = AvrcpCoverArtStorage.class.getSimpleName();
 
+    @VisibleForTesting static final String DISK_CACHE_DIR = "avrcp_cover_art";
+
     private final Context mContext;
 
-    /* Each device gets its own place to land images. This makes it easier to clean things up on a
-     * per device basis. This also allows us to be confident that acting on one device will not
-     * impact the images of another.
-     *
-     * The "landing place" is simply a map that will direct a given UUID to the proper bitmap image
+    private final Object mLock = new Object();
+
+    // Serializes the writes of evicted images, taken before mLock when both are needed.
+    private final Object mDiskLock = new Object();
+
+    /* Images are identified by the device they were downloaded from and by their UUID. Acting on
+     * one device's images never impacts the images of another, except for evictions.
      */
-    private final Map<BluetoothDevice, Map<String, Bitmap>> mDeviceImages =
-            new ConcurrentHashMap<>(1);
+    @GuardedBy("mLock")
+    private final LruCache<ImageKey, Bitmap> mImages;
+
+    // Size in bytes of the files of the disk tier, ordered from least to most recently used.
+    @GuardedBy("mLock")
+    private final LinkedHashMap<ImageKey, Long> mDiskImages = new LinkedHashMap<>(0, 0.75f, true);
+
+    @GuardedBy("mLock")
+    private long mDiskSize;
+
+    // Images evicted from memory and not written to disk yet.
+    @GuardedBy("mLock")
+    private final LinkedHashMap<ImageKey, Bitmap> mEvictedImages = new LinkedHashMap<>();
+
+    private final long mMaxDiskBytes;
+    private final File mDiskDir;
+
+    private static final class ImageKey {
+        final BluetoothDevice mDevice;
+        final String mUuid;
+
+        ImageKey(BluetoothDevice device, String uuid) {
+            mDevice = device;
+            mUuid = uuid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ImageKey other)) {
+                return false;
+            }
+            return mDevice.equals(other.mDevice) && mUuid.equals(other.mUuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mDevice, mUuid);
+        }
+
+        @Override
+        public String toString() {
+            return mDevice + "/" + mUuid;
+        }
+    }
 
-    /** Create and initialize this Cover Art storage interface */
+    /** Create and initialize this Cover Art storage interface, with no bounds on its size */
     public AvrcpCoverArtStorage(Context context) {
+        this(context, 0, 0);
+    }
+
+    /**
+     * Create and initialize this Cover Art storage interface
+     *
+     * @param maxMemoryBytes - The budget of the images kept in memory, unbounded if 0
+     * @param maxDiskBytes - The budget of the images evicted to disk, no disk tier if 0
+     */
+    public AvrcpCoverArtStorage(Context context, int maxMemoryBytes, long maxDiskBytes) {
+        if (maxMemoryBytes < 0 || maxDiskBytes < 0) {
+            throw new IllegalArgumentException("Negative size");
+        }
         mContext = context;
+        mImages =
+                new LruCache<ImageKey, Bitmap>(
+                        maxMemoryBytes > 0 ? maxMemoryBytes : Integer.MAX_VALUE) {
+                    @Override
+                    protected int sizeOf(ImageKey key, Bitmap image) {
+                        return image.getAllocationByteCount();
+                    }
+
+                    @Override
+                    protected void entryRemoved(
+                            boolean evicted, ImageKey key, Bitmap oldImage, Bitmap newImage) {
+                        if (evicted) {
+                            onImageEvicted(key, oldImage);
+                        }
+                    }
+                };
+        mMaxDiskBytes = maxDiskBytes;
+        mDiskDir = maxDiskBytes > 0 ? new File(context.getCacheDir(), DISK_CACHE_DIR) : null;
+        if (mDiskDir != null) {
+            // Image UUIDs don't outlive the storage, files left by a previous one are useless.
+            deleteDiskFiles();
+            mDiskDir.mkdirs();
+        }
     }
 
     /**
@@ -53,9 +157,12 @@ public class AvrcpCoverArtStorage {
      */
     public boolean doesImageExist(BluetoothDevice device, String imageUuid) {
         if (device == null || imageUuid == null || "".equals(imageUuid)) return false;
-        Map<String, Bitmap> images = mDeviceImages.get(device);
-        if (images == null) return false;
-        return images.containsKey(imageUuid);
+        ImageKey key = new ImageKey(device, imageUuid);
+        synchronized (mLock) {
+            return mImages.get(key) != null
+                    || mEvictedImages.containsKey(key)
+                    || mDiskImages.containsKey(key);
+        }
     }
 
     /**
@@ -67,9 +174,43 @@ public class AvrcpCoverArtStorage {
      */
     public Bitmap getImage(BluetoothDevice device, String imageUuid) {
         if (device == null || imageUuid == null || "".equals(imageUuid)) return null;
-        Map<String, Bitmap> images = mDeviceImages.get(device);
-        if (images == null) return null;
-        return images.get(imageUuid);
+        ImageKey key = new ImageKey(device, imageUuid);
+        Bitmap image;
+        synchronized (mLock) {
+            image = mImages.get(key);
+            if (image != null) {
+                return image;
+            }
+            image = mEvictedImages.remove(key);
+            if (image != null) {
+                mImages.put(key, image);
+            } else if (mDiskImages.get(key) == null) {
+                return null;
+            }
+        }
+        if (image != null) {
+            writeEvictedImages();
+            return image;
+        }
+
+        image = BitmapFactory.decodeFile(getDiskFile(key).getPath());
+        synchronized (mLock) {
+            if (!mDiskImages.containsKey(key)) {
+                // Removed or replaced while it was decoded.
+                Bitmap current = mImages.get(key);
+                return current != null ? current : mEvictedImages.get(key);
+            }
+            if (image == null) {
+                warn("Could not decode image '" + key + "' from disk");
+                removeDiskImage(key);
+                return null;
+            }
+            debug("Image '" + key + "' loaded from disk");
+            // The file is kept, so that the image doesn't need to be compressed again if evicted.
+            mImages.put(key, image);
+        }
+        writeEvictedImages();
+        return image;
     }
 
     /**
@@ -86,16 +227,14 @@ public class AvrcpCoverArtStorage {
             return null;
         }
 
-        // A Thread safe way of creating a new UUID->Image set for a device. The putIfAbsent()
-        // function will return the value of the key if it wasn't absent. If it returns null, then
-        // there was no value there and we are to assume the reference we passed in was added.
-        Map<String, Bitmap> newImageSet = new ConcurrentHashMap<String, Bitmap>(1);
-        Map<String, Bitmap> images = mDeviceImages.putIfAbsent(device, newImageSet);
-        if (images == null) {
-            newImageSet.put(imageUuid, image);
-        } else {
-            images.put(imageUuid, image);
+        ImageKey key = new ImageKey(device, imageUuid);
+        synchronized (mLock) {
+            // A previous version of the image on disk is stale.
+            removeDiskImage(key);
+            mEvictedImages.remove(key);
+            mImages.put(key, image);
         }
+        writeEvictedImages();
 
         Uri uri = AvrcpCoverArtProvider.getImageUri(device, imageUuid);
         mContext.getContentResolver().notifyChange(uri, null);
@@ -113,14 +252,11 @@ public class AvrcpCoverArtStorage {
         debug("Removing image '" + imageUuid + "' from device " + device);
         if (device == null || imageUuid == null || "".equals(imageUuid)) return;
 
-        Map<String, Bitmap> images = mDeviceImages.get(device);
-        if (images == null) {
-            return;
-        }
-
-        images.remove(imageUuid);
-        if (images.size() == 0) {
-            mDeviceImages.remove(device);
+        ImageKey key = new ImageKey(device, imageUuid);
+        synchronized (mLock) {
+            mImages.remove(key);
+            mEvictedImages.remove(key);
+            removeDiskImage(key);
         }
 
         debug("Image '" + imageUuid + "' removed for device '" + device + "'");
@@ -134,25 +270,158 @@ public class AvrcpCoverArtStorage {
     public void removeImagesForDevice(BluetoothDevice device) {
         if (device == null) return;
         debug("Remove cover art for device " + device);
-        mDeviceImages.remove(device);
+        synchronized (mLock) {
+            for (ImageKey key : mImages.snapshot().keySet()) {
+                if (key.mDevice.equals(device)) {
+                    mImages.remove(key);
+                }
+            }
+            mEvictedImages.keySet().removeIf(key -> key.mDevice.equals(device));
+            List<ImageKey> diskKeys = new ArrayList<>(mDiskImages.keySet());
+            for (ImageKey key : diskKeys) {
+                if (key.mDevice.equals(device)) {
+                    removeDiskImage(key);
+                }
+            }
+        }
     }
 
     /** Clear the entirety of storage */
     public void clear() {
         debug("Clearing all images");
-        mDeviceImages.clear();
+        synchronized (mLock) {
+            // Removed rather than evicted, so that they don't go to disk.
+            for (ImageKey key : mImages.snapshot().keySet()) {
+                mImages.remove(key);
+            }
+            mEvictedImages.clear();
+            mDiskImages.clear();
+            mDiskSize = 0;
+            if (mDiskDir != null) {
+                deleteDiskFiles();
+            }
+        }
+    }
+
+    /**
+     * Sets aside an image evicted from memory to be written to disk, if there's a disk tier.
+     * {@link #writeEvictedImages} must be called once the lock is released.
+     */
+    @GuardedBy("mLock")
+    private void onImageEvicted(ImageKey key, Bitmap image) {
+        debug("Image '" + key + "' evicted from memory");
+        if (mDiskDir == null || mDiskImages.containsKey(key)) {
+            return;
+        }
+        mEvictedImages.put(key, image);
+    }
+
+    /** Writes the images evicted from memory to disk, without holding the storage lock. */
+    private void writeEvictedImages() {
+        if (mDiskDir == null) {
+            return;
+        }
+        synchronized (mDiskLock) {
+            List<Map.Entry<ImageKey, Bitmap>> evicted;
+            synchronized (mLock) {
+                if (mEvictedImages.isEmpty()) {
+                    return;
+                }
+                evicted = new ArrayList<>(mEvictedImages.entrySet());
+            }
+            for (Map.Entry<ImageKey, Bitmap> entry : evicted) {
+                writeEvictedImage(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @GuardedBy("mDiskLock")
+    private void writeEvictedImage(ImageKey key, Bitmap image) {
+        File file = getDiskFile(key);
+        boolean written;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            written = image.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            warn("Could not write image '" + key + "' to disk: " + e);
+            written = false;
+        }
+        long size = file.length();
+        synchronized (mLock) {
+            // The image may have been removed, replaced or loaded back while it was written.
+            if (mEvictedImages.get(key) != image) {
+                if (!mDiskImages.containsKey(key)) {
+                    file.delete();
+                }
+                return;
+            }
+            mEvictedImages.remove(key);
+            if (!written) {
+                warn("Could not compress image '" + key + "'");
+                file.delete();
+                return;
+            }
+            mDiskImages.put(key, size);
+            mDiskSize += size;
+
+            Iterator<Map.Entry<ImageKey, Long>> it = mDiskImages.entrySet().iterator();
+            while (mDiskSize > mMaxDiskBytes && it.hasNext()) {
+                Map.Entry<ImageKey, Long> entry = it.next();
+                debug("Image '" + entry.getKey() + "' evicted from disk");
+                getDiskFile(entry.getKey()).delete();
+                mDiskSize -= entry.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void removeDiskImage(ImageKey key) {
+        Long size = mDiskImages.remove(key);
+        if (size != null) {
+            getDiskFile(key).delete();
+            mDiskSize -= size;
+        }
+    }
+
+    private File getDiskFile(ImageKey key) {
+        return new File(mDiskDir, key.mDevice.getAddress().replace(":", "") + "_" + key.mUuid);
+    }
+
+    private void deleteDiskFiles() {
+        File[] files = mDiskDir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            file.delete();
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("CoverArtStorage:\n");
-        for (BluetoothDevice device : mDeviceImages.keySet()) {
-            Map<String, Bitmap> images = mDeviceImages.get(device);
-            sb.append("  ").append(device).append(" (").append(images.size()).append("):");
-            for (String uuid : images.keySet()) {
-                sb.append("\n    ").append(uuid);
+        synchronized (mLock) {
+            Map<BluetoothDevice, List<String>> deviceImages = new LinkedHashMap<>();
+            for (ImageKey key : mImages.snapshot().keySet()) {
+                deviceImages.computeIfAbsent(key.mDevice, d -> new ArrayList<>()).add(key.mUuid);
+            }
+            for (ImageKey key : mDiskImages.keySet()) {
+                deviceImages
+                        .computeIfAbsent(key.mDevice, d -> new ArrayList<>())
+                        .add(key.mUuid + " (disk)");
+            }
+            for (Map.Entry<BluetoothDevice, List<String>> entry : deviceImages.entrySet()) {
+                List<String> images = entry.getValue();
+                sb.append("  ").append(entry.getKey()).append(" (").append(images.size());
+                sb.append("):");
+                for (String image : images) {
+                    sb.append("\n    ").append(image);
+                }
+                sb.append("\n");
+            }
+            if (mImages.maxSize() != Integer.MAX_VALUE || mDiskDir != null) {
+                sb.append("  Memory: ").append(mImages.size()).append("/");
+                sb.append(mImages.maxSize()).append(" bytes, Disk: ").append(mDiskSize);
+                sb.append("/").append(mMaxDiskBytes).append(" bytes\n");
             }
-            sb.append("\n");
         }
         return sb.toString();
     }
@@ -160,4 +429,8 @@ public class AvrcpCoverArtStorage {
     private void debug(String msg) {
         Log.d(TAG, msg);
     }
+
+    private void warn(String msg) {
+        Log.w(TAG, msg);
+    }
 }
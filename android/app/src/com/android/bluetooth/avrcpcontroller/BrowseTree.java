@@ -30,6 +30,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -67,7 +69,24 @@ public class BrowseTree {
     private final HashMap<String, ArrayList<String>> mCoverArtMap =
             new HashMap<String, ArrayList<String>>();
 
+    // Maximum number of nodes in mBrowseMap, 0 for no limit
+    private final int mMaxNodes;
+
+    // Folder ID <-> Folder Instance of the viewed folders, least recently viewed first. Only
+    // tracked when the number of nodes is limited.
+    private final LinkedHashMap<String, BrowseNode> mViewedFolders =
+            new LinkedHashMap<String, BrowseNode>(16, 0.75f, true);
+
     BrowseTree(BluetoothDevice device) {
+        this(device, 0);
+    }
+
+    /**
+     * @param maxNodes - The number of nodes above which the contents of the least recently viewed
+     *     folders are evicted, 0 for no limit
+     */
+    BrowseTree(BluetoothDevice device, int maxNodes) {
+        mMaxNodes = maxNodes;
         if (device == null) {
             mRootNode =
                     new BrowseNode(
@@ -130,6 +149,7 @@ public class BrowseTree {
         // Clearing the map should garbage collect everything.
         mBrowseMap.clear();
         mCoverArtMap.clear();
+        mViewedFolders.clear();
     }
 
     void onConnected(BluetoothDevice device) {
@@ -304,6 +324,26 @@ public class BrowseTree {
             return mItem.isBrowsable();
         }
 
+        /**
+         * Drop the contents of this folder and of its descendants, they are fetched again the next
+         * time the folder is browsed.
+         */
+        synchronized void evict() {
+            for (BrowseNode child : mChildren) {
+                child.evict();
+                mBrowseMap.remove(child.getID());
+                indicateCoverArtUnused(child.getID(), child.getCoverArtUuid());
+            }
+            mChildren.clear();
+            mCached = false;
+            onFolderEvicted(getID());
+        }
+
+        // Mark this folder as the most recently viewed one, the last one to be evicted.
+        void markViewed() {
+            onFolderViewed(getID(), this);
+        }
+
         synchronized void setCached(boolean cached) {
             Log.d(TAG, "Set cached=" + cached + ", node=" + toString());
             mCached = cached;
@@ -467,6 +507,66 @@ public class BrowseTree {
         return mCurrentAddressedPlayer;
     }
 
+    private synchronized void onFolderViewed(String id, BrowseNode node) {
+        if (mMaxNodes > 0) {
+            mViewedFolders.put(id, node);
+        }
+    }
+
+    private synchronized void onFolderEvicted(String id) {
+        mViewedFolders.remove(id);
+    }
+
+    /**
+     * Evict the contents of the least recently viewed folders until the tree holds at most the
+     * maximum number of nodes.
+     *
+     * <p>The root, the Now Playing list and the folders leading to the current browsed folder or
+     * to {@code keep} are never evicted, so the tree can still grow past the maximum while a folder
+     * larger than it is browsed.
+     *
+     * @param keep - The folder being fetched, if any
+     * @return true if some folders were evicted
+     */
+    boolean trim(BrowseNode keep) {
+        boolean evicted = false;
+        while (true) {
+            BrowseNode folder;
+            synchronized (this) {
+                if (mMaxNodes <= 0 || mBrowseMap.size() <= mMaxNodes) {
+                    break;
+                }
+                folder = getEvictableFolder(keep);
+            }
+            if (folder == null) {
+                break;
+            }
+            // Locks the nodes, so the tree must not be locked to respect the lock ordering.
+            Log.d(TAG, "Evicting " + folder + ", tree size=" + mBrowseMap.size());
+            folder.evict();
+            evicted = true;
+        }
+        return evicted;
+    }
+
+    private synchronized BrowseNode getEvictableFolder(BrowseNode keep) {
+        Set<BrowseNode> pinned = Collections.newSetFromMap(new IdentityHashMap<>());
+        pinned.add(mRootNode);
+        pinned.add(mNowPlayingNode);
+        for (BrowseNode node = mCurrentBrowseNode; node != null; node = node.mParent) {
+            pinned.add(node);
+        }
+        for (BrowseNode node = keep; node != null; node = node.mParent) {
+            pinned.add(node);
+        }
+        for (BrowseNode folder : mViewedFolders.values()) {
+            if (!pinned.contains(folder)) {
+                return folder;
+            }
+        }
+        return null;
+    }
+
     /**
      * Indicate that a node in the tree is using a specific piece of cover art, identified by the
      * given image handle.
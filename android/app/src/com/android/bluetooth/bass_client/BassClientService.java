@@ -153,7 +153,16 @@ public class BassClientService extends ProfileService {
 
     private final Map<BluetoothDevice, BassClientStateMachine> mStateMachines = new HashMap<>();
     private final Object mSearchScanCallbackLock = new Object();
-    private final Map<Integer, ScanResult> mCachedBroadcasts = new HashMap<>();
+    // Bounded and aged only if configured, searching used to remember every broadcast found
+    private final BroadcastSourceCache mCachedBroadcasts =
+            new BroadcastSourceCache(
+                    DeviceConfig.getInt(
+                            DeviceConfig.NAMESPACE_BLUETOOTH, "bass_max_cached_broadcasts", 0),
+                    DeviceConfig.getLong(
+                            DeviceConfig.NAMESPACE_BLUETOOTH,
+                            "bass_cached_broadcast_max_age_ms",
+                            0),
+                    this::isCachedBroadcastInUse);
 
     private final List<Integer> mActiveSyncedSources = new ArrayList<>();
     private final Map<Integer, PeriodicAdvertisingCallback> mPeriodicAdvCallbacksMap =
@@ -285,10 +294,15 @@ public class BassClientService extends ProfileService {
     private static class SourceSyncRequest {
         private ScanResult mScanResult;
         private boolean mHasPriority;
+        private int mBroadcastId;
+        // Latest RSSI of the source, only updated while out of the queue
+        private int mRssi;
 
-        SourceSyncRequest(ScanResult scanResult, boolean hasPriority) {
+        SourceSyncRequest(ScanResult scanResult, boolean hasPriority, int broadcastId) {
             this.mScanResult = scanResult;
             this.mHasPriority = hasPriority;
+            this.mBroadcastId = broadcastId;
+            this.mRssi = scanResult.getRssi();
         }
 
         public ScanResult getScanResult() {
@@ -296,7 +310,7 @@ public class BassClientService extends ProfileService {
         }
 
         public int getRssi() {
-            return mScanResult.getRssi();
+            return mRssi;
         }
 
         public boolean hasPriority() {
@@ -636,6 +650,42 @@ public class BassClientService extends ProfileService {
         return mCachedBroadcasts.get(broadcastId);
     }
 
+    /** Returns the latest RSSI of a cached broadcast, or {@code defaultRssi} if not cached. */
+    int getCachedBroadcastRssi(int broadcastId, int defaultRssi) {
+        return mCachedBroadcasts.getRssi(broadcastId, defaultRssi);
+    }
+
+    /**
+     * Whether a cached broadcast is active, paused or pending, in which case its scan result is
+     * needed to sync to it again and it must not be dropped from the cache.
+     */
+    private boolean isCachedBroadcastInUse(int broadcastId) {
+        if (mPausedBroadcastIds.containsKey(broadcastId)
+                || mActiveSyncedSources.contains(getSyncHandleForBroadcastId(broadcastId))) {
+            return true;
+        }
+        synchronized (mPendingSourcesToAdd) {
+            for (AddSourceData pendingSourceToAdd : mPendingSourcesToAdd) {
+                if (pendingSourceToAdd.mSourceMetadata.getBroadcastId() == broadcastId) {
+                    return true;
+                }
+            }
+        }
+        for (AddSourceData pendingAddSource : mPendingAddSources) {
+            if (pendingAddSource.mSourceMetadata.getBroadcastId() == broadcastId) {
+                return true;
+            }
+        }
+        for (BluetoothDevice device : getConnectedDevices()) {
+            for (BluetoothLeBroadcastReceiveState receiveState : getAllSources(device)) {
+                if (receiveState.getBroadcastId() == broadcastId) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public Callbacks getCallbacks() {
         return mCallbacks;
     }
@@ -1805,7 +1855,23 @@ public class BassClientService extends ProfileService {
                     new ScanCallback() {
                         @Override
                         public void onScanResult(int callbackType, ScanResult result) {
-                            log("onScanResult:" + result);
+                            if (callbackType != ScanSettings.CALLBACK_TYPE_ALL_MATCHES) {
+                                // Should not happen
+                                Log.e(TAG, "LE Scan has already started");
+                                return;
+                            }
+                            ScanRecord scanRecord = result.getScanRecord();
+                            if (scanRecord == null) {
+                                Log.e(TAG, "Null scan record");
+                                return;
+                            }
+                            // Every advertisement of every source is reported while searching,
+                            // the ones of sources already found only refresh the cache.
+                            int broadcastId = BassUtils.findBroadcastId(scanRecord.getBytes());
+                            if (broadcastId == BassConstants.INVALID_BROADCAST_ID
+                                    || mCachedBroadcasts.refresh(broadcastId, result.getRssi())) {
+                                return;
+                            }
                             synchronized (mSearchScanCallbackLock) {
                                 // check mSearchScanCallback because even after
                                 // mBluetoothLeScannerWrapper.stopScan(mSearchScanCallback) that
@@ -1814,40 +1880,13 @@ public class BassClientService extends ProfileService {
                                     log("onScanResult: scanner already stopped");
                                     return;
                                 }
-                                if (callbackType != ScanSettings.CALLBACK_TYPE_ALL_MATCHES) {
-                                    // Should not happen
-                                    Log.e(TAG, "LE Scan has already started");
-                                    return;
-                                }
-                                ScanRecord scanRecord = result.getScanRecord();
-                                if (scanRecord == null) {
-                                    Log.e(TAG, "Null scan record");
-                                    return;
-                                }
-                                Map<ParcelUuid, byte[]> listOfUuids = scanRecord.getServiceData();
-                                if (listOfUuids == null) {
-                                    Log.e(TAG, "Service data is null");
-                                    return;
-                                }
-                                if (!listOfUuids.containsKey(BassConstants.BAAS_UUID)) {
-                                    return;
-                                }
-                                log("Broadcast Source Found:" + result.getDevice());
-                                byte[] broadcastIdArray = listOfUuids.get(BassConstants.BAAS_UUID);
-                                int broadcastId =
-                                        (int)
-                                                (((broadcastIdArray[2] & 0xff) << 16)
-                                                        | ((broadcastIdArray[1] & 0xff) << 8)
-                                                        | (broadcastIdArray[0] & 0xff));
-
-                                sEventLogger.logd(
-                                        TAG,
-                                        "Broadcast Source Found: Broadcast ID: " + broadcastId);
-
-                                if (broadcastId != BassConstants.INVALID_BROADCAST_ID
-                                        && mCachedBroadcasts.get(broadcastId) == null) {
+                                if (mCachedBroadcasts.add(broadcastId, result)) {
+                                    log("Broadcast Source Found:" + result.getDevice());
+                                    sEventLogger.logd(
+                                            TAG,
+                                            "Broadcast Source Found: Broadcast ID: "
+                                                    + broadcastId);
                                     log("selectBroadcastSource: broadcastId " + broadcastId);
-                                    mCachedBroadcasts.put(broadcastId, result);
                                     if (leaudioBroadcastExtractPeriodicScannerFromStateMachine()) {
                                         addSelectSourceRequest(result, false);
                                     } else {
@@ -2348,7 +2387,8 @@ public class BassClientService extends ProfileService {
             // update the rssi value
             ScanResult scanRes = getCachedBroadcast(result.getBroadcastId());
             if (scanRes != null) {
-                metaData.setRssi(scanRes.getRssi());
+                metaData.setRssi(
+                        getCachedBroadcastRssi(result.getBroadcastId(), scanRes.getRssi()));
             }
         }
         return metaData.build();
@@ -2486,13 +2526,29 @@ public class BassClientService extends ProfileService {
             return;
         }
 
+        int broadcastId = BassUtils.findBroadcastId(scanRecord.getBytes());
         synchronized (mSourceSyncRequestsQueue) {
-            mSourceSyncRequestsQueue.add(new SourceSyncRequest(scanRes, hasPriority));
+            mSourceSyncRequestsQueue.add(new SourceSyncRequest(scanRes, hasPriority, broadcastId));
         }
 
         handleSelectSourceRequest();
     }
 
+    /** Takes the request with priority, or of the closest source by its latest advertisement. */
+    private SourceSyncRequest pollSourceSyncRequest() {
+        synchronized (mSourceSyncRequestsQueue) {
+            if (mSourceSyncRequestsQueue.size() > 1) {
+                List<SourceSyncRequest> requests = new ArrayList<>(mSourceSyncRequestsQueue);
+                mSourceSyncRequestsQueue.clear();
+                for (SourceSyncRequest request : requests) {
+                    request.mRssi = mCachedBroadcasts.getRssi(request.mBroadcastId, request.mRssi);
+                }
+                mSourceSyncRequestsQueue.addAll(requests);
+            }
+            return mSourceSyncRequestsQueue.poll();
+        }
+    }
+
     @SuppressLint("AndroidFrameworkRequiresPermission") // TODO: b/350563786 - Fix BASS annotation
     private void handleSelectSourceRequest() {
         PeriodicAdvertisingCallback paCb;
@@ -2508,10 +2564,7 @@ public class BassClientService extends ProfileService {
                 mPeriodicAdvCallbacksMap.put(BassConstants.INVALID_SYNC_HANDLE, paCb);
             }
         }
-        ScanResult scanRes;
-        synchronized (mSourceSyncRequestsQueue) {
-            scanRes = mSourceSyncRequestsQueue.poll().getScanResult();
-        }
+        ScanResult scanRes = pollSourceSyncRequest().getScanResult();
         ScanRecord scanRecord = scanRes.getScanRecord();
 
         sEventLogger.logd(TAG, "Select Broadcast Source, result: " + scanRes);
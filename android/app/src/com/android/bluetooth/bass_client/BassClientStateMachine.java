@@ -792,7 +792,9 @@ public class BassClientStateMachine extends StateMachine {
             // update the rssi value
             ScanResult scanRes = mService.getCachedBroadcast(result.getBroadcastId());
             if (scanRes != null) {
-                metaData.setRssi(scanRes.getRssi());
+                metaData.setRssi(
+                        mService.getCachedBroadcastRssi(
+                                result.getBroadcastId(), scanRes.getRssi()));
             }
         }
         return metaData.build();
@@ -27,6 +27,9 @@ import java.util.List;
 class BassUtils {
     private static final String TAG = "BassUtils";
 
+    private static final byte AD_TYPE_SERVICE_DATA_16_BIT_UUID = 0x16;
+    private static final int BAAS_UUID_16_BIT = 0x1852;
+
     static boolean containUuid(List<ScanFilter> filters, ParcelUuid uuid) {
         for (ScanFilter filter : filters) {
             if (filter.getServiceUuid().equals(uuid)) {
@@ -44,6 +47,36 @@ class BassUtils {
         return broadcastId;
     }
 
+    /**
+     * Finds the broadcast ID in the Broadcast Audio Announcement service data of raw advertising
+     * data, without parsing the rest of the advertisement.
+     *
+     * @return the broadcast ID, or {@link BassConstants#INVALID_BROADCAST_ID} if not announced
+     */
+    static int findBroadcastId(byte[] advertisingData) {
+        if (advertisingData == null) {
+            return BassConstants.INVALID_BROADCAST_ID;
+        }
+        int index = 0;
+        while (index + 1 < advertisingData.length) {
+            int length = advertisingData[index] & 0xFF;
+            if (length == 0 || index + length >= advertisingData.length) {
+                break;
+            }
+            // Service data: AD type, 16 bit UUID, then the 3 bytes of the broadcast ID
+            if (advertisingData[index + 1] == AD_TYPE_SERVICE_DATA_16_BIT_UUID
+                    && length >= 6
+                    && (advertisingData[index + 2] & 0xFF) == (BAAS_UUID_16_BIT & 0xFF)
+                    && (advertisingData[index + 3] & 0xFF) == (BAAS_UUID_16_BIT >> 8)) {
+                return (advertisingData[index + 4] & 0xFF)
+                        | ((advertisingData[index + 5] & 0xFF) << 8)
+                        | ((advertisingData[index + 6] & 0xFF) << 16);
+            }
+            index += length + 1;
+        }
+        return BassConstants.INVALID_BROADCAST_ID;
+    }
+
     static void log(String msg) {
         Log.d(TAG, msg);
     }
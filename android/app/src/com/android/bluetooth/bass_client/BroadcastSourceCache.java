@@ -0,0 +1,213 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.bass_client;
+
+import android.bluetooth.le.ScanResult;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * Broadcast sources found while searching, by broadcast ID.
+ *
+ * <p>The scan result that found a source is kept along with the RSSI and the time of its latest
+ * advertisement. Sources that haven't advertised for longer than the maximum age are dropped, and
+ * above the maximum size the sources that advertised the least recently are evicted first. Sources
+ * in use are never dropped, so the cache can grow past its maximum size while they are all in use.
+ */
+class BroadcastSourceCache {
+    private static final String TAG = BroadcastSourceCache.class.getSimpleName();
+
+    private static final class Source {
+        final ScanResult mScanResult;
+        int mRssi;
+        long mLastSeenMs;
+
+        Source(ScanResult scanResult, long nowMs) {
+            mScanResult = scanResult;
+            mRssi = scanResult.getRssi();
+            mLastSeenMs = nowMs;
+        }
+    }
+
+    private final Object mLock = new Object();
+
+    // Ordered from the least to the most recently seen source
+    @GuardedBy("mLock")
+    private final LinkedHashMap<Integer, Source> mSources = new LinkedHashMap<>();
+
+    private final int mMaxSize;
+    private final long mMaxAgeMs;
+    private final IntPredicate mInUse;
+    private final LongSupplier mClock;
+
+    /**
+     * @param maxSize the number of sources above which the least recently seen are evicted,
+     *     unbounded if 0
+     * @param maxAgeMs the time after which a source that didn't advertise is dropped, never if 0
+     * @param inUse whether a source is active, paused or pending and must be kept, by broadcast
+     *     ID. Called without the cache lock held.
+     */
+    BroadcastSourceCache(int maxSize, long maxAgeMs, IntPredicate inUse) {
+        this(maxSize, maxAgeMs, inUse, SystemClock::elapsedRealtime);
+    }
+
+    @VisibleForTesting
+    BroadcastSourceCache(int maxSize, long maxAgeMs, IntPredicate inUse, LongSupplier clock) {
+        mMaxSize = Math.max(maxSize, 0);
+        mMaxAgeMs = Math.max(maxAgeMs, 0);
+        mInUse = inUse;
+        mClock = clock;
+    }
+
+    /**
+     * Records a new advertisement of a known source.
+     *
+     * @return false if the source isn't cached, and must be added
+     */
+    boolean refresh(int broadcastId, int rssi) {
+        synchronized (mLock) {
+            Source source = mSources.remove(broadcastId);
+            if (source == null) {
+                return false;
+            }
+            mSources.put(broadcastId, source);
+            source.mRssi = rssi;
+            source.mLastSeenMs = mClock.getAsLong();
+            return true;
+        }
+    }
+
+    /**
+     * Adds a new source, unless it is already cached.
+     *
+     * @return true if the source was added
+     */
+    boolean add(int broadcastId, ScanResult scanResult) {
+        List<Integer> candidates;
+        synchronized (mLock) {
+            if (mSources.containsKey(broadcastId)) {
+                return false;
+            }
+            candidates = getTrimCandidatesLocked(mClock.getAsLong());
+        }
+        // Tested without the lock, as the owner of the cache may hold its own locks while reading
+        // the cache.
+        Set<Integer> droppable = new HashSet<>();
+        for (int candidate : candidates) {
+            if (!mInUse.test(candidate)) {
+                droppable.add(candidate);
+            }
+        }
+        synchronized (mLock) {
+            if (mSources.containsKey(broadcastId)) {
+                return false;
+            }
+            long nowMs = mClock.getAsLong();
+            trimLocked(nowMs, droppable);
+            mSources.put(broadcastId, new Source(scanResult, nowMs));
+            return true;
+        }
+    }
+
+    /** Returns the scan result that found a source, or null if it isn't cached. */
+    ScanResult get(int broadcastId) {
+        synchronized (mLock) {
+            Source source = mSources.get(broadcastId);
+            return source == null ? null : source.mScanResult;
+        }
+    }
+
+    /** Returns the RSSI of the latest advertisement of a source, or {@code defaultRssi}. */
+    int getRssi(int broadcastId, int defaultRssi) {
+        synchronized (mLock) {
+            Source source = mSources.get(broadcastId);
+            return source == null ? defaultRssi : source.mRssi;
+        }
+    }
+
+    void remove(int broadcastId) {
+        synchronized (mLock) {
+            mSources.remove(broadcastId);
+        }
+    }
+
+    void clear() {
+        synchronized (mLock) {
+            mSources.clear();
+        }
+    }
+
+    int size() {
+        synchronized (mLock) {
+            return mSources.size();
+        }
+    }
+
+    /** Returns the sources that may be dropped to make room for a new one, none if not full. */
+    @GuardedBy("mLock")
+    private List<Integer> getTrimCandidatesLocked(long nowMs) {
+        if (mSources.isEmpty()) {
+            return List.of();
+        }
+        Source eldest = mSources.values().iterator().next();
+        boolean full = mMaxSize > 0 && mSources.size() >= mMaxSize;
+        if (!full && !isAged(eldest, nowMs)) {
+            return List.of();
+        }
+        return new ArrayList<>(mSources.keySet());
+    }
+
+    /**
+     * Makes room for a new source, dropping the aged and least recently seen ones among the
+     * droppable ones.
+     */
+    @GuardedBy("mLock")
+    private void trimLocked(long nowMs, Set<Integer> droppable) {
+        Iterator<Map.Entry<Integer, Source>> it = mSources.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Source> entry = it.next();
+            boolean aged = isAged(entry.getValue(), nowMs);
+            boolean full = mMaxSize > 0 && mSources.size() >= mMaxSize;
+            if (!aged && !full) {
+                // The next sources were seen more recently
+                return;
+            }
+            if (!droppable.contains(entry.getKey())) {
+                continue;
+            }
+            Log.d(TAG, "Drop broadcast source: " + entry.getValue().mScanResult.getDevice());
+            it.remove();
+        }
+    }
+
+    private boolean isAged(Source source, long nowMs) {
+        return mMaxAgeMs > 0 && nowMs - source.mLastSeenMs > mMaxAgeMs;
+    }
+}
@@ -250,6 +250,7 @@ public class AdapterService extends Service {
             mCsipGroupsPendingAudioProfileChanges = new HashMap<>();
 
     private final Map<BluetoothStateCallback, Executor> mLocalCallbacks = new ConcurrentHashMap<>();
+    private final Map<Runnable, Executor> mDeviceConfigCallbacks = new ConcurrentHashMap<>();
     private final Map<UUID, RfcommListenerData> mBluetoothServerSockets = new ConcurrentHashMap<>();
     private final ArrayDeque<IBluetoothOobDataCallback> mOobDataCallbackQueue = new ArrayDeque<>();
 
@@ -5819,6 +5820,16 @@ public class AdapterService extends Service {
         mLocalCallbacks.remove(callback);
     }
 
+    /** Register a callback run when the Bluetooth DeviceConfig properties change */
+    public void registerDeviceConfigCallback(Executor executor, Runnable callback) {
+        mDeviceConfigCallbacks.put(callback, executor);
+    }
+
+    /** Unregister a DeviceConfig properties callback */
+    public void unregisterDeviceConfigCallback(Runnable callback) {
+        mDeviceConfigCallbacks.remove(callback);
+    }
+
     @VisibleForTesting
     void registerRemoteCallback(IBluetoothCallback callback) {
         mRemoteCallbacks.register(callback);
@@ -6496,6 +6507,66 @@ public class AdapterService extends Service {
     private int mScreenOffBalancedIntervalMillis =
             ScanManager.SCAN_MODE_SCREEN_OFF_BALANCED_INTERVAL_MS;
 
+    @GuardedBy("mDeviceConfigLock")
+    private int mScanResultBatchMaxResults =
+            DeviceConfigListener.DEFAULT_SCAN_RESULT_BATCH_MAX_RESULTS;
+
+    @GuardedBy("mDeviceConfigLock")
+    private long mScanResultBatchMaxDelayMicros =
+            DeviceConfigListener.DEFAULT_SCAN_RESULT_BATCH_MAX_DELAY_MICROS;
+
+    @GuardedBy("mDeviceConfigLock")
+    private int mScanResultBatchMaxPending =
+            DeviceConfigListener.DEFAULT_SCAN_RESULT_BATCH_MAX_PENDING;
+
+    @GuardedBy("mDeviceConfigLock")
+    private boolean mScanResultAsyncDelivery =
+            DeviceConfigListener.DEFAULT_SCAN_RESULT_ASYNC_DELIVERY;
+
+    @GuardedBy("mDeviceConfigLock")
+    private int mScanResultDropPolicy = DeviceConfigListener.DEFAULT_SCAN_RESULT_DROP_POLICY;
+
+    @GuardedBy("mDeviceConfigLock")
+    private int mGattNotifyBatchMaxNotifications =
+            DeviceConfigListener.DEFAULT_GATT_NOTIFY_BATCH_MAX_NOTIFICATIONS;
+
+    @GuardedBy("mDeviceConfigLock")
+    private long mGattNotifyBatchMaxDelayMicros =
+            DeviceConfigListener.DEFAULT_GATT_NOTIFY_BATCH_MAX_DELAY_MICROS;
+
+    @GuardedBy("mDeviceConfigLock")
+    private int mGattWritePipelineDepth = DeviceConfigListener.DEFAULT_GATT_WRITE_PIPELINE_DEPTH;
+
+    @GuardedBy("mDeviceConfigLock")
+    private long mMetadataWriteDelayMillis =
+            DeviceConfigListener.DEFAULT_METADATA_WRITE_DELAY_MILLIS;
+
+    @GuardedBy("mDeviceConfigLock")
+    private int mPbapVCardCacheSizeKb = DeviceConfigListener.DEFAULT_PBAP_VCARD_CACHE_SIZE_KB;
+
+    @GuardedBy("mDeviceConfigLock")
+    private boolean mPbapClientIncrementalSync =
+            DeviceConfigListener.DEFAULT_PBAP_CLIENT_INCREMENTAL_SYNC;
+
+    @GuardedBy("mDeviceConfigLock")
+    private int mAvrcpControllerCoverArtMemoryKb =
+            DeviceConfigListener.DEFAULT_AVRCP_CONTROLLER_COVER_ART_MEMORY_KB;
+
+    @GuardedBy("mDeviceConfigLock")
+    private int mAvrcpControllerCoverArtDiskKb =
+            DeviceConfigListener.DEFAULT_AVRCP_CONTROLLER_COVER_ART_DISK_KB;
+
+    @GuardedBy("mDeviceConfigLock")
+    private int mRemoteDevicesMaxSize = DeviceConfigListener.DEFAULT_REMOTE_DEVICES_MAX_SIZE;
+
+    @GuardedBy("mDeviceConfigLock")
+    private String mDistanceMeasurementFilter =
+            DeviceConfigListener.DEFAULT_DISTANCE_MEASUREMENT_FILTER;
+
+    @GuardedBy("mDeviceConfigLock")
+    private int mDistanceMeasurementMinResultIntervalMillis =
+            DeviceConfigListener.DEFAULT_DISTANCE_MEASUREMENT_MIN_RESULT_INTERVAL_MILLIS;
+
     @GuardedBy("mDeviceConfigLock")
     private String mLeAudioAllowList;
 
@@ -6580,6 +6651,151 @@ public class AdapterService extends Service {
         }
     }
 
+    /**
+     * Returns the number of scan results after which coalesced results are delivered to a scan
+     * client. Scan results are not coalesced if the value is lower than 2.
+     */
+    public int getScanResultBatchMaxResults() {
+        synchronized (mDeviceConfigLock) {
+            return mScanResultBatchMaxResults;
+        }
+    }
+
+    /** Returns the maximum delay of a coalesced scan result before delivery, in micros. */
+    public long getScanResultBatchMaxDelayMicros() {
+        synchronized (mDeviceConfigLock) {
+            return mScanResultBatchMaxDelayMicros;
+        }
+    }
+
+    /** Returns the maximum number of scan results pending delivery per client. */
+    public int getScanResultBatchMaxPending() {
+        synchronized (mDeviceConfigLock) {
+            return mScanResultBatchMaxPending;
+        }
+    }
+
+    /** Returns true if scan results are delivered to clients outside of the scan callback. */
+    public boolean getScanResultAsyncDelivery() {
+        synchronized (mDeviceConfigLock) {
+            return mScanResultAsyncDelivery;
+        }
+    }
+
+    /**
+     * Returns which scan result is dropped when a client falls behind: 0 for its oldest pending
+     * result, 1 for the newest one.
+     */
+    public int getScanResultDropPolicy() {
+        synchronized (mDeviceConfigLock) {
+            return mScanResultDropPolicy;
+        }
+    }
+
+    /**
+     * Returns the number of GATT notifications after which coalesced notifications are delivered
+     * to a client app. Notifications are not coalesced if the value is lower than 2.
+     */
+    public int getGattNotifyBatchMaxNotifications() {
+        synchronized (mDeviceConfigLock) {
+            return mGattNotifyBatchMaxNotifications;
+        }
+    }
+
+    /** Returns the maximum delay of a coalesced GATT notification before delivery, in micros. */
+    public long getGattNotifyBatchMaxDelayMicros() {
+        synchronized (mDeviceConfigLock) {
+            return mGattNotifyBatchMaxDelayMicros;
+        }
+    }
+
+    /**
+     * Returns the maximum number of GATT writes without response or prepared writes a connection
+     * may have queued or in flight.
+     */
+    public int getGattWritePipelineDepth() {
+        synchronized (mDeviceConfigLock) {
+            return mGattWritePipelineDepth;
+        }
+    }
+
+    /** Returns how long changed device metadata is held back before being written to storage. */
+    public long getMetadataWriteDelayMillis() {
+        synchronized (mDeviceConfigLock) {
+            return mMetadataWriteDelayMillis;
+        }
+    }
+
+    /**
+     * Returns the maximum size of the vCards cached by the PBAP server between phonebook pulls, in
+     * KB. vCards are not cached if the value is 0.
+     */
+    public int getPbapVCardCacheSizeKb() {
+        synchronized (mDeviceConfigLock) {
+            return mPbapVCardCacheSizeKb;
+        }
+    }
+
+    /**
+     * Returns whether the PBAP client keeps the downloaded contacts between connections and only
+     * applies the contacts that changed since the previous download.
+     */
+    public boolean isPbapClientIncrementalSyncEnabled() {
+        synchronized (mDeviceConfigLock) {
+            return mPbapClientIncrementalSync;
+        }
+    }
+
+    /**
+     * Returns the maximum size of the cover art kept in memory by the AVRCP controller, in KB. The
+     * memory used is unbounded if the value is 0.
+     */
+    public int getAvrcpControllerCoverArtMemoryKb() {
+        synchronized (mDeviceConfigLock) {
+            return mAvrcpControllerCoverArtMemoryKb;
+        }
+    }
+
+    /**
+     * Returns the maximum size of the cover art evicted from memory and kept on disk by the AVRCP
+     * controller, in KB. Evicted cover art is dropped if the value is 0.
+     */
+    public int getAvrcpControllerCoverArtDiskKb() {
+        synchronized (mDeviceConfigLock) {
+            return mAvrcpControllerCoverArtDiskKb;
+        }
+    }
+
+    /**
+     * Returns the number of remote devices remembered above which the least recently used ones
+     * are forgotten. Bonded and connected devices are never forgotten.
+     */
+    public int getRemoteDevicesMaxSize() {
+        synchronized (mDeviceConfigLock) {
+            return mRemoteDevicesMaxSize;
+        }
+    }
+
+    /**
+     * Returns the filter of the distance measurement results: "median", "exponential" or
+     * "kalman". Results are delivered as measured for any other value.
+     */
+    public @NonNull String getDistanceMeasurementFilter() {
+        synchronized (mDeviceConfigLock) {
+            return mDistanceMeasurementFilter;
+        }
+    }
+
+    /**
+     * Returns the minimum time between two distance measurement results delivered to an app.
+     * Every result is delivered if the value is 0.
+     */
+    public int getDistanceMeasurementMinResultIntervalMillis() {
+        synchronized (mDeviceConfigLock) {
+            return mDistanceMeasurementMinResultIntervalMillis;
+        }
+    }
+
     private class DeviceConfigListener implements DeviceConfig.OnPropertiesChangedListener {
         private static final String LOCATION_DENYLIST_NAME = "location_denylist_name";
         private static final String LOCATION_DENYLIST_MAC = "location_denylist_mac";
@@ -6599,6 +6815,30 @@ public class AdapterService extends Service {
                 "screen_off_balanced_window_millis";
         private static final String SCREEN_OFF_BALANCED_INTERVAL_MILLIS =
                 "screen_off_balanced_interval_millis";
+        private static final String SCAN_RESULT_BATCH_MAX_RESULTS =
+                "scan_result_batch_max_results";
+        private static final String SCAN_RESULT_BATCH_MAX_DELAY_MICROS =
+                "scan_result_batch_max_delay_micros";
+        private static final String SCAN_RESULT_BATCH_MAX_PENDING =
+                "scan_result_batch_max_pending";
+        private static final String SCAN_RESULT_ASYNC_DELIVERY = "scan_result_async_delivery";
+        private static final String SCAN_RESULT_DROP_POLICY = "scan_result_drop_policy";
+        private static final String GATT_NOTIFY_BATCH_MAX_NOTIFICATIONS =
+                "gatt_notify_batch_max_notifications";
+        private static final String GATT_NOTIFY_BATCH_MAX_DELAY_MICROS =
+                "gatt_notify_batch_max_delay_micros";
+        private static final String GATT_WRITE_PIPELINE_DEPTH = "gatt_write_pipeline_depth";
+        private static final String METADATA_WRITE_DELAY_MILLIS = "metadata_write_delay_millis";
+        private static final String PBAP_VCARD_CACHE_SIZE_KB = "pbap_vcard_cache_size_kb";
+        private static final String PBAP_CLIENT_INCREMENTAL_SYNC = "pbap_client_incremental_sync";
+        private static final String AVRCP_CONTROLLER_COVER_ART_MEMORY_KB =
+                "avrcp_controller_cover_art_memory_kb";
+        private static final String AVRCP_CONTROLLER_COVER_ART_DISK_KB =
+                "avrcp_controller_cover_art_disk_kb";
+        private static final String REMOTE_DEVICES_MAX_SIZE = "remote_devices_max_size";
+        private static final String DISTANCE_MEASUREMENT_FILTER = "distance_measurement_filter";
+        private static final String DISTANCE_MEASUREMENT_MIN_RESULT_INTERVAL_MILLIS =
+                "distance_measurement_min_result_interval_millis";
         private static final String LE_AUDIO_ALLOW_LIST = "le_audio_allow_list";
 
         /**
@@ -6614,6 +6854,30 @@ public class AdapterService extends Service {
         private static final int DEFAULT_SCAN_UPGRADE_DURATION_MILLIS = (int) SECOND_IN_MILLIS * 6;
         private static final int DEFAULT_SCAN_DOWNGRADE_DURATION_BT_CONNECTING_MILLIS =
                 (int) SECOND_IN_MILLIS * 6;
+        // Scan results are delivered one by one unless explicitly configured.
+        private static final int DEFAULT_SCAN_RESULT_BATCH_MAX_RESULTS = 0;
+        private static final long DEFAULT_SCAN_RESULT_BATCH_MAX_DELAY_MICROS = 20_000;
+        private static final int DEFAULT_SCAN_RESULT_BATCH_MAX_PENDING = 100;
+        private static final boolean DEFAULT_SCAN_RESULT_ASYNC_DELIVERY = false;
+        private static final int DEFAULT_SCAN_RESULT_DROP_POLICY = 0;
+        // GATT notifications are delivered one by one unless explicitly configured.
+        private static final int DEFAULT_GATT_NOTIFY_BATCH_MAX_NOTIFICATIONS = 0;
+        private static final long DEFAULT_GATT_NOTIFY_BATCH_MAX_DELAY_MICROS = 5_000;
+        // GATT writes without response and prepared writes are pipelined 8 deep per connection.
+        private static final int DEFAULT_GATT_WRITE_PIPELINE_DEPTH = 8;
+        // Metadata changes are written as soon as the database thread is free.
+        private static final long DEFAULT_METADATA_WRITE_DELAY_MILLIS = 0;
+        // Composed vCards are not cached between PBAP pulls unless explicitly configured.
+        private static final int DEFAULT_PBAP_VCARD_CACHE_SIZE_KB = 0;
+        // Downloaded contacts are removed on disconnection and fully downloaded again.
+        private static final boolean DEFAULT_PBAP_CLIENT_INCREMENTAL_SYNC = false;
+        // Cover art is only bounded in memory, and not kept on disk, unless explicitly configured.
+        private static final int DEFAULT_AVRCP_CONTROLLER_COVER_ART_MEMORY_KB = 0;
+        private static final int DEFAULT_AVRCP_CONTROLLER_COVER_ART_DISK_KB = 0;
+        private static final int DEFAULT_REMOTE_DEVICES_MAX_SIZE = 200;
+        // Distance measurement results are delivered as measured unless explicitly configured.
+        private static final String DEFAULT_DISTANCE_MEASUREMENT_FILTER = "";
+        private static final int DEFAULT_DISTANCE_MEASUREMENT_MIN_RESULT_INTERVAL_MILLIS = 0;
 
         public void start() {
             DeviceConfig.addOnPropertiesChangedListener(
@@ -6665,6 +6929,63 @@ public class AdapterService extends Service {
                         properties.getInt(
                                 SCREEN_OFF_BALANCED_INTERVAL_MILLIS,
                                 ScanManager.SCAN_MODE_SCREEN_OFF_BALANCED_INTERVAL_MS);
+                mScanResultBatchMaxResults =
+                        properties.getInt(
+                                SCAN_RESULT_BATCH_MAX_RESULTS,
+                                DEFAULT_SCAN_RESULT_BATCH_MAX_RESULTS);
+                mScanResultBatchMaxDelayMicros =
+                        properties.getLong(
+                                SCAN_RESULT_BATCH_MAX_DELAY_MICROS,
+                                DEFAULT_SCAN_RESULT_BATCH_MAX_DELAY_MICROS);
+                mScanResultBatchMaxPending =
+                        properties.getInt(
+                                SCAN_RESULT_BATCH_MAX_PENDING,
+                                DEFAULT_SCAN_RESULT_BATCH_MAX_PENDING);
+                mScanResultAsyncDelivery =
+                        properties.getBoolean(
+                                SCAN_RESULT_ASYNC_DELIVERY, DEFAULT_SCAN_RESULT_ASYNC_DELIVERY);
+                mScanResultDropPolicy =
+                        properties.getInt(
+                                SCAN_RESULT_DROP_POLICY, DEFAULT_SCAN_RESULT_DROP_POLICY);
+                mGattNotifyBatchMaxNotifications =
+                        properties.getInt(
+                                GATT_NOTIFY_BATCH_MAX_NOTIFICATIONS,
+                                DEFAULT_GATT_NOTIFY_BATCH_MAX_NOTIFICATIONS);
+                mGattNotifyBatchMaxDelayMicros =
+                        properties.getLong(
+                                GATT_NOTIFY_BATCH_MAX_DELAY_MICROS,
+                                DEFAULT_GATT_NOTIFY_BATCH_MAX_DELAY_MICROS);
+                mGattWritePipelineDepth =
+                        properties.getInt(
+                                GATT_WRITE_PIPELINE_DEPTH, DEFAULT_GATT_WRITE_PIPELINE_DEPTH);
+                mMetadataWriteDelayMillis =
+                        properties.getLong(
+                                METADATA_WRITE_DELAY_MILLIS, DEFAULT_METADATA_WRITE_DELAY_MILLIS);
+                mPbapVCardCacheSizeKb =
+                        properties.getInt(
+                                PBAP_VCARD_CACHE_SIZE_KB, DEFAULT_PBAP_VCARD_CACHE_SIZE_KB);
+                mPbapClientIncrementalSync =
+                        properties.getBoolean(
+                                PBAP_CLIENT_INCREMENTAL_SYNC,
+                                DEFAULT_PBAP_CLIENT_INCREMENTAL_SYNC);
+                mAvrcpControllerCoverArtMemoryKb =
+                        properties.getInt(
+                                AVRCP_CONTROLLER_COVER_ART_MEMORY_KB,
+                                DEFAULT_AVRCP_CONTROLLER_COVER_ART_MEMORY_KB);
+                mAvrcpControllerCoverArtDiskKb =
+                        properties.getInt(
+                                AVRCP_CONTROLLER_COVER_ART_DISK_KB,
+                                DEFAULT_AVRCP_CONTROLLER_COVER_ART_DISK_KB);
+                mRemoteDevicesMaxSize =
+                        properties.getInt(
+                                REMOTE_DEVICES_MAX_SIZE, DEFAULT_REMOTE_DEVICES_MAX_SIZE);
+                mDistanceMeasurementFilter =
+                        properties.getString(
+                                DISTANCE_MEASUREMENT_FILTER, DEFAULT_DISTANCE_MEASUREMENT_FILTER);
+                mDistanceMeasurementMinResultIntervalMillis =
+                        properties.getInt(
+                                DISTANCE_MEASUREMENT_MIN_RESULT_INTERVAL_MILLIS,
+                                DEFAULT_DISTANCE_MEASUREMENT_MIN_RESULT_INTERVAL_MILLIS);
                 mLeAudioAllowList = properties.getString(LE_AUDIO_ALLOW_LIST, "");
 
                 if (!mLeAudioAllowList.isEmpty()) {
@@ -6679,6 +7000,10 @@ public class AdapterService extends Service {
                     mLeAudioAllowDevices.addAll(leAudioAllowlistProp);
                 }
             }
+
+            for (Map.Entry<Runnable, Executor> e : mDeviceConfigCallbacks.entrySet()) {
+                e.getValue().execute(e.getKey());
+            }
         }
     }
 
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.btservice;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Values by Bluetooth address that evicts the least recently used values above a capacity.
+ *
+ * <p>Addresses are packed in a long, see {@link #toKey(byte[])}. Reads don't lock, they only stamp
+ * the value they return with the time, while insertions and removals are serialized and publish a
+ * new copy of the values. Pinned values are never evicted, so the registry can grow past its
+ * capacity while all its values are pinned.
+ *
+ * @param <V> the type of the values
+ */
+final class DeviceRegistry<V> {
+    private static final String TAG = "BluetoothDeviceRegistry";
+
+    private static final class Entry<V> {
+        final V mValue;
+        // Time of the last access, the least recently used entry has the lowest one
+        volatile long mLastAccess;
+
+        Entry(V value, long lastAccess) {
+            mValue = value;
+            mLastAccess = lastAccess;
+        }
+    }
+
+    private final Object mWriteLock = new Object();
+
+    // Replaced under the write lock, never modified, so reads take no lock
+    private volatile LongSparseArray<Entry<V>> mEntries = new LongSparseArray<>();
+
+    private final IntSupplier mCapacity;
+    private final Predicate<V> mPinned;
+
+    /**
+     * @param capacity the number of values above which the least recently used ones are evicted
+     * @param pinned whether a value must not be evicted, called with the write lock held
+     */
+    DeviceRegistry(int capacity, Predicate<V> pinned) {
+        this(() -> capacity, pinned);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+    }
+
+    /**
+     * @param capacity the current capacity, read on each insertion with the write lock held
+     * @param pinned whether a value must not be evicted, called with the write lock held
+     */
+    DeviceRegistry(IntSupplier capacity, Predicate<V> pinned) {
+        mCapacity = capacity;
+        mPinned = pinned;
+    }
+
+    /** Packs the 6 bytes of a Bluetooth address, most significant first, in a long. */
+    static long toKey(byte[] address) {
+        if (address == null || address.length != 6) {
+            throw new IllegalArgumentException("Invalid address");
+        }
+        long key = 0;
+        for (byte b : address) {
+            key = (key << 8) | (b & 0xFF);
+        }
+        return key;
+    }
+
+    /** Packs a Bluetooth address of the form "00:11:22:AA:BB:CC" in a long. */
+    static long toKey(String address) {
+        if (address == null || address.length() != 17) {
+            throw new IllegalArgumentException("Invalid address " + address);
+        }
+        long key = 0;
+        for (int i = 0; i < 17; i += 3) {
+            int high = Character.digit(address.charAt(i), 16);
+            int low = Character.digit(address.charAt(i + 1), 16);
+            if (high < 0 || low < 0 || (i < 15 && address.charAt(i + 2) != ':')) {
+                throw new IllegalArgumentException("Invalid address " + address);
+            }
+            key = (key << 8) | (high << 4) | low;
+        }
+        return key;
+    }
+
+    /** Returns the value of an address and marks it as the most recently used, or null. */
+    V get(long key) {
+        Entry<V> entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.mLastAccess = SystemClock.elapsedRealtimeNanos();
+        return entry.mValue;
+    }
+
+    /**
+     * Sets the value of an address, evicting the least recently used unpinned value if the
+     * registry is over capacity.
+     *
+     * @return the previous value of the address, or null
+     */
+    V put(long key, V value) {
+        synchronized (mWriteLock) {
+            LongSparseArray<Entry<V>> entries = mEntries.clone();
+            Entry<V> previous = entries.get(key);
+            entries.put(key, new Entry<>(value, SystemClock.elapsedRealtimeNanos()));
+            if (previous == null && entries.size() > mCapacity.getAsInt()) {
+                evictLocked(entries, key);
+            }
+            mEntries = entries;
+            return previous == null ? null : previous.mValue;
+        }
+    }
+
+    /** Removes the value of an address, returns it or null. */
+    V remove(long key) {
+        synchronized (mWriteLock) {
+            int index = mEntries.indexOfKey(key);
+            if (index < 0) {
+                return null;
+            }
+            LongSparseArray<Entry<V>> entries = mEntries.clone();
+            Entry<V> entry = entries.valueAt(index);
+            entries.removeAt(index);
+            mEntries = entries;
+            return entry.mValue;
+        }
+    }
+
+    void clear() {
+        synchronized (mWriteLock) {
+            mEntries = new LongSparseArray<>();
+        }
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    /** Calls {@code action} for every value, without changing their order of use. */
+    void forEach(Consumer<V> action) {
+        LongSparseArray<Entry<V>> entries = mEntries;
+        for (int i = 0; i < entries.size(); i++) {
+            action.accept(entries.valueAt(i).mValue);
+        }
+    }
+
+    @GuardedBy("mWriteLock")
+    private void evictLocked(LongSparseArray<Entry<V>> entries, long addedKey) {
+        int eldest = -1;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry<V> candidate = entries.valueAt(i);
+            if (entries.keyAt(i) == addedKey
+                    || (eldest >= 0 && candidate.mLastAccess >= entries.valueAt(eldest).mLastAccess)
+                    || mPinned.test(candidate.mValue)) {
+                continue;
+            }
+            eldest = i;
+        }
+        if (eldest < 0) {
+            Log.w(TAG, "All " + entries.size() + " devices are pinned, not evicting");
+            return;
+        }
+        Log.d(TAG, "Evicting device " + toAddress(entries.keyAt(eldest)));
+        entries.removeAt(eldest);
+    }
+
+    private static String toAddress(long key) {
+        StringBuilder address = new StringBuilder(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            if (shift < 40) {
+                address.append(':');
+            }
+            address.append(String.format("%02X", (key >> shift) & 0xFF));
+        }
+        return address.toString();
+    }
+}
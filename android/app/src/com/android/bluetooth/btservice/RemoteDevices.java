@@ -56,21 +56,21 @@ import com.android.bluetooth.hfp.HeadsetHalConstants;
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 
 /** Remote device manager. This class is currently mostly used for HF and AG remote devices. */
 public class RemoteDevices {
     private static final String TAG = "BluetoothRemoteDevices";
 
-    // Maximum number of device properties to remember
-    private static final int MAX_DEVICE_QUEUE_SIZE = 200;
+    // Maximum number of unbonded and disconnected device properties to remember, if the configured
+    // one is invalid
+    private static final int DEFAULT_MAX_DEVICES = 200;
 
     private BluetoothAdapter mAdapter;
     private AdapterService mAdapterService;
@@ -83,9 +83,10 @@ public class RemoteDevices {
     private static final int MESSAGE_UUID_STATUS_TIMEOUT = 1;
     private static final String LOG_SOURCE_DIS = "DIS";
 
-    private final HashMap<String, DeviceProperties> mDevices;
-    private final HashMap<String, String> mDualDevicesMap;
-    private final ArrayDeque<String> mDeviceQueue;
+    // Keyed by packed address, see DeviceRegistry#toKey. Bonded and connected devices are pinned.
+    private final DeviceRegistry<DeviceProperties> mDevices;
+    // Identity address to main address of dual mode devices, both packed
+    private final ConcurrentHashMap<Long, Long> mDualDevicesMap;
 
     /**
      * Bluetooth HFP v1.8 specifies the Battery Charge indicator of AG can take values from {@code
@@ -161,9 +162,8 @@ public class RemoteDevices {
         mAdapter = ((Context) service).getSystemService(BluetoothManager.class).getAdapter();
         mAdapterService = service;
         mSdpTracker = new ArrayList<>();
-        mDevices = new HashMap<>();
-        mDualDevicesMap = new HashMap<>();
-        mDeviceQueue = new ArrayDeque<>();
+        mDevices = new DeviceRegistry<>(this::getMaxDevices, RemoteDevices::isPinned);
+        mDualDevicesMap = new ConcurrentHashMap<>();
         mHandler = new RemoteDevicesHandler(looper);
         mMainHandler = new Handler(Looper.getMainLooper());
     }
@@ -179,40 +179,63 @@ public class RemoteDevices {
         // Unregister Handler and stop all queued messages.
         mMainHandler.removeCallbacksAndMessages(null);
 
-        synchronized (mDevices) {
-            debugLog("reset(): Broadcasting ACL_DISCONNECTED");
-
-            mDevices.forEach(
-                    (address, deviceProperties) -> {
-                        BluetoothDevice bluetoothDevice = deviceProperties.getDevice();
-
-                        debugLog(
-                                "reset(): address="
-                                        + address
-                                        + ", connected="
-                                        + bluetoothDevice.isConnected());
-
-                        if (bluetoothDevice.isConnected()) {
-                            int transport =
-                                    deviceProperties.getConnectionHandle(
-                                                            BluetoothDevice.TRANSPORT_BREDR)
-                                                    != BluetoothDevice.ERROR
-                                            ? BluetoothDevice.TRANSPORT_BREDR
-                                            : BluetoothDevice.TRANSPORT_LE;
-                            mAdapterService.notifyAclDisconnected(bluetoothDevice, transport);
-                            Intent intent = new Intent(BluetoothDevice.ACTION_ACL_DISCONNECTED);
-                            intent.putExtra(BluetoothDevice.EXTRA_DEVICE, bluetoothDevice);
-                            intent.addFlags(
-                                    Intent.FLAG_RECEIVER_REGISTERED_ONLY_BEFORE_BOOT
-                                            | Intent.FLAG_RECEIVER_INCLUDE_BACKGROUND);
-                            mAdapterService.sendBroadcast(intent, BLUETOOTH_CONNECT);
-                        }
-                    });
-            mDevices.clear();
-        }
-
+        debugLog("reset(): Broadcasting ACL_DISCONNECTED");
+
+        mDevices.forEach(
+                deviceProperties -> {
+                    BluetoothDevice bluetoothDevice = deviceProperties.getDevice();
+
+                    debugLog(
+                            "reset(): address="
+                                    + bluetoothDevice.getAddress()
+                                    + ", connected="
+                                    + bluetoothDevice.isConnected());
+
+                    if (bluetoothDevice.isConnected()) {
+                        int transport =
+                                deviceProperties.getConnectionHandle(
+                                                        BluetoothDevice.TRANSPORT_BREDR)
+                                                != BluetoothDevice.ERROR
+                                        ? BluetoothDevice.TRANSPORT_BREDR
+                                        : BluetoothDevice.TRANSPORT_LE;
+                        mAdapterService.notifyAclDisconnected(bluetoothDevice, transport);
+                        Intent intent = new Intent(BluetoothDevice.ACTION_ACL_DISCONNECTED);
+                        intent.putExtra(BluetoothDevice.EXTRA_DEVICE, bluetoothDevice);
+                        intent.addFlags(
+                                Intent.FLAG_RECEIVER_REGISTERED_ONLY_BEFORE_BOOT
+                                        | Intent.FLAG_RECEIVER_INCLUDE_BACKGROUND);
+                        mAdapterService.sendBroadcast(intent, BLUETOOTH_CONNECT);
+                    }
+                });
+        mDevices.clear();
         mDualDevicesMap.clear();
-        mDeviceQueue.clear();
+    }
+
+    /** Maximum number of unbonded and disconnected devices, as currently configured. */
+    private int getMaxDevices() {
+        int maxDevices = mAdapterService.getRemoteDevicesMaxSize();
+        return maxDevices > 0 ? maxDevices : DEFAULT_MAX_DEVICES;
+    }
+
+    /** Bonded and connected devices must not be forgotten, whatever their last use. */
+    private static boolean isPinned(DeviceProperties deviceProperties) {
+        return deviceProperties.getBondState() != BluetoothDevice.BOND_NONE
+                || deviceProperties.getConnectionHandle(BluetoothDevice.TRANSPORT_BREDR)
+                        != BluetoothDevice.ERROR
+                || deviceProperties.getConnectionHandle(BluetoothDevice.TRANSPORT_LE)
+                        != BluetoothDevice.ERROR;
+    }
+
+    /** Lookup of a packed address, resolving the identity address of dual mode devices. */
+    private DeviceProperties getDeviceProperties(long key) {
+        Long mainKey = mDualDevicesMap.get(key);
+        if (mainKey != null) {
+            DeviceProperties deviceProperties = mDevices.get(mainKey);
+            if (deviceProperties != null) {
+                return deviceProperties;
+            }
+        }
+        return mDevices.get(key);
     }
 
     @Override
@@ -225,14 +248,7 @@ public class RemoteDevices {
             return null;
         }
 
-        synchronized (mDevices) {
-            String address = mDualDevicesMap.get(device.getAddress());
-            // If the device is not in the dual map, use its original address
-            if (address == null || mDevices.get(address) == null) {
-                address = device.getAddress();
-            }
-            return mDevices.get(address);
-        }
+        return getDeviceProperties(DeviceRegistry.toKey(device.getAddress()));
     }
 
     int getBondState(BluetoothDevice device) {
@@ -276,14 +292,7 @@ public class RemoteDevices {
     }
 
     BluetoothDevice getDevice(byte[] address) {
-        String addressString = Utils.getAddressStringFromByte(address);
-        String deviceAddress = mDualDevicesMap.get(addressString);
-        // If the device is not in the dual map, use its original address
-        if (deviceAddress == null || mDevices.get(deviceAddress) == null) {
-            deviceAddress = addressString;
-        }
-
-        DeviceProperties prop = mDevices.get(deviceAddress);
+        DeviceProperties prop = getDeviceProperties(DeviceRegistry.toKey(address));
         if (prop != null) {
             return prop.getDevice();
         }
@@ -292,28 +301,12 @@ public class RemoteDevices {
 
     @VisibleForTesting
     DeviceProperties addDeviceProperties(byte[] address) {
-        synchronized (mDevices) {
-            DeviceProperties prop = new DeviceProperties();
-            prop.setDevice(mAdapter.getRemoteDevice(Utils.getAddressStringFromByte(address)));
-            prop.setAddress(address);
-            String key = Utils.getAddressStringFromByte(address);
-            DeviceProperties pv = mDevices.put(key, prop);
-
-            if (pv == null) {
-                mDeviceQueue.offer(key);
-                if (mDeviceQueue.size() > MAX_DEVICE_QUEUE_SIZE) {
-                    String deleteKey = mDeviceQueue.poll();
-                    for (BluetoothDevice device : mAdapterService.getBondedDevices()) {
-                        if (device.getAddress().equals(deleteKey)) {
-                            return prop;
-                        }
-                    }
-                    debugLog("Removing device " + deleteKey + " from property map");
-                    mDevices.remove(deleteKey);
-                }
-            }
-            return prop;
-        }
+        DeviceProperties prop = new DeviceProperties();
+        prop.setDevice(mAdapter.getRemoteDevice(Utils.getAddressStringFromByte(address)));
+        prop.setAddress(address);
+        // Past the capacity, the least recently used device that isn't pinned is forgotten
+        mDevices.put(DeviceRegistry.toKey(address), prop);
+        return prop;
     }
 
     class DeviceProperties {
@@ -1140,7 +1133,7 @@ public class RemoteDevices {
         deviceProperties.setDeviceType(BluetoothDevice.DEVICE_TYPE_DUAL);
         deviceProperties.setIdentityAddress(Utils.getAddressStringFromByte(secondaryAddress));
         mDualDevicesMap.put(
-                deviceProperties.getIdentityAddress(), Utils.getAddressStringFromByte(mainAddress));
+                DeviceRegistry.toKey(secondaryAddress), DeviceRegistry.toKey(mainAddress));
     }
 
     /**
@@ -1334,11 +1327,12 @@ public class RemoteDevices {
 
     private void removeAddressMapping(String address) {
         if (Flags.temporaryPairingDeviceProperties()) {
-            DeviceProperties deviceProperties = mDevices.get(address);
+            long key = DeviceRegistry.toKey(address);
+            DeviceProperties deviceProperties = mDevices.get(key);
             if (deviceProperties != null) {
-                String pseudoAddress = mDualDevicesMap.get(address);
-                if (pseudoAddress != null) {
-                    deviceProperties = mDevices.get(pseudoAddress);
+                Long pseudoKey = mDualDevicesMap.get(key);
+                if (pseudoKey != null) {
+                    deviceProperties = mDevices.get(pseudoKey);
                 }
             }
 
@@ -1355,14 +1349,12 @@ public class RemoteDevices {
             }
         }
 
-        synchronized (mDevices) {
-            mDevices.remove(address);
-            mDeviceQueue.remove(address); // Remove from LRU cache
+        long key = DeviceRegistry.toKey(address);
+        mDevices.remove(key);
 
-            // Remove from dual mode device mappings
-            mDualDevicesMap.values().remove(address);
-            mDualDevicesMap.remove(address);
-        }
+        // Remove from dual mode device mappings
+        mDualDevicesMap.values().remove(key);
+        mDualDevicesMap.remove(key);
     }
 
     void onBondStateChange(BluetoothDevice device, int newState) {
@@ -52,6 +52,7 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -75,6 +76,26 @@ public class DatabaseManager {
 
     @VisibleForTesting final Map<String, Metadata> mMetadataCache = new HashMap<>();
     private final Semaphore mSemaphore = new Semaphore(1);
+
+    // Metadata changed since the last write, by address. Rows are written in a single
+    // transaction, so that a burst of changes only costs one database write per device.
+    private final Object mPendingWritesLock = new Object();
+
+    @GuardedBy("mPendingWritesLock")
+    private final Map<String, Metadata> mPendingWrites = new LinkedHashMap<>();
+
+    @GuardedBy("mPendingWritesLock")
+    private boolean mWriteScheduled = false;
+
+    @GuardedBy("mPendingWritesLock")
+    private long mCoalescedRows = 0;
+
+    @GuardedBy("mPendingWritesLock")
+    private long mWrittenRows = 0;
+
+    @GuardedBy("mPendingWritesLock")
+    private long mWriteTransactions = 0;
+
     private static final int METADATA_CHANGED_LOG_MAX_SIZE = 20;
     private final EvictingQueue<String> mMetadataChangedLog;
 
@@ -138,10 +159,7 @@ public class DatabaseManager {
                     }
                 case MSG_UPDATE_DATABASE:
                     {
-                        Metadata data = (Metadata) msg.obj;
-                        synchronized (mDatabaseLock) {
-                            mDatabase.insert(data);
-                        }
+                        flushPendingWrites();
                         break;
                     }
                 case MSG_DELETE_DATABASE:
@@ -1141,6 +1159,10 @@ public class DatabaseManager {
     /** Clear all persistence data in database */
     public void factoryReset() {
         Log.w(TAG, "factoryReset");
+        // Pending rows would only be deleted again, drop them now.
+        synchronized (mPendingWritesLock) {
+            mPendingWrites.clear();
+        }
         Message message = mHandler.obtainMessage(MSG_CLEAR_DATABASE);
         mHandler.sendMessage(message);
     }
@@ -1155,6 +1177,8 @@ public class DatabaseManager {
         }
         removeUnusedMetadata();
         mAdapterService.unregisterReceiver(mReceiver);
+        // Messages still queued are discarded when the thread quits, write pending rows now.
+        flushPendingWrites();
         if (mHandlerThread != null) {
             mHandlerThread.quit();
             mHandlerThread = null;
@@ -1436,9 +1460,35 @@ public class DatabaseManager {
             return;
         }
         Log.d(TAG, "updateDatabase " + data.getAnonymizedAddress());
+        synchronized (mPendingWritesLock) {
+            if (mPendingWrites.put(data.getAddress(), data) != null) {
+                mCoalescedRows++;
+            }
+            if (mWriteScheduled) {
+                return;
+            }
+            mWriteScheduled = true;
+        }
         Message message = mHandler.obtainMessage(MSG_UPDATE_DATABASE);
-        message.obj = data;
-        mHandler.sendMessage(message);
+        mHandler.sendMessageDelayed(message, mAdapterService.getMetadataWriteDelayMillis());
+    }
+
+    /** Writes all pending metadata rows in a single transaction. */
+    private void flushPendingWrites() {
+        synchronized (mDatabaseLock) {
+            Metadata[] rows;
+            synchronized (mPendingWritesLock) {
+                mWriteScheduled = false;
+                if (mPendingWrites.isEmpty()) {
+                    return;
+                }
+                rows = mPendingWrites.values().toArray(new Metadata[0]);
+                mPendingWrites.clear();
+                mWrittenRows += rows.length;
+                mWriteTransactions++;
+            }
+            mDatabase.insert(rows);
+        }
     }
 
     @VisibleForTesting
@@ -1449,6 +1499,9 @@ public class DatabaseManager {
             return;
         }
         logMetadataChange(data, "Metadata deleted");
+        synchronized (mPendingWritesLock) {
+            mPendingWrites.remove(address);
+        }
         Message message = mHandler.obtainMessage(MSG_DELETE_DATABASE);
         message.obj = data.getAddress();
         mHandler.sendMessage(message);
@@ -1513,6 +1566,17 @@ public class DatabaseManager {
         for (String log : mMetadataChangedLog) {
             writer.println("    " + log);
         }
+        synchronized (mPendingWritesLock) {
+            writer.println(
+                    "  Metadata Writes: pending="
+                            + mPendingWrites.size()
+                            + ", coalesced="
+                            + mCoalescedRows
+                            + ", written="
+                            + mWrittenRows
+                            + ", transactions="
+                            + mWriteTransactions);
+        }
         writer.println("\nMetadata:");
         for (Map.Entry<String, Metadata> entry : mMetadataCache.entrySet()) {
             if (entry.getKey().equals(LOCAL_STORAGE)) {
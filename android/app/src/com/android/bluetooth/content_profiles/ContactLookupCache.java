@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.content_profiles;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.bluetooth.Utils;
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Caches the contacts looked up by phone number by the content profiles (MAP and PBAP), so that
+ * a listing only queries the contacts provider once per distinct number.
+ *
+ * <p>Lookups are cached per {@link ContentResolver}, as the resolvers of different users see
+ * different contacts.
+ *
+ * <p>Lookups are only cached while a profile has registered the cache. The cache then observes
+ * the contacts provider and drops all entries on any change. Work profile contacts don't notify
+ * this observer, so entries also expire after {@link #MAX_AGE_MILLIS}.
+ */
+public class ContactLookupCache {
+    private static final String TAG = ContactLookupCache.class.getSimpleName();
+
+    @VisibleForTesting static final int MAX_ENTRIES = 256;
+    @VisibleForTesting static final long MAX_AGE_MILLIS = 60_000;
+
+    // Stands for a null lookup result, as LruCache doesn't hold null values.
+    private static final Object NO_VALUE = new Object();
+
+    private static final Object INSTANCE_LOCK = new Object();
+    private static ContactLookupCache sInstance;
+
+    private static class Key {
+        // ContentResolver doesn't override equals(), resolvers are compared by identity.
+        final ContentResolver mResolver;
+        final String mKind;
+        final String mNumber;
+
+        Key(ContentResolver resolver, String kind, String number) {
+            mResolver = resolver;
+            mKind = kind;
+            mNumber = number;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mResolver == other.mResolver
+                    && mKind.equals(other.mKind)
+                    && mNumber.equals(other.mNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(mResolver), mKind, mNumber);
+        }
+    }
+
+    private static class Entry {
+        final Object mValue;
+        final long mTimeMillis;
+
+        Entry(Object value, long timeMillis) {
+            mValue = value;
+            mTimeMillis = timeMillis;
+        }
+    }
+
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private final LruCache<Key, Entry> mEntries = new LruCache<>(MAX_ENTRIES);
+
+    @GuardedBy("mLock")
+    private ContentResolver mResolver;
+
+    @GuardedBy("mLock")
+    private int mRegistrations;
+
+    // Incremented on every invalidation, so that lookups racing it are not cached.
+    @GuardedBy("mLock")
+    private long mGeneration;
+
+    @GuardedBy("mLock")
+    private long mHits;
+
+    @GuardedBy("mLock")
+    private long mMisses;
+
+    private final ContentObserver mObserver =
+            new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    invalidate();
+                }
+            };
+
+    @VisibleForTesting
+    ContactLookupCache() {}
+
+    /** Returns the cache shared by the content profiles. */
+    public static ContactLookupCache getInstance() {
+        synchronized (INSTANCE_LOCK) {
+            if (sInstance == null) {
+                sInstance = new ContactLookupCache();
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * Allows unit tests to substitute the shared cache, or to reset it with null so that no
+     * lookup is cached across tests.
+     *
+     * @param cache a test instance, or null to create a new one on the next use
+     */
+    @VisibleForTesting
+    public static void setInstanceForTesting(ContactLookupCache cache) {
+        Utils.enforceInstrumentationTestMode();
+        synchronized (INSTANCE_LOCK) {
+            sInstance = cache;
+        }
+    }
+
+    /**
+     * Enables caching until a matching {@link #unregister} call. Each profile registers the cache
+     * once while it is started.
+     */
+    public void register(ContentResolver resolver) {
+        synchronized (mLock) {
+            if (mRegistrations++ > 0) {
+                return;
+            }
+            mResolver = resolver;
+            mEntries.evictAll();
+            mGeneration++;
+            try {
+                resolver.registerContentObserver(ContactsContract.AUTHORITY_URI, true, mObserver);
+            } catch (SecurityException e) {
+                // Lookups are then never cached.
+                Log.e(TAG, "Unable to observe contacts: " + e);
+                mResolver = null;
+            }
+        }
+    }
+
+    /** Undoes a {@link #register} call, and stops caching once no profile uses the cache. */
+    public void unregister() {
+        synchronized (mLock) {
+            if (mRegistrations == 0 || --mRegistrations > 0) {
+                return;
+            }
+            if (mResolver != null) {
+                mResolver.unregisterContentObserver(mObserver);
+                mResolver = null;
+            }
+            mEntries.evictAll();
+            mGeneration++;
+        }
+    }
+
+    /** Drops all cached lookups. */
+    public void invalidate() {
+        synchronized (mLock) {
+            mEntries.evictAll();
+            mGeneration++;
+        }
+    }
+
+    /**
+     * Returns the result of a contact lookup, running it only if it isn't cached.
+     *
+     * @param resolver resolver the lookup queries, which determines the user of the contacts
+     * @param kind identifies the lookup, as different lookups of a same number may be cached
+     * @param number phone number to look up
+     * @param lookup queries the contacts provider, may return null
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(
+            ContentResolver resolver, String kind, String number, Function<String, V> lookup) {
+        if (TextUtils.isEmpty(number)) {
+            return lookup.apply(number);
+        }
+        Key key = new Key(resolver, kind, number);
+        long generation = -1;
+        synchronized (mLock) {
+            if (mResolver != null) {
+                Entry entry = mEntries.get(key);
+                if (entry != null
+                        && SystemClock.elapsedRealtime() - entry.mTimeMillis < MAX_AGE_MILLIS) {
+                    mHits++;
+                    return entry.mValue == NO_VALUE ? null : (V) entry.mValue;
+                }
+                mMisses++;
+                generation = mGeneration;
+            }
+        }
+        // The contacts provider is queried without holding the lock.
+        V value = lookup.apply(number);
+        synchronized (mLock) {
+            if (mResolver != null && generation == mGeneration) {
+                Object cached = value == null ? NO_VALUE : value;
+                mEntries.put(key, new Entry(cached, SystemClock.elapsedRealtime()));
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return "ContactLookupCache{cached="
+                    + mEntries.size()
+                    + ", hits="
+                    + mHits
+                    + ", misses="
+                    + mMisses
+                    + ", enabled="
+                    + (mResolver != null)
+                    + "}";
+        }
+    }
+}
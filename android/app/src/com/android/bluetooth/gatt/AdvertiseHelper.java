@@ -24,6 +24,7 @@ import android.util.Log;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 class AdvertiseHelper {
 
@@ -46,6 +47,17 @@ class AdvertiseHelper {
     private static final int MANUFACTURER_SPECIFIC_DATA = 0XFF;
 
     public static byte[] advertiseDataToBytes(AdvertiseData data, String name) {
+        return advertiseDataToBytes(data, name, new ByteArrayOutputStream());
+    }
+
+    /**
+     * Encodes advertising data, using a buffer that is reset first so that it can be reused from
+     * one encoding to the next.
+     *
+     * @param name the device name, only used if the data includes it
+     */
+    static byte[] advertiseDataToBytes(
+            AdvertiseData data, String name, ByteArrayOutputStream ret) {
 
         if (data == null) {
             return new byte[0];
@@ -54,7 +66,7 @@ class AdvertiseHelper {
         // Flags are added by lower layers of the stack, only if needed;
         // no need to add them here.
 
-        ByteArrayOutputStream ret = new ByteArrayOutputStream();
+        ret.reset();
 
         if (data.getIncludeDeviceName()) {
             byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
@@ -81,18 +93,16 @@ class AdvertiseHelper {
 
             byte[] manufacturerData = data.getManufacturerSpecificData().get(manufacturerId);
             int dataLen = 2 + (manufacturerData == null ? 0 : manufacturerData.length);
-            byte[] concated = new byte[dataLen];
+
+            check_length(MANUFACTURER_SPECIFIC_DATA, dataLen + 1);
+            ret.write(dataLen + 1);
+            ret.write(MANUFACTURER_SPECIFIC_DATA);
             // First two bytes are manufacturer id in little-endian.
-            concated[0] = (byte) (manufacturerId & 0xFF);
-            concated[1] = (byte) ((manufacturerId >> 8) & 0xFF);
+            ret.write(manufacturerId & 0xFF);
+            ret.write((manufacturerId >> 8) & 0xFF);
             if (manufacturerData != null) {
-                System.arraycopy(manufacturerData, 0, concated, 2, manufacturerData.length);
+                ret.write(manufacturerData, 0, manufacturerData.length);
             }
-
-            check_length(MANUFACTURER_SPECIFIC_DATA, concated.length + 1);
-            ret.write(concated.length + 1);
-            ret.write(MANUFACTURER_SPECIFIC_DATA);
-            ret.write(concated, 0, concated.length);
         }
 
         if (data.getIncludeTxPowerLevel()) {
@@ -102,42 +112,22 @@ class AdvertiseHelper {
         }
 
         if (data.getServiceUuids() != null) {
-            ByteArrayOutputStream serviceUuids16 = new ByteArrayOutputStream();
-            ByteArrayOutputStream serviceUuids32 = new ByteArrayOutputStream();
-            ByteArrayOutputStream serviceUuids128 = new ByteArrayOutputStream();
-
-            for (ParcelUuid parcelUuid : data.getServiceUuids()) {
-                byte[] uuid = BluetoothUuid.uuidToBytes(parcelUuid);
-
-                if (uuid.length == BluetoothUuid.UUID_BYTES_16_BIT) {
-                    serviceUuids16.write(uuid, 0, uuid.length);
-                } else if (uuid.length == BluetoothUuid.UUID_BYTES_32_BIT) {
-                    serviceUuids32.write(uuid, 0, uuid.length);
-                } else /*if (uuid.length == BluetoothUuid.UUID_BYTES_128_BIT)*/ {
-                    serviceUuids128.write(uuid, 0, uuid.length);
-                }
-            }
-
-            if (serviceUuids16.size() != 0) {
-                check_length(COMPLETE_LIST_16_BIT_SERVICE_UUIDS, serviceUuids16.size() + 1);
-                ret.write(serviceUuids16.size() + 1);
-                ret.write(COMPLETE_LIST_16_BIT_SERVICE_UUIDS);
-                ret.write(serviceUuids16.toByteArray(), 0, serviceUuids16.size());
-            }
-
-            if (serviceUuids32.size() != 0) {
-                check_length(COMPLETE_LIST_32_BIT_SERVICE_UUIDS, serviceUuids32.size() + 1);
-                ret.write(serviceUuids32.size() + 1);
-                ret.write(COMPLETE_LIST_32_BIT_SERVICE_UUIDS);
-                ret.write(serviceUuids32.toByteArray(), 0, serviceUuids32.size());
-            }
-
-            if (serviceUuids128.size() != 0) {
-                check_length(COMPLETE_LIST_128_BIT_SERVICE_UUIDS, serviceUuids32.size() + 1);
-                ret.write(serviceUuids128.size() + 1);
-                ret.write(COMPLETE_LIST_128_BIT_SERVICE_UUIDS);
-                ret.write(serviceUuids128.toByteArray(), 0, serviceUuids128.size());
-            }
+            byte[][] uuids = uuidsToBytes(data.getServiceUuids());
+            writeUuids(
+                    ret,
+                    uuids,
+                    BluetoothUuid.UUID_BYTES_16_BIT,
+                    COMPLETE_LIST_16_BIT_SERVICE_UUIDS);
+            writeUuids(
+                    ret,
+                    uuids,
+                    BluetoothUuid.UUID_BYTES_32_BIT,
+                    COMPLETE_LIST_32_BIT_SERVICE_UUIDS);
+            writeUuids(
+                    ret,
+                    uuids,
+                    BluetoothUuid.UUID_BYTES_128_BIT,
+                    COMPLETE_LIST_128_BIT_SERVICE_UUIDS);
         }
 
         if (!data.getServiceData().isEmpty()) {
@@ -145,73 +135,43 @@ class AdvertiseHelper {
                 byte[] serviceData = data.getServiceData().get(parcelUuid);
 
                 byte[] uuid = BluetoothUuid.uuidToBytes(parcelUuid);
-                int uuidLen = uuid.length;
-
-                int dataLen = uuidLen + (serviceData == null ? 0 : serviceData.length);
-                byte[] concated = new byte[dataLen];
-
-                System.arraycopy(uuid, 0, concated, 0, uuidLen);
-
-                if (serviceData != null) {
-                    System.arraycopy(serviceData, 0, concated, uuidLen, serviceData.length);
-                }
+                int dataLen = uuid.length + (serviceData == null ? 0 : serviceData.length);
 
+                int type;
                 if (uuid.length == BluetoothUuid.UUID_BYTES_16_BIT) {
-                    check_length(SERVICE_DATA_16_BIT_UUID, concated.length + 1);
-                    ret.write(concated.length + 1);
-                    ret.write(SERVICE_DATA_16_BIT_UUID);
-                    ret.write(concated, 0, concated.length);
+                    type = SERVICE_DATA_16_BIT_UUID;
                 } else if (uuid.length == BluetoothUuid.UUID_BYTES_32_BIT) {
-                    check_length(SERVICE_DATA_32_BIT_UUID, concated.length + 1);
-                    ret.write(concated.length + 1);
-                    ret.write(SERVICE_DATA_32_BIT_UUID);
-                    ret.write(concated, 0, concated.length);
+                    type = SERVICE_DATA_32_BIT_UUID;
                 } else /*if (uuid.length == BluetoothUuid.UUID_BYTES_128_BIT)*/ {
-                    check_length(SERVICE_DATA_128_BIT_UUID, concated.length + 1);
-                    ret.write(concated.length + 1);
-                    ret.write(SERVICE_DATA_128_BIT_UUID);
-                    ret.write(concated, 0, concated.length);
+                    type = SERVICE_DATA_128_BIT_UUID;
+                }
+                check_length(type, dataLen + 1);
+                ret.write(dataLen + 1);
+                ret.write(type);
+                ret.write(uuid, 0, uuid.length);
+                if (serviceData != null) {
+                    ret.write(serviceData, 0, serviceData.length);
                 }
             }
         }
 
         if (data.getServiceSolicitationUuids() != null) {
-            ByteArrayOutputStream serviceUuids16 = new ByteArrayOutputStream();
-            ByteArrayOutputStream serviceUuids32 = new ByteArrayOutputStream();
-            ByteArrayOutputStream serviceUuids128 = new ByteArrayOutputStream();
-
-            for (ParcelUuid parcelUuid : data.getServiceSolicitationUuids()) {
-                byte[] uuid = BluetoothUuid.uuidToBytes(parcelUuid);
-
-                if (uuid.length == BluetoothUuid.UUID_BYTES_16_BIT) {
-                    serviceUuids16.write(uuid, 0, uuid.length);
-                } else if (uuid.length == BluetoothUuid.UUID_BYTES_32_BIT) {
-                    serviceUuids32.write(uuid, 0, uuid.length);
-                } else /*if (uuid.length == BluetoothUuid.UUID_BYTES_128_BIT)*/ {
-                    serviceUuids128.write(uuid, 0, uuid.length);
-                }
-            }
-
-            if (serviceUuids16.size() != 0) {
-                check_length(LIST_16_BIT_SERVICE_SOLICITATION_UUIDS, serviceUuids16.size() + 1);
-                ret.write(serviceUuids16.size() + 1);
-                ret.write(LIST_16_BIT_SERVICE_SOLICITATION_UUIDS);
-                ret.write(serviceUuids16.toByteArray(), 0, serviceUuids16.size());
-            }
-
-            if (serviceUuids32.size() != 0) {
-                check_length(LIST_32_BIT_SERVICE_SOLICITATION_UUIDS, serviceUuids32.size() + 1);
-                ret.write(serviceUuids32.size() + 1);
-                ret.write(LIST_32_BIT_SERVICE_SOLICITATION_UUIDS);
-                ret.write(serviceUuids32.toByteArray(), 0, serviceUuids32.size());
-            }
-
-            if (serviceUuids128.size() != 0) {
-                check_length(LIST_128_BIT_SERVICE_SOLICITATION_UUIDS, serviceUuids128.size() + 1);
-                ret.write(serviceUuids128.size() + 1);
-                ret.write(LIST_128_BIT_SERVICE_SOLICITATION_UUIDS);
-                ret.write(serviceUuids128.toByteArray(), 0, serviceUuids128.size());
-            }
+            byte[][] uuids = uuidsToBytes(data.getServiceSolicitationUuids());
+            writeUuids(
+                    ret,
+                    uuids,
+                    BluetoothUuid.UUID_BYTES_16_BIT,
+                    LIST_16_BIT_SERVICE_SOLICITATION_UUIDS);
+            writeUuids(
+                    ret,
+                    uuids,
+                    BluetoothUuid.UUID_BYTES_32_BIT,
+                    LIST_32_BIT_SERVICE_SOLICITATION_UUIDS);
+            writeUuids(
+                    ret,
+                    uuids,
+                    BluetoothUuid.UUID_BYTES_128_BIT,
+                    LIST_128_BIT_SERVICE_SOLICITATION_UUIDS);
         }
 
         for (TransportDiscoveryData transportDiscoveryData : data.getTransportDiscoveryData()) {
@@ -221,6 +181,35 @@ class AdvertiseHelper {
         return ret.toByteArray();
     }
 
+    private static byte[][] uuidsToBytes(List<ParcelUuid> parcelUuids) {
+        byte[][] uuids = new byte[parcelUuids.size()][];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = BluetoothUuid.uuidToBytes(parcelUuids.get(i));
+        }
+        return uuids;
+    }
+
+    /** Writes the structure listing the UUIDs of a size in bytes, if there are any. */
+    private static void writeUuids(ByteArrayOutputStream ret, byte[][] uuids, int size, int type) {
+        int length = 0;
+        for (byte[] uuid : uuids) {
+            if (uuid.length == size) {
+                length += uuid.length;
+            }
+        }
+        if (length == 0) {
+            return;
+        }
+        check_length(type, length + 1);
+        ret.write(length + 1);
+        ret.write(type);
+        for (byte[] uuid : uuids) {
+            if (uuid.length == size) {
+                ret.write(uuid, 0, uuid.length);
+            }
+        }
+    }
+
     static void check_length(int type, int length) {
         if (length > 255) {
             Log.w(
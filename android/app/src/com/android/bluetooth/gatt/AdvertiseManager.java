@@ -33,6 +33,8 @@ import android.util.Log;
 import com.android.bluetooth.btservice.AdapterService;
 import com.android.internal.annotations.VisibleForTesting;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -51,6 +53,9 @@ public class AdvertiseManager {
     Map<IBinder, AdvertiserInfo> mAdvertisers = Collections.synchronizedMap(new HashMap<>());
     static int sTempRegistrationId = -1;
 
+    // Reused by every encoding of advertising data, while holding its lock
+    private final ByteArrayOutputStream mEncodeBuffer = new ByteArrayOutputStream();
+
     AdvertiseManager(GattService service) {
         this(service, AdvertiseManagerNativeInterface.getInstance(), new AdvertiserMap());
     }
@@ -100,11 +105,23 @@ public class AdvertiseManager {
     }
 
     static class AdvertiserInfo {
+        static final int ADVERTISING_DATA = 0;
+        static final int SCAN_RESPONSE_DATA = 1;
+        static final int PERIODIC_DATA = 2;
+        static final int DATA_TYPES = 3;
+
         /* When id is negative, the registration is ongoing. When the registration finishes, id
          * becomes equal to advertiser_id */
         public Integer id;
         public AdvertisingSetDeathRecipient deathRecipient;
         public IAdvertisingSetCallback callback;
+        /* Encoded data the stack confirmed having, by type of data. Null when unknown, for
+         * instance after the stack failed to set it. Guarded by the AdvertiserInfo itself. */
+        private final byte[][] mConfirmedData;
+        /* Encoded data last given to the stack, and the number of updates the stack hasn't
+         * answered yet, by type of data. Guarded by the AdvertiserInfo itself. */
+        private final byte[][] mPendingData;
+        private final int[] mPendingCount;
 
         AdvertiserInfo(
                 Integer id,
@@ -113,6 +130,69 @@ public class AdvertiseManager {
             this.id = id;
             this.deathRecipient = deathRecipient;
             this.callback = callback;
+            this.mConfirmedData = new byte[DATA_TYPES][];
+            this.mPendingData = new byte[DATA_TYPES][];
+            this.mPendingCount = new int[DATA_TYPES];
+        }
+
+        /** Takes over the data of an advertiser that finished its registration. */
+        AdvertiserInfo(
+                Integer id,
+                AdvertisingSetDeathRecipient deathRecipient,
+                IAdvertisingSetCallback callback,
+                AdvertiserInfo registering) {
+            this.id = id;
+            this.deathRecipient = deathRecipient;
+            this.callback = callback;
+            synchronized (registering) {
+                this.mConfirmedData = registering.mConfirmedData.clone();
+                this.mPendingData = registering.mPendingData.clone();
+                this.mPendingCount = registering.mPendingCount.clone();
+            }
+        }
+
+        /**
+         * Records data about to be given to the stack.
+         *
+         * @return false if the stack confirmed having the same data and no other update is in
+         *     progress, in which case it doesn't need to be set again
+         */
+        synchronized boolean updateData(int type, byte[] data) {
+            if (mPendingCount[type] == 0 && Arrays.equals(mConfirmedData[type], data)) {
+                return false;
+            }
+            mPendingData[type] = data;
+            mPendingCount[type]++;
+            return true;
+        }
+
+        /** Records the answer of the stack to the oldest update of a type of data. */
+        synchronized void onDataSet(int type, boolean success) {
+            if (mPendingCount[type] == 0) {
+                // Answer to an update that was skipped
+                return;
+            }
+            mPendingCount[type]--;
+            if (!success) {
+                mConfirmedData[type] = null;
+            } else if (mPendingCount[type] == 0) {
+                // The stack answers in order, so the last update given to it is the one it has
+                mConfirmedData[type] = mPendingData[type];
+            }
+            if (mPendingCount[type] == 0) {
+                mPendingData[type] = null;
+            }
+        }
+    }
+
+    /** Encodes advertising data, reading the device name only if the data includes it. */
+    private byte[] encode(AdvertiseData data) {
+        String deviceName =
+                data != null && data.getIncludeDeviceName()
+                        ? AdapterService.getAdapterService().getName()
+                        : null;
+        synchronized (mEncodeBuffer) {
+            return AdvertiseHelper.advertiseDataToBytes(data, deviceName, mEncodeBuffer);
         }
     }
 
@@ -169,8 +249,14 @@ public class AdvertiseManager {
 
         IAdvertisingSetCallback callback = entry.getValue().callback;
         if (status == 0) {
+            AdvertiserInfo registering = entry.getValue();
+            // The stack was given the data of the set along with the request to start it
+            for (int type = 0; type < AdvertiserInfo.DATA_TYPES; type++) {
+                registering.onDataSet(type, true);
+            }
             entry.setValue(
-                    new AdvertiserInfo(advertiserId, entry.getValue().deathRecipient, callback));
+                    new AdvertiserInfo(
+                            advertiserId, registering.deathRecipient, callback, registering));
 
             mAdvertiserMap.setAdvertiserIdByRegId(regId, advertiserId);
         } else {
@@ -262,16 +348,17 @@ public class AdvertiseManager {
             throw new IllegalArgumentException("Can't link to advertiser's death");
         }
 
-        String deviceName = AdapterService.getAdapterService().getName();
         try {
-            byte[] advDataBytes = AdvertiseHelper.advertiseDataToBytes(advertiseData, deviceName);
-            byte[] scanResponseBytes =
-                    AdvertiseHelper.advertiseDataToBytes(scanResponse, deviceName);
-            byte[] periodicDataBytes =
-                    AdvertiseHelper.advertiseDataToBytes(periodicData, deviceName);
+            byte[] advDataBytes = encode(advertiseData);
+            byte[] scanResponseBytes = encode(scanResponse);
+            byte[] periodicDataBytes = encode(periodicData);
 
             int cbId = --sTempRegistrationId;
-            mAdvertisers.put(binder, new AdvertiserInfo(cbId, deathRecipient, callback));
+            AdvertiserInfo info = new AdvertiserInfo(cbId, deathRecipient, callback);
+            info.updateData(AdvertiserInfo.ADVERTISING_DATA, advDataBytes);
+            info.updateData(AdvertiserInfo.SCAN_RESPONSE_DATA, scanResponseBytes);
+            info.updateData(AdvertiserInfo.PERIODIC_DATA, periodicDataBytes);
+            mAdvertisers.put(binder, info);
 
             Log.d(TAG, "startAdvertisingSet() - reg_id=" + cbId + ", callback: " + binder);
 
@@ -379,10 +466,14 @@ public class AdvertiseManager {
             Log.w(TAG, "setAdvertisingData() - bad advertiserId " + advertiserId);
             return;
         }
-        String deviceName = AdapterService.getAdapterService().getName();
         try {
-            mNativeInterface.setAdvertisingData(
-                    advertiserId, AdvertiseHelper.advertiseDataToBytes(data, deviceName));
+            byte[] bytes = encode(data);
+            if (entry.getValue().updateData(AdvertiserInfo.ADVERTISING_DATA, bytes)) {
+                mNativeInterface.setAdvertisingData(advertiserId, bytes);
+            } else {
+                Log.d(TAG, "setAdvertisingData() - unchanged data, advertiserId=" + advertiserId);
+                notifyUnchangedData(advertiserId, AdvertiserInfo.ADVERTISING_DATA);
+            }
 
             mAdvertiserMap.setAdvertisingData(advertiserId, data);
         } catch (IllegalArgumentException e) {
@@ -401,10 +492,14 @@ public class AdvertiseManager {
             Log.w(TAG, "setScanResponseData() - bad advertiserId " + advertiserId);
             return;
         }
-        String deviceName = AdapterService.getAdapterService().getName();
         try {
-            mNativeInterface.setScanResponseData(
-                    advertiserId, AdvertiseHelper.advertiseDataToBytes(data, deviceName));
+            byte[] bytes = encode(data);
+            if (entry.getValue().updateData(AdvertiserInfo.SCAN_RESPONSE_DATA, bytes)) {
+                mNativeInterface.setScanResponseData(advertiserId, bytes);
+            } else {
+                Log.d(TAG, "setScanResponseData() - unchanged data, advertiserId=" + advertiserId);
+                notifyUnchangedData(advertiserId, AdvertiserInfo.SCAN_RESPONSE_DATA);
+            }
 
             mAdvertiserMap.setScanResponseData(advertiserId, data);
         } catch (IllegalArgumentException e) {
@@ -417,6 +512,26 @@ public class AdvertiseManager {
         }
     }
 
+    /** Completes the update of data that the stack already has, without involving it. */
+    private void notifyUnchangedData(int advertiserId, int type) {
+        try {
+            switch (type) {
+                case AdvertiserInfo.ADVERTISING_DATA:
+                    onAdvertisingDataSet(advertiserId, AdvertiseCallback.ADVERTISE_SUCCESS);
+                    break;
+                case AdvertiserInfo.SCAN_RESPONSE_DATA:
+                    onScanResponseDataSet(advertiserId, AdvertiseCallback.ADVERTISE_SUCCESS);
+                    break;
+                default:
+                    onPeriodicAdvertisingDataSet(
+                            advertiserId, AdvertiseCallback.ADVERTISE_SUCCESS);
+                    break;
+            }
+        } catch (Exception exception) {
+            Log.e(TAG, "Failed to callback:" + Log.getStackTraceString(exception));
+        }
+    }
+
     void setAdvertisingParameters(int advertiserId, AdvertisingSetParameters parameters) {
         Map.Entry<IBinder, AdvertiserInfo> entry = findAdvertiser(advertiserId);
         if (entry == null) {
@@ -446,10 +561,17 @@ public class AdvertiseManager {
             Log.w(TAG, "setPeriodicAdvertisingData() - bad advertiserId " + advertiserId);
             return;
         }
-        String deviceName = AdapterService.getAdapterService().getName();
         try {
-            mNativeInterface.setPeriodicAdvertisingData(
-                    advertiserId, AdvertiseHelper.advertiseDataToBytes(data, deviceName));
+            byte[] bytes = encode(data);
+            if (entry.getValue().updateData(AdvertiserInfo.PERIODIC_DATA, bytes)) {
+                mNativeInterface.setPeriodicAdvertisingData(advertiserId, bytes);
+            } else {
+                Log.d(
+                        TAG,
+                        "setPeriodicAdvertisingData() - unchanged data, advertiserId="
+                                + advertiserId);
+                notifyUnchangedData(advertiserId, AdvertiserInfo.PERIODIC_DATA);
+            }
 
             mAdvertiserMap.setPeriodicAdvertisingData(advertiserId, data);
         } catch (IllegalArgumentException e) {
@@ -479,6 +601,8 @@ public class AdvertiseManager {
             Log.i(TAG, "onAdvertisingDataSet() - bad advertiserId " + advertiserId);
             return;
         }
+        boolean success = status == AdvertiseCallback.ADVERTISE_SUCCESS;
+        entry.getValue().onDataSet(AdvertiserInfo.ADVERTISING_DATA, success);
 
         IAdvertisingSetCallback callback = entry.getValue().callback;
         callback.onAdvertisingDataSet(advertiserId, status);
@@ -492,6 +616,8 @@ public class AdvertiseManager {
             Log.i(TAG, "onScanResponseDataSet() - bad advertiserId " + advertiserId);
             return;
         }
+        boolean success = status == AdvertiseCallback.ADVERTISE_SUCCESS;
+        entry.getValue().onDataSet(AdvertiserInfo.SCAN_RESPONSE_DATA, success);
 
         IAdvertisingSetCallback callback = entry.getValue().callback;
         callback.onScanResponseDataSet(advertiserId, status);
@@ -551,6 +677,8 @@ public class AdvertiseManager {
             Log.i(TAG, "onPeriodicAdvertisingDataSet() - bad advertiserId " + advertiserId);
             return;
         }
+        boolean success = status == AdvertiseCallback.ADVERTISE_SUCCESS;
+        entry.getValue().onDataSet(AdvertiserInfo.PERIODIC_DATA, success);
 
         IAdvertisingSetCallback callback = entry.getValue().callback;
         callback.onPeriodicAdvertisingDataSet(advertiserId, status);
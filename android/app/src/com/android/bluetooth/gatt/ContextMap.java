@@ -22,11 +22,15 @@ import android.os.IInterface;
 import android.os.RemoteException;
 import android.os.SystemClock;
 import android.util.Log;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
 
+import com.android.bluetooth.Utils;
 import com.android.bluetooth.flags.Flags;
 import com.android.internal.annotations.GuardedBy;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -66,8 +70,8 @@ public class ContextMap<C> {
         /** The UUID of the application */
         public UUID uuid;
 
-        /** The id of the application */
-        public int id;
+        /** The id of the application, only set through {@link #setId} to keep it indexed */
+        private int mId;
 
         /** The package name of the application */
         public String name;
@@ -91,6 +95,19 @@ public class ContextMap<C> {
             this.name = name;
         }
 
+        /** Sets the ID assigned to the application once registered, and indexes it. */
+        public void setId(int id) {
+            synchronized (mAppsLock) {
+                mId = id;
+                indexAppsByIdLocked();
+            }
+        }
+
+        /** Returns the ID assigned to the application. */
+        public int getId() {
+            return mId;
+        }
+
         /** Link death recipient */
         public void linkToDeath(IBinder.DeathRecipient deathRecipient) {
             // It might not be a binder object
@@ -102,7 +119,7 @@ public class ContextMap<C> {
                 binder.linkToDeath(deathRecipient, 0);
                 mDeathRecipient = deathRecipient;
             } catch (RemoteException e) {
-                Log.e(TAG, "Unable to link deathRecipient for app id " + id);
+                Log.e(TAG, "Unable to link deathRecipient for app id " + mId);
             }
         }
 
@@ -113,7 +130,7 @@ public class ContextMap<C> {
                     IBinder binder = ((IInterface) callback).asBinder();
                     binder.unlinkToDeath(mDeathRecipient, 0);
                 } catch (NoSuchElementException e) {
-                    Log.e(TAG, "Unable to unlink deathRecipient for app id " + id);
+                    Log.e(TAG, "Unable to unlink deathRecipient for app id " + mId);
                 }
             }
         }
@@ -130,14 +147,57 @@ public class ContextMap<C> {
         }
     }
 
+    /**
+     * Immutable view of the connections, indexed for the lookups done on every GATT callback. A
+     * new index is published whenever a connection is added or removed, so lookups take no lock.
+     */
+    private static class ConnectionIndex {
+        static final ConnectionIndex EMPTY = new ConnectionIndex(new ArrayList<>());
+
+        final List<Connection> mConnections;
+
+        // First connection of each connection ID.
+        final SparseArray<Connection> mByConnId = new SparseArray<>();
+
+        // Connections of each app, keyed by packed device address.
+        final SparseArray<LongSparseArray<Connection>> mByAppAndAddress = new SparseArray<>();
+
+        ConnectionIndex(List<Connection> connections) {
+            mConnections = Collections.unmodifiableList(connections);
+            for (Connection connection : connections) {
+                if (mByConnId.indexOfKey(connection.connId) < 0) {
+                    mByConnId.put(connection.connId, connection);
+                }
+                long address = Utils.getLongFromAddress(connection.address);
+                if (address < 0) {
+                    continue;
+                }
+                LongSparseArray<Connection> byAddress = mByAppAndAddress.get(connection.appId);
+                if (byAddress == null) {
+                    byAddress = new LongSparseArray<>();
+                    mByAppAndAddress.put(connection.appId, byAddress);
+                }
+                if (byAddress.indexOfKey(address) < 0) {
+                    byAddress.put(address, connection);
+                }
+            }
+        }
+    }
+
     /** Our internal application list */
     private final Object mAppsLock = new Object();
 
-    @GuardedBy("mAppsLock")
-    private List<App> mApps = new ArrayList<>();
+    /** Registered apps. Replaced under the lock, never modified, so reads take no lock. */
+    private volatile List<App> mApps = Collections.emptyList();
+
+    /**
+     * Apps by ID, rebuilt from {@link #mApps} whenever an app is added, removed or gets its ID.
+     * Replaced, never modified.
+     */
+    private volatile SparseArray<App> mAppsById = new SparseArray<>();
 
     /** Internal list of connected devices */
-    private List<Connection> mConnections = new ArrayList<>();
+    private volatile ConnectionIndex mConnections = ConnectionIndex.EMPTY;
 
     private final Object mConnectionsLock = new Object();
 
@@ -151,7 +211,10 @@ public class ContextMap<C> {
         }
         synchronized (mAppsLock) {
             App app = new App(uuid, callback, appName);
-            mApps.add(app);
+            List<App> apps = new ArrayList<>(mApps);
+            apps.add(app);
+            mApps = apps;
+            indexAppsByIdLocked();
             return app;
         }
     }
@@ -159,12 +222,15 @@ public class ContextMap<C> {
     /** Remove the context for a given UUID */
     public void remove(UUID uuid) {
         synchronized (mAppsLock) {
-            Iterator<App> i = mApps.iterator();
+            List<App> apps = new ArrayList<>(mApps);
+            Iterator<App> i = apps.iterator();
             while (i.hasNext()) {
                 App entry = i.next();
                 if (entry.uuid.equals(uuid)) {
                     entry.unlinkToDeath();
                     i.remove();
+                    mApps = apps;
+                    indexAppsByIdLocked();
                     break;
                 }
             }
@@ -175,13 +241,16 @@ public class ContextMap<C> {
     public void remove(int id) {
         boolean find = false;
         synchronized (mAppsLock) {
-            Iterator<App> i = mApps.iterator();
+            List<App> apps = new ArrayList<>(mApps);
+            Iterator<App> i = apps.iterator();
             while (i.hasNext()) {
                 App entry = i.next();
-                if (entry.id == id) {
+                if (entry.mId == id) {
                     find = true;
                     entry.unlinkToDeath();
                     i.remove();
+                    mApps = apps;
+                    indexAppsByIdLocked();
                     break;
                 }
             }
@@ -193,10 +262,8 @@ public class ContextMap<C> {
 
     public List<Integer> getAllAppsIds() {
         List<Integer> appIds = new ArrayList();
-        synchronized (mAppsLock) {
-            for (App entry : mApps) {
-                appIds.add(entry.id);
-            }
+        for (App entry : mApps) {
+            appIds.add(entry.mId);
         }
         return appIds;
     }
@@ -206,7 +273,9 @@ public class ContextMap<C> {
         synchronized (mConnectionsLock) {
             App entry = getById(id);
             if (entry != null) {
-                mConnections.add(new Connection(connId, address, id));
+                List<Connection> connections = new ArrayList<>(mConnections.mConnections);
+                connections.add(new Connection(connId, address, id));
+                mConnections = new ConnectionIndex(connections);
             }
         }
     }
@@ -214,10 +283,11 @@ public class ContextMap<C> {
     /** Remove a connection with the given ID. */
     void removeConnection(int id, int connId) {
         synchronized (mConnectionsLock) {
+            List<Connection> connections = new ArrayList<>(mConnections.mConnections);
             if (Flags.bleContextMapRemoveFix()) {
-                mConnections.removeIf(conn -> conn.appId == id && conn.connId == connId);
+                connections.removeIf(conn -> conn.appId == id && conn.connId == connId);
             } else {
-                Iterator<Connection> i = mConnections.iterator();
+                Iterator<Connection> i = connections.iterator();
                 while (i.hasNext()) {
                     Connection connection = i.next();
                     if (connection.connId == connId) {
@@ -226,37 +296,51 @@ public class ContextMap<C> {
                     }
                 }
             }
+            mConnections = new ConnectionIndex(connections);
         }
     }
 
     /** Remove all connections for a given application ID. */
     void removeConnectionsByAppId(int appId) {
         synchronized (mConnectionsLock) {
-            mConnections.removeIf(conn -> conn.appId == appId);
+            List<Connection> connections = new ArrayList<>(mConnections.mConnections);
+            if (connections.removeIf(conn -> conn.appId == appId)) {
+                mConnections = new ConnectionIndex(connections);
+            }
         }
     }
 
     private App getAppByPredicate(Predicate<App> predicate) {
-        synchronized (mAppsLock) {
-            // Intentionally using a for-loop over a stream for performance.
-            for (App app : mApps) {
-                if (predicate.test(app)) {
-                    return app;
-                }
+        // Intentionally using a for-loop over a stream for performance.
+        for (App app : mApps) {
+            if (predicate.test(app)) {
+                return app;
             }
-            return null;
         }
+        return null;
     }
 
     /** Get an application context by ID. */
     public App getById(int id) {
-        App app = getAppByPredicate(entry -> entry.id == id);
+        App app = mAppsById.get(id);
         if (app == null) {
             Log.e(TAG, "Context not found for ID " + id);
         }
         return app;
     }
 
+    /** Rebuilds the apps by ID index, keeping the first app of each ID. */
+    @GuardedBy("mAppsLock")
+    private void indexAppsByIdLocked() {
+        SparseArray<App> appsById = new SparseArray<>();
+        for (App app : mApps) {
+            if (appsById.indexOfKey(app.mId) < 0) {
+                appsById.put(app.mId, app);
+            }
+        }
+        mAppsById = appsById;
+    }
+
     /** Get an application context by UUID. */
     public App getByUuid(UUID uuid) {
         App app = getAppByPredicate(entry -> entry.uuid.equals(uuid));
@@ -269,27 +353,17 @@ public class ContextMap<C> {
     /** Get the device addresses for all connected devices */
     Set<String> getConnectedDevices() {
         Set<String> addresses = new HashSet<String>();
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                addresses.add(connection.address);
-            }
+        for (Connection connection : mConnections.mConnections) {
+            addresses.add(connection.address);
         }
         return addresses;
     }
 
     /** Get an application context by a connection ID. */
     App getByConnId(int connId) {
-        int appId = -1;
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                if (connection.connId == connId) {
-                    appId = connection.appId;
-                    break;
-                }
-            }
-        }
-        if (appId >= 0) {
-            return getById(appId);
+        Connection connection = mConnections.mByConnId.get(connId);
+        if (connection != null && connection.appId >= 0) {
+            return getById(connection.appId);
         }
         return null;
     }
@@ -300,11 +374,16 @@ public class ContextMap<C> {
         if (entry == null) {
             return null;
         }
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                if (connection.address.equalsIgnoreCase(address) && connection.appId == id) {
-                    return connection.connId;
-                }
+        ConnectionIndex index = mConnections;
+        long packedAddress = Utils.getLongFromAddress(address);
+        if (packedAddress >= 0) {
+            LongSparseArray<Connection> byAddress = index.mByAppAndAddress.get(id);
+            Connection connection = byAddress == null ? null : byAddress.get(packedAddress);
+            return connection == null ? null : connection.connId;
+        }
+        for (Connection connection : index.mConnections) {
+            if (connection.address.equalsIgnoreCase(address) && connection.appId == id) {
+                return connection.connId;
             }
         }
         return null;
@@ -312,23 +391,15 @@ public class ContextMap<C> {
 
     /** Returns the device address for a given connection ID. */
     String addressByConnId(int connId) {
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                if (connection.connId == connId) {
-                    return connection.address;
-                }
-            }
-        }
-        return null;
+        Connection connection = mConnections.mByConnId.get(connId);
+        return connection == null ? null : connection.address;
     }
 
     public List<Connection> getConnectionByApp(int appId) {
         List<Connection> currentConnections = new ArrayList<Connection>();
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                if (connection.appId == appId) {
-                    currentConnections.add(connection);
-                }
+        for (Connection connection : mConnections.mConnections) {
+            if (connection.appId == appId) {
+                currentConnections.add(connection);
             }
         }
         return currentConnections;
@@ -340,29 +411,26 @@ public class ContextMap<C> {
             for (App entry : mApps) {
                 entry.unlinkToDeath();
             }
-            mApps.clear();
+            mApps = Collections.emptyList();
+            mAppsById = new SparseArray<>();
         }
 
         synchronized (mConnectionsLock) {
-            mConnections.clear();
+            mConnections = ConnectionIndex.EMPTY;
         }
     }
 
     /** Returns connect device map with addr and appid */
     Map<Integer, String> getConnectedMap() {
         Map<Integer, String> connectedmap = new HashMap<Integer, String>();
-        synchronized (mConnectionsLock) {
-            for (Connection conn : mConnections) {
-                connectedmap.put(conn.appId, conn.address);
-            }
+        for (Connection conn : mConnections.mConnections) {
+            connectedmap.put(conn.appId, conn.address);
         }
         return connectedmap;
     }
 
     /** Logs debug information. */
     protected void dump(StringBuilder sb) {
-        synchronized (mAppsLock) {
-            sb.append("  Entries: ").append(mApps.size()).append("\n\n");
-        }
+        sb.append("  Entries: ").append(mApps.size()).append("\n\n");
     }
 }
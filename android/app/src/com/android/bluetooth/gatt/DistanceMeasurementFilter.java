@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.gatt;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a distance from the raw samples of a distance measurement, for one tracker.
+ *
+ * <p>Samples are added in meters, along with their error, and the estimate can be read at any
+ * time after the first sample.
+ */
+abstract class DistanceMeasurementFilter {
+    static final int FILTER_NONE = 0;
+    static final int FILTER_MOVING_MEDIAN = 1;
+    static final int FILTER_EXPONENTIAL = 2;
+    static final int FILTER_KALMAN = 3;
+
+    private static final int MEDIAN_WINDOW = 5;
+    private static final double EXPONENTIAL_ALPHA = 0.3;
+    // Variance of the movement of the device between two samples, in square meters
+    private static final double KALMAN_PROCESS_VARIANCE = 0.05;
+
+    double mMeters;
+    double mErrorMeters;
+
+    /** Returns a new filter of a type, or null for {@link #FILTER_NONE} or unknown types. */
+    static DistanceMeasurementFilter create(int type) {
+        switch (type) {
+            case FILTER_MOVING_MEDIAN:
+                return new MovingMedian(MEDIAN_WINDOW);
+            case FILTER_EXPONENTIAL:
+                return new Exponential(EXPONENTIAL_ALPHA);
+            case FILTER_KALMAN:
+                return new Kalman(KALMAN_PROCESS_VARIANCE);
+            default:
+                return null;
+        }
+    }
+
+    /** Parses the name of a filter type, as set in DeviceConfig. */
+    static int parseType(String name) {
+        if (name == null) {
+            return FILTER_NONE;
+        }
+        switch (name) {
+            case "median":
+                return FILTER_MOVING_MEDIAN;
+            case "exponential":
+                return FILTER_EXPONENTIAL;
+            case "kalman":
+                return FILTER_KALMAN;
+            default:
+                return FILTER_NONE;
+        }
+    }
+
+    abstract void add(double meters, double errorMeters);
+
+    double getMeters() {
+        return mMeters;
+    }
+
+    double getErrorMeters() {
+        return mErrorMeters;
+    }
+
+    /** Median of the last samples, which ignores isolated outliers. */
+    static class MovingMedian extends DistanceMeasurementFilter {
+        private final double[] mSamples;
+        private final double[] mErrors;
+        private final double[] mSorted;
+        private int mCount;
+        private int mNext;
+
+        MovingMedian(int window) {
+            mSamples = new double[window];
+            mErrors = new double[window];
+            mSorted = new double[window];
+        }
+
+        @Override
+        void add(double meters, double errorMeters) {
+            mSamples[mNext] = meters;
+            mErrors[mNext] = errorMeters;
+            mNext = (mNext + 1) % mSamples.length;
+            mCount = Math.min(mCount + 1, mSamples.length);
+            mMeters = median(mSamples);
+            mErrorMeters = median(mErrors);
+        }
+
+        private double median(double[] values) {
+            System.arraycopy(values, 0, mSorted, 0, mCount);
+            Arrays.sort(mSorted, 0, mCount);
+            int middle = mCount / 2;
+            return mCount % 2 == 1
+                    ? mSorted[middle]
+                    : (mSorted[middle - 1] + mSorted[middle]) / 2;
+        }
+    }
+
+    /** Exponential moving average, weighting the new sample by alpha. */
+    static class Exponential extends DistanceMeasurementFilter {
+        private final double mAlpha;
+        private boolean mInitialized;
+
+        Exponential(double alpha) {
+            mAlpha = alpha;
+        }
+
+        @Override
+        void add(double meters, double errorMeters) {
+            if (!mInitialized) {
+                mInitialized = true;
+                mMeters = meters;
+                mErrorMeters = errorMeters;
+                return;
+            }
+            mMeters += mAlpha * (meters - mMeters);
+            mErrorMeters += mAlpha * (errorMeters - mErrorMeters);
+        }
+    }
+
+    /**
+     * One dimensional Kalman filter of a distance that changes randomly, where the error of each
+     * sample is its standard deviation.
+     */
+    static class Kalman extends DistanceMeasurementFilter {
+        private final double mProcessVariance;
+        private double mVariance = Double.NaN;
+
+        Kalman(double processVariance) {
+            mProcessVariance = processVariance;
+        }
+
+        @Override
+        void add(double meters, double errorMeters) {
+            // A sample without error is as good as the estimate, not perfect
+            double sampleVariance = errorMeters > 0 ? errorMeters * errorMeters : mProcessVariance;
+            if (Double.isNaN(mVariance)) {
+                mMeters = meters;
+                mVariance = sampleVariance;
+            } else {
+                double predictedVariance = mVariance + mProcessVariance;
+                double gain = predictedVariance / (predictedVariance + sampleVariance);
+                mMeters += gain * (meters - mMeters);
+                mVariance = (1 - gain) * predictedVariance;
+            }
+            mErrorMeters = Math.sqrt(mVariance);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import android.bluetooth.le.DistanceMeasurementResult;
 import android.bluetooth.le.IDistanceMeasurementCallback;
 import android.os.HandlerThread;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.android.bluetooth.btservice.AdapterService;
@@ -55,10 +56,16 @@ public class DistanceMeasurementManager {
             mRssiTrackers = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, CopyOnWriteArraySet<DistanceMeasurementTracker>>
             mCsTrackers = new ConcurrentHashMap<>();
+    private int mResultFilterType;
+    private int mMinResultIntervalMs;
 
     /** Constructor of {@link DistanceMeasurementManager}. */
     DistanceMeasurementManager(AdapterService adapterService) {
         mAdapterService = adapterService;
+        mResultFilterType =
+                DistanceMeasurementFilter.parseType(adapterService.getDistanceMeasurementFilter());
+        mMinResultIntervalMs =
+                Math.max(adapterService.getDistanceMeasurementMinResultIntervalMillis(), 0);
 
         // Start a HandlerThread that handles distance measurement operations
         mHandlerThread = new HandlerThread("DistanceMeasurementManager");
@@ -71,6 +78,13 @@ public class DistanceMeasurementManager {
         mDistanceMeasurementNativeInterface.cleanup();
     }
 
+    /** Sets how the results of the distance measurements started afterwards are delivered. */
+    @VisibleForTesting
+    void setResultFilter(int filterType, int minResultIntervalMs) {
+        mResultFilterType = filterType;
+        mMinResultIntervalMs = minResultIntervalMs;
+    }
+
     DistanceMeasurementMethod[] getSupportedDistanceMeasurementMethods() {
         ArrayList<DistanceMeasurementMethod> methods = new ArrayList<DistanceMeasurementMethod>();
         methods.add(
@@ -113,6 +127,8 @@ public class DistanceMeasurementManager {
 
         DistanceMeasurementTracker tracker =
                 new DistanceMeasurementTracker(this, params, address, uuid, interval, callback);
+        tracker.setResultFilter(
+                DistanceMeasurementFilter.create(mResultFilterType), mMinResultIntervalMs);
 
         switch (params.getMethodId()) {
             case DistanceMeasurementMethod.DISTANCE_MEASUREMENT_METHOD_AUTO:
@@ -495,16 +511,7 @@ public class DistanceMeasurementManager {
             Log.w(TAG, "Can't find rssi tracker");
             return;
         }
-        for (DistanceMeasurementTracker tracker : set) {
-            if (!tracker.mStarted) {
-                continue;
-            }
-            try {
-                tracker.mCallback.onResult(tracker.mDevice, result);
-            } catch (RemoteException e) {
-                Log.e(TAG, "Exception: " + e);
-            }
-        }
+        deliverResult(set, result);
     }
 
     void handleCsResult(String address, DistanceMeasurementResult result) {
@@ -513,12 +520,22 @@ public class DistanceMeasurementManager {
             Log.w(TAG, "Can't find cs tracker");
             return;
         }
+        deliverResult(set, result);
+    }
+
+    private void deliverResult(
+            CopyOnWriteArraySet<DistanceMeasurementTracker> set, DistanceMeasurementResult result) {
+        long nowMs = SystemClock.elapsedRealtime();
         for (DistanceMeasurementTracker tracker : set) {
             if (!tracker.mStarted) {
                 continue;
             }
+            DistanceMeasurementResult trackerResult = tracker.onResult(result, nowMs);
+            if (trackerResult == null) {
+                continue;
+            }
             try {
-                tracker.mCallback.onResult(tracker.mDevice, result);
+                tracker.mCallback.onResult(tracker.mDevice, trackerResult);
             } catch (RemoteException e) {
                 Log.e(TAG, "Exception: " + e);
             }
@@ -18,6 +18,7 @@ package com.android.bluetooth.gatt;
 
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.le.DistanceMeasurementParams;
+import android.bluetooth.le.DistanceMeasurementResult;
 import android.bluetooth.le.IDistanceMeasurementCallback;
 import android.os.Handler;
 import android.os.Looper;
@@ -39,6 +40,10 @@ class DistanceMeasurementTracker {
     final IDistanceMeasurementCallback mCallback;
     boolean mStarted = false;
     private Handler mHandler;
+    private DistanceMeasurementFilter mFilter;
+    private int mMinResultIntervalMs;
+    private long mLastResultMs;
+    private boolean mResultDelivered;
 
     DistanceMeasurementTracker(
             DistanceMeasurementManager manager,
@@ -57,6 +62,48 @@ class DistanceMeasurementTracker {
         mCallback = callback;
     }
 
+    /**
+     * Smooths the results with a filter and delivers at most one result per interval.
+     *
+     * @param filter the filter of the results, or null to deliver them as measured
+     * @param minResultIntervalMs the minimum time between two delivered results, 0 for none
+     */
+    void setResultFilter(DistanceMeasurementFilter filter, int minResultIntervalMs) {
+        mFilter = filter;
+        mMinResultIntervalMs = minResultIntervalMs;
+    }
+
+    /**
+     * Adds a measured result to the filter.
+     *
+     * @return the result to deliver, with the filtered distance and error and the other fields of
+     *     the measured result, or null if one was delivered less than the minimum interval ago
+     */
+    DistanceMeasurementResult onResult(DistanceMeasurementResult result, long nowMs) {
+        if (mFilter != null) {
+            mFilter.add(result.getResultMeters(), result.getErrorMeters());
+        }
+        if (mResultDelivered && nowMs - mLastResultMs < mMinResultIntervalMs) {
+            return null;
+        }
+        mResultDelivered = true;
+        mLastResultMs = nowMs;
+        if (mFilter == null) {
+            return result;
+        }
+        return new DistanceMeasurementResult.Builder(
+                        mFilter.getMeters(), mFilter.getErrorMeters())
+                .setAzimuthAngle(result.getAzimuthAngle())
+                .setErrorAzimuthAngle(result.getErrorAzimuthAngle())
+                .setAltitudeAngle(result.getAltitudeAngle())
+                .setErrorAltitudeAngle(result.getErrorAltitudeAngle())
+                .setDelaySpreadMeters(result.getDelaySpreadMeters())
+                .setConfidenceLevel(result.getConfidenceLevel())
+                .setDetectedAttackLevel(result.getDetectedAttackLevel())
+                .setVelocityMetersPerSecond(result.getVelocityMetersPerSecond())
+                .build();
+    }
+
     void startTimer(Looper looper) {
         mHandler = new Handler(looper);
         mHandler.postDelayed(
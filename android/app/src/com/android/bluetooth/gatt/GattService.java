@@ -72,6 +72,7 @@ import android.provider.Settings;
 import android.sysprop.BluetoothProperties;
 import android.text.format.DateUtils;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.android.bluetooth.BluetoothMetricsProto;
 import com.android.bluetooth.BluetoothStatsLog;
@@ -171,14 +172,19 @@ public class GattService extends ProfileService {
     @VisibleForTesting final Map<Integer, Set<Integer>> mRestrictedHandles = new HashMap<>();
 
     /**
-     * HashMap used to synchronize writeCharacteristic calls mapping remote device address to
-     * available permit (connectId or -1).
+     * Sorted restricted handles per connectionId, rebuilt whenever {@link #mRestrictedHandles}
+     * changes so that permission checks on the notification path take no lock and don't allocate.
      */
-    private final HashMap<String, Integer> mPermits = new HashMap<>();
+    private volatile SparseArray<int[]> mRestrictedHandleIndex = new SparseArray<>();
+
+    /** Queues the writeCharacteristic calls of each connection before they reach the stack. */
+    private final WritePipeline mWritePipeline = new WritePipeline(this::sendWrite);
 
     private AdapterService mAdapterService;
     AdvertiseManager mAdvertiseManager;
     DistanceMeasurementManager mDistanceMeasurementManager;
+    private HandlerThread mNotificationThread;
+    private NotificationCoalescer mNotificationCoalescer;
     private Handler mTestModeHandler;
     private ActivityManager mActivityManager;
     private PackageManager mPackageManager;
@@ -225,6 +231,13 @@ public class GattService extends ProfileService {
         }
         mDistanceMeasurementManager =
                 GattObjectsFactory.getInstance().createDistanceMeasurementManager(mAdapterService);
+        mNotificationThread = new HandlerThread("BluetoothGattNotify");
+        mNotificationThread.start();
+        mNotificationCoalescer =
+                new NotificationCoalescer(
+                        new Handler(mNotificationThread.getLooper()),
+                        this::deliverCoalescedNotifications);
+        updateNotificationCoalescerConfig();
 
         mActivityManager = getSystemService(ActivityManager.class);
         mPackageManager = mAdapterService.getPackageManager();
@@ -248,8 +261,17 @@ public class GattService extends ProfileService {
         }
         mAdvertiseManager.clear();
         mClientMap.clear();
+        mWritePipeline.clear();
+        if (mNotificationCoalescer != null) {
+            mNotificationCoalescer.clear();
+        }
+        if (mNotificationThread != null) {
+            mNotificationThread.quitSafely();
+            mNotificationThread = null;
+        }
         if (Flags.gattCleanupRestrictedHandles()) {
             mRestrictedHandles.clear();
+            updateRestrictedHandleIndex();
         }
         mServerMap.clear();
         mHandleMap.clear();
@@ -359,8 +381,18 @@ public class GattService extends ProfileService {
     }
 
     private boolean isHandleRestricted(int connId, int handle) {
-        Set<Integer> restrictedHandles = mRestrictedHandles.get(connId);
-        return restrictedHandles != null && restrictedHandles.contains(handle);
+        int[] restrictedHandles = mRestrictedHandleIndex.get(connId);
+        return restrictedHandles != null && Arrays.binarySearch(restrictedHandles, handle) >= 0;
+    }
+
+    private void updateRestrictedHandleIndex() {
+        SparseArray<int[]> index = new SparseArray<>();
+        for (Map.Entry<Integer, Set<Integer>> entry : mRestrictedHandles.entrySet()) {
+            int[] handles = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            Arrays.sort(handles);
+            index.put(entry.getKey(), handles);
+        }
+        mRestrictedHandleIndex = index;
     }
 
     /** Notify Scan manager of bluetooth profile connection state changes */
@@ -1294,7 +1326,7 @@ public class GattService extends ProfileService {
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByUuid(uuid);
         if (app != null) {
             if (status == 0) {
-                app.id = clientIf;
+                app.setId(clientIf);
                 app.linkToDeath(new ClientDeathRecipient(clientIf, app.name));
             } else {
                 mClientMap.remove(uuid);
@@ -1316,11 +1348,10 @@ public class GattService extends ProfileService {
         if (status == 0) {
             mClientMap.addConnection(clientIf, connId, address);
 
-            // Allow one writeCharacteristic operation at a time for each connected remote device.
-            synchronized (mPermits) {
-                Log.d(TAG, "onConnected() - adding permit for address=" + address);
-                mPermits.putIfAbsent(address, -1);
-            }
+            // Allow writeCharacteristic operations on the connection.
+            updateWritePipelineConfig();
+            mWritePipeline.addConnection(connId);
+            updateNotificationCoalescerConfig();
             connectionState = BluetoothProtoEnums.CONNECTION_STATE_CONNECTED;
         }
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getById(clientIf);
@@ -1343,28 +1374,20 @@ public class GattService extends ProfileService {
                         + ", address="
                         + address);
 
+        // Deliver the notifications received before the disconnection first.
+        if (mNotificationCoalescer != null) {
+            mNotificationCoalescer.removeConnection(connId);
+        }
         mClientMap.removeConnection(clientIf, connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getById(clientIf);
 
         if (Flags.gattCleanupRestrictedHandles()) {
             mRestrictedHandles.remove(connId);
+            updateRestrictedHandleIndex();
         }
 
-        // Remove AtomicBoolean representing permit if no other connections rely on this remote
-        // device.
-        if (!mClientMap.getConnectedDevices().contains(address)) {
-            synchronized (mPermits) {
-                Log.d(TAG, "onDisconnected() - removing permit for address=" + address);
-                mPermits.remove(address);
-            }
-        } else {
-            synchronized (mPermits) {
-                if (mPermits.get(address) == connId) {
-                    Log.d(TAG, "onDisconnected() - set permit -1 for address=" + address);
-                    mPermits.put(address, -1);
-                }
-            }
-        }
+        // Drop the writes queued on this connection and stop accepting writes on it.
+        mWritePipeline.removeConnection(connId);
 
         if (app != null) {
             app.callback.onClientConnectionState(status, clientIf, false, address);
@@ -1385,6 +1408,7 @@ public class GattService extends ProfileService {
             return;
         }
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app == null) {
             return;
@@ -1410,6 +1434,7 @@ public class GattService extends ProfileService {
             return;
         }
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app == null) {
             return;
@@ -1427,6 +1452,7 @@ public class GattService extends ProfileService {
             return;
         }
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app == null) {
             return;
@@ -1443,6 +1469,7 @@ public class GattService extends ProfileService {
             return;
         }
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app == null) {
             return;
@@ -1461,6 +1488,7 @@ public class GattService extends ProfileService {
             return;
         }
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app == null) {
             return;
@@ -1564,6 +1592,7 @@ public class GattService extends ProfileService {
 
         Log.d(TAG, "onGetGattDb() - address=" + address);
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app == null || app.callback == null) {
             Log.e(TAG, "app or callback is null");
@@ -1642,6 +1671,7 @@ public class GattService extends ProfileService {
 
         if (!restrictedIds.isEmpty()) {
             mRestrictedHandles.put(connId, restrictedIds);
+            updateRestrictedHandleIndex();
         }
         // Search is complete when there was error, or nothing more to process
         app.callback.onSearchComplete(address, dbOut, 0 /* status */);
@@ -1664,15 +1694,17 @@ public class GattService extends ProfileService {
 
     void onNotify(int connId, String address, int handle, boolean isNotify, byte[] data)
             throws RemoteException {
-
-        Log.v(
-                TAG,
-                "onNotify() - address="
-                        + address
-                        + ", handle="
-                        + handle
-                        + ", length="
-                        + data.length);
+        // Notifications can be received at a high rate: don't build the message unless logged.
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(
+                    TAG,
+                    "onNotify() - address="
+                            + address
+                            + ", handle="
+                            + handle
+                            + ", length="
+                            + data.length);
+        }
 
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app != null) {
@@ -1686,10 +1718,66 @@ public class GattService extends ProfileService {
                 Log.w(TAG, "onNotify() - permission check failed!");
                 return;
             }
+            if (mNotificationCoalescer != null
+                    && mNotificationCoalescer.add(connId, address, handle, data)) {
+                return;
+            }
             app.callback.onNotify(address, handle, data);
         }
     }
 
+    /**
+     * Delivers the notifications of a connection still pending in {@link NotificationCoalescer},
+     * so that the app receives them before the other callbacks of the connection.
+     */
+    private void flushNotifications(int connId) throws RemoteException {
+        if (mNotificationCoalescer != null) {
+            mNotificationCoalescer.flush(connId);
+        }
+    }
+
+    /** Delivers notifications coalesced by {@link NotificationCoalescer} to the client app. */
+    private void deliverCoalescedNotifications(
+            int connId, String address, int[] handles, byte[][] values) throws RemoteException {
+        ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
+        if (app == null) {
+            return;
+        }
+        if (handles.length == 1) {
+            app.callback.onNotify(address, handles[0], values[0]);
+            return;
+        }
+        int length = 0;
+        int[] valueLengths = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            valueLengths[i] = values[i].length;
+            length += values[i].length;
+        }
+        byte[] concatenated = new byte[length];
+        int offset = 0;
+        for (byte[] value : values) {
+            System.arraycopy(value, 0, concatenated, offset, value.length);
+            offset += value.length;
+        }
+        app.callback.onNotifyBatch(address, handles, concatenated, valueLengths);
+    }
+
+    private void updateWritePipelineConfig() {
+        if (mAdapterService == null) {
+            return;
+        }
+        mWritePipeline.setDepth(mAdapterService.getGattWritePipelineDepth());
+    }
+
+    private void updateNotificationCoalescerConfig() {
+        if (mNotificationCoalescer == null || mAdapterService == null) {
+            return;
+        }
+        mNotificationCoalescer.setConfig(
+                mAdapterService.getGattNotifyBatchMaxNotifications(),
+                mAdapterService.getGattNotifyBatchMaxDelayMicros());
+    }
+
     void onReadCharacteristic(int connId, int status, int handle, byte[] data)
             throws RemoteException {
         String address = mClientMap.addressByConnId(connId);
@@ -1703,6 +1791,7 @@ public class GattService extends ProfileService {
                         + ", length="
                         + data.length);
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app != null) {
             app.callback.onCharacteristicRead(address, status, handle, data);
@@ -1712,10 +1801,7 @@ public class GattService extends ProfileService {
     void onWriteCharacteristic(int connId, int status, int handle, byte[] data)
             throws RemoteException {
         String address = mClientMap.addressByConnId(connId);
-        synchronized (mPermits) {
-            Log.d(TAG, "onWriteCharacteristic() - increasing permit for address=" + address);
-            mPermits.put(address, -1);
-        }
+        mWritePipeline.onWriteCompleted(connId);
 
         Log.v(
                 TAG,
@@ -1726,6 +1812,7 @@ public class GattService extends ProfileService {
                         + ", length="
                         + data.length);
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app == null) {
             return;
@@ -1750,6 +1837,7 @@ public class GattService extends ProfileService {
         String address = mClientMap.addressByConnId(connId);
         Log.v(TAG, "onExecuteCompleted() - address=" + address + ", status=" + status);
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app != null) {
             app.callback.onExecuteWrite(address, status);
@@ -1768,6 +1856,7 @@ public class GattService extends ProfileService {
                         + ", length="
                         + data.length);
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app != null) {
             app.callback.onDescriptorRead(address, status, handle, data);
@@ -1786,6 +1875,7 @@ public class GattService extends ProfileService {
                         + ", length="
                         + data.length);
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app != null) {
             app.callback.onDescriptorWrite(address, status, handle, data);
@@ -1805,6 +1895,10 @@ public class GattService extends ProfileService {
                         + ", status="
                         + status);
 
+        Integer connId = mClientMap.connIdByAddress(clientIf, address);
+        if (connId != null) {
+            flushNotifications(connId);
+        }
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getById(clientIf);
         if (app != null) {
             app.callback.onReadRemoteRssi(address, rssi, status);
@@ -1816,6 +1910,7 @@ public class GattService extends ProfileService {
 
         Log.d(TAG, "onConfigureMTU() address=" + address + ", status=" + status + ", mtu=" + mtu);
 
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
         if (app != null) {
             app.callback.onConfigureMTU(address, mtu, status);
@@ -1825,6 +1920,9 @@ public class GattService extends ProfileService {
     void onClientCongestion(int connId, boolean congested) throws RemoteException {
         Log.v(TAG, "onClientCongestion() - connId=" + connId + ", congested=" + congested);
 
+        // Queued writes are held while the connection is congested.
+        mWritePipeline.setCongested(connId, congested);
+        flushNotifications(connId);
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
 
         if (app != null) {
@@ -2392,7 +2490,7 @@ public class GattService extends ProfileService {
         Log.v(TAG, "writeCharacteristic() - address=" + address);
 
         if (mReliableQueue.contains(address)) {
-            writeType = 3; // Prepared write
+            writeType = WritePipeline.WRITE_TYPE_PREPARED;
         }
 
         Integer connId = mClientMap.connIdByAddress(clientIf, address);
@@ -2402,25 +2500,16 @@ public class GattService extends ProfileService {
         }
         permissionCheck(connId, handle);
 
-        Log.d(TAG, "writeCharacteristic() - trying to acquire permit.");
-        // Lock the thread until onCharacteristicWrite callback comes back.
-        synchronized (mPermits) {
-            Integer permit = mPermits.get(address);
-            if (permit == null) {
-                Log.d(TAG, "writeCharacteristic() -  atomicBoolean uninitialized!");
-                return BluetoothStatusCodes.ERROR_DEVICE_NOT_CONNECTED;
-            }
-
-            boolean success = (permit == -1);
-            if (!success) {
-                Log.d(TAG, "writeCharacteristic() - no permit available.");
-                return BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
-            }
-            mPermits.put(address, connId);
+        // The write is sent once nothing holds it back, see WritePipeline.
+        int status = mWritePipeline.write(connId, handle, writeType, authReq, value);
+        if (status != BluetoothStatusCodes.SUCCESS) {
+            Log.d(TAG, "writeCharacteristic() - write not queued, status=" + status);
         }
+        return status;
+    }
 
+    private void sendWrite(int connId, int handle, int writeType, int authReq, byte[] value) {
         mNativeInterface.gattClientWriteCharacteristic(connId, handle, writeType, authReq, value);
-        return BluetoothStatusCodes.SUCCESS;
     }
 
     @RequiresPermission(BLUETOOTH_CONNECT)
@@ -2786,7 +2875,7 @@ public class GattService extends ProfileService {
         Log.d(TAG, "onServerRegistered() - UUID=" + uuid + ", serverIf=" + serverIf);
         ContextMap<IBluetoothGattServerCallback>.App app = mServerMap.getByUuid(uuid);
         if (app != null) {
-            app.id = serverIf;
+            app.setId(serverIf);
             app.linkToDeath(new ServerDeathRecipient(serverIf, app.name));
             app.callback.onServerRegistered(status, serverIf);
         }
@@ -3499,11 +3588,8 @@ public class GattService extends ProfileService {
         Log.d(TAG, "stopNextService() - serverIf=" + serverIf + ", status=" + status);
 
         if (status == 0) {
-            List<HandleMap.Entry> entries = mHandleMap.getEntries();
-            for (HandleMap.Entry entry : entries) {
-                if (entry.type != HandleMap.TYPE_SERVICE
-                        || entry.serverIf != serverIf
-                        || !entry.started) {
+            for (HandleMap.Entry entry : mHandleMap.getServices(serverIf)) {
+                if (!entry.started) {
                     continue;
                 }
 
@@ -3521,11 +3607,7 @@ public class GattService extends ProfileService {
          * The handles are copied into a new list to avoid race conditions.
          */
         List<Integer> handleList = new ArrayList<>();
-        List<HandleMap.Entry> entries = mHandleMap.getEntries();
-        for (HandleMap.Entry entry : entries) {
-            if (entry.type != HandleMap.TYPE_SERVICE || entry.serverIf != serverIf) {
-                continue;
-            }
+        for (HandleMap.Entry entry : mHandleMap.getServices(serverIf)) {
             handleList.add(entry.handle);
         }
 
@@ -3574,6 +3656,9 @@ public class GattService extends ProfileService {
 
         sb.append("GATT Handle Map\n");
         mHandleMap.dump(sb);
+
+        sb.append("GATT Write Pipeline\n");
+        mWritePipeline.dump(sb);
     }
 
     private void statsLogAppPackage(String address, int applicationUid, int sessionIndex) {
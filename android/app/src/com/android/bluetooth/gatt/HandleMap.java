@@ -16,12 +16,19 @@
 package com.android.bluetooth.gatt;
 
 import android.util.Log;
+import android.util.SparseArray;
 
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 class HandleMap {
     private static final String TAG = GattServiceConfig.TAG_PREFIX + "HandleMap";
@@ -96,37 +103,64 @@ class HandleMap {
         }
     }
 
-    List<Entry> mEntries = null;
+    // All attributes, in the order they were added.
+    @GuardedBy("this")
+    private final Set<Entry> mEntries = new LinkedHashSet<>();
+
+    // All attributes, keyed by handle. Handles are unique in the server database.
+    @GuardedBy("this")
+    private final SparseArray<Entry> mEntriesByHandle = new SparseArray<>();
+
+    // Copy of mEntriesByHandle, so that ATT requests look up handles without locking. Published
+    // when a service starts or by the first lookup after a change, not on every added attribute.
+    private volatile SparseArray<Entry> mPublishedEntriesByHandle = new SparseArray<>();
+    private volatile boolean mEntriesChanged = false;
+
+    // Service entries of each server, in the order they were added.
+    @GuardedBy("this")
+    private final SparseArray<List<Entry>> mServicesByServer = new SparseArray<>();
+
+    // Characteristic and descriptor entries of each service.
+    @GuardedBy("this")
+    private final SparseArray<List<Entry>> mAttributesByService = new SparseArray<>();
+
     Map<Integer, RequestData> mRequestMap = null;
     int mLastCharacteristic = 0;
 
     HandleMap() {
-        mEntries = new CopyOnWriteArrayList<Entry>();
         mRequestMap = new ConcurrentHashMap<Integer, RequestData>();
     }
 
     void clear() {
-        mEntries.clear();
+        synchronized (this) {
+            mEntries.clear();
+            mEntriesByHandle.clear();
+            mServicesByServer.clear();
+            mAttributesByService.clear();
+            publishEntriesLocked();
+        }
         mRequestMap.clear();
     }
 
-    void addService(
+    synchronized void addService(
             int serverIf,
             int handle,
             UUID uuid,
             int serviceType,
             int instance,
             boolean advertisePreferred) {
-        mEntries.add(new Entry(serverIf, handle, uuid, serviceType, instance, advertisePreferred));
+        Entry entry = new Entry(serverIf, handle, uuid, serviceType, instance, advertisePreferred);
+        putEntry(entry);
+        addToList(mServicesByServer, serverIf, entry);
     }
 
-    void addCharacteristic(int serverIf, int handle, UUID uuid, int serviceHandle) {
+    synchronized void addCharacteristic(int serverIf, int handle, UUID uuid, int serviceHandle) {
         mLastCharacteristic = handle;
-        mEntries.add(new Entry(serverIf, TYPE_CHARACTERISTIC, handle, uuid, serviceHandle));
+        addAttribute(new Entry(serverIf, TYPE_CHARACTERISTIC, handle, uuid, serviceHandle));
     }
 
-    void addDescriptor(int serverIf, int handle, UUID uuid, int serviceHandle) {
-        mEntries.add(
+    synchronized void addDescriptor(int serverIf, int handle, UUID uuid, int serviceHandle) {
+        addAttribute(
                 new Entry(
                         serverIf,
                         TYPE_DESCRIPTOR,
@@ -136,48 +170,129 @@ class HandleMap {
                         mLastCharacteristic));
     }
 
-    void setStarted(int serverIf, int handle, boolean started) {
-        for (Entry entry : mEntries) {
-            if (entry.type != TYPE_SERVICE
-                    || entry.serverIf != serverIf
-                    || entry.handle != handle) {
-                continue;
+    @GuardedBy("this")
+    private void putEntry(Entry entry) {
+        Entry previous = mEntriesByHandle.get(entry.handle);
+        if (previous != null) {
+            removeEntry(previous);
+            if (previous.type == TYPE_SERVICE) {
+                removeFromList(mServicesByServer, previous.serverIf, previous);
+            } else {
+                removeFromList(mAttributesByService, previous.serviceHandle, previous);
             }
+        }
+        mEntries.add(entry);
+        mEntriesByHandle.put(entry.handle, entry);
+        mEntriesChanged = true;
+    }
+
+    /** Removes an entry, but not from the services and attributes lists. */
+    @GuardedBy("this")
+    private void removeEntry(Entry entry) {
+        mEntries.remove(entry);
+        if (mEntriesByHandle.get(entry.handle) == entry) {
+            mEntriesByHandle.remove(entry.handle);
+        }
+        mEntriesChanged = true;
+    }
+
+    @GuardedBy("this")
+    private void addAttribute(Entry entry) {
+        putEntry(entry);
+        addToList(mAttributesByService, entry.serviceHandle, entry);
+    }
+
+    private static void addToList(SparseArray<List<Entry>> lists, int key, Entry entry) {
+        List<Entry> list = lists.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            lists.put(key, list);
+        }
+        list.add(entry);
+    }
 
-            entry.started = started;
+    private static void removeFromList(SparseArray<List<Entry>> lists, int key, Entry entry) {
+        List<Entry> list = lists.get(key);
+        if (list != null && list.remove(entry) && list.isEmpty()) {
+            lists.remove(key);
+        }
+    }
+
+    @GuardedBy("this")
+    private void publishEntriesLocked() {
+        mPublishedEntriesByHandle = mEntriesByHandle.clone();
+        mEntriesChanged = false;
+    }
+
+    /** Returns the attributes by handle, publishing them first if they changed. */
+    private SparseArray<Entry> getEntriesByHandle() {
+        if (mEntriesChanged) {
+            synchronized (this) {
+                if (mEntriesChanged) {
+                    publishEntriesLocked();
+                }
+            }
+        }
+        return mPublishedEntriesByHandle;
+    }
+
+    synchronized void setStarted(int serverIf, int handle, boolean started) {
+        Entry entry = mEntriesByHandle.get(handle);
+        if (entry == null || entry.type != TYPE_SERVICE || entry.serverIf != serverIf) {
             return;
         }
+        entry.started = started;
+        if (mEntriesChanged) {
+            publishEntriesLocked();
+        }
     }
 
     Entry getByHandle(int handle) {
-        for (Entry entry : mEntries) {
-            if (entry.handle == handle) {
-                return entry;
-            }
+        Entry entry = getEntriesByHandle().get(handle);
+        if (entry == null) {
+            Log.e(TAG, "getByHandle() - Handle " + handle + " not found!");
         }
-        Log.e(TAG, "getByHandle() - Handle " + handle + " not found!");
-        return null;
+        return entry;
     }
 
     boolean checkServiceExists(UUID uuid, int handle) {
-        for (Entry entry : mEntries) {
-            if (entry.type == TYPE_SERVICE && entry.handle == handle && entry.uuid.equals(uuid)) {
-                return true;
+        Entry entry = getEntriesByHandle().get(handle);
+        return entry != null && entry.type == TYPE_SERVICE && entry.uuid.equals(uuid);
+    }
+
+    synchronized void deleteService(int serverIf, int serviceHandle) {
+        Entry service = mEntriesByHandle.get(serviceHandle);
+        if (service != null && service.serverIf == serverIf) {
+            removeEntry(service);
+            removeFromList(mServicesByServer, serverIf, service);
+        }
+
+        List<Entry> attributes = mAttributesByService.get(serviceHandle);
+        if (attributes != null) {
+            Iterator<Entry> it = attributes.iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.serverIf != serverIf) {
+                    continue;
+                }
+                it.remove();
+                removeEntry(entry);
+            }
+            if (attributes.isEmpty()) {
+                mAttributesByService.remove(serviceHandle);
             }
         }
-        return false;
     }
 
-    void deleteService(int serverIf, int serviceHandle) {
-        mEntries.removeIf(
-                entry ->
-                        ((entry.serverIf == serverIf)
-                                && (entry.handle == serviceHandle
-                                        || entry.serviceHandle == serviceHandle)));
+    /** Returns a snapshot of all attributes, in the order they were added. */
+    synchronized List<Entry> getEntries() {
+        return new ArrayList<>(mEntries);
     }
 
-    List<Entry> getEntries() {
-        return mEntries;
+    /** Returns a snapshot of the services of a server, in the order they were added. */
+    synchronized List<Entry> getServices(int serverIf) {
+        List<Entry> services = mServicesByServer.get(serverIf);
+        return services == null ? Collections.emptyList() : new ArrayList<>(services);
     }
 
     void addRequest(int connId, int requestId, int handle) {
@@ -218,10 +333,11 @@ class HandleMap {
 
     /** Logs debug information. */
     void dump(StringBuilder sb) {
-        sb.append("  Entries: ").append(mEntries.size()).append("\n");
+        List<Entry> entries = getEntries();
+        sb.append("  Entries: ").append(entries.size()).append("\n");
         sb.append("  Requests: ").append(mRequestMap.size()).append("\n");
 
-        for (Entry entry : mEntries) {
+        for (Entry entry : entries) {
             sb.append("  ").append(entry.serverIf).append(": [").append(entry.handle).append("] ");
             switch (entry.type) {
                 case TYPE_SERVICE:
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.gatt;
+
+import android.os.Handler;
+import android.os.RemoteException;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.Arrays;
+
+/**
+ * Coalesces the notifications and indications received on a GATT client connection, so that
+ * they can be delivered to the app with a single binder transaction.
+ *
+ * <p>Pending notifications of a connection are delivered once {@code maxNotifications} of them
+ * are pending, or {@code maxDelayMicros} after the first one was received. Deliveries of a
+ * connection never overlap and preserve the order of the notifications. Other callbacks of a
+ * connection must {@link #flush} it first, so that the app receives them after the notifications
+ * that preceded them.
+ */
+class NotificationCoalescer {
+    private static final String TAG = GattServiceConfig.TAG_PREFIX + "NotificationCoalescer";
+
+    /** Delivers the notifications received on a connection, in order. */
+    interface Delivery {
+        void deliver(int connId, String address, int[] handles, byte[][] values)
+                throws RemoteException;
+    }
+
+    private class Batch implements Runnable {
+        final int mConnId;
+        final String mAddress;
+
+        @GuardedBy("mLock")
+        int[] mHandles = new int[0];
+
+        @GuardedBy("mLock")
+        byte[][] mValues = new byte[0][];
+
+        @GuardedBy("mLock")
+        int mSize;
+
+        @GuardedBy("mLock")
+        boolean mFlushScheduled;
+
+        Batch(int connId, String address) {
+            mConnId = connId;
+            mAddress = address;
+        }
+
+        @Override
+        public void run() {
+            try {
+                flush(this);
+            } catch (RemoteException e) {
+                // Like the callbacks from the native stack, which log the exceptions they get.
+                Log.e(TAG, "Failed to deliver notifications, connId=" + mConnId, e);
+            }
+        }
+    }
+
+    private final Object mLock = new Object();
+    private final Handler mHandler;
+    private final Delivery mDelivery;
+
+    @GuardedBy("mLock")
+    private final SparseArray<Batch> mBatches = new SparseArray<>();
+
+    private volatile int mMaxNotifications;
+    private volatile long mMaxDelayMicros;
+
+    /** @param handler runs the coalescing timers */
+    NotificationCoalescer(Handler handler, Delivery delivery) {
+        mHandler = handler;
+        mDelivery = delivery;
+    }
+
+    /**
+     * Updates the coalescing parameters.
+     *
+     * @param maxNotifications notifications are coalesced in batches of up to this size if
+     *     greater than 1
+     * @param maxDelayMicros maximum delay of a coalesced notification
+     */
+    void setConfig(int maxNotifications, long maxDelayMicros) {
+        mMaxNotifications = maxNotifications;
+        mMaxDelayMicros = Math.max(0, maxDelayMicros);
+    }
+
+    /** Returns true if notifications are coalesced. */
+    boolean isEnabled() {
+        return mMaxNotifications > 1;
+    }
+
+    /**
+     * Queues a notification received on the given connection.
+     *
+     * @return false if coalescing is disabled, in which case the caller must deliver the
+     *     notification
+     * @throws RemoteException if the notification filled a batch that failed to be delivered
+     */
+    boolean add(int connId, String address, int handle, byte[] value) throws RemoteException {
+        int maxNotifications = mMaxNotifications;
+        if (maxNotifications <= 1) {
+            return false;
+        }
+        Batch full = null;
+        synchronized (mLock) {
+            Batch batch = mBatches.get(connId);
+            if (batch == null || !batch.mAddress.equals(address)) {
+                if (batch != null) {
+                    mHandler.removeCallbacks(batch);
+                }
+                batch = new Batch(connId, address);
+                mBatches.put(connId, batch);
+            }
+            if (batch.mSize == batch.mHandles.length) {
+                int capacity = Math.max(maxNotifications, batch.mSize * 2);
+                batch.mHandles = Arrays.copyOf(batch.mHandles, capacity);
+                batch.mValues = Arrays.copyOf(batch.mValues, capacity);
+            }
+            batch.mHandles[batch.mSize] = handle;
+            batch.mValues[batch.mSize] = value;
+            batch.mSize++;
+            if (batch.mSize >= maxNotifications) {
+                full = batch;
+            } else if (!batch.mFlushScheduled) {
+                // Handler timers have a millisecond resolution.
+                mHandler.postDelayed(batch, (mMaxDelayMicros + 999) / 1000);
+                batch.mFlushScheduled = true;
+            }
+        }
+        if (full != null) {
+            flush(full);
+        }
+        return true;
+    }
+
+    /** Delivers the pending notifications of the given connection, if any. */
+    void flush(int connId) throws RemoteException {
+        Batch batch;
+        synchronized (mLock) {
+            batch = mBatches.get(connId);
+        }
+        if (batch != null) {
+            flush(batch);
+        }
+    }
+
+    /** Delivers the pending notifications of the given connection and forgets it. */
+    void removeConnection(int connId) throws RemoteException {
+        Batch batch;
+        synchronized (mLock) {
+            batch = mBatches.get(connId);
+            if (batch == null) {
+                return;
+            }
+            mBatches.remove(connId);
+            mHandler.removeCallbacks(batch);
+        }
+        flush(batch);
+    }
+
+    /** Discards all pending notifications. */
+    void clear() {
+        synchronized (mLock) {
+            for (int i = 0; i < mBatches.size(); i++) {
+                mHandler.removeCallbacks(mBatches.valueAt(i));
+            }
+            mBatches.clear();
+        }
+    }
+
+    private void flush(Batch batch) throws RemoteException {
+        // Holding the batch while delivering keeps the deliveries of a connection in order.
+        synchronized (batch) {
+            int[] handles;
+            byte[][] values;
+            synchronized (mLock) {
+                if (batch.mFlushScheduled) {
+                    mHandler.removeCallbacks(batch);
+                    batch.mFlushScheduled = false;
+                }
+                if (batch.mSize == 0) {
+                    return;
+                }
+                handles = Arrays.copyOf(batch.mHandles, batch.mSize);
+                values = Arrays.copyOf(batch.mValues, batch.mSize);
+                Arrays.fill(batch.mValues, 0, batch.mSize, null);
+                batch.mSize = 0;
+            }
+            mDelivery.deliver(batch.mConnId, batch.mAddress, handles, values);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.gatt;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothStatusCodes;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.ArrayDeque;
+
+/**
+ * Queues the characteristic writes of each connection before they are sent to the stack.
+ *
+ * <p>Writes without response and prepared writes are pipelined: a connection may have up to
+ * {@code depth} of them queued or in flight, waiting for their callback. A write request, which
+ * expects a response from the remote device, is only sent once no other write of the connection is
+ * in flight, and no other write is sent until it completes. A write beyond the depth is rejected as
+ * busy. Writes are held in the queue while the connection is congested.
+ *
+ * <p>Writes are sent in the order they were accepted. Queue depth, busy rejections and throughput
+ * are tracked per connection for dumpsys.
+ */
+class WritePipeline {
+    // Write type used by GattService for prepared writes of a reliable write.
+    static final int WRITE_TYPE_PREPARED = 3;
+
+    /** Sends a write to the stack, called with the pipeline lock held to keep writes in order. */
+    interface Sender {
+        void send(int connId, int handle, int writeType, int authReq, byte[] value);
+    }
+
+    private static class Write {
+        final int mHandle;
+        final int mWriteType;
+        final int mAuthReq;
+        final byte[] mValue;
+
+        Write(int handle, int writeType, int authReq, byte[] value) {
+            mHandle = handle;
+            mWriteType = writeType;
+            mAuthReq = authReq;
+            mValue = value;
+        }
+
+        boolean isPipelined() {
+            return mWriteType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                    || mWriteType == WRITE_TYPE_PREPARED;
+        }
+    }
+
+    private static class Connection {
+        final ArrayDeque<Write> mQueue = new ArrayDeque<>();
+        int mInFlight;
+        // Whether the write in flight is a write request, which can't be pipelined.
+        boolean mExclusive;
+        boolean mCongested;
+        int mMaxQueued;
+        long mWrites;
+        long mBusy;
+        long mBytes;
+        long mFirstWriteMillis;
+        long mLastCompletionMillis;
+    }
+
+    private final Object mLock = new Object();
+    private final Sender mSender;
+
+    @GuardedBy("mLock")
+    private final SparseArray<Connection> mConnections = new SparseArray<>();
+
+    private volatile int mDepth = 1;
+
+    WritePipeline(Sender sender) {
+        mSender = sender;
+    }
+
+    /** Sets the maximum number of pipelined writes queued or in flight per connection. */
+    void setDepth(int depth) {
+        mDepth = Math.max(1, depth);
+    }
+
+    /** Accepts writes on a new connection. */
+    void addConnection(int connId) {
+        synchronized (mLock) {
+            if (mConnections.get(connId) == null) {
+                mConnections.put(connId, new Connection());
+            }
+        }
+    }
+
+    /** Drops the queued writes of a disconnected connection, and rejects any further write. */
+    void removeConnection(int connId) {
+        synchronized (mLock) {
+            mConnections.remove(connId);
+        }
+    }
+
+    /** Forgets all connections. */
+    void clear() {
+        synchronized (mLock) {
+            mConnections.clear();
+        }
+    }
+
+    /**
+     * Queues a write on a connection, and sends it right away if nothing holds it back.
+     *
+     * @return {@link BluetoothStatusCodes#SUCCESS} if the write was accepted, {@link
+     *     BluetoothStatusCodes#ERROR_GATT_WRITE_REQUEST_BUSY} if it must be retried later, or
+     *     {@link BluetoothStatusCodes#ERROR_DEVICE_NOT_CONNECTED}
+     */
+    int write(int connId, int handle, int writeType, int authReq, byte[] value) {
+        synchronized (mLock) {
+            Connection connection = mConnections.get(connId);
+            if (connection == null) {
+                return BluetoothStatusCodes.ERROR_DEVICE_NOT_CONNECTED;
+            }
+            Write write = new Write(handle, writeType, authReq, value);
+            int outstanding = connection.mInFlight + connection.mQueue.size();
+            // A write request is only accepted alone, as before pipelining.
+            if (outstanding >= (write.isPipelined() ? mDepth : 1)) {
+                connection.mBusy++;
+                return BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
+            }
+            connection.mQueue.add(write);
+            connection.mMaxQueued = Math.max(connection.mMaxQueued, connection.mQueue.size());
+            connection.mBytes += value.length;
+            if (connection.mWrites++ == 0) {
+                connection.mFirstWriteMillis = SystemClock.elapsedRealtime();
+            }
+            sendLocked(connId, connection);
+            return BluetoothStatusCodes.SUCCESS;
+        }
+    }
+
+    /** Completes the oldest write in flight on a connection and sends the next queued ones. */
+    void onWriteCompleted(int connId) {
+        synchronized (mLock) {
+            Connection connection = mConnections.get(connId);
+            if (connection == null || connection.mInFlight == 0) {
+                return;
+            }
+            connection.mInFlight--;
+            connection.mExclusive = false;
+            connection.mLastCompletionMillis = SystemClock.elapsedRealtime();
+            sendLocked(connId, connection);
+        }
+    }
+
+    /** Holds the queued writes of a congested connection, and sends them once it isn't. */
+    void setCongested(int connId, boolean congested) {
+        synchronized (mLock) {
+            Connection connection = mConnections.get(connId);
+            if (connection == null) {
+                return;
+            }
+            connection.mCongested = congested;
+            sendLocked(connId, connection);
+        }
+    }
+
+    /** Returns the number of writes queued or in flight on a connection. */
+    int getOutstanding(int connId) {
+        synchronized (mLock) {
+            Connection connection = mConnections.get(connId);
+            return connection == null ? 0 : connection.mInFlight + connection.mQueue.size();
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void sendLocked(int connId, Connection connection) {
+        while (!connection.mCongested && !connection.mExclusive) {
+            Write write = connection.mQueue.peek();
+            if (write == null || (!write.isPipelined() && connection.mInFlight > 0)) {
+                return;
+            }
+            connection.mQueue.poll();
+            connection.mInFlight++;
+            connection.mExclusive = !write.isPipelined();
+            mSender.send(connId, write.mHandle, write.mWriteType, write.mAuthReq, write.mValue);
+        }
+    }
+
+    /** Logs debug information. */
+    void dump(StringBuilder sb) {
+        synchronized (mLock) {
+            sb.append("  Depth: ").append(mDepth).append("\n");
+            for (int i = 0; i < mConnections.size(); i++) {
+                Connection connection = mConnections.valueAt(i);
+                long elapsedMillis =
+                        connection.mLastCompletionMillis - connection.mFirstWriteMillis;
+                sb.append("  connId ")
+                        .append(mConnections.keyAt(i))
+                        .append(": queued ")
+                        .append(connection.mQueue.size())
+                        .append(" (max ")
+                        .append(connection.mMaxQueued)
+                        .append("), in flight ")
+                        .append(connection.mInFlight)
+                        .append(", congested ")
+                        .append(connection.mCongested)
+                        .append(", writes ")
+                        .append(connection.mWrites)
+                        .append(", busy ")
+                        .append(connection.mBusy)
+                        .append(", bytes ")
+                        .append(connection.mBytes);
+                if (elapsedMillis > 0) {
+                    sb.append(", ").append(connection.mBytes * 1000 / elapsedMillis).append(" B/s");
+                }
+                sb.append("\n");
+            }
+        }
+    }
+}
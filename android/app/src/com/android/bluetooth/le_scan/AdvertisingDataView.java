@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import android.bluetooth.BluetoothUuid;
+import android.bluetooth.le.ScanRecord;
+
+/**
+ * Read-only view over the raw advertising data of a scan report.
+ *
+ * <p>Unlike {@link ScanRecord#parseFromBytes}, no field is copied: the view only records the
+ * offset of each AD structure the first time it is accessed, and all accessors read directly from
+ * the original array. This allows looking up AD types, manufacturer IDs and UUIDs of an
+ * advertisement without allocating, and deferring the creation of the full {@link ScanRecord} to
+ * when a client actually receives the result.
+ *
+ * <p>Parsing follows {@link ScanRecord#parseFromBytes}: it stops at the first zero length
+ * structure or at the first structure that does not fit in the data.
+ */
+class AdvertisingDataView {
+    private static final long BASE_UUID_MSB =
+            BluetoothUuid.BASE_UUID.getUuid().getMostSignificantBits();
+
+    private final byte[] mData;
+
+    // Offset of the type byte of each AD structure, lazily built.
+    private int[] mTypeOffsets;
+    private int mSize = -1;
+
+    AdvertisingDataView(byte[] data) {
+        mData = data;
+    }
+
+    /** Returns the number of AD structures. */
+    int size() {
+        ensureIndexed();
+        return mSize;
+    }
+
+    /** Returns the AD type of the structure at {@code index}. */
+    int getType(int index) {
+        ensureIndexed();
+        return mData[mTypeOffsets[index]] & 0xFF;
+    }
+
+    /** Returns the offset of the data of the structure at {@code index}. */
+    int getDataOffset(int index) {
+        ensureIndexed();
+        return mTypeOffsets[index] + 1;
+    }
+
+    /** Returns the length of the data of the structure at {@code index}, excluding its type. */
+    int getDataLength(int index) {
+        ensureIndexed();
+        return (mData[mTypeOffsets[index] - 1] & 0xFF) - 1;
+    }
+
+    /**
+     * Returns the manufacturer ID of the manufacturer specific data structure at {@code index},
+     * or -1 if the structure is not manufacturer specific data.
+     */
+    int getManufacturerId(int index) {
+        if (getType(index) != ScanRecord.DATA_TYPE_MANUFACTURER_SPECIFIC_DATA
+                || getDataLength(index) < 2) {
+            return -1;
+        }
+        int offset = getDataOffset(index);
+        return ((mData[offset + 1] & 0xFF) << 8) + (mData[offset] & 0xFF);
+    }
+
+    /**
+     * Returns the number of UUIDs carried by the structure at {@code index}. Service data
+     * structures carry a single UUID.
+     */
+    int getUuidCount(int index) {
+        int type = getType(index);
+        int width = getUuidWidth(type);
+        if (width == 0) {
+            return 0;
+        }
+        if (isServiceData(type)) {
+            return getDataLength(index) >= width ? 1 : 0;
+        }
+        return getDataLength(index) / width;
+    }
+
+    /** Returns the most significant bits of a UUID of the structure at {@code index}. */
+    long getUuidMostSignificantBits(int index, int uuidIndex) {
+        int width = getUuidWidth(getType(index));
+        int offset = getDataOffset(index) + uuidIndex * width;
+        if (width == BluetoothUuid.UUID_BYTES_128_BIT) {
+            return readLittleEndianLong(offset + 8);
+        }
+        // Same arithmetic as BluetoothUuid.parseUuidFrom.
+        long shortUuid = mData[offset] & 0xFF;
+        shortUuid += (mData[offset + 1] & 0xFF) << 8;
+        if (width == BluetoothUuid.UUID_BYTES_32_BIT) {
+            shortUuid += (mData[offset + 2] & 0xFF) << 16;
+            shortUuid += (mData[offset + 3] & 0xFF) << 24;
+        }
+        return BASE_UUID_MSB + (shortUuid << 32);
+    }
+
+    /** Returns true if the AD type is a complete or partial list of service UUIDs. */
+    static boolean isServiceUuidList(int type) {
+        return type >= ScanRecord.DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL
+                && type <= ScanRecord.DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE;
+    }
+
+    /** Returns true if the AD type is service data. */
+    static boolean isServiceData(int type) {
+        return type == ScanRecord.DATA_TYPE_SERVICE_DATA_16_BIT
+                || type == ScanRecord.DATA_TYPE_SERVICE_DATA_32_BIT
+                || type == ScanRecord.DATA_TYPE_SERVICE_DATA_128_BIT;
+    }
+
+    private static int getUuidWidth(int type) {
+        switch (type) {
+            case ScanRecord.DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL:
+            case ScanRecord.DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE:
+            case ScanRecord.DATA_TYPE_SERVICE_SOLICITATION_UUIDS_16_BIT:
+            case ScanRecord.DATA_TYPE_SERVICE_DATA_16_BIT:
+                return BluetoothUuid.UUID_BYTES_16_BIT;
+            case ScanRecord.DATA_TYPE_SERVICE_UUIDS_32_BIT_PARTIAL:
+            case ScanRecord.DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE:
+            case ScanRecord.DATA_TYPE_SERVICE_SOLICITATION_UUIDS_32_BIT:
+            case ScanRecord.DATA_TYPE_SERVICE_DATA_32_BIT:
+                return BluetoothUuid.UUID_BYTES_32_BIT;
+            case ScanRecord.DATA_TYPE_SERVICE_UUIDS_128_BIT_PARTIAL:
+            case ScanRecord.DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE:
+            case ScanRecord.DATA_TYPE_SERVICE_SOLICITATION_UUIDS_128_BIT:
+            case ScanRecord.DATA_TYPE_SERVICE_DATA_128_BIT:
+                return BluetoothUuid.UUID_BYTES_128_BIT;
+            default:
+                return 0;
+        }
+    }
+
+    private long readLittleEndianLong(int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (mData[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private void ensureIndexed() {
+        if (mSize >= 0) {
+            return;
+        }
+        int size = 0;
+        // Each structure takes at least two bytes.
+        int[] typeOffsets = new int[mData.length / 2];
+        int pos = 0;
+        while (pos < mData.length) {
+            int length = mData[pos] & 0xFF;
+            if (length == 0 || pos + length >= mData.length) {
+                break;
+            }
+            typeOffsets[size++] = pos + 1;
+            pos += length + 1;
+        }
+        mTypeOffsets = typeOffsets;
+        mSize = size;
+    }
+}
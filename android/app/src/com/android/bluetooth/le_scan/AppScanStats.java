@@ -160,6 +160,9 @@ public class AppScanStats {
     private long startTime = 0;
     private long stopTime = 0;
     private int results = 0;
+    private long mResultsQueued = 0;
+    private long mResultsDelivered = 0;
+    private long mResultsDropped = 0;
     public boolean isAppDead = false;
 
     public AppScanStats(
@@ -202,6 +205,21 @@ public class AppScanStats {
         results++;
     }
 
+    /** Records results queued for asynchronous delivery. */
+    synchronized void recordResultsQueued(int count) {
+        mResultsQueued += count;
+    }
+
+    /** Records queued results delivered to the app. */
+    synchronized void recordResultsDelivered(int count) {
+        mResultsDelivered += count;
+    }
+
+    /** Records results dropped because the app did not keep up with its queue. */
+    synchronized void recordResultsDropped(int count) {
+        mResultsDropped += count;
+    }
+
     synchronized boolean isScanning() {
         return !mOngoingScans.isEmpty();
     }
@@ -1040,6 +1058,14 @@ public class AppScanStats {
                 .append(Score);
         sb.append("\n  Total number of results                                     : ")
                 .append(results);
+        if (mResultsQueued > 0 || mResultsDropped > 0) {
+            sb.append("\n  Results Queued / Delivered / Dropped                        : ")
+                    .append(mResultsQueued)
+                    .append(" / ")
+                    .append(mResultsDelivered)
+                    .append(" / ")
+                    .append(mResultsDropped);
+        }
 
         if (!mLastScans.isEmpty()) {
             sb.append("\n  Last ")
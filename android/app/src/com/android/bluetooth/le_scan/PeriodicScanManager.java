@@ -26,14 +26,17 @@ import android.os.IBinder;
 import android.os.IInterface;
 import android.os.RemoteException;
 import android.util.Log;
+import android.util.Pair;
+import android.util.SparseArray;
 
 import com.android.bluetooth.btservice.AdapterService;
 import com.android.bluetooth.gatt.GattServiceConfig;
 import com.android.internal.annotations.VisibleForTesting;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -45,6 +48,12 @@ public class PeriodicScanManager {
     private final BluetoothAdapter mAdapter;
     private final PeriodicScanNativeInterface mNativeInterface;
     private final Map<IBinder, SyncInfo> mSyncs = new ConcurrentHashMap<>();
+    /* Indices of mSyncs, modified with it while holding its lock. Their lists, and the array of
+     * ids, are never modified but replaced, so that events of the native stack are dispatched
+     * without locking nor allocating. */
+    private volatile SparseArray<List<SyncInfo>> mSyncsById = new SparseArray<>();
+    private final Map<Pair<String, Integer>, List<SyncInfo>> mSyncsByAdvertiser =
+            new ConcurrentHashMap<>();
     private final Map<IBinder, SyncTransferInfo> mSyncTransfers =
             Collections.synchronizedMap(new HashMap<>());
     static int sTempRegistrationId = -1;
@@ -60,7 +69,11 @@ public class PeriodicScanManager {
     public void cleanup() {
         Log.d(TAG, "cleanup()");
         mNativeInterface.cleanup();
-        mSyncs.clear();
+        synchronized (mSyncs) {
+            mSyncs.clear();
+            mSyncsById = new SparseArray<>();
+            mSyncsByAdvertiser.clear();
+        }
         sTempRegistrationId = -1;
     }
 
@@ -75,16 +88,17 @@ public class PeriodicScanManager {
         }
     }
 
+    /** Sync of a client, replaced rather than modified so that it can be shared. */
     static class SyncInfo {
         /* When id is negative, the registration is ongoing. When the registration finishes, id
          * becomes equal to sync_handle */
-        public Integer id;
-        public Integer advSid;
-        public String address;
-        public Integer skip;
-        public Integer timeout;
-        public SyncDeathRecipient deathRecipient;
-        public IPeriodicAdvertisingCallback callback;
+        public final Integer id;
+        public final Integer advSid;
+        public final String address;
+        public final Integer skip;
+        public final Integer timeout;
+        public final SyncDeathRecipient deathRecipient;
+        public final IPeriodicAdvertisingCallback callback;
 
         SyncInfo(
                 Integer id,
@@ -133,45 +147,75 @@ public class PeriodicScanManager {
         }
     }
 
-    Map.Entry<IBinder, SyncInfo> findSync(int syncHandle) {
-        Map.Entry<IBinder, SyncInfo> entry = null;
-        for (Map.Entry<IBinder, SyncInfo> e : mSyncs.entrySet()) {
-            if (e.getValue().id == syncHandle) {
-                entry = e;
-                break;
-            }
+    SyncInfo findSync(int syncHandle) {
+        List<SyncInfo> syncs = findAllSync(syncHandle);
+        return syncs.isEmpty() ? null : syncs.get(0);
+    }
+
+    SyncInfo findMatchingSync(int advSid, String address) {
+        List<SyncInfo> syncs = mSyncsByAdvertiser.get(Pair.create(address, advSid));
+        return syncs == null ? null : syncs.get(0);
+    }
+
+    /** Returns the syncs of a sync handle or registration, the list must not be modified. */
+    List<SyncInfo> findAllSync(int syncHandle) {
+        List<SyncInfo> syncs = mSyncsById.get(syncHandle);
+        return syncs == null ? Collections.emptyList() : syncs;
+    }
+
+    private void putSync(IBinder binder, SyncInfo sync) {
+        synchronized (mSyncs) {
+            removeSync(binder);
+            mSyncs.put(binder, sync);
+            SparseArray<List<SyncInfo>> syncsById = mSyncsById.clone();
+            syncsById.put(sync.id, addToList(syncsById.get(sync.id), sync));
+            mSyncsById = syncsById;
+            Pair<String, Integer> advertiser = Pair.create(sync.address, sync.advSid);
+            mSyncsByAdvertiser.put(advertiser, addToList(mSyncsByAdvertiser.get(advertiser), sync));
         }
-        return entry;
     }
 
-    Map.Entry<IBinder, SyncInfo> findMatchingSync(int advSid, String address) {
-        Map.Entry<IBinder, SyncInfo> entry = null;
-        for (Map.Entry<IBinder, SyncInfo> e : mSyncs.entrySet()) {
-            if (e.getValue().advSid == advSid && e.getValue().address.equals(address)) {
-                return entry = e;
+    private SyncInfo removeSync(IBinder binder) {
+        synchronized (mSyncs) {
+            SyncInfo sync = mSyncs.remove(binder);
+            if (sync != null) {
+                SparseArray<List<SyncInfo>> syncsById = mSyncsById.clone();
+                List<SyncInfo> syncs = removeFromList(syncsById.get(sync.id), sync);
+                if (syncs == null) {
+                    syncsById.remove(sync.id);
+                } else {
+                    syncsById.put(sync.id, syncs);
+                }
+                mSyncsById = syncsById;
+                Pair<String, Integer> advertiser = Pair.create(sync.address, sync.advSid);
+                syncs = removeFromList(mSyncsByAdvertiser.get(advertiser), sync);
+                if (syncs == null) {
+                    mSyncsByAdvertiser.remove(advertiser);
+                } else {
+                    mSyncsByAdvertiser.put(advertiser, syncs);
+                }
             }
+            return sync;
         }
-        return entry;
     }
 
-    Map<IBinder, SyncInfo> findAllSync(int syncHandle) {
-        Map<IBinder, SyncInfo> syncMap = new HashMap<IBinder, SyncInfo>();
-        for (Map.Entry<IBinder, SyncInfo> e : mSyncs.entrySet()) {
-            if (e.getValue().id != syncHandle) {
-                continue;
-            }
-            syncMap.put(
-                    e.getKey(),
-                    new SyncInfo(
-                            e.getValue().id,
-                            e.getValue().advSid,
-                            e.getValue().address,
-                            e.getValue().skip,
-                            e.getValue().timeout,
-                            e.getValue().deathRecipient,
-                            e.getValue().callback));
+    private static List<SyncInfo> addToList(List<SyncInfo> syncs, SyncInfo sync) {
+        List<SyncInfo> newSyncs = new ArrayList<>(syncs == null ? 1 : syncs.size() + 1);
+        if (syncs != null) {
+            newSyncs.addAll(syncs);
+        }
+        newSyncs.add(sync);
+        return Collections.unmodifiableList(newSyncs);
+    }
+
+    /** Returns a copy of the list without the sync, or null if it would be empty. */
+    private static List<SyncInfo> removeFromList(List<SyncInfo> syncs, SyncInfo sync) {
+        if (syncs == null) {
+            return null;
         }
-        return syncMap;
+        List<SyncInfo> newSyncs = new ArrayList<>(syncs);
+        newSyncs.remove(sync);
+        return newSyncs.isEmpty() ? null : Collections.unmodifiableList(newSyncs);
     }
 
     void onSyncStarted(
@@ -184,50 +228,46 @@ public class PeriodicScanManager {
             int interval,
             int status)
             throws Exception {
-        Map<IBinder, SyncInfo> syncMap = findAllSync(regId);
-        if (syncMap.size() == 0) {
-            Log.d(TAG, "onSyncStarted() - no callback found for regId " + regId);
-            mNativeInterface.stopSync(syncHandle);
-            return;
-        }
-
         synchronized (mSyncs) {
-            Iterator<Map.Entry<IBinder, SyncInfo>> it = mSyncs.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<IBinder, SyncInfo> e = it.next();
-                if (e.getValue().id != regId) {
-                    continue;
-                }
-                IPeriodicAdvertisingCallback callback = e.getValue().callback;
+            List<SyncInfo> syncs = findAllSync(regId);
+            if (syncs.isEmpty()) {
+                Log.d(TAG, "onSyncStarted() - no callback found for regId " + regId);
+                mNativeInterface.stopSync(syncHandle);
+                return;
+            }
+
+            for (SyncInfo sync : syncs) {
+                IPeriodicAdvertisingCallback callback = sync.callback;
+                IBinder binder = toBinder(callback);
                 if (status == 0) {
                     Log.d(TAG, "onSyncStarted: updating id with syncHandle " + syncHandle);
-                    e.setValue(
+                    putSync(
+                            binder,
                             new SyncInfo(
                                     syncHandle,
                                     sid,
                                     address,
-                                    e.getValue().skip,
-                                    e.getValue().timeout,
-                                    e.getValue().deathRecipient,
+                                    sync.skip,
+                                    sync.timeout,
+                                    sync.deathRecipient,
                                     callback));
                     callback.onSyncEstablished(
                             syncHandle,
                             mAdapter.getRemoteLeDevice(address, addressType),
                             sid,
-                            e.getValue().skip,
-                            e.getValue().timeout,
+                            sync.skip,
+                            sync.timeout,
                             status);
                 } else {
                     callback.onSyncEstablished(
                             syncHandle,
                             mAdapter.getRemoteLeDevice(address, addressType),
                             sid,
-                            e.getValue().skip,
-                            e.getValue().timeout,
+                            sync.skip,
+                            sync.timeout,
                             status);
-                    IBinder binder = e.getKey();
-                    binder.unlinkToDeath(e.getValue().deathRecipient, 0);
-                    it.remove();
+                    binder.unlinkToDeath(sync.deathRecipient, 0);
+                    removeSync(binder);
                 }
             }
         }
@@ -235,45 +275,41 @@ public class PeriodicScanManager {
 
     void onSyncReport(int syncHandle, int txPower, int rssi, int dataStatus, byte[] data)
             throws Exception {
-        Map<IBinder, SyncInfo> syncMap = findAllSync(syncHandle);
-        if (syncMap.isEmpty()) {
+        List<SyncInfo> syncs = findAllSync(syncHandle);
+        if (syncs.isEmpty()) {
             Log.i(TAG, "onSyncReport() - no callback found for syncHandle " + syncHandle);
             return;
         }
-        for (Map.Entry<IBinder, SyncInfo> e : syncMap.entrySet()) {
-            IPeriodicAdvertisingCallback callback = e.getValue().callback;
-            PeriodicAdvertisingReport report =
-                    new PeriodicAdvertisingReport(
-                            syncHandle, txPower, rssi, dataStatus, ScanRecord.parseFromBytes(data));
-            callback.onPeriodicAdvertisingReport(report);
+        // The report is only read, every client of the sync gets the same one
+        PeriodicAdvertisingReport report =
+                new PeriodicAdvertisingReport(
+                        syncHandle, txPower, rssi, dataStatus, ScanRecord.parseFromBytes(data));
+        for (int i = 0; i < syncs.size(); i++) {
+            syncs.get(i).callback.onPeriodicAdvertisingReport(report);
         }
     }
 
     void onSyncLost(int syncHandle) throws Exception {
-        Map<IBinder, SyncInfo> syncMap = findAllSync(syncHandle);
-        if (syncMap.isEmpty()) {
+        List<SyncInfo> syncs = findAllSync(syncHandle);
+        if (syncs.isEmpty()) {
             Log.i(TAG, "onSyncLost() - no callback found for syncHandle " + syncHandle);
             return;
         }
-        for (Map.Entry<IBinder, SyncInfo> e : syncMap.entrySet()) {
-            IPeriodicAdvertisingCallback callback = e.getValue().callback;
-            IBinder binder = toBinder(callback);
-            synchronized (mSyncs) {
-                mSyncs.remove(binder);
-            }
+        for (SyncInfo sync : syncs) {
+            IPeriodicAdvertisingCallback callback = sync.callback;
+            removeSync(toBinder(callback));
             callback.onSyncLost(syncHandle);
         }
     }
 
     void onBigInfoReport(int syncHandle, boolean encrypted) throws Exception {
-        Map<IBinder, SyncInfo> syncMap = findAllSync(syncHandle);
-        if (syncMap.isEmpty()) {
+        List<SyncInfo> syncs = findAllSync(syncHandle);
+        if (syncs.isEmpty()) {
             Log.i(TAG, "onBigInfoReport() - no callback found for syncHandle " + syncHandle);
             return;
         }
-        for (Map.Entry<IBinder, SyncInfo> e : syncMap.entrySet()) {
-            IPeriodicAdvertisingCallback callback = e.getValue().callback;
-            callback.onBigInfoAdvertisingReport(syncHandle, encrypted);
+        for (int i = 0; i < syncs.size(); i++) {
+            syncs.get(i).callback.onBigInfoAdvertisingReport(syncHandle, encrypted);
         }
     }
 
@@ -299,28 +335,28 @@ public class PeriodicScanManager {
                         + " sid: "
                         + sid);
         synchronized (mSyncs) {
-            Map.Entry<IBinder, SyncInfo> entry = findMatchingSync(sid, address);
-            if (entry != null) {
+            SyncInfo matchingSync = findMatchingSync(sid, address);
+            if (matchingSync != null) {
                 // Found matching sync. Copy sync handle
                 Log.d(TAG, "startSync: Matching entry found");
-                mSyncs.put(
+                putSync(
                         binder,
                         new SyncInfo(
-                                entry.getValue().id,
+                                matchingSync.id,
                                 sid,
                                 address,
-                                entry.getValue().skip,
-                                entry.getValue().timeout,
+                                matchingSync.skip,
+                                matchingSync.timeout,
                                 deathRecipient,
                                 callback));
-                if (entry.getValue().id >= 0) {
+                if (matchingSync.id >= 0) {
                     try {
                         callback.onSyncEstablished(
-                                entry.getValue().id,
+                                matchingSync.id,
                                 mAdapter.getRemoteLeDevice(address, addressType),
                                 sid,
-                                entry.getValue().skip,
-                                entry.getValue().timeout,
+                                matchingSync.skip,
+                                matchingSync.timeout,
                                 0 /*success*/);
                     } catch (RemoteException e) {
                         throw new IllegalArgumentException("Can't invoke callback");
@@ -333,8 +369,7 @@ public class PeriodicScanManager {
         }
 
         int cbId = --sTempRegistrationId;
-        mSyncs.put(
-                binder, new SyncInfo(cbId, sid, address, skip, timeout, deathRecipient, callback));
+        putSync(binder, new SyncInfo(cbId, sid, address, skip, timeout, deathRecipient, callback));
 
         Log.d(TAG, "startSync() - reg_id=" + cbId + ", callback: " + binder);
         mNativeInterface.startSync(sid, address, skip, timeout, cbId);
@@ -343,10 +378,7 @@ public class PeriodicScanManager {
     public void stopSync(IPeriodicAdvertisingCallback callback) {
         IBinder binder = toBinder(callback);
         Log.d(TAG, "stopSync() " + binder);
-        SyncInfo sync = null;
-        synchronized (mSyncs) {
-            sync = mSyncs.remove(binder);
-        }
+        SyncInfo sync = removeSync(binder);
         if (sync == null) {
             Log.e(TAG, "stopSync() - no client found for callback");
             return;
@@ -356,12 +388,9 @@ public class PeriodicScanManager {
         binder.unlinkToDeath(sync.deathRecipient, 0);
         Log.d(TAG, "stopSync: " + syncHandle);
 
-        synchronized (mSyncs) {
-            Map.Entry<IBinder, SyncInfo> entry = findSync(syncHandle);
-            if (entry != null) {
-                Log.d(TAG, "stopSync() - another app synced to same PA, not stopping sync");
-                return;
-            }
+        if (findSync(syncHandle) != null) {
+            Log.d(TAG, "stopSync() - another app synced to same PA, not stopping sync");
+            return;
         }
         Log.d(TAG, "calling stopSyncNative: " + syncHandle.intValue());
         if (syncHandle < 0) {
@@ -387,14 +416,14 @@ public class PeriodicScanManager {
 
     public void transferSync(BluetoothDevice bda, int serviceData, int syncHandle) {
         Log.d(TAG, "transferSync()");
-        Map.Entry<IBinder, SyncInfo> entry = findSync(syncHandle);
-        if (entry == null) {
+        SyncInfo sync = findSync(syncHandle);
+        if (sync == null) {
             Log.d(TAG, "transferSync: callback not registered");
             return;
         }
         // check for duplicate transfers
         mSyncTransfers.put(
-                entry.getKey(), new SyncTransferInfo(bda.getAddress(), entry.getValue().callback));
+                toBinder(sync.callback), new SyncTransferInfo(bda.getAddress(), sync.callback));
         mNativeInterface.syncTransfer(bda, serviceData, syncHandle);
     }
 
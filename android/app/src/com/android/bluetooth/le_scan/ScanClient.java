@@ -32,8 +32,8 @@ public class ScanClient {
     public boolean started = false;
     public int appUid;
     public List<ScanFilter> filters;
-    // App associated with the scan client died.
-    public boolean appDied;
+    // App associated with the scan client died. Read by the threads delivering scan results.
+    public volatile boolean appDied;
     public boolean hasLocationPermission;
     public UserHandle userHandle;
     public boolean isQApp;
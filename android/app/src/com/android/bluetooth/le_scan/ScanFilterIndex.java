@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import android.annotation.Nullable;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+
+import com.android.bluetooth.Utils;
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Software scan filter matcher compiled from the filters of all regular scan clients.
+ *
+ * <p>Each filter is indexed under a single mandatory key (device address, manufacturer ID, service
+ * data UUID, unmasked service UUID or AD type, in that order of preference). A filter can only
+ * match a scan result that carries its key, so for each result only the filters registered under
+ * the keys present in the raw advertising data need to be evaluated. Filters without any indexable
+ * key are always evaluated.
+ *
+ * <p>The index is rebuilt as an immutable snapshot whenever a client is added or removed, so
+ * lookups from the scan callback thread never take a lock.
+ */
+class ScanFilterIndex {
+
+    /** A filter of a scan client. */
+    private static final class Entry {
+        final ScanClient client;
+        final ScanFilter filter;
+
+        Entry(ScanClient client, ScanFilter filter) {
+            this.client = client;
+            this.filter = filter;
+        }
+    }
+
+    /** Immutable compiled view of all registered filters. */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyList());
+
+        final Set<ScanClient> mClients = new HashSet<>();
+        final List<ScanClient> mUnfilteredClients = new ArrayList<>();
+        final LongSparseArray<List<Entry>> mByAddress = new LongSparseArray<>();
+        final SparseArray<List<Entry>> mByManufacturerId = new SparseArray<>();
+        // UUID keyed entries are indexed by the most significant bits of the UUID only.
+        final LongSparseArray<List<Entry>> mByServiceDataUuid = new LongSparseArray<>();
+        final LongSparseArray<List<Entry>> mByServiceUuid = new LongSparseArray<>();
+        final SparseArray<List<Entry>> mByAdType = new SparseArray<>();
+        final List<Entry> mUnindexed = new ArrayList<>();
+        int mFilterCount;
+
+        Snapshot(Iterable<ScanClient> clients) {
+            for (ScanClient client : clients) {
+                mClients.add(client);
+                if (client.filters == null || client.filters.isEmpty()) {
+                    mUnfilteredClients.add(client);
+                    continue;
+                }
+                for (ScanFilter filter : client.filters) {
+                    add(new Entry(client, filter));
+                }
+            }
+        }
+
+        private void add(Entry entry) {
+            ScanFilter filter = entry.filter;
+            mFilterCount++;
+            long address = Utils.getLongFromAddress(filter.getDeviceAddress());
+            if (address >= 0) {
+                addTo(mByAddress, address, entry);
+            } else if (filter.getManufacturerId() >= 0 && filter.getManufacturerData() != null) {
+                addTo(mByManufacturerId, filter.getManufacturerId(), entry);
+            } else if (filter.getServiceDataUuid() != null) {
+                addTo(
+                        mByServiceDataUuid,
+                        filter.getServiceDataUuid().getUuid().getMostSignificantBits(),
+                        entry);
+            } else if (filter.getServiceUuid() != null && filter.getServiceUuidMask() == null) {
+                addTo(
+                        mByServiceUuid,
+                        filter.getServiceUuid().getUuid().getMostSignificantBits(),
+                        entry);
+            } else if (filter.getAdvertisingDataType() > 0) {
+                addTo(mByAdType, filter.getAdvertisingDataType(), entry);
+            } else {
+                mUnindexed.add(entry);
+            }
+        }
+
+        boolean hasKeyedEntries() {
+            return mByManufacturerId.size() > 0
+                    || mByServiceDataUuid.size() > 0
+                    || mByServiceUuid.size() > 0
+                    || mByAdType.size() > 0;
+        }
+
+        private static void addTo(SparseArray<List<Entry>> index, int key, Entry entry) {
+            List<Entry> entries = index.get(key);
+            if (entries == null) {
+                entries = new ArrayList<>();
+                index.put(key, entries);
+            }
+            entries.add(entry);
+        }
+
+        private static void addTo(LongSparseArray<List<Entry>> index, long key, Entry entry) {
+            List<Entry> entries = index.get(key);
+            if (entries == null) {
+                entries = new ArrayList<>();
+                index.put(key, entries);
+            }
+            entries.add(entry);
+        }
+    }
+
+    /** Outcome of matching a single scan result against the index. */
+    static final class Matches {
+        private final Set<ScanClient> mIndexedClients;
+        private final Set<ScanClient> mMatchingClients;
+
+        private Matches(Set<ScanClient> indexedClients, Set<ScanClient> matchingClients) {
+            mIndexedClients = indexedClients;
+            mMatchingClients = matchingClients;
+        }
+
+        /**
+         * Returns true if the client was indexed when the result was matched. Clients that were
+         * not indexed must be matched with their filters directly.
+         */
+        boolean isIndexed(ScanClient client) {
+            return mIndexedClients.contains(client);
+        }
+
+        /** Returns true if the client has no filter or at least one of its filters matched. */
+        boolean matches(ScanClient client) {
+            return mMatchingClients.contains(client);
+        }
+    }
+
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private final Map<Integer, ScanClient> mClients = new HashMap<>();
+
+    private volatile Snapshot mSnapshot = Snapshot.EMPTY;
+
+    /** Compiles the filters of the given client into the index, replacing any previous entry. */
+    void addClient(ScanClient client) {
+        synchronized (mLock) {
+            mClients.put(client.scannerId, client);
+            mSnapshot = new Snapshot(mClients.values());
+        }
+    }
+
+    /** Removes the filters of the given client from the index. */
+    void removeClient(ScanClient client) {
+        synchronized (mLock) {
+            if (mClients.remove(client.scannerId) != null) {
+                mSnapshot = new Snapshot(mClients.values());
+            }
+        }
+    }
+
+    /** Removes all clients from the index. */
+    void clear() {
+        synchronized (mLock) {
+            mClients.clear();
+            mSnapshot = Snapshot.EMPTY;
+        }
+    }
+
+    /** Returns the number of compiled filters. */
+    int getFilterCount() {
+        return mSnapshot.mFilterCount;
+    }
+
+    /**
+     * Matches a scan result against all indexed filters.
+     *
+     * @param originalAddress if not null, any filter on this address matches regardless of its
+     *     other fields
+     */
+    Matches match(ScanResult result, @Nullable String originalAddress) {
+        BluetoothDevice device = result.getDevice();
+        ScanRecord record = result.getScanRecord();
+        return match(
+                new AdvertisingDataView(record == null ? new byte[0] : record.getBytes()),
+                device == null ? null : device.getAddress(),
+                originalAddress,
+                () -> result);
+    }
+
+    /**
+     * Matches an advertisement against all indexed filters.
+     *
+     * <p>Candidate filters are looked up from the raw advertising data, so the scan result is only
+     * requested from {@code result} if at least one candidate filter needs to be evaluated.
+     *
+     * @param address the address of the advertiser
+     * @param originalAddress if not null, any filter on this address matches regardless of its
+     *     other fields
+     * @param result supplies the scan result the candidate filters are evaluated against
+     */
+    Matches match(
+            AdvertisingDataView data,
+            @Nullable String address,
+            @Nullable String originalAddress,
+            Supplier<ScanResult> result) {
+        Snapshot snapshot = mSnapshot;
+        Set<ScanClient> matching = new HashSet<>(snapshot.mUnfilteredClients);
+
+        if (address != null) {
+            evaluate(
+                    snapshot.mByAddress.get(Utils.getLongFromAddress(address)), result, matching);
+        }
+        if (originalAddress != null) {
+            List<Entry> entries =
+                    snapshot.mByAddress.get(Utils.getLongFromAddress(originalAddress));
+            if (entries != null) {
+                for (Entry entry : entries) {
+                    matching.add(entry.client);
+                }
+            }
+        }
+
+        if (snapshot.hasKeyedEntries()) {
+            for (int i = 0; i < data.size(); i++) {
+                int type = data.getType(i);
+                evaluate(snapshot.mByAdType.get(type), result, matching);
+                if (type == ScanRecord.DATA_TYPE_MANUFACTURER_SPECIFIC_DATA) {
+                    evaluate(
+                            snapshot.mByManufacturerId.get(data.getManufacturerId(i)),
+                            result,
+                            matching);
+                } else if (AdvertisingDataView.isServiceData(type)) {
+                    for (int j = 0; j < data.getUuidCount(i); j++) {
+                        evaluate(
+                                snapshot.mByServiceDataUuid.get(
+                                        data.getUuidMostSignificantBits(i, j)),
+                                result,
+                                matching);
+                    }
+                } else if (AdvertisingDataView.isServiceUuidList(type)) {
+                    for (int j = 0; j < data.getUuidCount(i); j++) {
+                        evaluate(
+                                snapshot.mByServiceUuid.get(data.getUuidMostSignificantBits(i, j)),
+                                result,
+                                matching);
+                    }
+                }
+            }
+        }
+        evaluate(snapshot.mUnindexed, result, matching);
+
+        return new Matches(snapshot.mClients, matching);
+    }
+
+    private static void evaluate(
+            @Nullable List<Entry> candidates,
+            Supplier<ScanResult> result,
+            Set<ScanClient> matching) {
+        if (candidates == null) {
+            return;
+        }
+        for (Entry entry : candidates) {
+            if (!matching.contains(entry.client) && entry.filter.matches(result.get())) {
+                matching.add(entry.client);
+            }
+        }
+    }
+}
@@ -129,6 +129,7 @@ public class ScanManager {
     private Set<ScanClient> mRegularScanClients;
     private Set<ScanClient> mBatchClients;
     private Set<ScanClient> mSuspendedScanClients;
+    private final ScanFilterIndex mScanFilterIndex = new ScanFilterIndex();
     private SparseIntArray mPriorityMap = new SparseIntArray();
 
     private DisplayManager mDisplayManager;
@@ -206,6 +207,7 @@ public class ScanManager {
 
     public void cleanup() {
         mRegularScanClients.clear();
+        mScanFilterIndex.clear();
         mBatchClients.clear();
         mSuspendedScanClients.clear();
         mScanNative.cleanup();
@@ -252,6 +254,11 @@ public class ScanManager {
         return mRegularScanClients;
     }
 
+    /** Returns the software filter index of the regular scan queue. */
+    ScanFilterIndex getScanFilterIndex() {
+        return mScanFilterIndex;
+    }
+
     /** Returns the suspended scan queue. */
     Set<ScanClient> getSuspendedScanQueue() {
         return mSuspendedScanClients;
@@ -1155,6 +1162,8 @@ public class ScanManager {
             if (isFilteringSupported()) {
                 configureScanFilters(client);
             }
+            // Results are matched in software against all client filters in any case.
+            mScanFilterIndex.addClient(client);
             // Start scan native only for the first client.
             if (numRegularScanClients() == 1
                     && client.settings != null
@@ -1395,6 +1404,7 @@ public class ScanManager {
                 }
             }
             mRegularScanClients.remove(client);
+            mScanFilterIndex.removeClient(client);
             if (numRegularScanClients() == 0) {
                 Log.d(TAG, "stop gattClientScanNative");
                 mNativeInterface.gattClientScan(false);
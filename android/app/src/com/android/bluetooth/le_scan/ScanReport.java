@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+
+import java.util.Arrays;
+
+/**
+ * A single advertising report received from the native stack, shared by every scan client the
+ * report is dispatched to.
+ *
+ * <p>The remote device, the legacy (fixed-size) and extended record variants and the resulting
+ * {@link ScanResult}s are all built lazily and at most once per report, so dispatching the same
+ * advertisement to many clients does not multiply parsing and allocation cost. Filter matching
+ * works on an {@link AdvertisingDataView} of the raw data, so an advertisement nobody is
+ * interested in is never parsed into a {@link ScanRecord}. The returned
+ * {@link ScanResult}s must be treated as immutable since they are handed to every client.
+ *
+ * <p>Instances are not thread-safe and are expected to be confined to the scan callback thread.
+ */
+class ScanReport {
+    private static final int ET_LEGACY_MASK = 0x10;
+    private static final int LEGACY_ADV_DATA_LEN = 62;
+
+    final int eventType;
+    final int addressType;
+    final String address;
+    final int primaryPhy;
+    final int secondaryPhy;
+    final int advertisingSid;
+    final int txPower;
+    final int rssi;
+    final int periodicAdvInt;
+    final long timestampNanos;
+
+    /** Identity address if resolved, otherwise the original address reported by the stack. */
+    final String originalAddress;
+
+    private final byte[] mAdvData;
+
+    private AdvertisingDataView mDataView;
+    private BluetoothDevice mDevice;
+    private ScanResult mLegacyResult;
+    private ScanResult mExtendedResult;
+    private ScanFilterIndex.Matches mLegacyMatches;
+    private ScanFilterIndex.Matches mExtendedMatches;
+
+    ScanReport(
+            int eventType,
+            int addressType,
+            String address,
+            int primaryPhy,
+            int secondaryPhy,
+            int advertisingSid,
+            int txPower,
+            int rssi,
+            int periodicAdvInt,
+            byte[] advData,
+            String originalAddress,
+            long timestampNanos) {
+        this.eventType = eventType;
+        this.addressType = addressType;
+        this.address = address;
+        this.primaryPhy = primaryPhy;
+        this.secondaryPhy = secondaryPhy;
+        this.advertisingSid = advertisingSid;
+        this.txPower = txPower;
+        this.rssi = rssi;
+        this.periodicAdvInt = periodicAdvInt;
+        this.originalAddress = originalAddress;
+        this.timestampNanos = timestampNanos;
+        mAdvData = advData;
+    }
+
+    /** Returns true if the report was received from a legacy advertising PDU. */
+    boolean isLegacy() {
+        return (eventType & ET_LEGACY_MASK) != 0;
+    }
+
+    /** Returns a non-copying view over the advertising data of this report. */
+    AdvertisingDataView getDataView() {
+        if (mDataView == null) {
+            mDataView = new AdvertisingDataView(mAdvData);
+        }
+        return mDataView;
+    }
+
+    /** Returns the remote device of this report, resolving it on first use. */
+    BluetoothDevice getDevice() {
+        if (mDevice == null) {
+            mDevice = BluetoothAdapter.getDefaultAdapter().getRemoteLeDevice(address, addressType);
+        }
+        return mDevice;
+    }
+
+    /**
+     * Returns the shared scan result for this report.
+     *
+     * @param legacy whether the record should be truncated or padded to the fixed legacy
+     *     advertising size, for compatibility with applications that assume fixed size scan data
+     */
+    ScanResult getResult(boolean legacy) {
+        if (legacy) {
+            if (mLegacyResult == null) {
+                mLegacyResult =
+                        createResult(Arrays.copyOfRange(mAdvData, 0, LEGACY_ADV_DATA_LEN));
+            }
+            return mLegacyResult;
+        }
+        if (mExtendedResult == null) {
+            mExtendedResult = createResult(mAdvData);
+        }
+        return mExtendedResult;
+    }
+
+    /**
+     * Returns the clients whose filters match the shared scan result for this report, matching
+     * it against the index on first use. The scan result is only built if a candidate filter
+     * needs to be evaluated against it.
+     */
+    ScanFilterIndex.Matches getFilterMatches(ScanFilterIndex index, boolean legacy) {
+        if (legacy) {
+            if (mLegacyMatches == null) {
+                mLegacyMatches =
+                        index.match(getDataView(), address, originalAddress, () -> getResult(true));
+            }
+            return mLegacyMatches;
+        }
+        if (mExtendedMatches == null) {
+            mExtendedMatches =
+                    index.match(getDataView(), address, originalAddress, () -> getResult(false));
+        }
+        return mExtendedMatches;
+    }
+
+    private ScanResult createResult(byte[] scanRecordData) {
+        return new ScanResult(
+                getDevice(),
+                eventType,
+                primaryPhy,
+                secondaryPhy,
+                advertisingSid,
+                txPower,
+                rssi,
+                periodicAdvInt,
+                ScanRecord.parseFromBytes(scanRecordData),
+                timestampNanos);
+    }
+}
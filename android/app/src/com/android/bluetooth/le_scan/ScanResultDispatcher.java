@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import android.bluetooth.le.ScanResult;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.bluetooth.gatt.GattServiceConfig;
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Delivers the scan results of regular scan clients outside of the native callback thread.
+ *
+ * <p>Each client has a bounded queue of pending results, drained by tasks on a shared executor.
+ * At most one drain task runs per client, so a client with a slow binder or {@code PendingIntent}
+ * only delays its own results. A drain task delivers the results pending when it starts and
+ * yields the executor before delivering more, so a busy client cannot starve the others.
+ *
+ * <p>When a client queue is full, either its oldest pending result or the new result is dropped,
+ * depending on the drop policy. Queued, delivered and dropped results are accounted in the
+ * {@link AppScanStats} of the client.
+ *
+ * <p>Results may also be coalesced: a client queue is then only drained once {@code maxResults}
+ * results are pending, or {@code maxDelayMicros} after the first pending one was queued, and its
+ * results are delivered in batches of up to {@code maxResults} with a single binder transaction.
+ * Clients that can't receive batches, such as {@code PendingIntent} clients, are never coalesced.
+ *
+ * <p>The dispatcher is disabled unless asynchronous delivery or coalescing is configured, in
+ * which case the caller delivers results directly.
+ */
+class ScanResultDispatcher {
+    private static final String TAG = GattServiceConfig.TAG_PREFIX + "ScanResultDispatcher";
+
+    /** When a client queue is full, drop its oldest pending result. */
+    static final int DROP_OLDEST = 0;
+
+    /** When a client queue is full, drop the new result. */
+    static final int DROP_NEWEST = 1;
+
+    /** Delivers a batch of scan results to a client. */
+    interface Delivery {
+        /** Returns false if the results could not be delivered. */
+        boolean deliver(ScanClient client, List<ScanResult> results);
+    }
+
+    private class ClientQueue implements Runnable {
+        final ScanClient mClient;
+        final boolean mCoalesce;
+
+        @GuardedBy("mLock")
+        final ArrayDeque<ScanResult> mResults = new ArrayDeque<>();
+
+        // Whether the coalescing timer is pending.
+        @GuardedBy("mLock")
+        boolean mTimerScheduled;
+
+        // Whether a drain task is queued or running on the executor.
+        @GuardedBy("mLock")
+        boolean mDrainScheduled;
+
+        @GuardedBy("mLock")
+        long mDroppedCount;
+
+        final Runnable mDrain = () -> drain(this);
+
+        ClientQueue(ScanClient client, boolean coalesce) {
+            mClient = client;
+            mCoalesce = coalesce;
+        }
+
+        int getMaxResults() {
+            return mCoalesce ? mMaxResults : 1;
+        }
+
+        /** Coalescing timer expiry. */
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                mTimerScheduled = false;
+                scheduleDrainLocked(this);
+            }
+        }
+    }
+
+    private final Object mLock = new Object();
+    private final Handler mHandler;
+    private final Executor mExecutor;
+    private final Delivery mDelivery;
+
+    @GuardedBy("mLock")
+    private final Map<Integer, ClientQueue> mQueues = new HashMap<>();
+
+    private volatile boolean mAsyncDelivery;
+    private volatile int mMaxResults = 1;
+    private volatile long mMaxDelayMicros;
+    private volatile int mCapacity = 1;
+    private volatile int mDropPolicy = DROP_OLDEST;
+
+    /**
+     * @param looper runs the coalescing timers
+     * @param executor shared by the drain tasks of all clients
+     */
+    ScanResultDispatcher(Looper looper, Executor executor, Delivery delivery) {
+        mHandler = new Handler(looper);
+        mExecutor = executor;
+        mDelivery = delivery;
+    }
+
+    /**
+     * Updates the dispatching parameters. They apply to results queued from now on.
+     *
+     * @param asyncDelivery whether results are delivered outside of the calling thread
+     * @param maxResults results are coalesced in batches of up to this size if greater than 1
+     * @param maxDelayMicros maximum delay of a coalesced result
+     * @param capacity maximum number of pending results per client
+     * @param dropPolicy {@link #DROP_OLDEST} or {@link #DROP_NEWEST}
+     */
+    void setConfig(
+            boolean asyncDelivery,
+            int maxResults,
+            long maxDelayMicros,
+            int capacity,
+            int dropPolicy) {
+        mCapacity = Math.max(1, capacity);
+        mMaxResults = Math.max(1, Math.min(maxResults, mCapacity));
+        mMaxDelayMicros = Math.max(0, maxDelayMicros);
+        mDropPolicy = dropPolicy == DROP_NEWEST ? DROP_NEWEST : DROP_OLDEST;
+        mAsyncDelivery = asyncDelivery;
+    }
+
+    /** Returns true if scan results go through the dispatcher. */
+    boolean isEnabled() {
+        return mAsyncDelivery || mMaxResults > 1;
+    }
+
+    /**
+     * Queues a scan result for the given client.
+     *
+     * @param coalesce whether the client can receive several results at once
+     * @return false if the dispatcher is disabled for the client, in which case the caller must
+     *     deliver the result
+     */
+    boolean add(ScanClient client, ScanResult result, boolean coalesce) {
+        if (!mAsyncDelivery && (!coalesce || mMaxResults <= 1)) {
+            return false;
+        }
+        synchronized (mLock) {
+            ClientQueue queue = mQueues.get(client.scannerId);
+            if (queue == null || queue.mClient != client || queue.mCoalesce != coalesce) {
+                if (queue != null) {
+                    mHandler.removeCallbacks(queue);
+                }
+                queue = new ClientQueue(client, coalesce);
+                mQueues.put(client.scannerId, queue);
+            }
+            if (queue.mResults.size() >= mCapacity) {
+                queue.mDroppedCount++;
+                if (client.stats != null) {
+                    client.stats.recordResultsDropped(1);
+                }
+                if (mDropPolicy == DROP_NEWEST) {
+                    return true;
+                }
+                queue.mResults.pollFirst();
+            }
+            queue.mResults.addLast(result);
+            if (client.stats != null) {
+                client.stats.recordResultsQueued(1);
+            }
+            if (queue.mResults.size() >= queue.getMaxResults()) {
+                scheduleDrainLocked(queue);
+            } else if (!queue.mTimerScheduled && !queue.mDrainScheduled) {
+                // Handler timers have a millisecond resolution.
+                mHandler.postDelayed(queue, (mMaxDelayMicros + 999) / 1000);
+                queue.mTimerScheduled = true;
+            }
+        }
+        return true;
+    }
+
+    /** Discards the pending results of the given client. */
+    void removeClient(int scannerId) {
+        synchronized (mLock) {
+            ClientQueue queue = mQueues.remove(scannerId);
+            if (queue != null) {
+                mHandler.removeCallbacks(queue);
+            }
+        }
+    }
+
+    /** Discards all pending results. */
+    void clear() {
+        synchronized (mLock) {
+            for (ClientQueue queue : mQueues.values()) {
+                mHandler.removeCallbacks(queue);
+            }
+            mQueues.clear();
+        }
+    }
+
+    /** Returns the number of results dropped for the given client because it fell behind. */
+    @VisibleForTesting
+    long getDroppedCount(int scannerId) {
+        synchronized (mLock) {
+            ClientQueue queue = mQueues.get(scannerId);
+            return queue == null ? 0 : queue.mDroppedCount;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void scheduleDrainLocked(ClientQueue queue) {
+        if (queue.mTimerScheduled) {
+            mHandler.removeCallbacks(queue);
+            queue.mTimerScheduled = false;
+        }
+        if (queue.mDrainScheduled) {
+            return;
+        }
+        try {
+            mExecutor.execute(queue.mDrain);
+            queue.mDrainScheduled = true;
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Dropping " + queue.mResults.size() + " results, executor shut down");
+            queue.mResults.clear();
+        }
+    }
+
+    private void drain(ClientQueue queue) {
+        List<List<ScanResult>> batches = new ArrayList<>();
+        synchronized (mLock) {
+            if (mQueues.get(queue.mClient.scannerId) != queue) {
+                queue.mDrainScheduled = false;
+                return;
+            }
+            int maxResults = queue.getMaxResults();
+            while (!queue.mResults.isEmpty()) {
+                List<ScanResult> batch =
+                        new ArrayList<>(Math.min(maxResults, queue.mResults.size()));
+                while (batch.size() < maxResults && !queue.mResults.isEmpty()) {
+                    batch.add(queue.mResults.pollFirst());
+                }
+                batches.add(batch);
+            }
+        }
+
+        ScanClient client = queue.mClient;
+        for (List<ScanResult> batch : batches) {
+            boolean registered;
+            synchronized (mLock) {
+                registered = mQueues.get(client.scannerId) == queue;
+            }
+            // The scan may have stopped since the results were queued.
+            boolean delivered =
+                    registered && !client.appDied && mDelivery.deliver(client, batch);
+            if (client.stats == null) {
+                continue;
+            }
+            if (delivered) {
+                client.stats.recordResultsDelivered(batch.size());
+            } else {
+                Log.v(TAG, "Dropping " + batch.size() + " results for client " + client.scannerId);
+                client.stats.recordResultsDropped(batch.size());
+            }
+        }
+
+        synchronized (mLock) {
+            queue.mDrainScheduled = false;
+            if (mQueues.get(client.scannerId) != queue || queue.mResults.isEmpty()) {
+                return;
+            }
+            // More results were queued while delivering: drain them in a new task to let other
+            // clients use the executor, or wait for the coalescing timer if not enough are
+            // pending.
+            if (queue.mResults.size() >= queue.getMaxResults()) {
+                scheduleDrainLocked(queue);
+            } else if (!queue.mTimerScheduled) {
+                mHandler.postDelayed(queue, (mMaxDelayMicros + 999) / 1000);
+                queue.mTimerScheduled = true;
+            }
+        }
+    }
+}
@@ -44,6 +44,7 @@ import android.content.Intent;
 import android.net.MacAddress;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.RemoteException;
@@ -71,6 +72,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -91,12 +94,13 @@ public class TransitionalScanHelper {
 
     private static final int NUM_SCAN_EVENTS_KEPT = 20;
 
+    // Threads delivering scan results when asynchronous delivery is enabled.
+    private static final int SCAN_RESULT_DELIVERY_THREADS = 2;
+
     // onFoundLost related constants
     @VisibleForTesting static final int ADVT_STATE_ONFOUND = 0;
     private static final int ADVT_STATE_ONLOST = 1;
 
-    private static final int ET_LEGACY_MASK = 0x10;
-
     /** Keep the arguments passed in for the PendingIntent. */
     public static class PendingIntentInfo {
         public PendingIntent intent;
@@ -140,6 +144,10 @@ public class TransitionalScanHelper {
     private PeriodicScanManager mPeriodicScanManager;
     private ScanManager mScanManager;
     private AdapterService mAdapterService;
+    private Handler mScanHandler;
+    private ExecutorService mScanResultExecutor;
+    private ScanResultDispatcher mScanResultDispatcher;
+    private final Runnable mScanResultConfigCallback = this::updateScanResultDispatcherConfig;
 
     private ScannerMap mScannerMap = new ScannerMap();
     private String mExposureNotificationPackage;
@@ -201,11 +209,30 @@ public class TransitionalScanHelper {
 
         mPeriodicScanManager =
                 ScanObjectsFactory.getInstance().createPeriodicScanManager(mAdapterService);
+        mScanResultExecutor =
+                Executors.newFixedThreadPool(
+                        SCAN_RESULT_DELIVERY_THREADS,
+                        r -> new Thread(r, "BluetoothScanResultDelivery"));
+        mScanResultDispatcher =
+                new ScanResultDispatcher(
+                        looper, mScanResultExecutor, this::deliverDispatchedScanResults);
+        updateScanResultDispatcherConfig();
+        mScanHandler = new Handler(looper);
+        if (mAdapterService != null) {
+            mAdapterService.registerDeviceConfigCallback(
+                    (command) -> mScanHandler.post(command), mScanResultConfigCallback);
+        }
     }
 
     /** Stops the scanning component. */
     public void stop() {
+        if (mAdapterService != null) {
+            mAdapterService.unregisterDeviceConfigCallback(mScanResultConfigCallback);
+        }
         mScannerMap.clear();
+        if (mScanResultDispatcher != null) {
+            mScanResultDispatcher.clear();
+        }
     }
 
     /** Cleans up the scanning component. */
@@ -216,6 +243,9 @@ public class TransitionalScanHelper {
         if (mPeriodicScanManager != null) {
             mPeriodicScanManager.cleanup();
         }
+        if (mScanResultExecutor != null) {
+            mScanResultExecutor.shutdownNow();
+        }
     }
 
     /** Notifies scan manager of bluetooth profile connection state changes */
@@ -367,7 +397,21 @@ public class TransitionalScanHelper {
             originalAddress = identityAddress;
         }
 
-        byte[] legacyAdvData = Arrays.copyOfRange(advData, 0, 62);
+        ScanReport report =
+                new ScanReport(
+                        eventType,
+                        addressType,
+                        address,
+                        primaryPhy,
+                        secondaryPhy,
+                        advertisingSid,
+                        txPower,
+                        rssi,
+                        periodicAdvInt,
+                        advData,
+                        originalAddress,
+                        SystemClock.elapsedRealtimeNanos());
+        ScanFilterIndex filterIndex = mScanManager.getScanFilterIndex();
 
         for (ScanClient client : mScanManager.getRegularScanQueue()) {
             ScannerMap.ScannerApp app = mScannerMap.getById(client.scannerId);
@@ -376,38 +420,29 @@ public class TransitionalScanHelper {
                 continue;
             }
 
-            BluetoothDevice device =
-                    BluetoothAdapter.getDefaultAdapter().getRemoteLeDevice(address, addressType);
-
             ScanSettings settings = client.settings;
-            byte[] scanRecordData;
-            // This is for compatibility with applications that assume fixed size scan data.
-            if (settings.getLegacy()) {
-                if ((eventType & ET_LEGACY_MASK) == 0) {
-                    // If this is legacy scan, but nonlegacy result - skip.
-                    Log.v(TAG, "Legacy scan, non legacy result; skip.");
-                    continue;
-                } else {
-                    // Some apps are used to fixed-size advertise data.
-                    scanRecordData = legacyAdvData;
-                }
-            } else {
-                scanRecordData = advData;
+            // If this is legacy scan, but nonlegacy result - skip.
+            if (settings.getLegacy() && !report.isLegacy()) {
+                Log.v(TAG, "Legacy scan, non legacy result; skip.");
+                continue;
             }
 
-            ScanRecord scanRecord = ScanRecord.parseFromBytes(scanRecordData);
-            ScanResult result =
-                    new ScanResult(
-                            device,
-                            eventType,
-                            primaryPhy,
-                            secondaryPhy,
-                            advertisingSid,
-                            txPower,
-                            rssi,
-                            periodicAdvInt,
-                            scanRecord,
-                            SystemClock.elapsedRealtimeNanos());
+            // Filters are matched on the raw advertising data, so that the scan record is only
+            // parsed if the report is delivered to at least one client.
+            ScanFilterIndex.Matches matches =
+                    filterIndex == null
+                            ? null
+                            : report.getFilterMatches(filterIndex, settings.getLegacy());
+            if (matches != null
+                    && matches.isIndexed(client)
+                    && !matches.matches(client)
+                    && !client.eligibleForSanitizedExposureNotification) {
+                Log.v(TAG, "Skipping client: matches=false");
+                continue;
+            }
+
+            // The result is shared between all clients receiving this report.
+            ScanResult result = report.getResult(settings.getLegacy());
 
             if (client.hasDisavowedLocation) {
                 if (mLocationDenylistPredicate.test(result)) {
@@ -425,14 +460,19 @@ public class TransitionalScanHelper {
                     }
                 }
             }
+            boolean isSanitized = false;
             if (!hasPermission && client.eligibleForSanitizedExposureNotification) {
                 ScanResult sanitized = getSanitizedExposureNotification(result);
                 if (sanitized != null) {
                     hasPermission = true;
+                    isSanitized = true;
                     result = sanitized;
                 }
             }
-            boolean matchResult = matchesFilters(client, result, originalAddress);
+            boolean matchResult =
+                    (matches != null && matches.isIndexed(client) && !isSanitized)
+                            ? matches.matches(client)
+                            : matchesFilters(client, result, originalAddress);
             if (!hasPermission || !matchResult) {
                 Log.v(
                         TAG,
@@ -447,6 +487,14 @@ public class TransitionalScanHelper {
                 continue;
             }
 
+            // PendingIntent clients receive one result per intent when the scan has no report
+            // delay, so only callback clients get coalesced results.
+            if (mScanResultDispatcher != null
+                    && mScanResultDispatcher.add(client, result, app.mCallback != null)) {
+                app.mAppScanStats.addResult(client.scannerId);
+                continue;
+            }
+
             try {
                 app.mAppScanStats.addResult(client.scannerId);
                 if (app.mCallback != null) {
@@ -471,6 +519,55 @@ public class TransitionalScanHelper {
         }
     }
 
+    /** Delivers scan results queued by {@link ScanResultDispatcher} to a regular scan client. */
+    private boolean deliverDispatchedScanResults(ScanClient client, List<ScanResult> results) {
+        ScannerMap.ScannerApp app = mScannerMap.getById(client.scannerId);
+        if (app == null) {
+            Log.v(TAG, "App is null; drop queued results.");
+            return false;
+        }
+        try {
+            if (app.mCallback != null) {
+                if (results.size() == 1) {
+                    app.mCallback.onScanResult(results.get(0));
+                } else {
+                    app.mCallback.onBatchScanResults(results);
+                }
+            } else {
+                sendResultsByPendingIntent(
+                        app.mInfo,
+                        new ArrayList<>(results),
+                        ScanSettings.CALLBACK_TYPE_ALL_MATCHES);
+            }
+            return true;
+        } catch (RemoteException | PendingIntent.CanceledException e) {
+            Log.e(TAG, "Exception: " + e);
+            // Called on a delivery thread, the client is stopped on the scan thread
+            mScanHandler.post(
+                    () -> {
+                        if (Flags.leScanFixRemoteException()) {
+                            handleDeadScanClient(client);
+                        } else {
+                            mScannerMap.remove(client.scannerId);
+                            mScanManager.stopScan(client.scannerId);
+                        }
+                    });
+            return false;
+        }
+    }
+
+    private void updateScanResultDispatcherConfig() {
+        if (mScanResultDispatcher == null || mAdapterService == null) {
+            return;
+        }
+        mScanResultDispatcher.setConfig(
+                mAdapterService.getScanResultAsyncDelivery(),
+                mAdapterService.getScanResultBatchMaxResults(),
+                mAdapterService.getScanResultBatchMaxDelayMicros(),
+                mAdapterService.getScanResultBatchMaxPending(),
+                mAdapterService.getScanResultDropPolicy());
+    }
+
     private void sendResultByPendingIntent(
             PendingIntentInfo pii, ScanResult result, int callbackType, ScanClient client) {
         ArrayList<ScanResult> results = new ArrayList<>();
@@ -1212,6 +1309,7 @@ public class TransitionalScanHelper {
             app.recordScanStart(settings, filters, isFilteredScan, isCallbackScan, scannerId);
         }
 
+        updateScanResultDispatcherConfig();
         mScanManager.startScan(scanClient);
     }
 
@@ -1355,6 +1453,9 @@ public class TransitionalScanHelper {
             app.recordScanStop(scannerId);
         }
 
+        if (mScanResultDispatcher != null) {
+            mScanResultDispatcher.removeClient(scannerId);
+        }
         mScanManager.stopScan(scannerId);
     }
 
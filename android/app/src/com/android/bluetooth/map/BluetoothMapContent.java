@@ -42,6 +42,7 @@ import com.android.bluetooth.BluetoothStatsLog;
 import com.android.bluetooth.DeviceWorkArounds;
 import com.android.bluetooth.SignedLongLong;
 import com.android.bluetooth.Utils;
+import com.android.bluetooth.content_profiles.ContactLookupCache;
 import com.android.bluetooth.content_profiles.ContentProfileErrorReportUtils;
 import com.android.bluetooth.map.BluetoothMapUtils.TYPE;
 import com.android.bluetooth.map.BluetoothMapbMessageMime.MimePart;
@@ -61,6 +62,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -72,6 +74,9 @@ public class BluetoothMapContent {
 
     private static final String TAG = "BluetoothMapContent";
 
+    // Kind of the contact name lookups in the shared ContactLookupCache.
+    private static final String CONTACT_NAME_LOOKUP = "map_contact_name";
+
     // Parameter Mask for selection of parameters to return in listings
     private static final int MASK_SUBJECT = 0x00000001;
     @VisibleForTesting static final int MASK_DATETIME = 0x00000002;
@@ -338,6 +343,19 @@ public class BluetoothMapContent {
         public int mContactColPresenceText = -1;
         public int mContactColPriority = -1;
 
+        /**
+         * Returns a filter info for one message type, sharing the phone info of this one but with
+         * its own cursor columns.
+         */
+        FilterInfo forType(int msgType) {
+            FilterInfo fi = new FilterInfo();
+            fi.mMsgType = msgType;
+            fi.mPhoneType = mPhoneType;
+            fi.mPhoneNum = mPhoneNum;
+            fi.mPhoneAlphaTag = mPhoneAlphaTag;
+            return fi;
+        }
+
         public void setMessageColumns(Cursor c) {
             mMessageColId = c.getColumnIndex(BluetoothMapContract.MessageColumns._ID);
             mMessageColDate = c.getColumnIndex(BluetoothMapContract.MessageColumns.DATE);
@@ -1314,6 +1332,65 @@ public class BluetoothMapContent {
         return e;
     }
 
+    /**
+     * Returns the listing elements of a message cursor, skipping the messages that don't match
+     * the address filters if {@code filterAddresses} is set. {@code fi} must be the filter info of
+     * the cursor's message type, with its columns set.
+     */
+    private MessageListingMerger.Source listingSource(
+            Cursor c, boolean filterAddresses, FilterInfo fi, BluetoothMapAppParams ap) {
+        return () -> {
+            while (c.moveToNext()) {
+                if (!filterAddresses || matchAddresses(c, fi, ap)) {
+                    BluetoothMapUtils.printCursor(c);
+                    return element(c, fi, ap);
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Returns whether a message listing query has unread messages, for the NewMessage flag of a
+     * listing that only read the rows of its page. Only the existence of an unread message is
+     * queried, unless the addresses must be matched on the unread rows.
+     */
+    private boolean hasUnread(
+            Uri uri,
+            String[] projection,
+            String where,
+            String readColumn,
+            String dateColumn,
+            boolean filterAddresses,
+            FilterInfo fi,
+            BluetoothMapAppParams ap) {
+        Cursor c =
+                BluetoothMethodProxy.getInstance()
+                        .contentResolverQuery(
+                                mResolver,
+                                uri,
+                                filterAddresses ? projection : new String[] {BaseColumns._ID},
+                                where + " AND " + readColumn + "=0",
+                                null,
+                                dateColumn + " DESC" + (filterAddresses ? "" : " LIMIT 1"));
+        if (c == null) {
+            return false;
+        }
+        try {
+            if (!filterAddresses) {
+                return c.getCount() > 0;
+            }
+            while (c.moveToNext()) {
+                if (matchAddresses(c, fi, ap)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            c.close();
+        }
+    }
+
     private BluetoothMapConvoListingElement createConvoElement(Cursor c, FilterInfo fi) {
         BluetoothMapConvoListingElement e = new BluetoothMapConvoListingElement();
         setLastActivity(e, c, fi);
@@ -1322,9 +1399,20 @@ public class BluetoothMapContent {
         return e;
     }
 
-    /* TODO: Change to use SmsMmsContacts.getContactNameFromPhone() with proper use of
-     *       caching. */
+    /**
+     * Returns the display name of the contact with the given phone number, or null. Names are
+     * cached while the MAP service runs, so a listing only looks up each distinct number once.
+     */
     public static String getContactNameFromPhone(String phone, ContentResolver resolver) {
+        return ContactLookupCache.getInstance()
+                .get(
+                        resolver,
+                        CONTACT_NAME_LOOKUP,
+                        phone,
+                        number -> queryContactNameFromPhone(number, resolver));
+    }
+
+    private static String queryContactNameFromPhone(String phone, ContentResolver resolver) {
         String name = null;
         // Handle possible exception for empty phone address
         if (TextUtils.isEmpty(phone)) {
@@ -2171,99 +2259,98 @@ public class BluetoothMapContent {
         Cursor mmsCursor = null;
         Cursor emailCursor = null;
         Cursor imCursor = null;
+        // Each message type has its own filter info, set up with the columns of its cursor.
+        FilterInfo smsFi = fi.forType(FilterInfo.TYPE_SMS);
+        FilterInfo mmsFi = fi.forType(FilterInfo.TYPE_MMS);
+        FilterInfo emailFi = fi.forType(FilterInfo.TYPE_EMAIL);
+        FilterInfo imFi = fi.forType(FilterInfo.TYPE_IM);
+        String smsWhere = null;
+        String mmsWhere = null;
+        String emailWhere = null;
+        String imWhere = null;
+        List<MessageListingMerger.Source> sources = new ArrayList<>();
         String limit = "";
         int offsetNum = ap.getStartOffset();
         if (ap.getMaxListCount() > 0) {
             limit = " LIMIT " + (ap.getMaxListCount() + ap.getStartOffset());
         }
+        // SMS and MMS addresses are matched here rather than by the provider, so the provider
+        // can't limit these queries. The merge still stops reading once the page is complete.
+        boolean filterAddresses =
+                !TextUtils.isEmpty(ap.getFilterOriginator())
+                        || !TextUtils.isEmpty(ap.getFilterRecipient());
         try {
             if (smsSelected(fi, ap) && folderElement.hasSmsMmsContent()) {
-                if (ap.getFilterMessageType()
-                                == (BluetoothMapAppParams.FILTER_NO_EMAIL
-                                        | BluetoothMapAppParams.FILTER_NO_MMS
-                                        | BluetoothMapAppParams.FILTER_NO_SMS_GSM
-                                        | BluetoothMapAppParams.FILTER_NO_IM)
-                        || ap.getFilterMessageType()
-                                == (BluetoothMapAppParams.FILTER_NO_EMAIL
-                                        | BluetoothMapAppParams.FILTER_NO_MMS
-                                        | BluetoothMapAppParams.FILTER_NO_SMS_CDMA
-                                        | BluetoothMapAppParams.FILTER_NO_IM)) {
+                if (!filterAddresses
+                        && (ap.getFilterMessageType()
+                                        == (BluetoothMapAppParams.FILTER_NO_EMAIL
+                                                | BluetoothMapAppParams.FILTER_NO_MMS
+                                                | BluetoothMapAppParams.FILTER_NO_SMS_GSM
+                                                | BluetoothMapAppParams.FILTER_NO_IM)
+                                || ap.getFilterMessageType()
+                                        == (BluetoothMapAppParams.FILTER_NO_EMAIL
+                                                | BluetoothMapAppParams.FILTER_NO_MMS
+                                                | BluetoothMapAppParams.FILTER_NO_SMS_CDMA
+                                                | BluetoothMapAppParams.FILTER_NO_IM))) {
                     // set real limit and offset if only this type is used
                     // (only if offset/limit is used)
                     limit = " LIMIT " + ap.getMaxListCount() + " OFFSET " + ap.getStartOffset();
                     Log.d(TAG, "SMS Limit => " + limit);
                     offsetNum = 0;
                 }
-                fi.mMsgType = FilterInfo.TYPE_SMS;
                 if (ap.getFilterPriority() != 1) {
                     /*SMS cannot have high priority*/
-                    String where = setWhereFilter(folderElement, fi, ap);
-                    Log.d(TAG, "msgType: " + fi.mMsgType + " where: " + where);
+                    smsWhere = setWhereFilter(folderElement, smsFi, ap);
+                    Log.d(TAG, "msgType: " + smsFi.mMsgType + " where: " + smsWhere);
                     smsCursor =
                             BluetoothMethodProxy.getInstance()
                                     .contentResolverQuery(
                                             mResolver,
                                             Sms.CONTENT_URI,
                                             SMS_PROJECTION,
-                                            where,
+                                            smsWhere,
                                             null,
-                                            Sms.DATE + " DESC" + limit);
+                                            Sms.DATE + " DESC" + (filterAddresses ? "" : limit));
                     if (smsCursor != null) {
-                        BluetoothMapMessageListingElement e = null;
                         // store column index so we dont have to look them up anymore (optimization)
-                        Log.d(TAG, "Found " + smsCursor.getCount() + " sms messages.");
-                        fi.setSmsColumns(smsCursor);
-                        while (smsCursor.moveToNext()) {
-                            if (matchAddresses(smsCursor, fi, ap)) {
-                                BluetoothMapUtils.printCursor(smsCursor);
-                                e = element(smsCursor, fi, ap);
-                                bmList.add(e);
-                            }
-                        }
+                        smsFi.setSmsColumns(smsCursor);
+                        sources.add(listingSource(smsCursor, filterAddresses, smsFi, ap));
                     }
                 }
             }
 
             if (mmsSelected(ap) && folderElement.hasSmsMmsContent()) {
-                if (ap.getFilterMessageType()
-                        == (BluetoothMapAppParams.FILTER_NO_EMAIL
-                                | BluetoothMapAppParams.FILTER_NO_SMS_CDMA
-                                | BluetoothMapAppParams.FILTER_NO_SMS_GSM
-                                | BluetoothMapAppParams.FILTER_NO_IM)) {
+                if (!filterAddresses
+                        && ap.getFilterMessageType()
+                                == (BluetoothMapAppParams.FILTER_NO_EMAIL
+                                        | BluetoothMapAppParams.FILTER_NO_SMS_CDMA
+                                        | BluetoothMapAppParams.FILTER_NO_SMS_GSM
+                                        | BluetoothMapAppParams.FILTER_NO_IM)) {
                     // set real limit and offset if only this type is used
                     // (only if offset/limit is used)
                     limit = " LIMIT " + ap.getMaxListCount() + " OFFSET " + ap.getStartOffset();
                     Log.d(TAG, "MMS Limit => " + limit);
                     offsetNum = 0;
                 }
-                fi.mMsgType = FilterInfo.TYPE_MMS;
-                String where =
-                        setWhereFilter(folderElement, fi, ap)
+                mmsWhere =
+                        setWhereFilter(folderElement, mmsFi, ap)
                                 + " AND "
                                 + INTERESTED_MESSAGE_TYPE_CLAUSE;
-                if (!where.isEmpty()) {
-                    Log.d(TAG, "msgType: " + fi.mMsgType + " where: " + where);
+                if (!mmsWhere.isEmpty()) {
+                    Log.d(TAG, "msgType: " + mmsFi.mMsgType + " where: " + mmsWhere);
                     mmsCursor =
                             BluetoothMethodProxy.getInstance()
                                     .contentResolverQuery(
                                             mResolver,
                                             Mms.CONTENT_URI,
                                             MMS_PROJECTION,
-                                            where,
+                                            mmsWhere,
                                             null,
-                                            Mms.DATE + " DESC" + limit);
+                                            Mms.DATE + " DESC" + (filterAddresses ? "" : limit));
                     if (mmsCursor != null) {
-                        BluetoothMapMessageListingElement e = null;
                         // store column index so we dont have to look them up anymore (optimization)
-                        fi.setMmsColumns(mmsCursor);
-                        Log.d(TAG, "Found " + mmsCursor.getCount() + " mms messages.");
-                        while (mmsCursor.moveToNext()) {
-                            if (matchAddresses(mmsCursor, fi, ap)) {
-                                BluetoothMapUtils.printCursor(mmsCursor);
-                                e = element(mmsCursor, fi, ap);
-                                bmList.add(e);
-                            }
-                        }
+                        mmsFi.setMmsColumns(mmsCursor);
+                        sources.add(listingSource(mmsCursor, filterAddresses, mmsFi, ap));
                     }
                 }
             }
@@ -2280,11 +2367,10 @@ public class BluetoothMapContent {
                     Log.d(TAG, "Email Limit => " + limit);
                     offsetNum = 0;
                 }
-                fi.mMsgType = FilterInfo.TYPE_EMAIL;
-                String where = setWhereFilter(folderElement, fi, ap);
+                emailWhere = setWhereFilter(folderElement, emailFi, ap);
 
-                if (!where.isEmpty()) {
-                    Log.d(TAG, "msgType: " + fi.mMsgType + " where: " + where);
+                if (!emailWhere.isEmpty()) {
+                    Log.d(TAG, "msgType: " + emailFi.mMsgType + " where: " + emailWhere);
                     Uri contentUri = Uri.parse(mBaseUri + BluetoothMapContract.TABLE_MESSAGE);
                     emailCursor =
                             BluetoothMethodProxy.getInstance()
@@ -2292,22 +2378,15 @@ public class BluetoothMapContent {
                                             mResolver,
                                             contentUri,
                                             BluetoothMapContract.BT_MESSAGE_PROJECTION,
-                                            where,
+                                            emailWhere,
                                             null,
                                             BluetoothMapContract.MessageColumns.DATE
                                                     + " DESC"
                                                     + limit);
                     if (emailCursor != null) {
-                        BluetoothMapMessageListingElement e = null;
                         // store column index so we dont have to look them up anymore (optimization)
-                        fi.setEmailMessageColumns(emailCursor);
-                        Log.d(TAG, "Found " + emailCursor.getCount() + " email messages.");
-                        while (emailCursor.moveToNext()) {
-                            BluetoothMapUtils.printCursor(emailCursor);
-                            e = element(emailCursor, fi, ap);
-                            bmList.add(e);
-                        }
-                        //   emailCursor.close();
+                        emailFi.setEmailMessageColumns(emailCursor);
+                        sources.add(listingSource(emailCursor, false, emailFi, ap));
                     }
                 }
             }
@@ -2324,9 +2403,8 @@ public class BluetoothMapContent {
                     Log.d(TAG, "IM Limit => " + limit);
                     offsetNum = 0;
                 }
-                fi.mMsgType = FilterInfo.TYPE_IM;
-                String where = setWhereFilter(folderElement, fi, ap);
-                Log.d(TAG, "msgType: " + fi.mMsgType + " where: " + where);
+                imWhere = setWhereFilter(folderElement, imFi, ap);
+                Log.d(TAG, "msgType: " + imFi.mMsgType + " where: " + imWhere);
 
                 Uri contentUri = Uri.parse(mBaseUri + BluetoothMapContract.TABLE_MESSAGE);
                 imCursor =
@@ -2335,28 +2413,67 @@ public class BluetoothMapContent {
                                         mResolver,
                                         contentUri,
                                         BluetoothMapContract.BT_INSTANT_MESSAGE_PROJECTION,
-                                        where,
+                                        imWhere,
                                         null,
                                         BluetoothMapContract.MessageColumns.DATE + " DESC" + limit);
                 if (imCursor != null) {
-                    BluetoothMapMessageListingElement e = null;
                     // store column index so we dont have to look them up anymore (optimization)
-                    fi.setImMessageColumns(imCursor);
-                    Log.d(TAG, "Found " + imCursor.getCount() + " im messages.");
-                    while (imCursor.moveToNext()) {
-                        BluetoothMapUtils.printCursor(imCursor);
-                        e = element(imCursor, fi, ap);
-                        bmList.add(e);
-                    }
+                    imFi.setImMessageColumns(imCursor);
+                    sources.add(listingSource(imCursor, false, imFi, ap));
                 }
             }
 
-            /* Enable this if post sorting and segmenting needed */
-            bmList.sort();
-            bmList.segment(ap.getMaxListCount(), offsetNum);
+            // Every cursor is sorted by date, merge them into the requested page only.
+            MessageListingMerger.merge(sources, offsetNum, ap.getMaxListCount(), bmList);
+            // The NewMessage flag covers every message matching the filters, not just the page.
+            if (!bmList.hasUnread()) {
+                Uri contentUri = Uri.parse(mBaseUri + BluetoothMapContract.TABLE_MESSAGE);
+                bmList.setHasUnread(
+                        (smsCursor != null
+                                        && hasUnread(
+                                                Sms.CONTENT_URI,
+                                                SMS_PROJECTION,
+                                                smsWhere,
+                                                Sms.READ,
+                                                Sms.DATE,
+                                                filterAddresses,
+                                                smsFi,
+                                                ap))
+                                || (mmsCursor != null
+                                        && hasUnread(
+                                                Mms.CONTENT_URI,
+                                                MMS_PROJECTION,
+                                                mmsWhere,
+                                                Mms.READ,
+                                                Mms.DATE,
+                                                filterAddresses,
+                                                mmsFi,
+                                                ap))
+                                || (emailCursor != null
+                                        && hasUnread(
+                                                contentUri,
+                                                BluetoothMapContract.BT_MESSAGE_PROJECTION,
+                                                emailWhere,
+                                                BluetoothMapContract.MessageColumns.FLAG_READ,
+                                                BluetoothMapContract.MessageColumns.DATE,
+                                                false,
+                                                emailFi,
+                                                ap))
+                                || (imCursor != null
+                                        && hasUnread(
+                                                contentUri,
+                                                BluetoothMapContract.BT_INSTANT_MESSAGE_PROJECTION,
+                                                imWhere,
+                                                BluetoothMapContract.MessageColumns.FLAG_READ,
+                                                BluetoothMapContract.MessageColumns.DATE,
+                                                false,
+                                                imFi,
+                                                ap)));
+            }
             List<BluetoothMapMessageListingElement> list = bmList.getList();
             int listSize = list.size();
             Cursor tmpCursor = null;
+            FilterInfo tmpFi = fi;
             for (int x = 0; x < listSize; x++) {
                 BluetoothMapMessageListingElement ele = list.get(x);
                 /* If OBEX "GET" request header includes "ParameterMask" with 'Type' NOT set,
@@ -2366,36 +2483,36 @@ public class BluetoothMapContent {
                 if (smsCursor != null
                         && ((TYPE.SMS_GSM).equals(tmpType) || (TYPE.SMS_CDMA).equals(tmpType))) {
                     tmpCursor = smsCursor;
-                    fi.mMsgType = FilterInfo.TYPE_SMS;
+                    tmpFi = smsFi;
                 } else if (mmsCursor != null && (TYPE.MMS).equals(tmpType)) {
                     tmpCursor = mmsCursor;
-                    fi.mMsgType = FilterInfo.TYPE_MMS;
+                    tmpFi = mmsFi;
                 } else if (emailCursor != null && ((TYPE.EMAIL).equals(tmpType))) {
                     tmpCursor = emailCursor;
-                    fi.mMsgType = FilterInfo.TYPE_EMAIL;
+                    tmpFi = emailFi;
                 } else if (imCursor != null && ((TYPE.IM).equals(tmpType))) {
                     tmpCursor = imCursor;
-                    fi.mMsgType = FilterInfo.TYPE_IM;
+                    tmpFi = imFi;
                 }
                 if (tmpCursor != null) {
                     tmpCursor.moveToPosition(ele.getCursorIndex());
-                    setSenderAddressing(ele, tmpCursor, fi, ap);
-                    setSenderName(ele, tmpCursor, fi, ap);
-                    setRecipientAddressing(ele, tmpCursor, fi, ap);
-                    setRecipientName(ele, tmpCursor, fi, ap);
-                    setSubject(ele, tmpCursor, fi, ap);
-                    setSize(ele, tmpCursor, fi, ap);
-                    setText(ele, tmpCursor, fi, ap);
-                    setPriority(ele, tmpCursor, fi, ap);
-                    setSent(ele, tmpCursor, fi, ap);
-                    setProtected(ele, tmpCursor, fi, ap);
+                    setSenderAddressing(ele, tmpCursor, tmpFi, ap);
+                    setSenderName(ele, tmpCursor, tmpFi, ap);
+                    setRecipientAddressing(ele, tmpCursor, tmpFi, ap);
+                    setRecipientName(ele, tmpCursor, tmpFi, ap);
+                    setSubject(ele, tmpCursor, tmpFi, ap);
+                    setSize(ele, tmpCursor, tmpFi, ap);
+                    setText(ele, tmpCursor, tmpFi, ap);
+                    setPriority(ele, tmpCursor, tmpFi, ap);
+                    setSent(ele, tmpCursor, tmpFi, ap);
+                    setProtected(ele, tmpCursor, tmpFi, ap);
                     setReceptionStatus(ele, ap);
-                    setAttachment(ele, tmpCursor, fi, ap);
+                    setAttachment(ele, tmpCursor, tmpFi, ap);
 
                     if (mMsgListingVersion > BluetoothMapUtils.MAP_MESSAGE_LISTING_FORMAT_V10) {
-                        setDeliveryStatus(ele, tmpCursor, fi, ap);
-                        setThreadId(ele, tmpCursor, fi, ap);
-                        setThreadName(ele, tmpCursor, fi, ap);
+                        setDeliveryStatus(ele, tmpCursor, tmpFi, ap);
+                        setThreadId(ele, tmpCursor, tmpFi, ap);
+                        setThreadName(ele, tmpCursor, tmpFi, ap);
                     }
                 }
             }
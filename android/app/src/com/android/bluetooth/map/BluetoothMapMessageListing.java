@@ -73,6 +73,11 @@ public class BluetoothMapMessageListing {
         return mHasUnread;
     }
 
+    /** Records unread messages that matched the listing filters but were not added to it. */
+    void setHasUnread(boolean hasUnread) {
+        mHasUnread = hasUnread;
+    }
+
     /**
      * returns the entire list as a list
      *
@@ -57,6 +57,7 @@ import com.android.bluetooth.btservice.AdapterService;
 import com.android.bluetooth.btservice.MetricsLogger;
 import com.android.bluetooth.btservice.ProfileService;
 import com.android.bluetooth.btservice.storage.DatabaseManager;
+import com.android.bluetooth.content_profiles.ContactLookupCache;
 import com.android.bluetooth.content_profiles.ContentProfileErrorReportUtils;
 import com.android.internal.annotations.VisibleForTesting;
 
@@ -711,6 +712,7 @@ public class BluetoothMapService extends ProfileService {
         }
         mAdapterService = AdapterService.getAdapterService();
         mAppObserver = new BluetoothMapAppObserver(this, this);
+        ContactLookupCache.getInstance().register(getContentResolver());
 
         TelephonyManager tm = getSystemService(TelephonyManager.class);
         mSmsCapable = tm.isSmsCapable();
@@ -895,6 +897,7 @@ public class BluetoothMapService extends ProfileService {
         }
         setBluetoothMapService(null);
         mServiceStarted = false;
+        ContactLookupCache.getInstance().unregister();
         if (mRegisteredMapReceiver) {
             mRegisteredMapReceiver = false;
             unregisterReceiver(mMapReceiver);
@@ -1462,6 +1465,7 @@ public class BluetoothMapService extends ProfileService {
         println(sb, "mRemoteDevice: " + mRemoteDevice);
         println(sb, "mState: " + mState);
         println(sb, "mAppObserver: " + mAppObserver);
+        println(sb, "mContactLookupCache: " + ContactLookupCache.getInstance());
         println(sb, "mIsWaitingAuthorization: " + mIsWaitingAuthorization);
         println(sb, "mRemoveTimeoutMsg: " + mRemoveTimeoutMsg);
         println(sb, "mPermission: " + mPermission);
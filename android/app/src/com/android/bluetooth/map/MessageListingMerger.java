@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.map;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds one page of a message listing out of several sources, e.g. one per message type.
+ *
+ * <p>Each source must return its elements in listing order, newest first, as the message queries
+ * do. The sources are merged with a k-way merge, so only the first {@code offset + count}
+ * elements of the listing are ever read. Elements with the same date are listed in the order of
+ * their sources, as a stable sort of the concatenated sources would.
+ */
+class MessageListingMerger {
+    /** A sorted stream of listing elements. */
+    interface Source {
+        /** Returns the next element, or null once the source is exhausted. */
+        BluetoothMapMessageListingElement next();
+    }
+
+    private static class Head implements Comparable<Head> {
+        final Source mSource;
+        final int mIndex;
+        BluetoothMapMessageListingElement mElement;
+
+        Head(Source source, int index, BluetoothMapMessageListingElement element) {
+            mSource = source;
+            mIndex = index;
+            mElement = element;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int result = mElement.compareTo(other.mElement);
+            return result != 0 ? result : Integer.compare(mIndex, other.mIndex);
+        }
+    }
+
+    private MessageListingMerger() {}
+
+    /**
+     * Adds a page of the merged sources to the given listing.
+     *
+     * @param offset number of leading elements to skip
+     * @param count maximum number of elements to add, all remaining elements if not positive
+     */
+    static void merge(
+            List<Source> sources, int offset, int count, BluetoothMapMessageListing listing) {
+        PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, sources.size()));
+        for (int i = 0; i < sources.size(); i++) {
+            Source source = sources.get(i);
+            BluetoothMapMessageListingElement element = source.next();
+            if (element != null) {
+                heads.add(new Head(source, i, element));
+            }
+        }
+        offset = Math.max(0, offset);
+        long end = count > 0 ? (long) offset + count : Long.MAX_VALUE;
+        for (long position = 0; position < end && !heads.isEmpty(); position++) {
+            Head head = heads.poll();
+            BluetoothMapMessageListingElement element = head.mElement;
+            if (position >= offset) {
+                listing.add(element);
+            } else if (!element.getReadBool()) {
+                // Skipped elements were part of the listing before it was segmented.
+                listing.setHasUnread(true);
+            }
+            head.mElement = head.mSource.next();
+            if (head.mElement != null) {
+                heads.add(head);
+            }
+        }
+    }
+}
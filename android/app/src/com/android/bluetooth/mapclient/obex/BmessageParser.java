@@ -29,7 +29,9 @@ import com.android.vcard.exception.VCardException;
 import com.android.vcard.exception.VCardVersionException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 
@@ -70,12 +72,20 @@ class BmessageParser {
     }
 
     public static Bmessage createBmessage(String str) {
-        BmessageParser p = new BmessageParser();
-
         Log.d(TAG, "actual wired contents: " + str);
 
+        return createBmessage(new ByteArrayInputStream(str.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Parses a bMessage while reading it from {@code in}. The message body is decoded directly
+     * from its bytes, without holding the whole bMessage in memory.
+     */
+    public static Bmessage createBmessage(InputStream in) {
+        BmessageParser p = new BmessageParser();
+
         try {
-            p.parse(str);
+            p.parse(in);
         } catch (IOException e) {
             Log.e(TAG, "I/O exception when parsing bMessage", e);
             return null;
@@ -102,14 +112,14 @@ class BmessageParser {
         return new ParseException("Expected: " + sb.toString(), mParser.pos());
     }
 
-    private void parse(String str) throws IOException, ParseException {
+    private void parse(InputStream in) throws IOException, ParseException {
         Property prop;
 
         /*
          * <bmessage-object>::= { "BEGIN:BMSG" <CRLF> <bmessage-property>
          * [<bmessage-originator>]* <bmessage-envelope> "END:BMSG" <CRLF> }
          */
-        mParser = new BmsgTokenizer(str + CRLF);
+        mParser = new BmsgTokenizer(in);
 
         prop = mParser.next();
         if (!prop.equals(BEGIN_BMSG)) {
@@ -145,7 +155,7 @@ class BmessageParser {
         mParser = null;
     }
 
-    private Property parseProperties() throws ParseException {
+    private Property parseProperties() throws IOException, ParseException {
         Property prop;
         /*
          * <bmessage-property>::=<bmessage-version-property>
@@ -300,23 +310,21 @@ class BmessageParser {
 
         int messageLen = mBmsg.mBbodyLength - MSG_CONTAINER_LEN;
         int offset = messageLen + CRLF_LEN;
-        int restartPos = mParser.pos() + offset;
-        /*
-         * length is specified in bytes so we need to convert from unicode
-         * string back to bytes array
-         */
-        String remng = mParser.remaining();
-        byte[] data = remng.getBytes();
-
-        if (offset < 0 || offset > data.length) {
+        if (messageLen < 0) {
             /* Handle possible exception for incorrect LENGTH value
              * from MSE while parsing end of props */
             throw new ParseException("Invalid LENGTH value", mParser.pos());
         }
 
-        /* restart parsing from after 'message'<CRLF> */
-        mParser = new BmsgTokenizer(new String(data, offset, data.length - offset), restartPos);
+        /* length is specified in bytes, read 'message'<CRLF> as is */
+        byte[] data = new byte[offset];
+        if (mParser.read(data) < offset) {
+            throw new ParseException("Invalid LENGTH value", mParser.pos());
+        }
 
+        // Keeps the bytes following 'message' in case LENGTH is a number of characters.
+        ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        mParser.setRecorder(tail);
         prop = mParser.next(true);
 
         if (prop != null) {
@@ -334,26 +342,29 @@ class BmessageParser {
                 throw expected(END_MSG);
             }
         } else {
-            data = null;
-
             /*
              * now we check if bMessage can be parsed if LENGTH is handled as
              * number of characters instead of number of bytes
              */
-            if (offset < 0 || offset > remng.length()) {
-                /* Handle possible exception for incorrect LENGTH value
-                 * from MSE while parsing  GET Message response */
-                throw new ParseException("Invalid LENGTH value", mParser.pos());
-            }
-
             Log.w(TAG, "byte LENGTH seems to be invalid, trying with char length");
 
-            mParser = new BmsgTokenizer(remng.substring(offset));
-
-            prop = mParser.next();
+            while (prop == null || !prop.equals(END_MSG)) {
+                if (mParser.isAtEnd()) {
+                    throw expected(END_MSG);
+                }
+                prop = mParser.next(true);
+            }
+            ByteArrayOutputStream remaining = new ByteArrayOutputStream(offset + tail.size());
+            remaining.write(data, 0, offset);
+            tail.writeTo(remaining);
+            data = null;
+            String remng = new String(remaining.toByteArray(), StandardCharsets.UTF_8);
 
-            if (!prop.equals(END_MSG)) {
-                throw expected(END_MSG);
+            if (offset > remng.length()
+                    || !remng.substring(offset).trim().equals(END_MSG.toString())) {
+                /* Handle possible exception for incorrect LENGTH value
+                 * from MSE while parsing  GET Message response */
+                throw new ParseException("Invalid LENGTH value", mParser.pos());
             }
 
             if ("UTF-8".equals(mBmsg.mBbodyCharset)) {
@@ -362,6 +373,7 @@ class BmessageParser {
                 mBmsg.mMessage = null;
             }
         }
+        mParser.setRecorder(null);
 
         prop = mParser.next();
 
@@ -18,65 +18,158 @@ package com.android.bluetooth.mapclient;
 
 import android.util.Log;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Reads the <CRLF> terminated properties of a bMessage directly from its bytes, so that the
+ * message body in between can be read as bytes without decoding the whole bMessage.
+ */
 public final class BmsgTokenizer {
     private static final String TAG = BmsgTokenizer.class.getSimpleName();
 
-    private final String mStr;
+    private static final int BUFFER_SIZE = 8192;
 
-    private final Matcher mMatcher;
-    private final int mOffset;
-    private int mPos = 0;
+    private final InputStream mIn;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mBufferPos;
+    private int mBufferEnd;
+    private boolean mEndOfStream;
 
-    public BmsgTokenizer(String str) {
-        this(str, 0);
-    }
+    // Last line read, without its <CRLF>.
+    private byte[] mLine = new byte[256];
+    private int mLineLength;
 
-    public BmsgTokenizer(String str, int offset) {
-        mStr = str;
-        mOffset = offset;
-        mMatcher = Pattern.compile("(([^:]*):(.*))?\r\n").matcher(str);
-        mPos = mMatcher.regionStart();
-    }
+    // Receives a copy of the consumed bytes, if set.
+    private ByteArrayOutputStream mRecorder;
 
-    public Property next(boolean alwaysReturn) throws ParseException {
-        boolean found = false;
+    // Number of bytes consumed.
+    private int mPos;
 
-        do {
-            mMatcher.region(mPos, mMatcher.regionEnd());
+    public BmsgTokenizer(InputStream in) {
+        mIn = in;
+    }
 
-            if (!mMatcher.lookingAt()) {
+    /**
+     * Returns the next property, skipping empty lines.
+     *
+     * @param alwaysReturn return null instead of throwing if the next line is not a property
+     */
+    public Property next(boolean alwaysReturn) throws IOException, ParseException {
+        int colon;
+        do {
+            if (!readLine()) {
                 if (alwaysReturn) {
                     return null;
                 }
-
                 throw new ParseException("Property or empty line expected", pos());
             }
-
-            mPos = mMatcher.end();
-
-            if (mMatcher.group(1) != null) {
-                found = true;
+            colon = -1;
+            for (int i = 0; i < mLineLength; i++) {
+                byte b = mLine[i];
+                if (b == ':' && colon < 0) {
+                    colon = i;
+                } else if ((b == '\r' || b == '\n') && colon >= 0) {
+                    // Values cannot span lines.
+                    colon = -1;
+                    break;
+                }
+            }
+            if (colon < 0 && mLineLength > 0) {
+                if (alwaysReturn) {
+                    return null;
+                }
+                throw new ParseException("Property or empty line expected", pos());
             }
-        } while (!found);
+        } while (mLineLength == 0);
 
-        return new Property(mMatcher.group(2), mMatcher.group(3));
+        return new Property(
+                new String(mLine, 0, colon, StandardCharsets.UTF_8),
+                new String(mLine, colon + 1, mLineLength - colon - 1, StandardCharsets.UTF_8));
     }
 
-    public Property next() throws ParseException {
+    public Property next() throws IOException, ParseException {
         return next(false);
     }
 
-    public String remaining() {
-        return mStr.substring(mPos);
+    /**
+     * Reads {@code out.length} bytes, or less at the end of the stream, and returns the number of
+     * bytes read.
+     */
+    public int read(byte[] out) throws IOException {
+        int count = 0;
+        while (count < out.length && fill()) {
+            int n = Math.min(out.length - count, mBufferEnd - mBufferPos);
+            System.arraycopy(mBuffer, mBufferPos, out, count, n);
+            if (mRecorder != null) {
+                mRecorder.write(mBuffer, mBufferPos, n);
+            }
+            mBufferPos += n;
+            mPos += n;
+            count += n;
+        }
+        return count;
+    }
+
+    /** Returns whether all the bytes of the stream were consumed. */
+    public boolean isAtEnd() throws IOException {
+        return !fill();
+    }
+
+    /** Copies the bytes consumed from now on to {@code recorder}, or stops if null. */
+    public void setRecorder(ByteArrayOutputStream recorder) {
+        mRecorder = recorder;
     }
 
     public int pos() {
-        return mPos + mOffset;
+        return mPos;
+    }
+
+    /** Reads the next line into {@link #mLine}, returns false at the end of the stream. */
+    private boolean readLine() throws IOException {
+        mLineLength = 0;
+        boolean empty = true;
+        while (fill()) {
+            empty = false;
+            byte b = mBuffer[mBufferPos++];
+            mPos++;
+            if (mRecorder != null) {
+                mRecorder.write(b);
+            }
+            if (b == '\n' && mLineLength > 0 && mLine[mLineLength - 1] == '\r') {
+                mLineLength--;
+                return true;
+            }
+            if (mLineLength == mLine.length) {
+                mLine = Arrays.copyOf(mLine, mLine.length * 2);
+            }
+            mLine[mLineLength++] = b;
+        }
+        // The last line may not be terminated.
+        return !empty;
+    }
+
+    /** Returns whether bytes are available in the buffer, reading more if needed. */
+    private boolean fill() throws IOException {
+        if (mBufferPos < mBufferEnd) {
+            return true;
+        }
+        if (mEndOfStream) {
+            return false;
+        }
+        int n = mIn.read(mBuffer);
+        if (n <= 0) {
+            mEndOfStream = true;
+            return false;
+        }
+        mBufferPos = 0;
+        mBufferEnd = n;
+        return true;
     }
 
     public static class Property {
@@ -241,10 +241,22 @@ public class BluetoothPbapObexServer extends ServerRequestHandler {
 
     public BluetoothPbapObexServer(
             Handler callback, Context context, PbapStateMachine stateMachine) {
+        this(callback, context, stateMachine, null);
+    }
+
+    /**
+     * @param vCardCache cache of the vCards composed for phonebook pulls, null to compose all of
+     *     them on every pull
+     */
+    public BluetoothPbapObexServer(
+            Handler callback,
+            Context context,
+            PbapStateMachine stateMachine,
+            VCardCache vCardCache) {
         super();
         mCallback = callback;
         mContext = context;
-        mVcardManager = new BluetoothPbapVcardManager(mContext);
+        mVcardManager = new BluetoothPbapVcardManager(mContext, vCardCache);
         mVcardSimManager = new BluetoothPbapSimVcardManager(mContext);
         mStateMachine = stateMachine;
         mPbapMethodProxy = BluetoothMethodProxy.getInstance();
@@ -62,6 +62,7 @@ import com.android.bluetooth.btservice.AdapterService;
 import com.android.bluetooth.btservice.InteropUtil;
 import com.android.bluetooth.btservice.ProfileService;
 import com.android.bluetooth.btservice.storage.DatabaseManager;
+import com.android.bluetooth.content_profiles.ContactLookupCache;
 import com.android.bluetooth.content_profiles.ContentProfileErrorReportUtils;
 import com.android.bluetooth.sdp.SdpManagerNativeInterface;
 import com.android.bluetooth.util.DevicePolicyUtils;
@@ -132,6 +133,9 @@ public class BluetoothPbapService extends ProfileService implements IObexConnect
     private static String sLocalPhoneNum;
     private static String sLocalPhoneName;
 
+    // vCards composed for phonebook pulls, null unless configured.
+    private volatile VCardCache mVCardCache;
+
     private ObexServerSockets mServerSockets = null;
     private DatabaseManager mDatabaseManager;
 
@@ -703,6 +707,11 @@ public class BluetoothPbapService extends ProfileService implements IObexConnect
         return sLocalPhoneName;
     }
 
+    /** Returns the cache of the vCards composed for phonebook pulls, or null. */
+    VCardCache getVCardCache() {
+        return mVCardCache;
+    }
+
     @Override
     protected IProfileServiceBinder initBinder() {
         return new PbapBinder(this);
@@ -761,6 +770,8 @@ public class BluetoothPbapService extends ProfileService implements IObexConnect
             Log.e(TAG, "Illegal state exception, content observer is already registered");
         }
 
+        ContactLookupCache.getInstance().register(getContentResolver());
+
         setBluetoothPbapService(this);
 
         mSessionStatusHandler.sendMessage(
@@ -773,6 +784,18 @@ public class BluetoothPbapService extends ProfileService implements IObexConnect
             sIsPseDynamicVersionUpgradeEnabled =
                     adapterService.pbapPseDynamicVersionUpgradeIsEnabled();
             Log.d(TAG, "sIsPseDynamicVersionUpgradeEnabled: " + sIsPseDynamicVersionUpgradeEnabled);
+
+            int vCardCacheSizeKb = adapterService.getPbapVCardCacheSizeKb();
+            if (vCardCacheSizeKb > 0) {
+                // vCards are cached as Java strings, with 2 bytes per char.
+                VCardCache cache = new VCardCache(vCardCacheSizeKb * 1024 / 2);
+                try {
+                    cache.start(getContentResolver());
+                    mVCardCache = cache;
+                } catch (SecurityException e) {
+                    Log.e(TAG, "Unable to observe contacts, vCards are not cached: " + e);
+                }
+            }
         }
     }
 
@@ -787,6 +810,12 @@ public class BluetoothPbapService extends ProfileService implements IObexConnect
             mHandlerThread.quitSafely();
         }
         mContactsLoaded = false;
+        ContactLookupCache.getInstance().unregister();
+        VCardCache cache = mVCardCache;
+        if (cache != null) {
+            mVCardCache = null;
+            cache.stop();
+        }
         if (mContactChangeObserver == null) {
             Log.i(TAG, "Avoid unregister when receiver it is not registered");
             return;
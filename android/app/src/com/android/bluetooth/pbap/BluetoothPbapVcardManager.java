@@ -19,6 +19,7 @@ package com.android.bluetooth.pbap;
 import android.bluetooth.BluetoothProfile;
 import android.bluetooth.BluetoothProtoEnums;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.CursorWindowAllocationException;
@@ -28,10 +29,8 @@ import android.provider.CallLog;
 import android.provider.CallLog.Calls;
 import android.provider.ContactsContract.CommonDataKinds;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
-import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.PhoneLookup;
-import android.provider.ContactsContract.RawContactsEntity;
 import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
 import android.util.Log;
@@ -39,6 +38,7 @@ import android.util.Log;
 import com.android.bluetooth.BluetoothMethodProxy;
 import com.android.bluetooth.BluetoothStatsLog;
 import com.android.bluetooth.R;
+import com.android.bluetooth.content_profiles.ContactLookupCache;
 import com.android.bluetooth.content_profiles.ContentProfileErrorReportUtils;
 import com.android.bluetooth.util.DevicePolicyUtils;
 import com.android.internal.annotations.VisibleForTesting;
@@ -51,17 +51,25 @@ import com.android.vcard.VCardPhoneNumberTranslationCallback;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 // Next tag value for ContentProfileErrorReportUtils.report(): 22
 public class BluetoothPbapVcardManager {
     private static final String TAG = "BluetoothPbapVcardManager";
 
+    // Kind of the contact names lookups in the shared ContactLookupCache.
+    private static final String CONTACT_NAMES_LOOKUP = "pbap_contact_names";
+
     private ContentResolver mResolver;
 
     private Context mContext;
 
+    // vCards composed for previous phonebook pulls, null if not cached.
+    private final VCardCache mVCardCache;
+
     static final String SORT_ORDER_PHONE_NUMBER = CommonDataKinds.Phone.NUMBER + " ASC";
 
     static final String[] PHONES_CONTACTS_PROJECTION =
@@ -88,9 +96,14 @@ public class BluetoothPbapVcardManager {
     private static final int NEED_SEND_BODY = -1;
 
     public BluetoothPbapVcardManager(final Context context) {
+        this(context, null);
+    }
+
+    BluetoothPbapVcardManager(final Context context, VCardCache vCardCache) {
         mContext = context;
         mResolver = mContext.getContentResolver();
         mLastFetchedTimeStamp = System.currentTimeMillis();
+        mVCardCache = vCardCache;
     }
 
     /** Create an owner vcard from the configured profile */
@@ -406,18 +419,14 @@ public class BluetoothPbapVcardManager {
                 if (!composer.init(contactCursor)) {
                     return nameList;
                 }
-                int idColumn = contactCursor.getColumnIndex(Data.CONTACT_ID);
-                if (idColumn < 0) {
-                    idColumn = contactCursor.getColumnIndex(Contacts._ID);
-                }
+                RawContactEntityLoader loader =
+                        new RawContactEntityLoader(
+                                mResolver, RawContactEntityLoader.getContactIds(contactCursor));
 
                 int i = 0;
                 contactCursor.moveToFirst();
                 while (!contactCursor.isAfterLast()) {
-                    String vcard =
-                            composer.buildVCard(
-                                    RawContactsEntity.queryRawContactEntity(
-                                            mResolver, contactCursor.getLong(idColumn)));
+                    String vcard = composer.buildVCard(loader.get(contactCursor.getPosition()));
                     if (!contactCursor.moveToNext()) {
                         Log.i(TAG, "Cursor#moveToNext() returned false");
                     }
@@ -481,6 +490,20 @@ public class BluetoothPbapVcardManager {
     }
 
     public final List<String> getContactNamesByNumber(final String phoneNumber) {
+        List<String> nameList =
+                ContactLookupCache.getInstance()
+                        .get(
+                                mResolver,
+                                CONTACT_NAMES_LOOKUP,
+                                phoneNumber,
+                                number ->
+                                        Collections.unmodifiableList(
+                                                queryContactNamesByNumber(number)));
+        // The cached list is shared, callers get a copy they can sort.
+        return new ArrayList<>(nameList);
+    }
+
+    private List<String> queryContactNamesByNumber(final String phoneNumber) {
         List<String> nameList = new ArrayList<String>();
 
         Cursor contactCursor = null;
@@ -890,48 +913,74 @@ public class BluetoothPbapVcardManager {
             if (!composer.init(contactIdCursor) || !buffer.init()) {
                 return ResponseCodes.OBEX_HTTP_INTERNAL_ERROR;
             }
-            int idColumn = contactIdCursor.getColumnIndex(Data.CONTACT_ID);
-            if (idColumn < 0) {
-                idColumn = contactIdCursor.getColumnIndex(Contacts._ID);
-            }
-
-            while (!contactIdCursor.isAfterLast()) {
-                if (BluetoothPbapObexServer.sIsAborted) {
-                    ((ServerOperation) op).setAborted(true);
-                    BluetoothPbapObexServer.sIsAborted = false;
-                    break;
-                }
-                String vcard =
-                        composer.buildVCard(
-                                RawContactsEntity.queryRawContactEntity(
-                                        mResolver, contactIdCursor.getLong(idColumn)));
-                if (!contactIdCursor.moveToNext()) {
-                    Log.i(TAG, "Cursor#moveToNext() returned false");
-                }
-                if (vcard == null) {
-                    Log.e(TAG, "Failed to read a contact.");
-                    ContentProfileErrorReportUtils.report(
-                            BluetoothProfile.PBAP,
-                            BluetoothProtoEnums.BLUETOOTH_PBAP_VCARD_MANAGER,
-                            BluetoothStatsLog
-                                    .BLUETOOTH_CONTENT_PROFILE_ERROR_REPORTED__TYPE__LOG_ERROR,
-                            16);
-                    return ResponseCodes.OBEX_HTTP_INTERNAL_ERROR;
-                } else if (vcard.isEmpty()) {
-                    Log.i(TAG, "Contact may have been deleted during operation");
-                    continue;
-                }
-                Log.v(TAG, "vCard from composer: " + vcard);
-
-                vcard = vcardfilter.apply(vcard, vcardType21);
-                vcard = stripTelephoneNumber(vcard);
-
-                Log.v(TAG, "vCard after cleanup: " + vcard);
-
-                if (!buffer.writeVCard(vcard)) {
-                    // onEntryCreate() already emits error.
-                    return ResponseCodes.OBEX_HTTP_INTERNAL_ERROR;
-                }
+            final VCardComposer vCardComposer = composer;
+            final RawContactEntityLoader loader =
+                    new RawContactEntityLoader(
+                            mResolver, RawContactEntityLoader.getContactIds(contactIdCursor));
+            final VCardCache cache = mVCardCache;
+            final long generation =
+                    cache != null ? cache.startPull(BluetoothPbapUtils.sDbIdentifier.get()) : 0;
+            final String format =
+                    vcardType
+                            + "/"
+                            + BluetoothPbapConfig.includePhotosInVcard()
+                            + "/"
+                            + Arrays.toString(ignorefilter ? null : filter);
+
+            int result =
+                    VCardPipeline.run(
+                            new VCardPipeline.Composer() {
+                                private int mPosition;
+
+                                @Override
+                                public boolean hasNext() {
+                                    return mPosition < loader.getCount();
+                                }
+
+                                @Override
+                                public String next() {
+                                    int position = mPosition++;
+                                    if (cache == null) {
+                                        return composeVCard(
+                                                vCardComposer,
+                                                loader.get(position),
+                                                vcardfilter,
+                                                vcardType21);
+                                    }
+                                    String key =
+                                            VCardCache.key(loader.getContactId(position), format);
+                                    String vcard =
+                                            cache.get(
+                                                    key,
+                                                    generation,
+                                                    () -> loader.getVersion(position));
+                                    if (vcard != null) {
+                                        return vcard;
+                                    }
+                                    long[] version = loader.getVersion(position);
+                                    vcard =
+                                            composeVCard(
+                                                    vCardComposer,
+                                                    loader.get(position),
+                                                    vcardfilter,
+                                                    vcardType21);
+                                    if (!TextUtils.isEmpty(vcard)) {
+                                        cache.put(key, generation, version, vcard);
+                                    }
+                                    return vcard;
+                                }
+                            },
+                            buffer,
+                            () -> {
+                                if (!BluetoothPbapObexServer.sIsAborted) {
+                                    return false;
+                                }
+                                ((ServerOperation) op).setAborted(true);
+                                BluetoothPbapObexServer.sIsAborted = false;
+                                return true;
+                            });
+            if (result != ResponseCodes.OBEX_HTTP_OK) {
+                return result;
             }
         } finally {
             if (composer != null) {
@@ -951,6 +1000,37 @@ public class BluetoothPbapVcardManager {
         return ResponseCodes.OBEX_HTTP_OK;
     }
 
+    /**
+     * Composes the vCard of a contact and cleans it up for sending, returns null on failure and an
+     * empty string if the contact was deleted.
+     */
+    private String composeVCard(
+            VCardComposer composer,
+            Map<String, List<ContentValues>> entities,
+            VCardFilter vcardfilter,
+            boolean vcardType21) {
+        String vcard = composer.buildVCard(entities);
+        if (vcard == null) {
+            Log.e(TAG, "Failed to read a contact.");
+            ContentProfileErrorReportUtils.report(
+                    BluetoothProfile.PBAP,
+                    BluetoothProtoEnums.BLUETOOTH_PBAP_VCARD_MANAGER,
+                    BluetoothStatsLog.BLUETOOTH_CONTENT_PROFILE_ERROR_REPORTED__TYPE__LOG_ERROR,
+                    16);
+            return null;
+        } else if (vcard.isEmpty()) {
+            Log.i(TAG, "Contact may have been deleted during operation");
+            return vcard;
+        }
+        Log.v(TAG, "vCard from composer: " + vcard);
+
+        vcard = vcardfilter.apply(vcard, vcardType21);
+        vcard = stripTelephoneNumber(vcard);
+
+        Log.v(TAG, "vCard after cleanup: " + vcard);
+        return vcard;
+    }
+
     private int composeContactsAndSendSelectedVCards(
             Operation op,
             final Cursor contactIdCursor,
@@ -1007,10 +1087,9 @@ public class BluetoothPbapVcardManager {
             if (!composer.init(contactIdCursor) || !buffer.init()) {
                 return ResponseCodes.OBEX_HTTP_INTERNAL_ERROR;
             }
-            int idColumn = contactIdCursor.getColumnIndex(Data.CONTACT_ID);
-            if (idColumn < 0) {
-                idColumn = contactIdCursor.getColumnIndex(Contacts._ID);
-            }
+            RawContactEntityLoader loader =
+                    new RawContactEntityLoader(
+                            mResolver, RawContactEntityLoader.getContactIds(contactIdCursor));
 
             while (!contactIdCursor.isAfterLast()) {
                 if (BluetoothPbapObexServer.sIsAborted) {
@@ -1018,10 +1097,7 @@ public class BluetoothPbapVcardManager {
                     BluetoothPbapObexServer.sIsAborted = false;
                     break;
                 }
-                String vcard =
-                        composer.buildVCard(
-                                RawContactsEntity.queryRawContactEntity(
-                                        mResolver, contactIdCursor.getLong(idColumn)));
+                String vcard = composer.buildVCard(loader.get(contactIdCursor.getPosition()));
                 if (!contactIdCursor.moveToNext()) {
                     Log.i(TAG, "Cursor#moveToNext() returned false");
                 }
@@ -1201,7 +1277,7 @@ public class BluetoothPbapVcardManager {
     public String stripTelephoneNumber(String vCard) {
         String separator = System.getProperty("line.separator");
         String[] attr = vCard.split(separator);
-        String stripedVCard = "";
+        StringBuilder stripedVCard = new StringBuilder(vCard.length() + separator.length());
         for (int i = 0; i < attr.length; i++) {
             if (attr[i].startsWith("TEL")) {
                 String[] vTagAndTel = attr[i].split(":", 2);
@@ -1222,11 +1298,11 @@ public class BluetoothPbapVcardManager {
 
         for (int i = 0; i < attr.length; i++) {
             if (!attr[i].isEmpty()) {
-                stripedVCard = stripedVCard.concat(attr[i] + separator);
+                stripedVCard.append(attr[i]).append(separator);
             }
         }
         Log.v(TAG, "vCard with stripped telephone no.: " + stripedVCard);
-        return stripedVCard;
+        return stripedVCard.toString();
     }
 
     public static class VCardFilter {
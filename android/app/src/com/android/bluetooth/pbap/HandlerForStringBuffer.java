@@ -28,7 +28,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 /** Handler to emit vCards to PCE. */
-// Next tag value for ContentProfileErrorReportUtils.report(): 2
+// Next tag value for ContentProfileErrorReportUtils.report(): 3
 public class HandlerForStringBuffer {
     private static final String TAG = "HandlerForStringBuffer";
 
@@ -78,6 +78,22 @@ public class HandlerForStringBuffer {
         return false;
     }
 
+    /** Writes vCards already encoded by the caller, such as a chunk of {@link VCardPipeline}. */
+    public boolean write(byte[] bytes, int offset, int length) {
+        try {
+            mOutputStream.write(bytes, offset, length);
+            return true;
+        } catch (IOException e) {
+            ContentProfileErrorReportUtils.report(
+                    BluetoothProfile.PBAP,
+                    BluetoothProtoEnums.BLUETOOTH_PBAP_HANDLER_FOR_STRING_BUFFER,
+                    BluetoothStatsLog.BLUETOOTH_CONTENT_PROFILE_ERROR_REPORTED__TYPE__EXCEPTION,
+                    2);
+            Log.e(TAG, "write failed", e);
+        }
+        return false;
+    }
+
     public void terminate() {
         boolean result = BluetoothPbapObexServer.closeStream(mOutputStream, mOperation);
         Log.v(TAG, "closeStream " + (result ? "succeeded" : "failed") + "!");
@@ -267,7 +267,11 @@ public class PbapStateMachine extends StateMachine {
 
         private void rejectConnection() {
             mPbapServer =
-                    new BluetoothPbapObexServer(mServiceHandler, mService, PbapStateMachine.this);
+                    new BluetoothPbapObexServer(
+                            mServiceHandler,
+                            mService,
+                            PbapStateMachine.this,
+                            mService.getVCardCache());
             BluetoothObexTransport transport =
                     new BluetoothObexTransport(
                             mConnSocket,
@@ -381,7 +385,11 @@ public class PbapStateMachine extends StateMachine {
                     mServiceHandler.obtainMessage(BluetoothPbapService.MSG_ACQUIRE_WAKE_LOCK));
 
             mPbapServer =
-                    new BluetoothPbapObexServer(mServiceHandler, mService, PbapStateMachine.this);
+                    new BluetoothPbapObexServer(
+                            mServiceHandler,
+                            mService,
+                            PbapStateMachine.this,
+                            mService.getVCardCache());
             synchronized (this) {
                 mObexAuth = new BluetoothPbapAuthenticator(PbapStateMachine.this);
                 mObexAuth.setChallenged(false);
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbap;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Entity;
+import android.content.EntityIterator;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Data;
+import android.provider.ContactsContract.RawContacts;
+import android.provider.ContactsContract.RawContactsEntity;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.android.bluetooth.BluetoothMethodProxy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the raw contact entities of a list of contacts for vCard composition.
+ *
+ * <p>Instead of querying the entities of each contact separately, as {@link
+ * RawContactsEntity#queryRawContactEntity} does, the entities of {@link #BATCH_SIZE} consecutive
+ * contacts of the list are loaded with a single query, when the first of them is requested.
+ * Work profile contacts are still loaded one by one.
+ *
+ * <p>The versions of the raw contacts of each contact are loaded the same way by {@link
+ * #getVersion}, so that cached vCards can be checked without loading their entities.
+ */
+class RawContactEntityLoader {
+    private static final String TAG = "RawContactEntityLoader";
+
+    @VisibleForTesting static final int BATCH_SIZE = 100;
+
+    private final ContentResolver mResolver;
+    private final long[] mContactIds;
+
+    // Entities of the contacts of the current batch, by contact ID.
+    private final LongSparseArray<Map<String, List<ContentValues>>> mBatch =
+            new LongSparseArray<>();
+    private int mBatchStart = -1;
+
+    // Versions of the contacts of the current version batch, by contact ID.
+    private final LongSparseArray<long[]> mVersions = new LongSparseArray<>();
+    private int mVersionsStart = -1;
+
+    RawContactEntityLoader(ContentResolver resolver, long[] contactIds) {
+        mResolver = resolver;
+        mContactIds = contactIds;
+    }
+
+    /** Returns the contact IDs of a cursor, leaving it on its first row. */
+    static long[] getContactIds(Cursor cursor) {
+        int idColumn = cursor.getColumnIndex(Data.CONTACT_ID);
+        if (idColumn < 0) {
+            idColumn = cursor.getColumnIndex(Contacts._ID);
+        }
+        long[] contactIds = new long[cursor.getCount()];
+        int count = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext() && count < contactIds.length) {
+            contactIds[count++] = cursor.getLong(idColumn);
+        }
+        cursor.moveToFirst();
+        return count == contactIds.length ? contactIds : Arrays.copyOf(contactIds, count);
+    }
+
+    /** Returns the number of contacts to load. */
+    int getCount() {
+        return mContactIds.length;
+    }
+
+    /** Returns the ID of the contact at the given position. */
+    long getContactId(int position) {
+        return mContactIds[position];
+    }
+
+    /**
+     * Returns the version of the contact at the given position, or null if it can't be known. The
+     * version is the ID and version of each raw contact of the contact, ordered by ID, so it
+     * changes whenever one of them is changed, added or removed.
+     *
+     * <p>Once versions are used, they are loaded again before each batch of entities, so that the
+     * version of a contact is never more recent than its entities.
+     */
+    long[] getVersion(int position) {
+        long contactId = mContactIds[position];
+        if (Contacts.isEnterpriseContactId(contactId)) {
+            return null;
+        }
+        if (mVersionsStart < 0
+                || position < mVersionsStart
+                || position >= mVersionsStart + BATCH_SIZE) {
+            loadVersions(position);
+        }
+        return mVersions.get(contactId);
+    }
+
+    /**
+     * Returns the data of the contact at the given position, mapped by MIME type, in the format
+     * expected by {@link com.android.vcard.VCardComposer#buildVCard}. The map is empty if the
+     * contact was deleted.
+     */
+    Map<String, List<ContentValues>> get(int position) {
+        long contactId = mContactIds[position];
+        if (Contacts.isEnterpriseContactId(contactId)) {
+            return RawContactsEntity.queryRawContactEntity(mResolver, contactId);
+        }
+        if (mBatchStart < 0 || position < mBatchStart || position >= mBatchStart + BATCH_SIZE) {
+            if (mVersionsStart >= 0 && mVersionsStart != position) {
+                loadVersions(position);
+            }
+            loadBatch(position);
+        }
+        Map<String, List<ContentValues>> entities = mBatch.get(contactId);
+        return entities != null ? entities : new HashMap<>();
+    }
+
+    private void loadBatch(int start) {
+        mBatch.clear();
+        mBatchStart = start;
+        Cursor cursor = queryBatch(RawContactsEntity.CONTENT_URI, null, null, start);
+        if (cursor == null) {
+            return;
+        }
+        EntityIterator iterator = RawContacts.newEntityIterator(cursor);
+        try {
+            while (iterator.hasNext()) {
+                Entity entity = iterator.next();
+                Long contactId = entity.getEntityValues().getAsLong(RawContacts.CONTACT_ID);
+                if (contactId == null) {
+                    continue;
+                }
+                Map<String, List<ContentValues>> entities = mBatch.get(contactId);
+                if (entities == null) {
+                    entities = new HashMap<>();
+                    mBatch.put(contactId, entities);
+                }
+                for (Entity.NamedContentValues namedValues : entity.getSubValues()) {
+                    ContentValues values = namedValues.values;
+                    String mimeType = values.getAsString(Data.MIMETYPE);
+                    if (mimeType != null) {
+                        entities.computeIfAbsent(mimeType, k -> new ArrayList<>()).add(values);
+                    }
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private void loadVersions(int start) {
+        mVersions.clear();
+        mVersionsStart = start;
+        Cursor cursor =
+                queryBatch(
+                        RawContacts.CONTENT_URI,
+                        new String[] {RawContacts.CONTACT_ID, RawContacts._ID, RawContacts.VERSION},
+                        RawContacts.DELETED + "=0",
+                        start);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                long contactId = cursor.getLong(0);
+                long[] previous = mVersions.get(contactId);
+                int length = previous == null ? 0 : previous.length;
+                long[] version =
+                        previous == null ? new long[2] : Arrays.copyOf(previous, length + 2);
+                version[length] = cursor.getLong(1);
+                version[length + 1] = cursor.getLong(2);
+                mVersions.put(contactId, version);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Queries the rows of the contacts of the batch starting at {@code start}, ordered by contact
+     * and then by row ID. Returns null if there are no such contacts or the query failed.
+     */
+    private Cursor queryBatch(Uri uri, String[] projection, String where, int start) {
+        int end = Math.min(mContactIds.length, start + BATCH_SIZE);
+        List<String> selectionArgs = new ArrayList<>(end - start);
+        StringBuilder selection = new StringBuilder(RawContacts.CONTACT_ID).append(" IN (");
+        for (int i = start; i < end; i++) {
+            if (Contacts.isEnterpriseContactId(mContactIds[i])) {
+                continue;
+            }
+            selection.append(selectionArgs.isEmpty() ? "?" : ",?");
+            selectionArgs.add(String.valueOf(mContactIds[i]));
+        }
+        if (selectionArgs.isEmpty()) {
+            return null;
+        }
+        selection.append(')');
+        if (where != null) {
+            selection.append(" AND ").append(where);
+        }
+
+        Cursor cursor =
+                BluetoothMethodProxy.getInstance()
+                        .contentResolverQuery(
+                                mResolver,
+                                uri,
+                                projection,
+                                selection.toString(),
+                                selectionArgs.toArray(new String[0]),
+                                RawContacts.CONTACT_ID + "," + BaseColumns._ID);
+        if (cursor == null) {
+            Log.w(TAG, "queryBatch: query of " + uri + " returned null");
+        }
+        return cursor;
+    }
+}
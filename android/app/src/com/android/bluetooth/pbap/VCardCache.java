@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbap;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.provider.ContactsContract;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Caches the vCards composed for phonebook pulls across PBAP connections, so that a pull only
+ * composes the contacts that changed since the previous one.
+ *
+ * <p>vCards are cached by contact ID and format, along with the version of the contact returned
+ * by {@link RawContactEntityLoader#getVersion}. A cached vCard is used as long as the version of
+ * its contact is unchanged. The cache observes the contacts provider and only queries versions
+ * again after a change, so that a pull of an unchanged phonebook doesn't query the provider for
+ * each contact. All vCards are dropped when the database identifier changes.
+ */
+class VCardCache {
+    private static final String TAG = "VCardCache";
+
+    private static final class Entry {
+        final String mVCard;
+        final long[] mVersion;
+        // Generation at which the version was last checked.
+        long mCheckedGeneration;
+
+        Entry(String vCard, long[] version, long checkedGeneration) {
+            mVCard = vCard;
+            mVersion = version;
+            mCheckedGeneration = checkedGeneration;
+        }
+    }
+
+    private final Object mLock = new Object();
+
+    // Sized in chars of the cached vCards.
+    @GuardedBy("mLock")
+    private final LruCache<String, Entry> mEntries;
+
+    // Incremented on every change of the contacts provider.
+    @GuardedBy("mLock")
+    private long mGeneration;
+
+    @GuardedBy("mLock")
+    private long mDbIdentifier;
+
+    @GuardedBy("mLock")
+    private long mHits;
+
+    @GuardedBy("mLock")
+    private long mMisses;
+
+    private ContentResolver mResolver;
+
+    private final ContentObserver mObserver =
+            new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    synchronized (mLock) {
+                        mGeneration++;
+                    }
+                }
+            };
+
+    /**
+     * @param maxChars maximum size of the cached vCards, in chars
+     */
+    VCardCache(int maxChars) {
+        mEntries =
+                new LruCache<String, Entry>(maxChars) {
+                    @Override
+                    protected int sizeOf(String key, Entry entry) {
+                        // A long of the version takes as much memory as 4 chars.
+                        return key.length() + entry.mVCard.length() + 4 * entry.mVersion.length;
+                    }
+                };
+    }
+
+    /** Starts observing the contacts provider, the cache must not be used before. */
+    void start(ContentResolver resolver) {
+        mResolver = resolver;
+        resolver.registerContentObserver(ContactsContract.AUTHORITY_URI, true, mObserver);
+    }
+
+    /** Stops observing the contacts provider and drops all vCards. */
+    void stop() {
+        if (mResolver != null) {
+            mResolver.unregisterContentObserver(mObserver);
+            mResolver = null;
+        }
+        synchronized (mLock) {
+            mEntries.evictAll();
+        }
+    }
+
+    /**
+     * Drops all vCards if the database identifier changed since the previous pull, as the client
+     * then drops its own cache. Returns the generation to pass to {@link #get} and {@link #put}
+     * during the pull.
+     */
+    long startPull(long dbIdentifier) {
+        synchronized (mLock) {
+            if (dbIdentifier != mDbIdentifier) {
+                mDbIdentifier = dbIdentifier;
+                mEntries.evictAll();
+            }
+            return mGeneration;
+        }
+    }
+
+    /** Returns the key of a contact in a vCard format. */
+    static String key(long contactId, String format) {
+        return contactId + "/" + format;
+    }
+
+    /**
+     * Returns the cached vCard of {@code key}, or null if it must be composed.
+     *
+     * @param generation returned by {@link #startPull}
+     * @param version returns the current version of the contact, only called if the contacts
+     *     provider changed since the version of the cached vCard was checked
+     */
+    String get(String key, long generation, Supplier<long[]> version) {
+        Entry entry;
+        synchronized (mLock) {
+            entry = mEntries.get(key);
+            if (entry == null) {
+                mMisses++;
+                return null;
+            }
+            if (entry.mCheckedGeneration == mGeneration) {
+                mHits++;
+                return entry.mVCard;
+            }
+        }
+        // The contacts provider is queried without holding the lock.
+        long[] current = version.get();
+        synchronized (mLock) {
+            if (current == null || !Arrays.equals(current, entry.mVersion)) {
+                mEntries.remove(key);
+                mMisses++;
+                return null;
+            }
+            entry.mCheckedGeneration = Math.max(entry.mCheckedGeneration, generation);
+            mHits++;
+            return entry.mVCard;
+        }
+    }
+
+    /**
+     * Caches the vCard of {@code key}.
+     *
+     * @param generation returned by {@link #startPull}, before {@code version} was read
+     * @param version version of the contact, read before composing the vCard, or null if it
+     *     can't be known and the vCard must not be cached
+     */
+    void put(String key, long generation, long[] version, String vCard) {
+        if (version == null) {
+            return;
+        }
+        synchronized (mLock) {
+            mEntries.put(key, new Entry(vCard, version, generation));
+        }
+    }
+
+    @VisibleForTesting
+    void onContactsChanged() {
+        mObserver.onChange(false);
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return "VCardCache{cached="
+                    + mEntries.size()
+                    + "/"
+                    + mEntries.maxSize()
+                    + " chars, hits="
+                    + mHits
+                    + ", misses="
+                    + mMisses
+                    + "}";
+        }
+    }
+}
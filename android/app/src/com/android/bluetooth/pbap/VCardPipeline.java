@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbap;
+
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.obex.ResponseCodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Composes vCards on a worker thread while the calling thread sends them.
+ *
+ * <p>The worker encodes the vCards into a small pool of reusable chunks of about {@link
+ * #CHUNK_SIZE} bytes. Each full chunk is handed to the calling thread, which writes it to the OBEX
+ * operation and gives it back to the worker, so that composing a chunk overlaps with sending the
+ * previous one.
+ */
+class VCardPipeline {
+    private static final String TAG = "VCardPipeline";
+
+    @VisibleForTesting static final int CHUNK_SIZE = 16 * 1024;
+    @VisibleForTesting static final int NUM_CHUNKS = 4;
+
+    /** Source of the vCards to send, only called from the worker thread. */
+    interface Composer {
+        boolean hasNext();
+
+        /** Returns the next vCard, an empty string to skip a contact, or null on failure. */
+        String next();
+    }
+
+    private static class Chunk extends ByteArrayOutputStream {
+        final Writer mWriter = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+
+        Chunk(int size) {
+            super(size);
+        }
+
+        void append(String vCard) throws IOException {
+            mWriter.write(vCard);
+            mWriter.flush();
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    // Queued by the worker after the last chunk, or instead of it if a vCard failed.
+    private static final Chunk END = new Chunk(0);
+    private static final Chunk FAILED = new Chunk(0);
+
+    private final Composer mComposer;
+    private final BlockingQueue<Chunk> mFreeChunks = new ArrayBlockingQueue<>(NUM_CHUNKS);
+    // One more slot than there are chunks, so that END and FAILED can always be queued.
+    private final BlockingQueue<Chunk> mFullChunks = new ArrayBlockingQueue<>(NUM_CHUNKS + 1);
+    private volatile boolean mStopped;
+
+    private VCardPipeline(Composer composer) {
+        mComposer = composer;
+        for (int i = 0; i < NUM_CHUNKS; i++) {
+            mFreeChunks.add(new Chunk(CHUNK_SIZE));
+        }
+    }
+
+    /**
+     * Sends all the vCards of {@code composer} to {@code buffer}.
+     *
+     * @param aborted checked before sending each chunk, stops sending when it returns true
+     * @return {@link ResponseCodes#OBEX_HTTP_OK} if all vCards were sent or the operation was
+     *     aborted, {@link ResponseCodes#OBEX_HTTP_INTERNAL_ERROR} otherwise
+     */
+    static int run(Composer composer, HandlerForStringBuffer buffer, BooleanSupplier aborted) {
+        VCardPipeline pipeline = new VCardPipeline(composer);
+        Thread worker = new Thread(pipeline::compose, "PbapVCardComposer");
+        worker.start();
+        try {
+            return pipeline.send(buffer, aborted);
+        } finally {
+            pipeline.mStopped = true;
+            worker.interrupt();
+            joinUninterruptibly(worker);
+        }
+    }
+
+    private int send(HandlerForStringBuffer buffer, BooleanSupplier aborted) {
+        try {
+            while (true) {
+                Chunk chunk = mFullChunks.take();
+                if (chunk == END) {
+                    return ResponseCodes.OBEX_HTTP_OK;
+                } else if (chunk == FAILED) {
+                    return ResponseCodes.OBEX_HTTP_INTERNAL_ERROR;
+                }
+                if (aborted.getAsBoolean()) {
+                    return ResponseCodes.OBEX_HTTP_OK;
+                }
+                if (!buffer.write(chunk.getBuffer(), 0, chunk.size())) {
+                    // write() already emits error.
+                    return ResponseCodes.OBEX_HTTP_INTERNAL_ERROR;
+                }
+                chunk.reset();
+                mFreeChunks.add(chunk);
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while sending vCards");
+            Thread.currentThread().interrupt();
+            return ResponseCodes.OBEX_HTTP_INTERNAL_ERROR;
+        }
+    }
+
+    private void compose() {
+        try {
+            Chunk chunk = mFreeChunks.take();
+            while (mComposer.hasNext()) {
+                if (mStopped) {
+                    return;
+                }
+                String vCard = mComposer.next();
+                if (vCard == null) {
+                    mFullChunks.add(FAILED);
+                    return;
+                } else if (vCard.isEmpty()) {
+                    continue;
+                }
+                chunk.append(vCard);
+                if (chunk.size() >= CHUNK_SIZE) {
+                    mFullChunks.add(chunk);
+                    chunk = mFreeChunks.take();
+                }
+            }
+            if (chunk.size() > 0) {
+                mFullChunks.add(chunk);
+            }
+            mFullChunks.add(END);
+        } catch (InterruptedException e) {
+            // Sending stopped, nothing is waiting for the remaining vCards.
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to compose vCards", e);
+            mFullChunks.offer(FAILED);
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
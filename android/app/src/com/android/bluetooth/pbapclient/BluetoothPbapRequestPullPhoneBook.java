@@ -23,6 +23,7 @@ import com.android.bluetooth.ObexAppParameters;
 import com.android.obex.HeaderSet;
 import com.android.vcard.VCardEntry;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
@@ -32,6 +33,8 @@ final class BluetoothPbapRequestPullPhoneBook extends BluetoothPbapRequest {
 
     private static final String TYPE = "x-bt/phonebook";
 
+    private static final int BUFFER_SIZE = 8192;
+
     private BluetoothPbapVcardList mResponse;
 
     private Account mAccount;
@@ -40,6 +43,10 @@ final class BluetoothPbapRequestPullPhoneBook extends BluetoothPbapRequest {
 
     private final byte mFormat;
 
+    private boolean mParseResponse = true;
+
+    private byte[] mRawResponse;
+
     BluetoothPbapRequestPullPhoneBook(
             String pbName,
             Account account,
@@ -93,10 +100,29 @@ final class BluetoothPbapRequestPullPhoneBook extends BluetoothPbapRequest {
         mFormat = format;
     }
 
+    /**
+     * Makes {@link #execute} only read the vCards, leaving them to be parsed from {@link
+     * #getRawResponse} while the next request is executed.
+     */
+    void setParseResponse(boolean parseResponse) {
+        mParseResponse = parseResponse;
+    }
+
     @Override
     protected void readResponse(InputStream stream) throws IOException {
         Log.v(TAG, "readResponse");
 
+        if (!mParseResponse) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            mRawResponse = out.toByteArray();
+            Log.d(TAG, "Read " + mRawResponse.length + " bytes");
+            return;
+        }
         mResponse = new BluetoothPbapVcardList(mAccount, stream, mFormat);
         Log.d(TAG, "Read " + mResponse.getCount() + " entries");
     }
@@ -116,6 +142,11 @@ final class BluetoothPbapRequestPullPhoneBook extends BluetoothPbapRequest {
         return mResponse.getList();
     }
 
+    /** Returns the vCards read when not parsing the response. */
+    byte[] getRawResponse() {
+        return mRawResponse;
+    }
+
     public int getNewMissedCalls() {
         return mNewMissedCalls;
     }
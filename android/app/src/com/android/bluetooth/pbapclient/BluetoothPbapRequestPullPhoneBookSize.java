@@ -21,6 +21,8 @@ import android.util.Log;
 import com.android.bluetooth.ObexAppParameters;
 import com.android.obex.HeaderSet;
 
+import java.util.Base64;
+
 final class BluetoothPbapRequestPullPhoneBookSize extends BluetoothPbapRequest {
     private static final String TAG = "PbapClient.PullPbSize";
 
@@ -28,6 +30,8 @@ final class BluetoothPbapRequestPullPhoneBookSize extends BluetoothPbapRequest {
 
     private int mSize;
 
+    private String mFolderVersion;
+
     BluetoothPbapRequestPullPhoneBookSize(String pbName, long filter) {
         mHeaderSet.setHeader(HeaderSet.NAME, pbName);
 
@@ -54,9 +58,31 @@ final class BluetoothPbapRequestPullPhoneBookSize extends BluetoothPbapRequest {
         if (oap.exists(OAP_TAGID_PHONEBOOK_SIZE)) {
             mSize = oap.getShort(OAP_TAGID_PHONEBOOK_SIZE);
         }
+        // Only returned by PBAP 1.2 servers supporting both features, see PBAP v1.2.3, Sec. 5.1.4.
+        // The secondary counter is the only one changed by edits of fields like PHOTO or NICKNAME.
+        byte[] primaryVersion = oap.getByteArray(OAP_TAGID_PRIMARY_FOLDER_VERSION);
+        byte[] secondaryVersion = oap.getByteArray(OAP_TAGID_SECONDARY_FOLDER_VERSION);
+        byte[] databaseIdentifier = oap.getByteArray(OAP_TAGID_DATABASE_IDENTIFIER);
+        if (primaryVersion != null && secondaryVersion != null && databaseIdentifier != null) {
+            mFolderVersion =
+                    Base64.getEncoder().encodeToString(databaseIdentifier)
+                            + "/"
+                            + Base64.getEncoder().encodeToString(primaryVersion)
+                            + "/"
+                            + Base64.getEncoder().encodeToString(secondaryVersion);
+        }
     }
 
     public int getSize() {
         return mSize;
     }
+
+    /**
+     * Returns a value changing with each change of the phonebook, made of the database identifier
+     * and of the primary and secondary folder version counters, or null if the server doesn't
+     * return them.
+     */
+    public String getFolderVersion() {
+        return mFolderVersion;
+    }
 }
@@ -42,6 +42,8 @@ class BluetoothPbapVcardList {
 
     private final List<VCardEntry> mCards = new ArrayList<VCardEntry>();
     private final Account mAccount;
+    // Only set when the vCards are hashed.
+    private final VCardEntryHasher mHasher;
 
     class CardEntryHandler implements VCardEntryHandler {
         @Override
@@ -57,11 +59,20 @@ class BluetoothPbapVcardList {
     }
 
     BluetoothPbapVcardList(Account account, InputStream in, byte format) throws IOException {
+        this(account, in, format, false);
+    }
+
+    /**
+     * @param hashEntries whether to compute the hash of each vCard, see {@link #getHashes}
+     */
+    BluetoothPbapVcardList(Account account, InputStream in, byte format, boolean hashEntries)
+            throws IOException {
         if (format != PbapClientConnectionHandler.VCARD_TYPE_21
                 && format != PbapClientConnectionHandler.VCARD_TYPE_30) {
             throw new IllegalArgumentException("Unsupported vCard version.");
         }
         mAccount = account;
+        mHasher = hashEntries ? new VCardEntryHasher() : null;
         parse(in, format);
     }
 
@@ -81,6 +92,9 @@ class BluetoothPbapVcardList {
         constructor.addEntryHandler(handler);
 
         parser.addInterpreter(constructor);
+        if (mHasher != null) {
+            parser.addInterpreter(mHasher);
+        }
 
         // {@link BufferedInputStream} supports the {@link InputStream#mark} and
         // {@link InputStream#reset} methods.
@@ -104,6 +118,10 @@ class BluetoothPbapVcardList {
             mCards.clear();
             constructor.clear();
             parser.addInterpreter(constructor);
+            if (mHasher != null) {
+                mHasher.clear();
+                parser.addInterpreter(mHasher);
+            }
             if (parsedWithVcardVersionException(parser, bufferedInput)) {
                 Log.e(TAG, "unsupported vCard version, neither v2.1 nor v3.0");
             }
@@ -140,6 +158,14 @@ class BluetoothPbapVcardList {
         return mCards;
     }
 
+    /**
+     * Returns the hash of the properties of each vCard, in the order of {@link #getList}, or null
+     * if the vCards were not hashed.
+     */
+    public List<String> getHashes() {
+        return mHasher != null ? mHasher.getHashes() : null;
+    }
+
     public VCardEntry getFirst() {
         return mCards.get(0);
     }
@@ -33,15 +33,15 @@ import android.util.Log;
 import com.android.bluetooth.BluetoothObexTransport;
 import com.android.bluetooth.ObexAppParameters;
 import com.android.bluetooth.R;
+import com.android.bluetooth.btservice.AdapterService;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.obex.ClientSession;
 import com.android.obex.HeaderSet;
 import com.android.obex.ResponseCodes;
-import com.android.vcard.VCardEntry;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /* Bluetooth/pbapclient/PbapClientConnectionHandler is responsible
@@ -89,6 +89,8 @@ class PbapClientConnectionHandler extends Handler {
 
     private static final int PBAP_FEATURE_DEFAULT_IMAGE_FORMAT = 0x00000200;
     private static final int PBAP_FEATURE_DOWNLOADING = 0x00000001;
+    private static final int PBAP_FEATURE_DATABASE_IDENTIFIER = 0x00000004;
+    private static final int PBAP_FEATURE_FOLDER_VERSION_COUNTERS = 0x00000008;
 
     private static final long PBAP_FILTER_VERSION = 1 << 0;
     private static final long PBAP_FILTER_FN = 1 << 1;
@@ -143,6 +145,8 @@ class PbapClientConnectionHandler extends Handler {
     private BluetoothPbapObexAuthenticator mAuth = null;
     private final PbapClientStateMachine mPbapClientStateMachine;
     private boolean mAccountCreated;
+    // Whether the contacts are kept between connections and only the changes are applied.
+    private final boolean mIncrementalSync;
 
     /**
      * Constructs PCEConnectionHandler object
@@ -158,6 +162,9 @@ class PbapClientConnectionHandler extends Handler {
         mAccountManager = AccountManager.get(mPbapClientStateMachine.getContext());
         mAccount =
                 new Account(mDevice.getAddress(), mContext.getString(R.string.pbap_account_type));
+        AdapterService adapterService = AdapterService.getAdapterService();
+        mIncrementalSync =
+                adapterService != null && adapterService.isPbapClientIncrementalSyncEnabled();
     }
 
     public static class Builder {
@@ -233,7 +240,7 @@ class PbapClientConnectionHandler extends Handler {
                     closeSocket();
                 }
                 Log.d(TAG, "Completing Disconnect");
-                if (mAccountCreated) {
+                if (mAccountCreated && !mIncrementalSync) {
                     removeAccount();
                 }
                 removeCallLog();
@@ -242,7 +249,7 @@ class PbapClientConnectionHandler extends Handler {
                 break;
 
             case MSG_DOWNLOAD:
-                mAccountCreated = addAccount();
+                mAccountCreated = addAccount() || reuseAccount();
                 if (!mAccountCreated) {
                     Log.e(TAG, "Account creation failed.");
                     return;
@@ -331,9 +338,14 @@ class PbapClientConnectionHandler extends Handler {
                 ObexAppParameters oap = new ObexAppParameters();
 
                 if (mPseRec.getProfileVersion() >= PBAP_V1_2) {
-                    oap.add(
-                            BluetoothPbapRequest.OAP_TAGID_PBAP_SUPPORTED_FEATURES,
-                            PBAP_SUPPORTED_FEATURE);
+                    int features = PBAP_SUPPORTED_FEATURE;
+                    if (mIncrementalSync) {
+                        // Lets the server return the version of the phonebook.
+                        features |=
+                                PBAP_FEATURE_DATABASE_IDENTIFIER
+                                        | PBAP_FEATURE_FOLDER_VERSION_COUNTERS;
+                    }
+                    oap.add(BluetoothPbapRequest.OAP_TAGID_PBAP_SUPPORTED_FEATURES, features);
                 }
 
                 oap.addToHeaderSet(connectionRequest);
@@ -375,6 +387,10 @@ class PbapClientConnectionHandler extends Handler {
 
     @VisibleForTesting
     void downloadContacts(String path) {
+        PhonebookSyncPipeline pipeline = null;
+        PhonebookIndex index = null;
+        String folderVersion = null;
+        boolean downloaded = false;
         try {
             PhonebookPullRequest processor =
                     new PhonebookPullRequest(mPbapClientStateMachine.getContext());
@@ -384,6 +400,20 @@ class PbapClientConnectionHandler extends Handler {
                     new BluetoothPbapRequestPullPhoneBookSize(path, PBAP_REQUESTED_FIELDS);
             requestPbSize.execute(mObexSession);
 
+            if (mIncrementalSync) {
+                folderVersion = requestPbSize.getFolderVersion();
+                String key = getFolderVersionKey(path);
+                if (folderVersion != null
+                        && folderVersion.equals(mAccountManager.getUserData(mAccount, key))) {
+                    Log.d(TAG, "Contacts of " + path + " unchanged since the last sync");
+                    return;
+                }
+                // Only set again once the contacts are in sync.
+                mAccountManager.setUserData(mAccount, key, null);
+                index = PhonebookIndex.load(mContext.getContentResolver(), mAccount, path);
+                processor.setIndex(index);
+            }
+
             int numberOfContactsRemaining = requestPbSize.getSize();
             int startOffset = 0;
             if (PB_PATH.equals(path)) {
@@ -395,6 +425,11 @@ class PbapClientConnectionHandler extends Handler {
                 numberOfContactsRemaining -= 1;
             }
 
+            // Each batch is parsed and stored while the next one is downloaded.
+            pipeline =
+                    new PhonebookSyncPipeline(
+                            mAccount, VCARD_TYPE_30, FAV_PATH.equals(path), processor);
+            pipeline.start();
             while ((numberOfContactsRemaining > 0) && (startOffset <= UPPER_LIMIT)) {
                 int numberOfContactsToDownload =
                         Math.min(
@@ -408,16 +443,9 @@ class PbapClientConnectionHandler extends Handler {
                                 VCARD_TYPE_30,
                                 numberOfContactsToDownload,
                                 startOffset);
+                request.setParseResponse(false);
                 request.execute(mObexSession);
-                List<VCardEntry> vcards = request.getList();
-                if (FAV_PATH.equals(path)) {
-                    // mark each vcard as a favorite
-                    for (VCardEntry v : vcards) {
-                        v.setStarred(true);
-                    }
-                }
-                processor.setResults(vcards);
-                processor.onPullComplete();
+                pipeline.submit(request.getRawResponse());
 
                 startOffset += numberOfContactsToDownload;
                 numberOfContactsRemaining -= numberOfContactsToDownload;
@@ -425,13 +453,55 @@ class PbapClientConnectionHandler extends Handler {
             if ((startOffset > UPPER_LIMIT) && (numberOfContactsRemaining > 0)) {
                 Log.w(TAG, "Download contacts incomplete, index exceeded upper limit.");
             }
+            downloaded = true;
         } catch (IOException e) {
             Log.e(TAG, "Download contacts failure", e);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Download contacts failure: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Download contacts interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            if (pipeline != null
+                    && finishPipeline(pipeline, path)
+                    && downloaded
+                    && !pipeline.hasFailed()
+                    && index != null) {
+                // All the contacts that are still on the server were retained or stored.
+                if (index.deleteUnmatched(mContext.getContentResolver())) {
+                    mAccountManager.setUserData(
+                            mAccount, getFolderVersionKey(path), folderVersion);
+                }
+            }
         }
     }
 
+    /**
+     * Stores the batches already downloaded, unless the download was aborted. Returns whether all
+     * the batches were processed.
+     */
+    private static boolean finishPipeline(PhonebookSyncPipeline pipeline, String path) {
+        if (Thread.currentThread().isInterrupted()) {
+            pipeline.cancel();
+            return false;
+        }
+        try {
+            int count = pipeline.finish();
+            Log.d(TAG, "Downloaded " + count + " contacts from " + path);
+            return true;
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Download contacts interrupted");
+            pipeline.cancel();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Returns the account user data key of the folder version last synced from {@code path}. */
+    private static String getFolderVersionKey(String path) {
+        return "folder_version:" + path;
+    }
+
     @VisibleForTesting
     void downloadCallLog(String path, Map<String, Integer> callCounter) {
         try {
@@ -459,6 +529,22 @@ class PbapClientConnectionHandler extends Handler {
         return false;
     }
 
+    /**
+     * Uses the account kept by an incremental sync of a previous connection, or replaces it if the
+     * incremental sync was disabled since.
+     */
+    private boolean reuseAccount() {
+        if (!Arrays.asList(mAccountManager.getAccountsByType(mAccount.type)).contains(mAccount)) {
+            return false;
+        }
+        if (mIncrementalSync) {
+            Log.d(TAG, "Reusing account " + mAccount);
+            return true;
+        }
+        removeAccount();
+        return addAccount();
+    }
+
     @VisibleForTesting
     void removeAccount() {
         if (mAccountManager.removeAccountExplicitly(mAccount)) {
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbapclient;
+
+import android.accounts.Account;
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.RawContacts;
+import android.util.Log;
+
+import com.android.bluetooth.BluetoothMethodProxy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the contacts previously downloaded from a phonebook, used to only apply the contacts
+ * that changed during the next download.
+ *
+ * <p>Each stored raw contact is tagged with the hash of its vCard in {@link RawContacts#SYNC1} and
+ * with the phonebook path in {@link RawContacts#SYNC2}. A downloaded vCard whose hash is in the
+ * index is already stored and is {@link #retain retained}. Once the whole phonebook is
+ * downloaded, the raw contacts that were not retained were changed or deleted on the server and
+ * are {@link #deleteUnmatched deleted}.
+ */
+class PhonebookIndex {
+    private static final String TAG = "PbapClient.Index";
+
+    private final String mPath;
+
+    // Raw contact IDs by hash, identical vCards are stored once each.
+    private final Map<String, ArrayDeque<Long>> mRawContactIds = new HashMap<>();
+    private int mUnmatchedCount;
+
+    @VisibleForTesting
+    PhonebookIndex(String path) {
+        mPath = path;
+    }
+
+    /** Loads the index of the raw contacts of {@code account} downloaded from {@code path}. */
+    static PhonebookIndex load(ContentResolver resolver, Account account, String path) {
+        PhonebookIndex index = new PhonebookIndex(path);
+        try (Cursor cursor =
+                BluetoothMethodProxy.getInstance()
+                        .contentResolverQuery(
+                                resolver,
+                                RawContacts.CONTENT_URI,
+                                new String[] {RawContacts._ID, RawContacts.SYNC1},
+                                RawContacts.ACCOUNT_NAME
+                                        + "=? AND "
+                                        + RawContacts.ACCOUNT_TYPE
+                                        + "=? AND "
+                                        + RawContacts.SYNC2
+                                        + "=? AND "
+                                        + RawContacts.DELETED
+                                        + "=0",
+                                new String[] {account.name, account.type, path},
+                                null)) {
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    index.add(cursor.getLong(0), cursor.getString(1));
+                }
+            }
+        }
+        Log.d(TAG, "Loaded " + index.mUnmatchedCount + " contacts of " + path);
+        return index;
+    }
+
+    @VisibleForTesting
+    void add(long rawContactId, String hash) {
+        if (hash == null) {
+            return;
+        }
+        mRawContactIds.computeIfAbsent(hash, k -> new ArrayDeque<>()).add(rawContactId);
+        mUnmatchedCount++;
+    }
+
+    String getPath() {
+        return mPath;
+    }
+
+    /**
+     * Returns whether a stored raw contact has the hash of a downloaded vCard, in which case the
+     * raw contact is kept and the vCard doesn't need to be stored.
+     */
+    boolean retain(String hash) {
+        ArrayDeque<Long> rawContactIds = mRawContactIds.get(hash);
+        if (rawContactIds == null) {
+            return false;
+        }
+        rawContactIds.poll();
+        if (rawContactIds.isEmpty()) {
+            mRawContactIds.remove(hash);
+        }
+        mUnmatchedCount--;
+        return true;
+    }
+
+    /** Returns the number of raw contacts that were not retained yet. */
+    int getUnmatchedCount() {
+        return mUnmatchedCount;
+    }
+
+    /**
+     * Deletes the raw contacts that were not retained, once the whole phonebook is downloaded.
+     * Returns whether all of them were deleted.
+     */
+    boolean deleteUnmatched(ContentResolver resolver) {
+        if (mUnmatchedCount == 0) {
+            return true;
+        }
+        Uri uri =
+                RawContacts.CONTENT_URI
+                        .buildUpon()
+                        .appendQueryParameter(ContactsContract.CALLER_IS_SYNCADAPTER, "true")
+                        .build();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        try {
+            for (ArrayDeque<Long> rawContactIds : mRawContactIds.values()) {
+                for (long rawContactId : rawContactIds) {
+                    operations.add(
+                            ContentProviderOperation.newDelete(uri)
+                                    .withSelection(
+                                            RawContacts._ID + "=?",
+                                            new String[] {Long.toString(rawContactId)})
+                                    .build());
+                    if (operations.size() >= PhonebookPullRequest.MAX_OPS) {
+                        resolver.applyBatch(ContactsContract.AUTHORITY, operations);
+                        operations.clear();
+                    }
+                }
+            }
+            if (!operations.isEmpty()) {
+                resolver.applyBatch(ContactsContract.AUTHORITY, operations);
+            }
+            Log.d(TAG, "Deleted " + mUnmatchedCount + " contacts of " + mPath);
+            mRawContactIds.clear();
+            mUnmatchedCount = 0;
+            return true;
+        } catch (OperationApplicationException | RemoteException e) {
+            Log.e(TAG, "Failed to delete contacts of " + mPath, e);
+            return false;
+        }
+    }
+}
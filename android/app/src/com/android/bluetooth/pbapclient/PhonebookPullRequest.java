@@ -21,12 +21,14 @@ import android.content.Context;
 import android.content.OperationApplicationException;
 import android.os.RemoteException;
 import android.provider.ContactsContract;
+import android.provider.ContactsContract.RawContacts;
 import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.vcard.VCardEntry;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class PhonebookPullRequest extends PullRequest {
     private static final String TAG = "PhonebookPullRequest";
@@ -36,11 +38,38 @@ public class PhonebookPullRequest extends PullRequest {
     private final Context mContext;
     public boolean complete = false;
 
+    // Only set for incremental syncs, see setIndex().
+    private PhonebookIndex mIndex;
+    private List<String> mHashes;
+    private volatile boolean mFailed;
+
     public PhonebookPullRequest(Context context) {
         mContext = context;
         path = PbapClientConnectionHandler.PB_PATH;
     }
 
+    /**
+     * Only stores the results that are not in {@code index}, and tags them so that they are in the
+     * index of the next sync. The hashes of the results must be set with {@link #setHashes}.
+     */
+    void setIndex(PhonebookIndex index) {
+        mIndex = index;
+    }
+
+    boolean isIncremental() {
+        return mIndex != null;
+    }
+
+    /** Sets the hashes of the results, see {@link BluetoothPbapVcardList#getHashes}. */
+    void setHashes(List<String> hashes) {
+        mHashes = hashes;
+    }
+
+    /** Returns whether some of the results could not be stored. */
+    boolean hasFailed() {
+        return mFailed;
+    }
+
     @Override
     public void onPullComplete() {
         if (mEntries == null) {
@@ -48,26 +77,41 @@ public class PhonebookPullRequest extends PullRequest {
             return;
         }
         Log.v(TAG, "onPullComplete with " + mEntries.size() + " count.");
+        if (mIndex != null && (mHashes == null || mHashes.size() != mEntries.size())) {
+            Log.e(TAG, "onPullComplete hashes don't match the entries.");
+            mFailed = true;
+            return;
+        }
 
         try {
             ContentResolver contactsProvider = mContext.getContentResolver();
             ArrayList<ContentProviderOperation> insertOperations = new ArrayList<>();
+            int added = 0;
             // Group insert operations together to minimize inter process communication and improve
             // processing time.
-            for (VCardEntry e : mEntries) {
+            for (int i = 0; i < mEntries.size(); i++) {
                 if (Thread.currentThread().isInterrupted()) {
                     Log.e(TAG, "Interrupted durring insert.");
+                    mFailed = true;
                     break;
                 }
+                VCardEntry e = mEntries.get(i);
+                String hash = mIndex != null ? mHashes.get(i) : null;
+                if (hash != null && mIndex.retain(hash)) {
+                    // Already stored by a previous sync.
+                    continue;
+                }
+                added++;
                 int numberOfOperations = insertOperations.size();
                 // Append current vcard to list of insert operations.
-                e.constructInsertOperations(contactsProvider, insertOperations);
+                appendInsertOperations(contactsProvider, e, hash, insertOperations);
                 if (insertOperations.size() >= MAX_OPS) {
                     // If we have exceded the limit to the insert operation remove the latest vcard
                     // and submit.
                     insertOperations.subList(numberOfOperations, insertOperations.size()).clear();
                     contactsProvider.applyBatch(ContactsContract.AUTHORITY, insertOperations);
-                    insertOperations = e.constructInsertOperations(contactsProvider, null);
+                    insertOperations.clear();
+                    appendInsertOperations(contactsProvider, e, hash, insertOperations);
                     if (insertOperations.size() >= MAX_OPS) {
                         // Current VCard has more than 500 attributes, drop the card.
                         insertOperations.clear();
@@ -79,11 +123,38 @@ public class PhonebookPullRequest extends PullRequest {
                 contactsProvider.applyBatch(ContactsContract.AUTHORITY, insertOperations);
                 insertOperations.clear();
             }
-            Log.v(TAG, "Sync complete: add=" + mEntries.size());
+            Log.v(TAG, "Sync complete: add=" + added + ", kept=" + (mEntries.size() - added));
         } catch (OperationApplicationException | RemoteException | NumberFormatException e) {
             Log.e(TAG, "Exception occurred while processing phonebook pull: ", e);
+            mFailed = true;
         } finally {
             complete = true;
         }
     }
+
+    /** Appends the operations inserting {@code entry}, tagged with {@code hash} if not null. */
+    private void appendInsertOperations(
+            ContentResolver contactsProvider,
+            VCardEntry entry,
+            String hash,
+            ArrayList<ContentProviderOperation> operations) {
+        int rawContactIndex = operations.size();
+        entry.constructInsertOperations(contactsProvider, operations);
+        if (hash == null || operations.size() == rawContactIndex) {
+            return;
+        }
+        // The first operation inserts the raw contact, see VCardEntry#constructInsertOperations.
+        operations.add(
+                ContentProviderOperation.newUpdate(
+                                RawContacts.CONTENT_URI
+                                        .buildUpon()
+                                        .appendQueryParameter(
+                                                ContactsContract.CALLER_IS_SYNCADAPTER, "true")
+                                        .build())
+                        .withValue(RawContacts.SYNC1, hash)
+                        .withValue(RawContacts.SYNC2, mIndex.getPath())
+                        .withSelection(RawContacts._ID + "=?", new String[1])
+                        .withSelectionBackReference(0, rawContactIndex)
+                        .build());
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbapclient;
+
+import android.accounts.Account;
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.vcard.VCardEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Parses and stores the batches of vCards downloaded from a phonebook while the next batches are
+ * downloaded.
+ *
+ * <p>The downloading thread submits each batch as received from the server. A parser thread turns
+ * it into {@link VCardEntry}s, which an inserter thread then hands to a {@link
+ * PhonebookPullRequest}. The vCards are also hashed if the pull request is {@link
+ * PhonebookPullRequest#isIncremental incremental}. At
+ * most {@link #MAX_PENDING_BATCHES} batches wait between two stages, further submissions block
+ * until the slowest stage catches up.
+ */
+class PhonebookSyncPipeline {
+    private static final String TAG = "PbapClient.SyncPipeline";
+
+    @VisibleForTesting static final int MAX_PENDING_BATCHES = 2;
+
+    // Queued after the last batch, compared by identity.
+    private static final byte[] END_OF_DOWNLOADS = new byte[0];
+    private static final Object END_OF_ENTRIES = new Object();
+
+    private final Account mAccount;
+    private final byte mFormat;
+    private final boolean mStarred;
+    private final PhonebookPullRequest mProcessor;
+
+    private final BlockingQueue<byte[]> mDownloaded =
+            new ArrayBlockingQueue<>(MAX_PENDING_BATCHES);
+    // Holds the parsed BluetoothPbapVcardLists, then END_OF_ENTRIES.
+    private final BlockingQueue<Object> mParsed =
+            new ArrayBlockingQueue<>(MAX_PENDING_BATCHES);
+
+    private final Thread mParser = new Thread(this::parse, "PbapClientParser");
+    private final Thread mInserter = new Thread(this::insert, "PbapClientInserter");
+
+    private int mParsedCount;
+    private volatile boolean mFailed;
+
+    /**
+     * @param account account of the downloaded contacts
+     * @param format format of the downloaded vCards
+     * @param starred whether to mark the contacts as favorites
+     * @param processor stores the contacts, only called from the inserter thread
+     */
+    PhonebookSyncPipeline(
+            Account account, byte format, boolean starred, PhonebookPullRequest processor) {
+        mAccount = account;
+        mFormat = format;
+        mStarred = starred;
+        mProcessor = processor;
+    }
+
+    void start() {
+        mParser.start();
+        mInserter.start();
+    }
+
+    /** Queues a downloaded batch of vCards, blocking while the previous ones are processed. */
+    void submit(byte[] vCards) throws InterruptedException {
+        if (vCards != null && vCards.length > 0) {
+            mDownloaded.put(vCards);
+        }
+    }
+
+    /** Waits until all submitted batches are stored, and returns the number of contacts. */
+    int finish() throws InterruptedException {
+        mDownloaded.put(END_OF_DOWNLOADS);
+        mParser.join();
+        mInserter.join();
+        return mParsedCount;
+    }
+
+    /** Returns whether some of the finished batches could not be parsed or stored. */
+    boolean hasFailed() {
+        return mFailed || mProcessor.hasFailed();
+    }
+
+    /** Stops processing the submitted batches and waits for the threads to exit. */
+    void cancel() {
+        mParser.interrupt();
+        mInserter.interrupt();
+        boolean interrupted = false;
+        for (Thread thread : new Thread[] {mParser, mInserter}) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void parse() {
+        try {
+            while (true) {
+                byte[] vCards = mDownloaded.take();
+                if (vCards == END_OF_DOWNLOADS) {
+                    break;
+                }
+                BluetoothPbapVcardList list;
+                try {
+                    list =
+                            new BluetoothPbapVcardList(
+                                    mAccount,
+                                    new ByteArrayInputStream(vCards),
+                                    mFormat,
+                                    mProcessor.isIncremental());
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Failed to parse vCards", e);
+                    mFailed = true;
+                    continue;
+                }
+                if (mStarred) {
+                    for (VCardEntry entry : list.getList()) {
+                        entry.setStarred(true);
+                    }
+                }
+                // Only read by finish() once the thread has exited.
+                mParsedCount += list.getCount();
+                mParsed.put(list);
+            }
+            mParsed.put(END_OF_ENTRIES);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Parser interrupted");
+        }
+    }
+
+    private void insert() {
+        try {
+            while (true) {
+                Object parsed = mParsed.take();
+                if (parsed == END_OF_ENTRIES) {
+                    break;
+                }
+                BluetoothPbapVcardList list = (BluetoothPbapVcardList) parsed;
+                mProcessor.setResults(list.getList());
+                mProcessor.setHashes(list.getHashes());
+                try {
+                    mProcessor.onPullComplete();
+                } catch (RuntimeException e) {
+                    // Keep draining the batches so that the other threads don't block.
+                    Log.e(TAG, "Failed to store contacts", e);
+                    mFailed = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Inserter interrupted");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbapclient;
+
+import com.android.vcard.VCardInterpreter;
+import com.android.vcard.VCardProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hashes the properties of each parsed vCard, in the order the entries are created by a {@link
+ * com.android.vcard.VCardEntryConstructor} parsing the same input. Nested vCards are part of the
+ * hash of their top level vCard.
+ */
+class VCardEntryHasher implements VCardInterpreter {
+    private final List<String> mHashes = new ArrayList<>();
+    private final MessageDigest mDigest;
+    private int mDepth;
+
+    VCardEntryHasher() {
+        try {
+            mDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-256 in MessageDigest", e);
+        }
+    }
+
+    @Override
+    public void onVCardStarted() {}
+
+    @Override
+    public void onVCardEnded() {}
+
+    @Override
+    public void onEntryStarted() {
+        if (mDepth++ == 0) {
+            mDigest.reset();
+        }
+    }
+
+    @Override
+    public void onEntryEnded() {
+        if (--mDepth == 0) {
+            mHashes.add(Base64.getEncoder().encodeToString(mDigest.digest()));
+        }
+    }
+
+    @Override
+    public void onPropertyCreated(VCardProperty property) {
+        if (mDepth == 0) {
+            return;
+        }
+        update(property.getName());
+        // Parameters are sorted so that their order doesn't change the hash.
+        Map<String, Collection<String>> parameters = new TreeMap<>(property.getParameterMap());
+        for (Map.Entry<String, Collection<String>> parameter : parameters.entrySet()) {
+            update(parameter.getKey());
+            for (String value : parameter.getValue()) {
+                update(value);
+            }
+        }
+        update(property.getRawValue());
+        byte[] bytes = property.getByteValue();
+        if (bytes != null) {
+            mDigest.update(bytes);
+        }
+        mDigest.update((byte) '\n');
+    }
+
+    private void update(String value) {
+        if (value != null) {
+            mDigest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // Separates the values so that moving characters from one to the other changes the hash.
+        mDigest.update((byte) 0);
+    }
+
+    /** Returns the hashes of the vCards parsed so far, in order. */
+    List<String> getHashes() {
+        return mHashes;
+    }
+
+    void clear() {
+        mHashes.clear();
+        mDepth = 0;
+    }
+}
@@ -81,6 +81,24 @@ public class UtilsTest {
         assertThat(s).isEqualTo(0x0807060504030201L);
     }
 
+    @Test
+    public void getLongFromAddress() {
+        assertThat(Utils.getLongFromAddress("00:11:22:AA:bb:FF")).isEqualTo(0x001122AABBFFL);
+        assertThat(Utils.getLongFromAddress("FF:FF:FF:FF:FF:FF")).isEqualTo(0xFFFFFFFFFFFFL);
+        assertThat(Utils.getLongFromAddress(null)).isEqualTo(-1);
+        assertThat(Utils.getLongFromAddress("00:11:22:33:44")).isEqualTo(-1);
+        assertThat(Utils.getLongFromAddress("00-11-22-33-44-55")).isEqualTo(-1);
+        assertThat(Utils.getLongFromAddress("00:11:22:33:44:GG")).isEqualTo(-1);
+    }
+
+    @Test
+    public void getAddressStringFromLong() {
+        assertThat(Utils.getAddressStringFromLong(0x001122AABBFFL))
+                .isEqualTo("00:11:22:AA:BB:FF");
+        assertThat(Utils.getAddressStringFromLong(Utils.getLongFromAddress("0a:1b:2c:3d:4e:5f")))
+                .isEqualTo("0A:1B:2C:3D:4E:5F");
+    }
+
     @Test
     public void byteArrayToString() {
         byte[] valueBuf = new byte[] {0x01, 0x02};
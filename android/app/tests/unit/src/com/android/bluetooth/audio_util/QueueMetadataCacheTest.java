@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.audio_util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaDescription;
+import android.media.session.MediaSession;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class QueueMetadataCacheTest {
+    private Context mContext;
+    private QueueMetadataCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mCache = new QueueMetadataCache(mContext);
+    }
+
+    @Test
+    public void update_matchesToMetadataList() {
+        List<MediaSession.QueueItem> items = createQueue(0, 5);
+
+        assertThat(mCache.update(items)).isTrue();
+
+        assertThat(mCache.getQueue()).isEqualTo(Util.toMetadataList(mContext, items));
+        assertThat(mCache.getLastTranslatedCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void update_sameQueue_keepsList() {
+        mCache.update(createQueue(0, 5));
+        List<Metadata> queue = mCache.getQueue();
+
+        assertThat(mCache.update(createQueue(0, 5))).isFalse();
+
+        assertThat(mCache.getQueue()).isSameInstanceAs(queue);
+        assertThat(mCache.getLastTranslatedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void update_itemChanged_onlyTranslatesChangedItem() {
+        mCache.update(createQueue(0, 5));
+        List<Metadata> queue = mCache.getQueue();
+        List<MediaSession.QueueItem> items = createQueue(0, 5);
+        items.set(2, createItem(2, "Changed title"));
+
+        assertThat(mCache.update(items)).isTrue();
+
+        assertThat(mCache.getQueue()).isEqualTo(Util.toMetadataList(mContext, items));
+        assertThat(mCache.getQueue().get(0)).isSameInstanceAs(queue.get(0));
+        assertThat(mCache.getLastTranslatedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void update_newIconBitmap_translatesItem() {
+        Bitmap icon = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        List<MediaSession.QueueItem> items = createQueue(0, 5);
+        items.set(2, createItem(2, "Title 2", icon));
+        mCache.update(items);
+        items.set(2, createItem(2, "Title 2", icon));
+
+        mCache.update(items);
+        assertThat(mCache.getLastTranslatedCount()).isEqualTo(0);
+
+        items.set(2, createItem(2, "Title 2", icon.copy(icon.getConfig(), false)));
+        mCache.update(items);
+        assertThat(mCache.getLastTranslatedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void update_itemRemoved_renumbersTracks() {
+        mCache.update(createQueue(0, 5));
+        List<Metadata> queue = mCache.getQueue();
+        List<MediaSession.QueueItem> items = createQueue(0, 5);
+        items.remove(0);
+
+        assertThat(mCache.update(items)).isTrue();
+
+        assertThat(mCache.getQueue()).isEqualTo(Util.toMetadataList(mContext, items));
+        assertThat(mCache.getLastTranslatedCount()).isEqualTo(0);
+        // The previous queue isn't modified.
+        assertThat(queue).isEqualTo(Util.toMetadataList(mContext, createQueue(0, 5)));
+    }
+
+    @Test
+    public void update_nullQueue_returnsEmptyQueue() {
+        mCache.update(createQueue(0, 5));
+
+        assertThat(mCache.update(null)).isTrue();
+
+        assertThat(mCache.getQueue()).isEmpty();
+        assertThat(mCache.update(null)).isFalse();
+    }
+
+    private static List<MediaSession.QueueItem> createQueue(int firstId, int count) {
+        List<MediaSession.QueueItem> items = new ArrayList<>();
+        for (int i = firstId; i < firstId + count; i++) {
+            items.add(createItem(i, "Title " + i));
+        }
+        return items;
+    }
+
+    private static MediaSession.QueueItem createItem(long queueId, String title) {
+        return createItem(queueId, title, null);
+    }
+
+    private static MediaSession.QueueItem createItem(long queueId, String title, Bitmap icon) {
+        MediaDescription description =
+                new MediaDescription.Builder()
+                        .setMediaId("media" + queueId)
+                        .setTitle(title)
+                        .setSubtitle("Artist " + queueId)
+                        .setDescription("Album " + queueId)
+                        .setIconBitmap(icon)
+                        .build();
+        return new MediaSession.QueueItem(description, queueId);
+    }
+}
@@ -1059,6 +1059,44 @@ public class AvrcpControllerStateMachineTest {
                 .getNowPlayingList(eq(mTestAddress), eq(0), eq(19));
     }
 
+    /** Test that the next items are requested before the current ones are stored. */
+    @Test
+    public void testNowPlayingWithPrefetch_requestsGrowingPages() {
+        when(mMockResources.getBoolean(R.bool.avrcp_controller_browse_prefetch)).thenReturn(true);
+        mAvrcpStateMachine =
+                new AvrcpControllerStateMachine(
+                        mTestDevice, mAvrcpControllerService, mNativeInterface, false);
+        mAvrcpStateMachine.start();
+        setUpConnectedState(true, true);
+        List<AvrcpItem> nowPlayingList = new ArrayList<AvrcpItem>();
+        for (int i = 1; i <= 60; i++) {
+            nowPlayingList.add(makeNowPlayingItem(i, "Song " + Integer.toString(i)));
+        }
+
+        BrowseTree.BrowseNode nowPlaying = mAvrcpStateMachine.findNode("NOW_PLAYING");
+        mAvrcpStateMachine.requestContents(nowPlaying);
+        TestUtils.waitForLooperToFinishScheduledTask(mAvrcpStateMachine.getHandler().getLooper());
+        verify(mNativeInterface).getNowPlayingList(eq(mTestAddress), eq(0), eq(19));
+
+        mAvrcpStateMachine.sendMessage(
+                AvrcpControllerStateMachine.MESSAGE_PROCESS_GET_FOLDER_ITEMS,
+                new ArrayList<AvrcpItem>(nowPlayingList.subList(0, 20)));
+        TestUtils.waitForLooperToFinishScheduledTask(mAvrcpStateMachine.getHandler().getLooper());
+        verify(mNativeInterface).getNowPlayingList(eq(mTestAddress), eq(20), eq(59));
+
+        mAvrcpStateMachine.sendMessage(
+                AvrcpControllerStateMachine.MESSAGE_PROCESS_GET_FOLDER_ITEMS,
+                new ArrayList<AvrcpItem>(nowPlayingList.subList(20, 60)));
+        TestUtils.waitForLooperToFinishScheduledTask(mAvrcpStateMachine.getHandler().getLooper());
+        verify(mNativeInterface).getNowPlayingList(eq(mTestAddress), eq(60), eq(139));
+
+        mAvrcpStateMachine.sendMessage(
+                AvrcpControllerStateMachine.MESSAGE_PROCESS_GET_FOLDER_ITEMS_OUT_OF_RANGE);
+        TestUtils.waitForLooperToFinishScheduledTask(mAvrcpStateMachine.getHandler().getLooper());
+        Assert.assertTrue(mAvrcpStateMachine.findNode("NOW_PLAYING").isCached());
+        assertNowPlayingList(nowPlayingList);
+    }
+
     /** Test that AVRCP events such as playback commands can execute while performing browsing. */
     @Test
     public void testPlayWhileBrowsing() {
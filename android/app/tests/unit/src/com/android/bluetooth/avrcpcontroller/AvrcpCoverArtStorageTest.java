@@ -35,6 +35,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
 import java.io.InputStream;
 
 /** A test suite for the AvrcpCoverArtStorage class. */
@@ -327,6 +328,65 @@ public final class AvrcpCoverArtStorageTest {
         Assert.assertFalse(mAvrcpCoverArtStorage.doesImageExist(mDevice2, mHandle2));
     }
 
+    @Test
+    public void addImageOverMemoryBudget_leastRecentlyUsedEvicted() {
+        int imageSize = mImage1.getAllocationByteCount();
+        AvrcpCoverArtStorage storage =
+                new AvrcpCoverArtStorage(mTargetContext, 2 * imageSize, /* maxDiskBytes= */ 0);
+        storage.addImage(mDevice1, mHandle1, mImage1);
+        storage.addImage(mDevice2, mHandle1, mImage1);
+        Assert.assertNotNull(storage.getImage(mDevice1, mHandle1));
+
+        storage.addImage(mDevice1, mHandle2, mImage1);
+
+        Assert.assertTrue(storage.doesImageExist(mDevice1, mHandle1));
+        Assert.assertFalse(storage.doesImageExist(mDevice2, mHandle1));
+        Assert.assertTrue(storage.doesImageExist(mDevice1, mHandle2));
+    }
+
+    @Test
+    public void imageEvictedWithDiskTier_servedFromDisk() {
+        AvrcpCoverArtStorage storage =
+                new AvrcpCoverArtStorage(
+                        mTargetContext, mImage1.getAllocationByteCount(), 10 * 1024 * 1024);
+        File diskDir =
+                new File(mTargetContext.getCacheDir(), AvrcpCoverArtStorage.DISK_CACHE_DIR);
+        try {
+            storage.addImage(mDevice1, mHandle1, mImage1);
+            storage.addImage(mDevice1, mHandle2, mImage1);
+            Assert.assertEquals(1, diskDir.listFiles().length);
+
+            Assert.assertTrue(storage.doesImageExist(mDevice1, mHandle1));
+            Bitmap image = storage.getImage(mDevice1, mHandle1);
+            Assert.assertNotNull(image);
+            Assert.assertEquals(mImage1.getWidth(), image.getWidth());
+            Assert.assertEquals(mImage1.getHeight(), image.getHeight());
+
+            storage.removeImagesForDevice(mDevice1);
+            Assert.assertFalse(storage.doesImageExist(mDevice1, mHandle1));
+            Assert.assertFalse(storage.doesImageExist(mDevice1, mHandle2));
+            Assert.assertEquals(0, diskDir.listFiles().length);
+        } finally {
+            storage.clear();
+        }
+    }
+
+    @Test
+    public void diskTierOverBudget_leastRecentlyUsedDeleted() {
+        AvrcpCoverArtStorage storage =
+                new AvrcpCoverArtStorage(mTargetContext, mImage1.getAllocationByteCount(), 1);
+        try {
+            storage.addImage(mDevice1, mHandle1, mImage1);
+            storage.addImage(mDevice1, mHandle2, mImage1);
+
+            // The evicted image is larger than the disk budget.
+            Assert.assertFalse(storage.doesImageExist(mDevice1, mHandle1));
+            Assert.assertTrue(storage.doesImageExist(mDevice1, mHandle2));
+        } finally {
+            storage.clear();
+        }
+    }
+
     @Test
     public void toString_returnsDeviceInfo() {
         String expectedString =
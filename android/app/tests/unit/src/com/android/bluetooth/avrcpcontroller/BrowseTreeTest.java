@@ -243,6 +243,82 @@ public class BrowseTreeTest {
                 .isEqualTo(browseTree.mNavigateUpNode);
     }
 
+    @Test
+    public void trim_overMaxNodes_evictsLeastRecentlyViewedFolder() {
+        // The root and Now Playing nodes, 3 folders and their 3 items each.
+        BrowseTree browseTree = new BrowseTree(mTestDevice, 13);
+        BrowseNode folder1 = addFolder(browseTree, "folder1", 3);
+        BrowseNode folder2 = addFolder(browseTree, "folder2", 3);
+        BrowseNode folder3 = addFolder(browseTree, "folder3", 3);
+        folder2.markViewed();
+        folder1.markViewed();
+        folder3.markViewed();
+
+        assertThat(browseTree.trim(null)).isTrue();
+
+        assertThat(folder2.isCached()).isFalse();
+        assertThat(folder2.getChildrenCount()).isEqualTo(0);
+        assertThat(browseTree.mBrowseMap).doesNotContainKey("folder2_item0");
+        assertThat(browseTree.mBrowseMap).containsKey("folder2");
+        assertThat(folder1.getChildrenCount()).isEqualTo(3);
+        assertThat(folder3.getChildrenCount()).isEqualTo(3);
+        assertThat(browseTree.mBrowseMap).hasSize(11);
+    }
+
+    @Test
+    public void trim_overMaxNodes_keepsFoldersBeingBrowsed() {
+        BrowseTree browseTree = new BrowseTree(mTestDevice, 1);
+        BrowseNode folder1 = addFolder(browseTree, "folder1", 3);
+        BrowseNode folder2 = addFolder(browseTree, "folder2", 3);
+        BrowseNode folder3 = addFolder(browseTree, "folder3", 3);
+        folder1.markViewed();
+        folder2.markViewed();
+        folder3.markViewed();
+        browseTree.setCurrentBrowsedFolder("folder1");
+
+        assertThat(browseTree.trim(folder2)).isTrue();
+
+        assertThat(folder1.getChildrenCount()).isEqualTo(3);
+        assertThat(folder2.getChildrenCount()).isEqualTo(3);
+        assertThat(folder3.getChildrenCount()).isEqualTo(0);
+        assertThat(browseTree.trim(folder2)).isFalse();
+    }
+
+    @Test
+    public void trim_noMaxNodes_evictsNothing() {
+        BrowseTree browseTree = new BrowseTree(mTestDevice);
+        BrowseNode folder = addFolder(browseTree, "folder", 3);
+        folder.markViewed();
+
+        assertThat(browseTree.trim(null)).isFalse();
+
+        assertThat(folder.getChildrenCount()).isEqualTo(3);
+    }
+
+    private static BrowseNode addFolder(BrowseTree browseTree, String id, int items) {
+        BrowseNode folder =
+                browseTree
+                .new BrowseNode(
+                        new AvrcpItem.Builder()
+                                .setUuid(id)
+                                .setTitle(id)
+                                .setBrowsable(true)
+                                .build());
+        browseTree.mRootNode.addChild(folder);
+        for (int i = 0; i < items; i++) {
+            folder.addChild(
+                    browseTree
+                    .new BrowseNode(
+                            new AvrcpItem.Builder()
+                                    .setUuid(id + "_item" + i)
+                                    .setTitle(id + "_item" + i)
+                                    .setPlayable(true)
+                                    .build()));
+        }
+        folder.setCached(true);
+        return folder;
+    }
+
     @Test
     public void toString_returnsSizeInfo() {
         BrowseTree browseTree = new BrowseTree(mTestDevice);
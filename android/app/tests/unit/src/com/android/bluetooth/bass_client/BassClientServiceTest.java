@@ -1273,6 +1273,10 @@ public class BassClientServiceTest {
     }
 
     private void onScanResult(BluetoothDevice testDevice, int broadcastId) {
+        onScanResult(testDevice, broadcastId, TEST_RSSI);
+    }
+
+    private void onScanResult(BluetoothDevice testDevice, int broadcastId, int rssi) {
         byte[] scanRecord = getScanRecord(broadcastId);
         ScanResult scanResult =
                 new ScanResult(
@@ -1282,7 +1286,7 @@ public class BassClientServiceTest {
                         0,
                         0,
                         0,
-                        TEST_RSSI,
+                        rssi,
                         0,
                         ScanRecord.parseFromBytes(scanRecord),
                         0);
@@ -4796,6 +4800,36 @@ public class BassClientServiceTest {
         }
     }
 
+    @Test
+    @EnableFlags({
+        Flags.FLAG_LEAUDIO_BROADCAST_EXTRACT_PERIODIC_SCANNER_FROM_STATE_MACHINE,
+        Flags.FLAG_LEAUDIO_BROADCAST_MONITOR_SOURCE_SYNC_STATUS
+    })
+    public void notifySourceFound_latestRssi() {
+        int latestRssi = TEST_RSSI - 10;
+        prepareConnectedDeviceGroup();
+        startSearchingForSources();
+        onScanResult(mSourceDevice, TEST_BROADCAST_ID);
+        onSyncEstablished(mSourceDevice, TEST_SYNC_HANDLE);
+        // A later advertisement of the same source only refreshes its RSSI
+        onScanResult(mSourceDevice, TEST_BROADCAST_ID, latestRssi);
+
+        onPeriodicAdvertisingReport();
+        if (!Flags.leaudioBigDependsOnAudioState()) {
+            onBigInfoAdvertisingReport();
+        }
+
+        TestUtils.waitForLooperToFinishScheduledTask(mBassClientService.getCallbacks().getLooper());
+        ArgumentCaptor<BluetoothLeBroadcastMetadata> metaData =
+                ArgumentCaptor.forClass(BluetoothLeBroadcastMetadata.class);
+        try {
+            verify(mCallback).onSourceFound(metaData.capture());
+        } catch (RemoteException e) {
+            throw e.rethrowFromSystemServer();
+        }
+        Assert.assertEquals(latestRssi, metaData.getValue().getRssi());
+    }
+
     @Test
     @EnableFlags({
         Flags.FLAG_LEAUDIO_BROADCAST_EXTRACT_PERIODIC_SCANNER_FROM_STATE_MACHINE,
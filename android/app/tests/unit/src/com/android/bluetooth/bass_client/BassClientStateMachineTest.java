@@ -2333,6 +2333,7 @@ public class BassClientStateMachineTest {
         when(paResult.isNotified()).thenReturn(false);
         when(mBassClientService.getBase(anyInt())).thenReturn(data);
         when(mBassClientService.getCachedBroadcast(anyInt())).thenReturn(scanResult);
+        when(mBassClientService.getCachedBroadcastRssi(anyInt(), anyInt())).thenReturn(testRssi);
         when(mBassClientService.getCallbacks()).thenReturn(callbacks);
 
         cb.onBigInfoAdvertisingReport(syncHandle, true);
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.bass_client;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BassUtilsTest {
+
+    @Test
+    public void findBroadcastId() {
+        byte[] advertisingData =
+                new byte[] {
+                    0x02, 0x01, 0x1a, // advertising flags
+                    0x03, 0x16, 0x56, 0x18, // service data of another UUID
+                    0x06, 0x16, 0x52, 0x18, 0x01, 0x02, 0x03, // broadcast id
+                    0x00, 0x00, // padding
+                };
+
+        assertThat(BassUtils.findBroadcastId(advertisingData)).isEqualTo(0x030201);
+    }
+
+    @Test
+    public void findBroadcastId_notAnnounced() {
+        assertThat(BassUtils.findBroadcastId(null))
+                .isEqualTo(BassConstants.INVALID_BROADCAST_ID);
+        // Too short for a broadcast ID
+        assertThat(BassUtils.findBroadcastId(new byte[] {0x04, 0x16, 0x52, 0x18, 0x01}))
+                .isEqualTo(BassConstants.INVALID_BROADCAST_ID);
+        // Truncated structure
+        assertThat(BassUtils.findBroadcastId(new byte[] {0x06, 0x16, 0x52, 0x18, 0x01, 0x02}))
+                .isEqualTo(BassConstants.INVALID_BROADCAST_ID);
+    }
+}
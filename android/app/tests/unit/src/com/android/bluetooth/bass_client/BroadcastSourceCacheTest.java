@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.bass_client;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.ScanResult;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class BroadcastSourceCacheTest {
+    private static final int TEST_RSSI = -50;
+
+    private long mNowMs;
+
+    @Test
+    public void add_knownSource_keepsFirstResult() {
+        BroadcastSourceCache cache = new BroadcastSourceCache(0, 0, id -> false, () -> mNowMs);
+        ScanResult first = createScanResult(TEST_RSSI);
+
+        assertThat(cache.add(1, first)).isTrue();
+        assertThat(cache.add(1, createScanResult(TEST_RSSI))).isFalse();
+
+        assertThat(cache.get(1)).isSameInstanceAs(first);
+    }
+
+    @Test
+    public void refresh_updatesRssi() {
+        BroadcastSourceCache cache = new BroadcastSourceCache(0, 0, id -> false, () -> mNowMs);
+
+        assertThat(cache.refresh(1, -40)).isFalse();
+        cache.add(1, createScanResult(TEST_RSSI));
+        assertThat(cache.refresh(1, -40)).isTrue();
+
+        assertThat(cache.getRssi(1, 0)).isEqualTo(-40);
+        assertThat(cache.getRssi(2, 0)).isEqualTo(0);
+    }
+
+    @Test
+    public void add_full_evictsLeastRecentlySeen() {
+        BroadcastSourceCache cache = new BroadcastSourceCache(2, 0, id -> false, () -> mNowMs);
+        cache.add(1, createScanResult(TEST_RSSI));
+        cache.add(2, createScanResult(TEST_RSSI));
+        cache.refresh(1, TEST_RSSI);
+
+        cache.add(3, createScanResult(TEST_RSSI));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(1)).isNotNull();
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.get(3)).isNotNull();
+    }
+
+    @Test
+    public void add_dropsAgedSources() {
+        BroadcastSourceCache cache = new BroadcastSourceCache(0, 1000, id -> false, () -> mNowMs);
+        cache.add(1, createScanResult(TEST_RSSI));
+        cache.add(2, createScanResult(TEST_RSSI));
+        mNowMs = 800;
+        cache.refresh(2, TEST_RSSI);
+        mNowMs = 1500;
+
+        cache.add(3, createScanResult(TEST_RSSI));
+
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.get(2)).isNotNull();
+        assertThat(cache.get(3)).isNotNull();
+    }
+
+    @Test
+    public void add_full_keepsSourcesInUse() {
+        BroadcastSourceCache cache = new BroadcastSourceCache(2, 0, id -> id == 1, () -> mNowMs);
+        cache.add(1, createScanResult(TEST_RSSI));
+        cache.add(2, createScanResult(TEST_RSSI));
+
+        cache.add(3, createScanResult(TEST_RSSI));
+
+        assertThat(cache.get(1)).isNotNull();
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.get(3)).isNotNull();
+    }
+
+    @Test
+    public void add_allInUse_growsPastMaxSize() {
+        BroadcastSourceCache cache = new BroadcastSourceCache(2, 1000, id -> true, () -> mNowMs);
+        cache.add(1, createScanResult(TEST_RSSI));
+        cache.add(2, createScanResult(TEST_RSSI));
+        mNowMs = 1500;
+
+        cache.add(3, createScanResult(TEST_RSSI));
+
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.get(1)).isNotNull();
+        assertThat(cache.get(2)).isNotNull();
+    }
+
+    private static ScanResult createScanResult(int rssi) {
+        return new ScanResult(
+                BluetoothAdapter.getDefaultAdapter().getRemoteDevice("00:11:22:33:44:55"),
+                0,
+                0,
+                0,
+                0,
+                0,
+                rssi,
+                0,
+                null,
+                0);
+    }
+}
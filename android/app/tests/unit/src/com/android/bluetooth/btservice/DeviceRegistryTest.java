@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.btservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.bluetooth.Utils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class DeviceRegistryTest {
+    @Test
+    public void toKey_stringAndBytesMatch() {
+        String address = "00:11:22:AA:BB:CC";
+
+        long key = DeviceRegistry.toKey(address);
+
+        assertThat(key).isEqualTo(0x001122AABBCCL);
+        assertThat(DeviceRegistry.toKey(Utils.getBytesFromAddress(address))).isEqualTo(key);
+        assertThat(DeviceRegistry.toKey("00:11:22:aa:bb:cc")).isEqualTo(key);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toKey_invalidAddress_throws() {
+        DeviceRegistry.toKey("00-11-22-AA-BB-CC");
+    }
+
+    @Test
+    public void put_overCapacity_evictsLeastRecentlyUsed() {
+        DeviceRegistry<String> registry = new DeviceRegistry<>(3, v -> false);
+        registry.put(1, "1");
+        registry.put(2, "2");
+        registry.put(3, "3");
+        registry.get(1);
+
+        registry.put(4, "4");
+
+        assertThat(registry.size()).isEqualTo(3);
+        assertThat(registry.get(2)).isNull();
+        assertThat(registry.get(1)).isEqualTo("1");
+        assertThat(registry.get(4)).isEqualTo("4");
+    }
+
+    @Test
+    public void put_capacityLowered_evictsOnNextInsertion() {
+        AtomicInteger capacity = new AtomicInteger(3);
+        DeviceRegistry<String> registry = new DeviceRegistry<>(capacity::get, v -> false);
+        registry.put(1, "1");
+        registry.put(2, "2");
+        registry.put(3, "3");
+
+        capacity.set(2);
+        registry.put(4, "4");
+
+        assertThat(registry.size()).isEqualTo(3);
+        assertThat(registry.get(1)).isNull();
+        assertThat(registry.get(4)).isEqualTo("4");
+    }
+
+    @Test
+    public void put_overCapacity_skipsPinned() {
+        Set<String> pinned = new HashSet<>();
+        DeviceRegistry<String> registry = new DeviceRegistry<>(2, pinned::contains);
+        registry.put(1, "1");
+        registry.put(2, "2");
+        pinned.add("1");
+
+        registry.put(3, "3");
+
+        assertThat(registry.get(1)).isEqualTo("1");
+        assertThat(registry.get(2)).isNull();
+    }
+
+    @Test
+    public void put_allPinned_growsPastCapacity() {
+        DeviceRegistry<String> registry = new DeviceRegistry<>(2, v -> true);
+        registry.put(1, "1");
+        registry.put(2, "2");
+
+        registry.put(3, "3");
+
+        assertThat(registry.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void put_existingKey_replacesWithoutEviction() {
+        DeviceRegistry<String> registry = new DeviceRegistry<>(2, v -> false);
+        registry.put(1, "1");
+        registry.put(2, "2");
+
+        assertThat(registry.put(1, "1'")).isEqualTo("1");
+
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(registry.get(2)).isEqualTo("2");
+    }
+}
@@ -66,6 +66,8 @@ import org.mockito.junit.MockitoRule;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -173,6 +175,59 @@ public final class DatabaseManagerTest {
         TestUtils.waitForLooperToFinishScheduledTask(mDatabaseManager.getHandlerLooper());
     }
 
+    @Test
+    public void testMetadataWritesCoalescedUntilCleanup() {
+        when(mAdapterService.getMetadataWriteDelayMillis()).thenReturn(TimeUnit.DAYS.toMillis(1));
+        Metadata data = new Metadata(TEST_BT_ADDR);
+        mDatabaseManager.mMetadataCache.put(TEST_BT_ADDR, data);
+        mDatabase.insert(data);
+
+        mDatabaseManager.setProfileConnectionPolicy(
+                mTestDevice, BluetoothProfile.HEADSET, BluetoothProfile.CONNECTION_POLICY_ALLOWED);
+        mDatabaseManager.setProfileConnectionPolicy(
+                mTestDevice, BluetoothProfile.A2DP, BluetoothProfile.CONNECTION_POLICY_FORBIDDEN);
+        TestUtils.waitForLooperToFinishScheduledTask(mDatabaseManager.getHandlerLooper());
+
+        // Nothing is written before the write delay elapses
+        List<Metadata> list = mDatabase.load();
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals(
+                BluetoothProfile.CONNECTION_POLICY_UNKNOWN,
+                list.get(0).getProfileConnectionPolicy(BluetoothProfile.HEADSET));
+
+        // Pending changes are written in one row on cleanup
+        mDatabaseManager.cleanup();
+        list = mDatabase.load();
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals(
+                BluetoothProfile.CONNECTION_POLICY_ALLOWED,
+                list.get(0).getProfileConnectionPolicy(BluetoothProfile.HEADSET));
+        Assert.assertEquals(
+                BluetoothProfile.CONNECTION_POLICY_FORBIDDEN,
+                list.get(0).getProfileConnectionPolicy(BluetoothProfile.A2DP));
+
+        StringWriter dump = new StringWriter();
+        mDatabaseManager.dump(new PrintWriter(dump));
+        Truth.assertThat(dump.toString()).contains("pending=0, coalesced=1");
+    }
+
+    @Test
+    public void testMetadataWriteDroppedOnDelete() {
+        when(mAdapterService.getMetadataWriteDelayMillis()).thenReturn(TimeUnit.DAYS.toMillis(1));
+        Metadata data = new Metadata(TEST_BT_ADDR);
+        mDatabaseManager.mMetadataCache.put(TEST_BT_ADDR, data);
+        mDatabase.insert(data);
+
+        mDatabaseManager.setProfileConnectionPolicy(
+                mTestDevice, BluetoothProfile.HEADSET, BluetoothProfile.CONNECTION_POLICY_ALLOWED);
+        mDatabaseManager.deleteDatabase(data);
+        TestUtils.waitForLooperToFinishScheduledTask(mDatabaseManager.getHandlerLooper());
+        mDatabaseManager.cleanup();
+
+        // The pending write must not bring the deleted device back
+        Assert.assertEquals(0, mDatabase.load().size());
+    }
+
     @Test
     public void testSetGetProfileConnectionPolicy() {
         int badConnectionPolicy = -100;
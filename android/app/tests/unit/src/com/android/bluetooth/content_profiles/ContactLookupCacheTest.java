@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.content_profiles;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import android.content.ContentResolver;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.function.Function;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ContactLookupCacheTest {
+    private static final String KIND = "name";
+    private static final String NUMBER = "+15555550100";
+
+    private final ContentResolver mResolver =
+            InstrumentationRegistry.getInstrumentation().getTargetContext().getContentResolver();
+    private final ContactLookupCache mCache = new ContactLookupCache();
+    private int mLookups;
+
+    private final Function<String, String> mLookup =
+            number -> {
+                mLookups++;
+                return number.equals(NUMBER) ? "Alice" : null;
+            };
+
+    @Before
+    public void setUp() {
+        mLookups = 0;
+    }
+
+    @After
+    public void tearDown() {
+        mCache.unregister();
+        mCache.unregister();
+    }
+
+    @Test
+    public void get_notRegistered_alwaysLooksUp() {
+        assertThat(mCache.get(mResolver, KIND, NUMBER, mLookup)).isEqualTo("Alice");
+        assertThat(mCache.get(mResolver, KIND, NUMBER, mLookup)).isEqualTo("Alice");
+
+        assertThat(mLookups).isEqualTo(2);
+    }
+
+    @Test
+    public void get_registered_looksUpEachNumberOnce() {
+        mCache.register(mResolver);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(mCache.get(mResolver, KIND, NUMBER, mLookup)).isEqualTo("Alice");
+            assertThat(mCache.get(mResolver, KIND, "+15555550199", mLookup)).isNull();
+        }
+
+        assertThat(mLookups).isEqualTo(2);
+    }
+
+    @Test
+    public void get_differentKinds_cachedSeparately() {
+        mCache.register(mResolver);
+
+        mCache.get(mResolver, KIND, NUMBER, mLookup);
+        assertThat(mCache.get(mResolver, "other", NUMBER, number -> "Bob")).isEqualTo("Bob");
+    }
+
+    @Test
+    public void get_differentResolvers_cachedSeparately() {
+        ContentResolver otherUserResolver = mock(ContentResolver.class);
+        mCache.register(mResolver);
+
+        mCache.get(mResolver, KIND, NUMBER, mLookup);
+        assertThat(mCache.get(otherUserResolver, KIND, NUMBER, number -> "Bob")).isEqualTo("Bob");
+        assertThat(mCache.get(mResolver, KIND, NUMBER, mLookup)).isEqualTo("Alice");
+        assertThat(mLookups).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidate_looksUpAgain() {
+        mCache.register(mResolver);
+        mCache.get(mResolver, KIND, NUMBER, mLookup);
+
+        mCache.invalidate();
+        mCache.get(mResolver, KIND, NUMBER, mLookup);
+
+        assertThat(mLookups).isEqualTo(2);
+    }
+
+    @Test
+    public void unregister_stopsCachingOnceAllProfilesUnregistered() {
+        mCache.register(mResolver);
+        mCache.register(mResolver);
+
+        mCache.unregister();
+        mCache.get(mResolver, KIND, NUMBER, mLookup);
+        mCache.get(mResolver, KIND, NUMBER, mLookup);
+        assertThat(mLookups).isEqualTo(1);
+
+        mCache.unregister();
+        mCache.get(mResolver, KIND, NUMBER, mLookup);
+        assertThat(mLookups).isEqualTo(2);
+    }
+}
@@ -30,6 +30,7 @@ import androidx.test.runner.AndroidJUnit4;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayOutputStream;
 import java.util.UUID;
 
 /** Test cases for {@link AdvertiseHelper}. */
@@ -77,6 +78,26 @@ public class AdvertiseHelperTest {
         assertThat(advDataBytesLongName.length).isEqualTo(expectedAdvDataBytesLongNameLength);
     }
 
+    @Test
+    public void advertiseDataToBytes_reusedBuffer() {
+        AdvertiseData first =
+                new AdvertiseData.Builder()
+                        .addServiceUuid(
+                                ParcelUuid.fromString("0000FEF3-0000-1000-8000-00805F9B34FB"))
+                        .addServiceData(new ParcelUuid(UUID.randomUUID()), new byte[] {0x10})
+                        .build();
+        AdvertiseData second =
+                new AdvertiseData.Builder().addManufacturerData(1, new byte[] {0x20}).build();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        AdvertiseHelper.advertiseDataToBytes(first, null, buffer);
+
+        assertThat(AdvertiseHelper.advertiseDataToBytes(second, null, buffer))
+                .isEqualTo(new byte[] {0x04, (byte) 0xFF, 0x01, 0x00, 0x20});
+        assertThat(AdvertiseHelper.advertiseDataToBytes(first, null, buffer))
+                .isEqualTo(AdvertiseHelper.advertiseDataToBytes(first, null));
+    }
+
     @Test
     public void checkLength_withGT255_throwsException() {
         assertThrows(IllegalArgumentException.class, () -> AdvertiseHelper.check_length(0X00, 256));
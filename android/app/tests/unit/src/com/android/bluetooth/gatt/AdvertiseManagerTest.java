@@ -17,11 +17,15 @@
 package com.android.bluetooth.gatt;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import android.bluetooth.le.AdvertiseCallback;
 import android.bluetooth.le.AdvertiseData;
 import android.bluetooth.le.AdvertisingSetParameters;
 import android.bluetooth.le.IAdvertisingSetCallback;
@@ -122,6 +126,69 @@ public class AdvertiseManagerTest {
         verify(mAdvertiserMap).setAdvertisingData(mAdvertiserId, advertiseData);
     }
 
+    @Test
+    public void advertisingData_unchanged_notSetAgain() throws Exception {
+        AdvertiseData advertiseData = new AdvertiseData.Builder().build();
+        // The data the set was started with is confirmed once it started
+        mAdvertiseManager.onAdvertisingSetStarted(mAdvertiserId, mAdvertiserId, 0, 0);
+
+        mAdvertiseManager.setAdvertisingData(mAdvertiserId, advertiseData);
+
+        verify(mNativeInterface, never()).setAdvertisingData(anyInt(), any());
+        verify(mCallback)
+                .onAdvertisingDataSet(mAdvertiserId, AdvertiseCallback.ADVERTISE_SUCCESS);
+    }
+
+    @Test
+    public void advertisingData_changed_setOnce() throws Exception {
+        AdvertiseData advertiseData =
+                new AdvertiseData.Builder().addManufacturerData(1, new byte[] {0x01}).build();
+
+        mAdvertiseManager.setAdvertisingData(mAdvertiserId, advertiseData);
+        mAdvertiseManager.onAdvertisingDataSet(mAdvertiserId, AdvertiseCallback.ADVERTISE_SUCCESS);
+        mAdvertiseManager.setAdvertisingData(mAdvertiserId, advertiseData);
+
+        verify(mNativeInterface).setAdvertisingData(eq(mAdvertiserId), any());
+    }
+
+    @Test
+    public void advertisingData_notConfirmed_setAgain() {
+        AdvertiseData advertiseData =
+                new AdvertiseData.Builder().addManufacturerData(1, new byte[] {0x01}).build();
+
+        mAdvertiseManager.setAdvertisingData(mAdvertiserId, advertiseData);
+        mAdvertiseManager.setAdvertisingData(mAdvertiserId, advertiseData);
+
+        verify(mNativeInterface, times(2)).setAdvertisingData(eq(mAdvertiserId), any());
+    }
+
+    @Test
+    public void advertisingData_revertedWhilePending_setAgain() throws Exception {
+        AdvertiseData initialData = new AdvertiseData.Builder().build();
+        AdvertiseData advertiseData =
+                new AdvertiseData.Builder().addManufacturerData(1, new byte[] {0x01}).build();
+        mAdvertiseManager.onAdvertisingSetStarted(mAdvertiserId, mAdvertiserId, 0, 0);
+
+        mAdvertiseManager.setAdvertisingData(mAdvertiserId, advertiseData);
+        // The stack may still set the data above, so the initial data must be set after it
+        mAdvertiseManager.setAdvertisingData(mAdvertiserId, initialData);
+
+        verify(mNativeInterface, times(2)).setAdvertisingData(eq(mAdvertiserId), any());
+    }
+
+    @Test
+    public void advertisingData_afterFailure_setAgain() throws Exception {
+        AdvertiseData advertiseData =
+                new AdvertiseData.Builder().addManufacturerData(1, new byte[] {0x01}).build();
+
+        mAdvertiseManager.setAdvertisingData(mAdvertiserId, advertiseData);
+        mAdvertiseManager.onAdvertisingDataSet(
+                mAdvertiserId, AdvertiseCallback.ADVERTISE_FAILED_INTERNAL_ERROR);
+        mAdvertiseManager.setAdvertisingData(mAdvertiserId, advertiseData);
+
+        verify(mNativeInterface, times(2)).setAdvertisingData(eq(mAdvertiserId), any());
+    }
+
     @Test
     public void scanResponseData() {
         AdvertiseData scanResponse = new AdvertiseData.Builder().build();
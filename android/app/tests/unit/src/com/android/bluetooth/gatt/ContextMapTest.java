@@ -128,6 +128,37 @@ public class ContextMapTest {
                 .containsExactly(APP_ID1, ADDRESS1, APP_ID2, ADDRESS2);
     }
 
+    @Test
+    public void connIdByAddress_ignoresCase() {
+        ContextMap<IBluetoothGattCallback> contextMap = getMapWithAppAndConnection();
+
+        assertThat(contextMap.connIdByAddress(APP_ID1, ADDRESS1.toLowerCase())).isEqualTo(CONN_ID1);
+        assertThat(contextMap.connIdByAddress(APP_ID2, ADDRESS1)).isNull();
+    }
+
+    @Test
+    public void getById_appIdAssignedAfterLookup() {
+        ContextMap<IBluetoothGattCallback> contextMap = new ContextMap<>();
+        App app = contextMap.add(RANDOM_UUID1, mMockCallback, mAdapterService);
+        assertThat(contextMap.getById(APP_ID1)).isNull();
+
+        app.setId(APP_ID1);
+
+        assertThat(contextMap.getById(APP_ID1)).isSameInstanceAs(app);
+    }
+
+    @Test
+    public void getByConnId_afterRemove_returnsNull() {
+        ContextMap<IBluetoothGattCallback> contextMap = getMapWithAppAndConnection();
+        assertThat(contextMap.getByConnId(CONN_ID1)).isNotNull();
+
+        contextMap.remove(APP_ID1);
+
+        assertThat(contextMap.getById(APP_ID1)).isNull();
+        assertThat(contextMap.getByConnId(CONN_ID1)).isNull();
+        assertThat(contextMap.addressByConnId(CONN_ID1)).isNull();
+    }
+
     @Test
     public void clear() {
         ContextMap<IBluetoothGattCallback> contextMap = getMapWithAppAndConnection();
@@ -173,9 +204,9 @@ public class ContextMapTest {
     private ContextMap<IBluetoothGattCallback> getMapWithAppAndConnection() {
         ContextMap<IBluetoothGattCallback> contextMap = new ContextMap<>();
         App app = contextMap.add(RANDOM_UUID1, mMockCallback, mAdapterService);
-        app.id = APP_ID1;
+        app.setId(APP_ID1);
         app = contextMap.add(RANDOM_UUID2, mMockCallback, mAdapterService);
-        app.id = APP_ID2;
+        app.setId(APP_ID2);
 
         contextMap.addConnection(APP_ID1, CONN_ID1, ADDRESS1);
         contextMap.addConnection(APP_ID2, CONN_ID2, ADDRESS2);
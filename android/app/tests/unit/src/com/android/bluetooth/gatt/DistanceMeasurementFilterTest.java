@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.gatt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test cases for {@link DistanceMeasurementFilter}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class DistanceMeasurementFilterTest {
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    public void create() {
+        assertThat(DistanceMeasurementFilter.create(DistanceMeasurementFilter.FILTER_NONE))
+                .isNull();
+        assertThat(DistanceMeasurementFilter.create(DistanceMeasurementFilter.FILTER_KALMAN))
+                .isInstanceOf(DistanceMeasurementFilter.Kalman.class);
+        assertThat(DistanceMeasurementFilter.parseType("median"))
+                .isEqualTo(DistanceMeasurementFilter.FILTER_MOVING_MEDIAN);
+        assertThat(DistanceMeasurementFilter.parseType("unknown"))
+                .isEqualTo(DistanceMeasurementFilter.FILTER_NONE);
+    }
+
+    @Test
+    public void movingMedian_ignoresOutlier() {
+        DistanceMeasurementFilter filter = new DistanceMeasurementFilter.MovingMedian(3);
+
+        filter.add(1.0, 0.5);
+        filter.add(9.0, 0.5);
+        assertThat(filter.getMeters()).isWithin(TOLERANCE).of(5.0);
+        filter.add(1.2, 0.5);
+        assertThat(filter.getMeters()).isWithin(TOLERANCE).of(1.2);
+        filter.add(1.1, 0.5);
+        filter.add(1.3, 0.5);
+
+        // The outlier left the window
+        assertThat(filter.getMeters()).isWithin(TOLERANCE).of(1.2);
+        assertThat(filter.getErrorMeters()).isWithin(TOLERANCE).of(0.5);
+    }
+
+    @Test
+    public void exponential_weightsNewSample() {
+        DistanceMeasurementFilter filter = new DistanceMeasurementFilter.Exponential(0.5);
+
+        filter.add(2.0, 1.0);
+        assertThat(filter.getMeters()).isWithin(TOLERANCE).of(2.0);
+        filter.add(4.0, 0.0);
+
+        assertThat(filter.getMeters()).isWithin(TOLERANCE).of(3.0);
+        assertThat(filter.getErrorMeters()).isWithin(TOLERANCE).of(0.5);
+    }
+
+    @Test
+    public void kalman_convergesAndReducesError() {
+        DistanceMeasurementFilter filter = new DistanceMeasurementFilter.Kalman(0.01);
+
+        filter.add(2.0, 1.0);
+        assertThat(filter.getMeters()).isWithin(TOLERANCE).of(2.0);
+        assertThat(filter.getErrorMeters()).isWithin(TOLERANCE).of(1.0);
+        for (int i = 0; i < 50; i++) {
+            filter.add(i % 2 == 0 ? 2.5 : 3.5, 1.0);
+        }
+
+        assertThat(filter.getMeters()).isWithin(0.5).of(3.0);
+        assertThat(filter.getErrorMeters()).isLessThan(0.5);
+    }
+}
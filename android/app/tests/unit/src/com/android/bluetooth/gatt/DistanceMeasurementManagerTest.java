@@ -208,6 +208,40 @@ public class DistanceMeasurementManagerTest {
         assertThat(result.getValue().getErrorAltitudeAngle()).isEqualTo(Double.NaN);
     }
 
+    @Test
+    public void testHandleRssiResult_withFilterAndMinInterval() throws RemoteException {
+        mDistanceMeasurementManager.setResultFilter(
+                DistanceMeasurementFilter.FILTER_MOVING_MEDIAN, 60_000);
+        DistanceMeasurementParams params =
+                new DistanceMeasurementParams.Builder(mDevice)
+                        .setDurationSeconds(1000)
+                        .setFrequency(DistanceMeasurementParams.REPORT_FREQUENCY_LOW)
+                        .setMethodId(DistanceMeasurementMethod.DISTANCE_MEASUREMENT_METHOD_RSSI)
+                        .build();
+        mDistanceMeasurementManager.startDistanceMeasurement(mUuid, params, mCallback);
+        mDistanceMeasurementManager.onDistanceMeasurementStarted(
+                IDENTITY_ADDRESS, DistanceMeasurementMethod.DISTANCE_MEASUREMENT_METHOD_RSSI);
+
+        for (int centimeter : new int[] {100, 500, 120}) {
+            mDistanceMeasurementManager.onDistanceMeasurementResult(
+                    IDENTITY_ADDRESS,
+                    centimeter,
+                    100,
+                    -1,
+                    -1,
+                    -1,
+                    -1,
+                    DistanceMeasurementMethod.DISTANCE_MEASUREMENT_METHOD_RSSI);
+        }
+
+        // Only the first result is delivered within the interval
+        ArgumentCaptor<DistanceMeasurementResult> result =
+                ArgumentCaptor.forClass(DistanceMeasurementResult.class);
+        verify(mCallback, times(1)).onResult(eq(mDevice), result.capture());
+        assertThat(result.getValue().getResultMeters()).isEqualTo(1.00);
+        assertThat(result.getValue().getErrorMeters()).isEqualTo(1.00);
+    }
+
     @Test
     public void testReceivedResultAfterStopped() throws RemoteException {
         DistanceMeasurementParams params =
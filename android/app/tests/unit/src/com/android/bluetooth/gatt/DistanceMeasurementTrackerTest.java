@@ -26,6 +26,7 @@ import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.le.DistanceMeasurementMethod;
 import android.bluetooth.le.DistanceMeasurementParams;
+import android.bluetooth.le.DistanceMeasurementResult;
 import android.bluetooth.le.IDistanceMeasurementCallback;
 import android.os.HandlerThread;
 
@@ -104,6 +105,27 @@ public class DistanceMeasurementTrackerTest {
                 .stopDistanceMeasurement(mUuid, mDevice, mMethod, true);
     }
 
+    @Test
+    public void testOnResult_withFilter_keepsChannelSoundingFields() {
+        mTracker.setResultFilter(new DistanceMeasurementFilter.MovingMedian(3), 0);
+        mTracker.onResult(createChannelSoundingResult(1.0), 0);
+        mTracker.onResult(createChannelSoundingResult(5.0), 10);
+
+        DistanceMeasurementResult result = mTracker.onResult(createChannelSoundingResult(1.2), 20);
+
+        assertThat(result.getResultMeters()).isEqualTo(1.2);
+        assertThat(result.getErrorMeters()).isEqualTo(0.1);
+        assertThat(result.getAzimuthAngle()).isEqualTo(90.0);
+        assertThat(result.getErrorAzimuthAngle()).isEqualTo(5.0);
+        assertThat(result.getAltitudeAngle()).isEqualTo(-30.0);
+        assertThat(result.getErrorAltitudeAngle()).isEqualTo(2.0);
+        assertThat(result.getDelaySpreadMeters()).isEqualTo(0.3);
+        assertThat(result.getConfidenceLevel()).isEqualTo(0.8);
+        assertThat(result.getDetectedAttackLevel())
+                .isEqualTo(DistanceMeasurementResult.NADM_ATTACK_IS_VERY_UNLIKELY);
+        assertThat(result.getVelocityMetersPerSecond()).isEqualTo(0.5);
+    }
+
     @Test
     public void testEquals() {
         DistanceMeasurementTracker tracker =
@@ -129,4 +151,17 @@ public class DistanceMeasurementTrackerTest {
                         mCallback);
         assertThat(mTracker.hashCode()).isEqualTo(tracker.hashCode());
     }
+
+    private static DistanceMeasurementResult createChannelSoundingResult(double meters) {
+        return new DistanceMeasurementResult.Builder(meters, 0.1)
+                .setAzimuthAngle(90.0)
+                .setErrorAzimuthAngle(5.0)
+                .setAltitudeAngle(-30.0)
+                .setErrorAltitudeAngle(2.0)
+                .setDelaySpreadMeters(0.3)
+                .setConfidenceLevel(0.8)
+                .setDetectedAttackLevel(DistanceMeasurementResult.NADM_ATTACK_IS_VERY_UNLIKELY)
+                .setVelocityMetersPerSecond(0.5)
+                .build();
+    }
 }
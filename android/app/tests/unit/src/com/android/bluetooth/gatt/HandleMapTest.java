@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.gatt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.UUID;
+
+/** Test cases for {@link HandleMap}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class HandleMapTest {
+    private static final int SERVER_IF = 1;
+    private static final int OTHER_SERVER_IF = 2;
+    private static final UUID SERVICE_UUID = UUID.randomUUID();
+    private static final UUID CHARACTERISTIC_UUID = UUID.randomUUID();
+    private static final UUID DESCRIPTOR_UUID = UUID.randomUUID();
+
+    private final HandleMap mHandleMap = new HandleMap();
+
+    /** Adds a service with one characteristic and one descriptor, starting at {@code handle}. */
+    private void addService(int serverIf, int handle) {
+        mHandleMap.addService(serverIf, handle, SERVICE_UUID, 0, 0, false);
+        mHandleMap.addCharacteristic(serverIf, handle + 1, CHARACTERISTIC_UUID, handle);
+        mHandleMap.addDescriptor(serverIf, handle + 2, DESCRIPTOR_UUID, handle);
+    }
+
+    @Test
+    public void getByHandle() {
+        addService(SERVER_IF, 10);
+
+        assertThat(mHandleMap.getByHandle(10).type).isEqualTo(HandleMap.TYPE_SERVICE);
+        assertThat(mHandleMap.getByHandle(11).type).isEqualTo(HandleMap.TYPE_CHARACTERISTIC);
+        HandleMap.Entry descriptor = mHandleMap.getByHandle(12);
+        assertThat(descriptor.type).isEqualTo(HandleMap.TYPE_DESCRIPTOR);
+        assertThat(descriptor.serviceHandle).isEqualTo(10);
+        assertThat(descriptor.charHandle).isEqualTo(11);
+        assertThat(mHandleMap.getByHandle(13)).isNull();
+    }
+
+    @Test
+    public void getByHandle_afterServiceStarted_findsServicesAddedLater() {
+        addService(SERVER_IF, 10);
+        mHandleMap.setStarted(SERVER_IF, 10, true);
+
+        addService(SERVER_IF, 20);
+
+        assertThat(mHandleMap.getByHandle(21).type).isEqualTo(HandleMap.TYPE_CHARACTERISTIC);
+        assertThat(mHandleMap.checkServiceExists(SERVICE_UUID, 20)).isTrue();
+    }
+
+    @Test
+    public void addService_sameHandles_replacesPreviousService() {
+        addService(SERVER_IF, 10);
+
+        addService(OTHER_SERVER_IF, 10);
+
+        assertThat(mHandleMap.getEntries()).hasSize(3);
+        assertThat(mHandleMap.getServices(SERVER_IF)).isEmpty();
+        assertThat(mHandleMap.getByHandle(11).serverIf).isEqualTo(OTHER_SERVER_IF);
+        mHandleMap.deleteService(OTHER_SERVER_IF, 10);
+        assertThat(mHandleMap.getEntries()).isEmpty();
+    }
+
+    @Test
+    public void setStarted_onlyAppliesToServicesOfServer() {
+        addService(SERVER_IF, 10);
+
+        mHandleMap.setStarted(OTHER_SERVER_IF, 10, true);
+        mHandleMap.setStarted(SERVER_IF, 11, true);
+        assertThat(mHandleMap.getByHandle(10).started).isFalse();
+        assertThat(mHandleMap.getByHandle(11).started).isFalse();
+
+        mHandleMap.setStarted(SERVER_IF, 10, true);
+        assertThat(mHandleMap.getByHandle(10).started).isTrue();
+    }
+
+    @Test
+    public void checkServiceExists() {
+        addService(SERVER_IF, 10);
+
+        assertThat(mHandleMap.checkServiceExists(SERVICE_UUID, 10)).isTrue();
+        assertThat(mHandleMap.checkServiceExists(SERVICE_UUID, 11)).isFalse();
+        assertThat(mHandleMap.checkServiceExists(CHARACTERISTIC_UUID, 10)).isFalse();
+    }
+
+    @Test
+    public void deleteService_removesServiceAndAttributes() {
+        addService(SERVER_IF, 10);
+        addService(SERVER_IF, 20);
+
+        mHandleMap.deleteService(SERVER_IF, 10);
+
+        assertThat(mHandleMap.getByHandle(10)).isNull();
+        assertThat(mHandleMap.getByHandle(11)).isNull();
+        assertThat(mHandleMap.getByHandle(12)).isNull();
+        assertThat(mHandleMap.getEntries()).hasSize(3);
+        assertThat(mHandleMap.getEntries().get(0).handle).isEqualTo(20);
+        assertThat(mHandleMap.getServices(SERVER_IF)).hasSize(1);
+        assertThat(mHandleMap.getServices(SERVER_IF).get(0).handle).isEqualTo(20);
+    }
+
+    @Test
+    public void deleteService_ignoresOtherServer() {
+        addService(SERVER_IF, 10);
+
+        mHandleMap.deleteService(OTHER_SERVER_IF, 10);
+
+        assertThat(mHandleMap.getEntries()).hasSize(3);
+    }
+
+    @Test
+    public void getEntries_inRegistrationOrder() {
+        addService(OTHER_SERVER_IF, 20);
+        addService(SERVER_IF, 10);
+
+        assertThat(mHandleMap.getEntries().get(0).handle).isEqualTo(20);
+        assertThat(mHandleMap.getEntries().get(5).handle).isEqualTo(12);
+        assertThat(mHandleMap.getServices(SERVER_IF)).hasSize(1);
+        assertThat(mHandleMap.getServices(OTHER_SERVER_IF)).hasSize(1);
+    }
+
+    @Test
+    public void getByRequestId() {
+        addService(SERVER_IF, 10);
+
+        mHandleMap.addRequest(3, 42, 11);
+
+        assertThat(mHandleMap.getByRequestId(42).handle).isEqualTo(11);
+        mHandleMap.deleteRequest(42);
+        assertThat(mHandleMap.getByRequestId(42)).isNull();
+    }
+}
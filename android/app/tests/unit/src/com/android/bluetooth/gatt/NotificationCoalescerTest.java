@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.gatt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import android.os.DeadObjectException;
+import android.os.Handler;
+import android.os.test.TestLooper;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Test cases for {@link NotificationCoalescer}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class NotificationCoalescerTest {
+    private static final int CONN_ID = 5;
+    private static final String ADDRESS = "00:11:22:33:44:55";
+    private static final int MAX_NOTIFICATIONS = 3;
+    private static final long MAX_DELAY_MICROS = 5_000;
+
+    private final List<int[]> mDelivered = new ArrayList<>();
+
+    private TestLooper mLooper;
+    private NotificationCoalescer mCoalescer;
+
+    @Before
+    public void setUp() {
+        mLooper = new TestLooper();
+        mCoalescer =
+                new NotificationCoalescer(
+                        new Handler(mLooper.getLooper()),
+                        (connId, address, handles, values) -> mDelivered.add(handles));
+        mCoalescer.setConfig(MAX_NOTIFICATIONS, MAX_DELAY_MICROS);
+    }
+
+    @Test
+    public void add_disabled_returnsFalse() throws Exception {
+        mCoalescer.setConfig(0, MAX_DELAY_MICROS);
+
+        assertThat(mCoalescer.isEnabled()).isFalse();
+        assertThat(mCoalescer.add(CONN_ID, ADDRESS, 1, new byte[] {1})).isFalse();
+    }
+
+    @Test
+    public void add_deliversAfterMaxNotificationsInOrder() throws Exception {
+        for (int i = 0; i < MAX_NOTIFICATIONS; i++) {
+            assertThat(mCoalescer.add(CONN_ID, ADDRESS, i, new byte[] {(byte) i})).isTrue();
+        }
+
+        assertThat(mDelivered).hasSize(1);
+        assertThat(mDelivered.get(0)).asList().containsExactly(0, 1, 2).inOrder();
+    }
+
+    @Test
+    public void add_deliversAfterMaxDelay() throws Exception {
+        mCoalescer.add(CONN_ID, ADDRESS, 1, new byte[] {1});
+        mLooper.dispatchAll();
+        assertThat(mDelivered).isEmpty();
+
+        mLooper.moveTimeForward(MAX_DELAY_MICROS / 1000);
+        mLooper.dispatchAll();
+
+        assertThat(mDelivered).hasSize(1);
+        assertThat(mDelivered.get(0)).asList().containsExactly(1);
+    }
+
+    @Test
+    public void removeConnection_deliversPendingNotifications() throws Exception {
+        mCoalescer.add(CONN_ID, ADDRESS, 1, new byte[] {1});
+
+        mCoalescer.removeConnection(CONN_ID);
+
+        assertThat(mDelivered).hasSize(1);
+        mLooper.moveTimeForward(MAX_DELAY_MICROS / 1000);
+        mLooper.dispatchAll();
+        assertThat(mDelivered).hasSize(1);
+    }
+
+    @Test
+    public void clear_discardsPendingNotifications() throws Exception {
+        mCoalescer.add(CONN_ID, ADDRESS, 1, new byte[] {1});
+
+        mCoalescer.clear();
+        mLooper.moveTimeForward(MAX_DELAY_MICROS / 1000);
+        mLooper.dispatchAll();
+
+        assertThat(mDelivered).isEmpty();
+    }
+
+    @Test
+    public void flush_deliversPendingNotificationsAndKeepsConnection() throws Exception {
+        mCoalescer.add(CONN_ID, ADDRESS, 1, new byte[] {1});
+
+        mCoalescer.flush(CONN_ID);
+        assertThat(mDelivered).hasSize(1);
+
+        mCoalescer.add(CONN_ID, ADDRESS, 2, new byte[] {2});
+        mLooper.moveTimeForward(MAX_DELAY_MICROS / 1000);
+        mLooper.dispatchAll();
+        assertThat(mDelivered).hasSize(2);
+        assertThat(mDelivered.get(1)).asList().containsExactly(2);
+    }
+
+    @Test
+    public void add_deadClient_throws() throws Exception {
+        mCoalescer =
+                new NotificationCoalescer(
+                        new Handler(mLooper.getLooper()),
+                        (connId, address, handles, values) -> {
+                            throw new DeadObjectException();
+                        });
+        mCoalescer.setConfig(MAX_NOTIFICATIONS, MAX_DELAY_MICROS);
+        for (int i = 0; i < MAX_NOTIFICATIONS - 1; i++) {
+            mCoalescer.add(CONN_ID, ADDRESS, i, new byte[] {(byte) i});
+        }
+
+        assertThrows(
+                DeadObjectException.class,
+                () -> mCoalescer.add(CONN_ID, ADDRESS, 0, new byte[] {0}));
+    }
+}
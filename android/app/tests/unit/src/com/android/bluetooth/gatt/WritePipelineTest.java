@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.gatt;
+
+import static android.bluetooth.BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+import static android.bluetooth.BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
+import static android.bluetooth.BluetoothStatusCodes.ERROR_DEVICE_NOT_CONNECTED;
+import static android.bluetooth.BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
+import static android.bluetooth.BluetoothStatusCodes.SUCCESS;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Test cases for {@link WritePipeline}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class WritePipelineTest {
+    private static final int CONN_ID = 1;
+    private static final int OTHER_CONN_ID = 2;
+
+    // Handles of the writes sent to the stack, in order.
+    private final List<Integer> mSent = new ArrayList<>();
+    private final WritePipeline mPipeline =
+            new WritePipeline((connId, handle, writeType, authReq, value) -> mSent.add(handle));
+
+    @Before
+    public void setUp() {
+        mPipeline.setDepth(3);
+        mPipeline.addConnection(CONN_ID);
+        mPipeline.addConnection(OTHER_CONN_ID);
+    }
+
+    private int write(int connId, int handle, int writeType) {
+        return mPipeline.write(connId, handle, writeType, 0, new byte[20]);
+    }
+
+    @Test
+    public void write_unknownConnection_notConnected() {
+        mPipeline.removeConnection(CONN_ID);
+
+        assertThat(write(CONN_ID, 1, WRITE_TYPE_NO_RESPONSE)).isEqualTo(ERROR_DEVICE_NOT_CONNECTED);
+    }
+
+    @Test
+    public void write_withoutResponse_pipelinedUpToDepth() {
+        assertThat(write(CONN_ID, 1, WRITE_TYPE_NO_RESPONSE)).isEqualTo(SUCCESS);
+        assertThat(write(CONN_ID, 2, WRITE_TYPE_NO_RESPONSE)).isEqualTo(SUCCESS);
+        assertThat(write(CONN_ID, 3, WritePipeline.WRITE_TYPE_PREPARED)).isEqualTo(SUCCESS);
+        assertThat(write(CONN_ID, 4, WRITE_TYPE_NO_RESPONSE))
+                .isEqualTo(ERROR_GATT_WRITE_REQUEST_BUSY);
+
+        assertThat(mSent).containsExactly(1, 2, 3).inOrder();
+        assertThat(write(OTHER_CONN_ID, 5, WRITE_TYPE_NO_RESPONSE)).isEqualTo(SUCCESS);
+    }
+
+    @Test
+    public void write_request_waitsForWritesInFlight() {
+        assertThat(write(CONN_ID, 1, WRITE_TYPE_DEFAULT)).isEqualTo(SUCCESS);
+        assertThat(write(CONN_ID, 2, WRITE_TYPE_DEFAULT)).isEqualTo(ERROR_GATT_WRITE_REQUEST_BUSY);
+        assertThat(write(CONN_ID, 3, WRITE_TYPE_NO_RESPONSE)).isEqualTo(SUCCESS);
+        assertThat(mSent).containsExactly(1);
+
+        mPipeline.onWriteCompleted(CONN_ID);
+
+        assertThat(mSent).containsExactly(1, 3).inOrder();
+        assertThat(write(CONN_ID, 4, WRITE_TYPE_DEFAULT)).isEqualTo(ERROR_GATT_WRITE_REQUEST_BUSY);
+    }
+
+    @Test
+    public void setCongested_holdsQueuedWrites() {
+        mPipeline.setCongested(CONN_ID, true);
+        write(CONN_ID, 1, WRITE_TYPE_NO_RESPONSE);
+        write(CONN_ID, 2, WRITE_TYPE_NO_RESPONSE);
+        assertThat(mSent).isEmpty();
+        assertThat(mPipeline.getOutstanding(CONN_ID)).isEqualTo(2);
+
+        mPipeline.setCongested(CONN_ID, false);
+
+        assertThat(mSent).containsExactly(1, 2).inOrder();
+    }
+
+    @Test
+    public void onWriteCompleted_freesRoomInPipeline() {
+        write(CONN_ID, 1, WRITE_TYPE_NO_RESPONSE);
+        write(CONN_ID, 2, WRITE_TYPE_NO_RESPONSE);
+        write(CONN_ID, 3, WRITE_TYPE_NO_RESPONSE);
+
+        mPipeline.onWriteCompleted(CONN_ID);
+
+        assertThat(mPipeline.getOutstanding(CONN_ID)).isEqualTo(2);
+        assertThat(write(CONN_ID, 4, WRITE_TYPE_NO_RESPONSE)).isEqualTo(SUCCESS);
+    }
+
+    @Test
+    public void removeConnection_dropsOnlyItsWrites() {
+        write(CONN_ID, 1, WRITE_TYPE_NO_RESPONSE);
+        write(OTHER_CONN_ID, 2, WRITE_TYPE_NO_RESPONSE);
+
+        mPipeline.removeConnection(CONN_ID);
+
+        assertThat(mPipeline.getOutstanding(CONN_ID)).isEqualTo(0);
+        assertThat(mPipeline.getOutstanding(OTHER_CONN_ID)).isEqualTo(1);
+    }
+
+    @Test
+    public void dump_doesNotCrash() {
+        write(CONN_ID, 1, WRITE_TYPE_NO_RESPONSE);
+        mPipeline.onWriteCompleted(CONN_ID);
+
+        mPipeline.dump(new StringBuilder());
+    }
+}
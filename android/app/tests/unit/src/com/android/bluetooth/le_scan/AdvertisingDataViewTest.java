@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.bluetooth.le.ScanRecord;
+import android.os.ParcelUuid;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/** Test cases for {@link AdvertisingDataView}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AdvertisingDataViewTest {
+    private static final byte[] ADV_DATA =
+            new byte[] {
+                // flags
+                0x02, 0x01, 0x06,
+                // complete list of 16-bit service UUIDs: 0x180D, 0x180F
+                0x05, 0x03, 0x0D, 0x18, 0x0F, 0x18,
+                // 128-bit service UUID 00112233-4455-6677-8899-AABBCCDDEEFF
+                0x11, 0x07,
+                (byte) 0xFF, (byte) 0xEE, (byte) 0xDD, (byte) 0xCC,
+                (byte) 0xBB, (byte) 0xAA, (byte) 0x99, (byte) 0x88,
+                0x77, 0x66, 0x55, 0x44, 0x33, 0x22, 0x11, 0x00,
+                // service data for 16-bit UUID 0xFE2C
+                0x04, 0x16, 0x2C, (byte) 0xFE, 0x01,
+                // manufacturer specific data for 0x00E0
+                0x04, (byte) 0xFF, (byte) 0xE0, 0x00, 0x02,
+                // padding
+                0x00, 0x00
+            };
+
+    @Test
+    public void structures() {
+        AdvertisingDataView view = new AdvertisingDataView(ADV_DATA);
+
+        assertThat(view.size()).isEqualTo(5);
+        assertThat(view.getType(0)).isEqualTo(ScanRecord.DATA_TYPE_FLAGS);
+        assertThat(view.getDataLength(0)).isEqualTo(1);
+        assertThat(ADV_DATA[view.getDataOffset(0)]).isEqualTo(0x06);
+        assertThat(view.getType(4)).isEqualTo(ScanRecord.DATA_TYPE_MANUFACTURER_SPECIFIC_DATA);
+    }
+
+    @Test
+    public void manufacturerId() {
+        AdvertisingDataView view = new AdvertisingDataView(ADV_DATA);
+
+        assertThat(view.getManufacturerId(4)).isEqualTo(0x00E0);
+        assertThat(view.getManufacturerId(0)).isEqualTo(-1);
+    }
+
+    @Test
+    public void uuids_sameAsScanRecord() {
+        AdvertisingDataView view = new AdvertisingDataView(ADV_DATA);
+        ScanRecord record = ScanRecord.parseFromBytes(ADV_DATA);
+
+        List<ParcelUuid> serviceUuids = record.getServiceUuids();
+        assertThat(view.getUuidCount(1)).isEqualTo(2);
+        assertThat(view.getUuidMostSignificantBits(1, 0))
+                .isEqualTo(serviceUuids.get(0).getUuid().getMostSignificantBits());
+        assertThat(view.getUuidMostSignificantBits(1, 1))
+                .isEqualTo(serviceUuids.get(1).getUuid().getMostSignificantBits());
+        assertThat(view.getUuidCount(2)).isEqualTo(1);
+        assertThat(view.getUuidMostSignificantBits(2, 0))
+                .isEqualTo(serviceUuids.get(2).getUuid().getMostSignificantBits());
+        ParcelUuid serviceDataUuid = record.getServiceData().keySet().iterator().next();
+        assertThat(view.getUuidCount(3)).isEqualTo(1);
+        assertThat(view.getUuidMostSignificantBits(3, 0))
+                .isEqualTo(serviceDataUuid.getUuid().getMostSignificantBits());
+    }
+
+    @Test
+    public void truncatedStructureIsIgnored() {
+        AdvertisingDataView view =
+                new AdvertisingDataView(new byte[] {0x02, 0x01, 0x06, 0x05, (byte) 0xFF, 0x00});
+
+        assertThat(view.size()).isEqualTo(1);
+    }
+}
@@ -24,12 +24,14 @@ import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothManager;
 import android.bluetooth.le.IPeriodicAdvertisingCallback;
+import android.bluetooth.le.PeriodicAdvertisingReport;
 import android.bluetooth.le.ScanResult;
 import android.content.Context;
 import android.os.IBinder;
@@ -121,4 +123,46 @@ public class PeriodicScanManagerTest {
                 0);
         verify(mCallback).onSyncEstablished(anyInt(), eq(mTestDevice), eq(0), eq(0), eq(0), eq(0));
     }
+
+    @Test
+    public void testSyncSharedByTwoClients() throws Exception {
+        IPeriodicAdvertisingCallback callback2 = mock(IPeriodicAdvertisingCallback.class);
+        IBinder binder2 = mock(IBinder.class);
+        doReturn(binder2).when(callback2).asBinder();
+        int syncHandle = 1;
+        mPeriodicScanManager.startSync(mScanResult, 0, 0, mCallback);
+        ArgumentCaptor<Integer> regId = ArgumentCaptor.forClass(Integer.class);
+        verify(mPeriodicScanNativeInterface)
+                .startSync(eq(0), eq(REMOTE_DEVICE_ADDRESS), eq(0), eq(0), regId.capture());
+        mPeriodicScanManager.onSyncStarted(
+                regId.getValue(),
+                syncHandle,
+                0,
+                BluetoothDevice.ADDRESS_TYPE_RANDOM,
+                REMOTE_DEVICE_ADDRESS,
+                0,
+                100,
+                0);
+
+        // The second client joins the established sync
+        mPeriodicScanManager.startSync(mScanResult, 0, 0, callback2);
+        verify(callback2)
+                .onSyncEstablished(eq(syncHandle), eq(mTestDevice), eq(0), eq(0), eq(0), eq(0));
+
+        mPeriodicScanManager.onSyncReport(syncHandle, 0, 0, 0, new byte[0]);
+        ArgumentCaptor<PeriodicAdvertisingReport> report =
+                ArgumentCaptor.forClass(PeriodicAdvertisingReport.class);
+        verify(mCallback).onPeriodicAdvertisingReport(report.capture());
+        verify(callback2).onPeriodicAdvertisingReport(report.capture());
+        assertThat(report.getAllValues().get(0)).isSameInstanceAs(report.getAllValues().get(1));
+
+        mPeriodicScanManager.stopSync(mCallback);
+        verify(mPeriodicScanNativeInterface, never()).stopSync(anyInt());
+        assertThat(mPeriodicScanManager.findAllSync(syncHandle)).hasSize(1);
+
+        mPeriodicScanManager.onSyncLost(syncHandle);
+        verify(callback2).onSyncLost(syncHandle);
+        assertThat(mPeriodicScanManager.findAllSync(syncHandle)).isEmpty();
+        assertThat(mPeriodicScanManager.findMatchingSync(0, REMOTE_DEVICE_ADDRESS)).isNull();
+    }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.ParcelUuid;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.bluetooth.Utils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Test cases for {@link ScanFilterIndex}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ScanFilterIndexTest {
+    private static final String ADDRESS = "00:11:22:33:44:55";
+    private static final String OTHER_ADDRESS = "00:11:22:33:44:66";
+    private static final int MANUFACTURER_ID = 0x00E0;
+    private static final ParcelUuid SERVICE_UUID =
+            ParcelUuid.fromString("0000180D-0000-1000-8000-00805F9B34FB");
+
+    private static final ScanSettings SETTINGS = new ScanSettings.Builder().build();
+
+    private final ScanFilterIndex mIndex = new ScanFilterIndex();
+
+    private static ScanClient createClient(int scannerId, ScanFilter... filters) {
+        return new ScanClient(scannerId, SETTINGS, filters.length == 0 ? null : List.of(filters));
+    }
+
+    private static ScanResult createResult(String address, byte[] advData) {
+        BluetoothDevice device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(address);
+        return new ScanResult(
+                device, 0, 1, 0, 0xFF, 127, -60, 0, ScanRecord.parseFromBytes(advData), 0);
+    }
+
+    private static byte[] manufacturerData(int manufacturerId, byte value) {
+        return new byte[] {
+            0x04, (byte) 0xFF, (byte) manufacturerId, (byte) (manufacturerId >> 8), value
+        };
+    }
+
+    private static byte[] serviceUuidData() {
+        return new byte[] {0x03, 0x03, 0x0D, 0x18};
+    }
+
+    @Test
+    public void match_unfilteredClientAlwaysMatches() {
+        ScanClient client = createClient(1);
+        mIndex.addClient(client);
+
+        ScanFilterIndex.Matches matches = mIndex.match(createResult(ADDRESS, new byte[0]), null);
+
+        assertThat(matches.isIndexed(client)).isTrue();
+        assertThat(matches.matches(client)).isTrue();
+    }
+
+    @Test
+    public void match_byAddress() {
+        ScanClient client =
+                createClient(1, new ScanFilter.Builder().setDeviceAddress(ADDRESS).build());
+        mIndex.addClient(client);
+
+        assertThat(mIndex.match(createResult(ADDRESS, new byte[0]), null).matches(client))
+                .isTrue();
+        assertThat(mIndex.match(createResult(OTHER_ADDRESS, new byte[0]), null).matches(client))
+                .isFalse();
+        assertThat(
+                        mIndex.match(createResult(OTHER_ADDRESS, new byte[0]), ADDRESS)
+                                .matches(client))
+                .isTrue();
+    }
+
+    @Test
+    public void match_byManufacturerData() {
+        ScanClient client =
+                createClient(
+                        1,
+                        new ScanFilter.Builder()
+                                .setManufacturerData(MANUFACTURER_ID, new byte[] {0x01})
+                                .build());
+        mIndex.addClient(client);
+        ScanResult matching =
+                createResult(ADDRESS, manufacturerData(MANUFACTURER_ID, (byte) 0x01));
+        ScanResult notMatching =
+                createResult(ADDRESS, manufacturerData(MANUFACTURER_ID, (byte) 0x02));
+
+        assertThat(mIndex.match(matching, null).matches(client)).isTrue();
+        assertThat(mIndex.match(notMatching, null).matches(client)).isFalse();
+    }
+
+    @Test
+    public void match_byServiceUuid() {
+        ScanClient client =
+                createClient(1, new ScanFilter.Builder().setServiceUuid(SERVICE_UUID).build());
+        mIndex.addClient(client);
+
+        assertThat(mIndex.match(createResult(ADDRESS, serviceUuidData()), null).matches(client))
+                .isTrue();
+        assertThat(mIndex.match(createResult(ADDRESS, new byte[0]), null).matches(client))
+                .isFalse();
+    }
+
+    @Test
+    public void removeClient() {
+        ScanClient client =
+                createClient(1, new ScanFilter.Builder().setDeviceAddress(ADDRESS).build());
+        mIndex.addClient(client);
+        assertThat(mIndex.getFilterCount()).isEqualTo(1);
+
+        mIndex.removeClient(client);
+
+        ScanFilterIndex.Matches matches = mIndex.match(createResult(ADDRESS, new byte[0]), null);
+        assertThat(mIndex.getFilterCount()).isEqualTo(0);
+        assertThat(matches.isIndexed(client)).isFalse();
+        assertThat(matches.matches(client)).isFalse();
+    }
+
+    /**
+     * Registers filters, half of them address allow-lists and half manufacturer filters, spread
+     * over several clients, and checks that the index yields the same clients as walking every
+     * filter.
+     */
+    @Test
+    public void match_sameAsLinearMatching() {
+        final int numFilters = 100;
+        final int numClients = 20;
+        final int numResults = 200;
+        List<List<ScanFilter>> clientFilters = new ArrayList<>();
+        for (int i = 0; i < numClients; i++) {
+            clientFilters.add(new ArrayList<>());
+        }
+        for (int i = 0; i < numFilters; i++) {
+            ScanFilter filter =
+                    (i % 2 == 0)
+                            ? new ScanFilter.Builder()
+                                    .setDeviceAddress(Utils.getAddressStringFromLong(i))
+                                    .build()
+                            : new ScanFilter.Builder()
+                                    .setManufacturerData(i, new byte[] {(byte) i})
+                                    .build();
+            clientFilters.get(i % numClients).add(filter);
+        }
+        List<ScanClient> clients = new ArrayList<>();
+        for (int i = 0; i < numClients; i++) {
+            ScanClient client = new ScanClient(i, SETTINGS, clientFilters.get(i));
+            clients.add(client);
+            mIndex.addClient(client);
+        }
+        List<ScanResult> results = new ArrayList<>();
+        for (int i = 0; i < numResults; i++) {
+            results.add(
+                    createResult(Utils.getAddressStringFromLong(i), manufacturerData(i, (byte) i)));
+        }
+
+        for (ScanResult result : results) {
+            List<ScanClient> expected = new ArrayList<>();
+            for (ScanClient client : clients) {
+                for (ScanFilter filter : client.filters) {
+                    if (filter.matches(result)) {
+                        expected.add(client);
+                        break;
+                    }
+                }
+            }
+
+            ScanFilterIndex.Matches matches = mIndex.match(result, null);
+
+            for (ScanClient client : clients) {
+                assertThat(matches.matches(client)).isEqualTo(expected.contains(client));
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.bluetooth.le.ScanResult;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test cases for {@link ScanReport}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ScanReportTest {
+    private static final String ADDRESS = "00:11:22:33:FF:EE";
+    private static final int LEGACY_EVENT_TYPE = 0x13;
+    private static final int EXTENDED_EVENT_TYPE = 0x01;
+
+    private static final byte[] ADV_DATA =
+            new byte[] {
+                0x02, 0x01, 0x06, // flags
+                0x05, (byte) 0xFF, (byte) 0xE0, 0x00, 0x01, 0x02 // manufacturer data
+            };
+
+    private static ScanReport createReport(int eventType) {
+        return new ScanReport(
+                eventType, 0, ADDRESS, 1, 0, 0xFF, 127, -60, 0, ADV_DATA, ADDRESS, 1234L);
+    }
+
+    @Test
+    public void isLegacy() {
+        assertThat(createReport(LEGACY_EVENT_TYPE).isLegacy()).isTrue();
+        assertThat(createReport(EXTENDED_EVENT_TYPE).isLegacy()).isFalse();
+    }
+
+    @Test
+    public void getResult_isSharedBetweenCalls() {
+        ScanReport report = createReport(LEGACY_EVENT_TYPE);
+
+        ScanResult extended = report.getResult(false);
+        ScanResult legacy = report.getResult(true);
+
+        assertThat(report.getResult(false)).isSameInstanceAs(extended);
+        assertThat(report.getResult(true)).isSameInstanceAs(legacy);
+        assertThat(legacy.getDevice()).isSameInstanceAs(extended.getDevice());
+    }
+
+    @Test
+    public void getResult_legacyRecordIsPaddedToFixedSize() {
+        ScanReport report = createReport(LEGACY_EVENT_TYPE);
+
+        assertThat(report.getResult(true).getScanRecord().getBytes()).hasLength(62);
+        assertThat(report.getResult(false).getScanRecord().getBytes()).isEqualTo(ADV_DATA);
+    }
+
+    @Test
+    public void getResult_carriesReportFields() {
+        ScanResult result = createReport(EXTENDED_EVENT_TYPE).getResult(false);
+
+        assertThat(result.getDevice().getAddress()).isEqualTo(ADDRESS);
+        assertThat(result.getRssi()).isEqualTo(-60);
+        assertThat(result.getTxPower()).isEqualTo(127);
+        assertThat(result.getTimestampNanos()).isEqualTo(1234L);
+        assertThat(result.getScanRecord().getManufacturerSpecificData(0x00E0))
+                .isEqualTo(new byte[] {0x01, 0x02});
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.bluetooth.le.ScanResult;
+import android.os.test.TestLooper;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Test cases for {@link ScanResultDispatcher}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ScanResultDispatcherTest {
+    private static final int MAX_RESULTS = 3;
+    private static final long MAX_DELAY_MICROS = 10_000;
+    private static final int CAPACITY = 4;
+
+    private final List<List<ScanResult>> mDelivered = new ArrayList<>();
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private final ScanClient mClient = new ScanClient(1);
+
+    private TestLooper mLooper;
+    private ScanResultDispatcher mDispatcher;
+
+    private static ScanResult createResult(int rssi) {
+        return new ScanResult(null, 0, 0, 0, 0, 0, rssi, 0, null, 0);
+    }
+
+    @Before
+    public void setUp() {
+        mLooper = new TestLooper();
+        mDispatcher =
+                new ScanResultDispatcher(
+                        mLooper.getLooper(),
+                        mTasks::add,
+                        (client, results) -> mDelivered.add(results));
+        mDispatcher.setConfig(
+                false,
+                MAX_RESULTS,
+                MAX_DELAY_MICROS,
+                CAPACITY,
+                ScanResultDispatcher.DROP_OLDEST);
+    }
+
+    private void runTasks() {
+        mLooper.dispatchAll();
+        while (!mTasks.isEmpty()) {
+            mTasks.remove(0).run();
+            mLooper.dispatchAll();
+        }
+    }
+
+    @Test
+    public void add_disabled_returnsFalse() {
+        mDispatcher.setConfig(
+                false, 0, MAX_DELAY_MICROS, CAPACITY, ScanResultDispatcher.DROP_OLDEST);
+
+        assertThat(mDispatcher.isEnabled()).isFalse();
+        assertThat(mDispatcher.add(mClient, createResult(0), true)).isFalse();
+    }
+
+    @Test
+    public void add_async_deliversEachResultOffThread() {
+        mDispatcher.setConfig(
+                true, 0, MAX_DELAY_MICROS, CAPACITY, ScanResultDispatcher.DROP_OLDEST);
+
+        assertThat(mDispatcher.add(mClient, createResult(0), true)).isTrue();
+        assertThat(mDispatcher.add(mClient, createResult(1), true)).isTrue();
+        assertThat(mDelivered).isEmpty();
+        // A single drain task is scheduled per client.
+        assertThat(mTasks).hasSize(1);
+
+        runTasks();
+
+        assertThat(mDelivered).hasSize(2);
+        assertThat(mDelivered.get(0)).hasSize(1);
+        assertThat(mDelivered.get(1).get(0).getRssi()).isEqualTo(1);
+    }
+
+    @Test
+    public void add_async_drainsClientsIndependently() {
+        ScanClient otherClient = new ScanClient(2);
+        List<ScanClient> deliveredTo = new ArrayList<>();
+        mDispatcher =
+                new ScanResultDispatcher(
+                        mLooper.getLooper(),
+                        mTasks::add,
+                        (client, results) -> deliveredTo.add(client));
+        mDispatcher.setConfig(
+                true, 0, MAX_DELAY_MICROS, CAPACITY, ScanResultDispatcher.DROP_OLDEST);
+
+        mDispatcher.add(mClient, createResult(0), true);
+        mDispatcher.add(otherClient, createResult(0), true);
+        assertThat(mTasks).hasSize(2);
+
+        // Running the drain of the second client only does not wait for the first one.
+        mTasks.remove(1).run();
+
+        assertThat(deliveredTo).containsExactly(otherClient);
+    }
+
+    @Test
+    public void add_drainsAfterMaxResults() {
+        for (int i = 0; i < MAX_RESULTS; i++) {
+            assertThat(mDispatcher.add(mClient, createResult(i), true)).isTrue();
+        }
+        runTasks();
+
+        assertThat(mDelivered).hasSize(1);
+        assertThat(mDelivered.get(0)).hasSize(MAX_RESULTS);
+    }
+
+    @Test
+    public void add_drainsAfterMaxDelay() {
+        mDispatcher.add(mClient, createResult(0), true);
+        runTasks();
+        assertThat(mDelivered).isEmpty();
+
+        mLooper.moveTimeForward(MAX_DELAY_MICROS / 1000);
+        runTasks();
+
+        assertThat(mDelivered).hasSize(1);
+        assertThat(mDelivered.get(0)).hasSize(1);
+    }
+
+    @Test
+    public void add_notCoalesced_returnsFalse() {
+        // PendingIntent clients are delivered directly when delivery is synchronous.
+        assertThat(mDispatcher.add(mClient, createResult(0), false)).isFalse();
+        assertThat(mTasks).isEmpty();
+    }
+
+    @Test
+    public void add_asyncNotCoalesced_deliversResultsOneByOne() {
+        mDispatcher.setConfig(
+                true,
+                MAX_RESULTS,
+                MAX_DELAY_MICROS,
+                CAPACITY,
+                ScanResultDispatcher.DROP_OLDEST);
+
+        for (int i = 0; i < MAX_RESULTS; i++) {
+            assertThat(mDispatcher.add(mClient, createResult(i), false)).isTrue();
+        }
+        // Not coalesced, so no need to wait for the coalescing timer.
+        runTasks();
+
+        assertThat(mDelivered).hasSize(MAX_RESULTS);
+        for (List<ScanResult> results : mDelivered) {
+            assertThat(results).hasSize(1);
+        }
+    }
+
+    @Test
+    public void add_dropOldest_keepsNewestResults() {
+        mDispatcher.setConfig(
+                false,
+                CAPACITY + 10,
+                MAX_DELAY_MICROS,
+                CAPACITY,
+                ScanResultDispatcher.DROP_OLDEST);
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            mDispatcher.add(mClient, createResult(i), true);
+        }
+        assertThat(mDispatcher.getDroppedCount(mClient.scannerId)).isEqualTo(2);
+
+        mLooper.moveTimeForward(MAX_DELAY_MICROS / 1000);
+        runTasks();
+
+        assertThat(mDelivered).hasSize(1);
+        assertThat(mDelivered.get(0)).hasSize(CAPACITY);
+        assertThat(mDelivered.get(0).get(0).getRssi()).isEqualTo(2);
+    }
+
+    @Test
+    public void add_dropNewest_keepsOldestResults() {
+        mDispatcher.setConfig(
+                true, 0, MAX_DELAY_MICROS, CAPACITY, ScanResultDispatcher.DROP_NEWEST);
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            mDispatcher.add(mClient, createResult(i), true);
+        }
+        assertThat(mDispatcher.getDroppedCount(mClient.scannerId)).isEqualTo(2);
+
+        runTasks();
+
+        assertThat(mDelivered).hasSize(CAPACITY);
+        assertThat(mDelivered.get(CAPACITY - 1).get(0).getRssi()).isEqualTo(CAPACITY - 1);
+    }
+
+    @Test
+    public void drain_resultsQueuedWhileDeliveringAreDrainedLater() {
+        mDispatcher =
+                new ScanResultDispatcher(
+                        mLooper.getLooper(),
+                        mTasks::add,
+                        (client, results) -> {
+                            mDelivered.add(results);
+                            if (mDelivered.size() == 1) {
+                                mDispatcher.add(mClient, createResult(1), true);
+                            }
+                            return true;
+                        });
+        mDispatcher.setConfig(
+                true, 0, MAX_DELAY_MICROS, CAPACITY, ScanResultDispatcher.DROP_OLDEST);
+
+        mDispatcher.add(mClient, createResult(0), true);
+        mTasks.remove(0).run();
+        assertThat(mDelivered).hasSize(1);
+        // The new result is delivered by another task to let other clients run first.
+        assertThat(mTasks).hasSize(1);
+
+        runTasks();
+
+        assertThat(mDelivered).hasSize(2);
+    }
+
+    @Test
+    public void removeClient_discardsPendingResults() {
+        mDispatcher.add(mClient, createResult(0), true);
+        mDispatcher.removeClient(mClient.scannerId);
+
+        mLooper.moveTimeForward(MAX_DELAY_MICROS / 1000);
+        runTasks();
+
+        assertThat(mDelivered).isEmpty();
+    }
+
+    @Test
+    public void drain_deadClientIsSkipped() {
+        mDispatcher.add(mClient, createResult(0), true);
+        mClient.appDied = true;
+
+        mLooper.moveTimeForward(MAX_DELAY_MICROS / 1000);
+        runTasks();
+
+        assertThat(mDelivered).isEmpty();
+    }
+
+    @Test
+    public void drain_failedDeliveryIsCountedAsDropped() {
+        AppScanStats stats = mock(AppScanStats.class);
+        mClient.stats = stats;
+        mDispatcher =
+                new ScanResultDispatcher(
+                        mLooper.getLooper(), mTasks::add, (client, results) -> false);
+        mDispatcher.setConfig(
+                true, 0, MAX_DELAY_MICROS, CAPACITY, ScanResultDispatcher.DROP_OLDEST);
+
+        mDispatcher.add(mClient, createResult(0), true);
+        runTasks();
+
+        verify(stats).recordResultsDropped(1);
+        verify(stats, never()).recordResultsDelivered(anyInt());
+    }
+
+    @Test
+    public void drain_clientRemovedWhileDelivering_stopsDelivery() {
+        mDispatcher =
+                new ScanResultDispatcher(
+                        mLooper.getLooper(),
+                        mTasks::add,
+                        (client, results) -> {
+                            mDelivered.add(results);
+                            // The scan is stopped while its first result is delivered.
+                            mDispatcher.removeClient(client.scannerId);
+                            return true;
+                        });
+        mDispatcher.setConfig(
+                true, 0, MAX_DELAY_MICROS, CAPACITY, ScanResultDispatcher.DROP_OLDEST);
+
+        mDispatcher.add(mClient, createResult(0), true);
+        mDispatcher.add(mClient, createResult(1), true);
+        runTasks();
+
+        assertThat(mDelivered).hasSize(1);
+    }
+}
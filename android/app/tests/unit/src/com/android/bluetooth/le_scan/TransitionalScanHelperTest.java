@@ -282,6 +282,16 @@ public class TransitionalScanHelperTest {
         verify(mScanManager).flushBatchScanResults(new ScanClient(scannerId));
     }
 
+    @Test
+    public void start_followsDeviceConfigChanges() {
+        ArgumentCaptor<Runnable> callback = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAdapterService).registerDeviceConfigCallback(any(), callback.capture());
+
+        mScanHelper.stop();
+
+        verify(mAdapterService).unregisterDeviceConfigCallback(callback.getValue());
+    }
+
     @Test
     public void onScanResult_remoteException_clientDied() throws Exception {
         mSetFlagsRule.enableFlags(Flags.FLAG_LE_SCAN_FIX_REMOTE_EXCEPTION);
@@ -46,6 +46,7 @@ import androidx.test.runner.AndroidJUnit4;
 
 import com.android.bluetooth.BluetoothMethodProxy;
 import com.android.bluetooth.SignedLongLong;
+import com.android.bluetooth.content_profiles.ContactLookupCache;
 import com.android.bluetooth.map.BluetoothMapContent.FilterInfo;
 import com.android.bluetooth.map.BluetoothMapUtils.TYPE;
 import com.android.bluetooth.mapapi.BluetoothMapContract;
@@ -132,6 +133,7 @@ public class BluetoothMapContentTest {
     @Before
     public void setUp() {
         BluetoothMethodProxy.setInstanceForTesting(mMapMethodProxy);
+        ContactLookupCache.setInstanceForTesting(null);
 
         mContent = new BluetoothMapContent(mContext, mAccountItem, mMasInstance);
         mInfo = new FilterInfo();
@@ -143,6 +145,7 @@ public class BluetoothMapContentTest {
     @After
     public void tearDown() {
         BluetoothMethodProxy.setInstanceForTesting(null);
+        ContactLookupCache.setInstanceForTesting(null);
     }
 
     @Test
@@ -1365,6 +1368,73 @@ public class BluetoothMapContentTest {
         assertThat(smsElement.getReadBool()).isTrue();
     }
 
+    @Test
+    public void msgListing_unreadSmsOutsideOfPage_setsHasUnread() {
+        when(mParams.getParameterMask())
+                .thenReturn((long) BluetoothMapAppParams.INVALID_VALUE_PARAMETER);
+        int noMms = BluetoothMapAppParams.FILTER_NO_MMS;
+        when(mParams.getFilterMessageType()).thenReturn(noMms);
+        when(mParams.getMaxListCount()).thenReturn(1);
+        when(mParams.getStartOffset()).thenReturn(0);
+
+        mCurrentFolder.setHasSmsMmsContent(true);
+        mCurrentFolder.setFolderId(TEST_ID);
+
+        MatrixCursor smsCursor =
+                new MatrixCursor(
+                        new String[] {
+                            BaseColumns._ID,
+                            Telephony.Sms.TYPE,
+                            Telephony.Sms.READ,
+                            Telephony.Sms.BODY,
+                            Telephony.Sms.ADDRESS,
+                            Telephony.Sms.DATE,
+                            Telephony.Sms.THREAD_ID,
+                            ContactsContract.Contacts.DISPLAY_NAME
+                        });
+        smsCursor.addRow(
+                new Object[] {
+                    TEST_ID,
+                    TEST_SENT_NO,
+                    TEST_READ_TRUE,
+                    TEST_SUBJECT,
+                    TEST_ADDRESS,
+                    TEST_DATE_SMS,
+                    TEST_THREAD_ID,
+                    TEST_PHONE_NAME
+                });
+        doReturn(smsCursor)
+                .when(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(), any(), eq(BluetoothMapContent.SMS_PROJECTION), any(), any(), any());
+        doReturn(smsCursor)
+                .when(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(),
+                        any(),
+                        eq(
+                                new String[] {
+                                    ContactsContract.Contacts._ID,
+                                    ContactsContract.Contacts.DISPLAY_NAME
+                                }),
+                        any(),
+                        any(),
+                        any());
+        // An unread message matches the filters but is past the requested page.
+        MatrixCursor unreadCursor = new MatrixCursor(new String[] {BaseColumns._ID});
+        unreadCursor.addRow(new Object[] {TEST_ID + 1});
+        doReturn(unreadCursor)
+                .when(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(), any(), eq(new String[] {BaseColumns._ID}), any(), any(), any());
+
+        BluetoothMapMessageListing listing = mContent.msgListing(mCurrentFolder, mParams);
+
+        assertThat(listing.getCount()).isEqualTo(1);
+        assertThat(listing.getList().get(0).getReadBool()).isTrue();
+        assertThat(listing.hasUnread()).isTrue();
+    }
+
     @Test
     public void msgListing_withSmsCursorOnly() {
         when(mParams.getParameterMask())
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.bluetooth.map.BluetoothMapUtils.TYPE;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Test cases for {@link MessageListingMerger}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class MessageListingMergerTest {
+    /** A source over a list of elements, counting the elements read. */
+    private static class ListSource implements MessageListingMerger.Source {
+        final List<BluetoothMapMessageListingElement> mElements;
+        int mRead;
+
+        ListSource(List<BluetoothMapMessageListingElement> elements) {
+            mElements = elements;
+        }
+
+        @Override
+        public BluetoothMapMessageListingElement next() {
+            return mRead < mElements.size() ? mElements.get(mRead++) : null;
+        }
+    }
+
+    private static BluetoothMapMessageListingElement element(
+            long handle, TYPE type, long date, boolean read) {
+        BluetoothMapMessageListingElement e = new BluetoothMapMessageListingElement();
+        e.setHandle(handle);
+        e.setType(type, true);
+        e.setDateTime(date);
+        e.setRead(read, true);
+        return e;
+    }
+
+    /** Returns {@code count} read messages of the given type, newest first, one date apart. */
+    private static List<BluetoothMapMessageListingElement> messages(
+            TYPE type, long firstHandle, long newestDate, int count) {
+        List<BluetoothMapMessageListingElement> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(element(firstHandle + i, type, newestDate - i, true));
+        }
+        return list;
+    }
+
+    private static List<Long> handles(BluetoothMapMessageListing listing) {
+        List<Long> handles = new ArrayList<>();
+        for (BluetoothMapMessageListingElement e : listing.getList()) {
+            handles.add(e.getHandle());
+        }
+        return handles;
+    }
+
+    @Test
+    public void merge_ordersByDateThenSource() {
+        ListSource sms =
+                new ListSource(
+                        Arrays.asList(
+                                element(1, TYPE.SMS_GSM, 50, true),
+                                element(2, TYPE.SMS_GSM, 30, true)));
+        ListSource mms =
+                new ListSource(
+                        Arrays.asList(
+                                element(3, TYPE.MMS, 40, true), element(4, TYPE.MMS, 30, true)));
+        BluetoothMapMessageListing listing = new BluetoothMapMessageListing();
+
+        MessageListingMerger.merge(Arrays.asList(sms, mms), 0, 0, listing);
+
+        assertThat(handles(listing)).containsExactly(1L, 3L, 2L, 4L).inOrder();
+    }
+
+    @Test
+    public void merge_matchesSortAndSegment() {
+        List<BluetoothMapMessageListingElement> sms = messages(TYPE.SMS_GSM, 0, 1000, 40);
+        List<BluetoothMapMessageListingElement> email = messages(TYPE.EMAIL, 100, 1010, 40);
+        BluetoothMapMessageListing expected = new BluetoothMapMessageListing();
+        for (BluetoothMapMessageListingElement e : sms) {
+            expected.add(e);
+        }
+        for (BluetoothMapMessageListingElement e : email) {
+            expected.add(e);
+        }
+        expected.sort();
+        expected.segment(10, 15);
+        BluetoothMapMessageListing listing = new BluetoothMapMessageListing();
+
+        MessageListingMerger.merge(
+                Arrays.asList(new ListSource(sms), new ListSource(email)), 15, 10, listing);
+
+        assertThat(handles(listing)).containsExactlyElementsIn(handles(expected)).inOrder();
+    }
+
+    @Test
+    public void merge_stopsReadingOnceThePageIsComplete() {
+        ListSource sms = new ListSource(messages(TYPE.SMS_GSM, 0, 1000, 100));
+        ListSource mms = new ListSource(messages(TYPE.MMS, 100, 500, 100));
+        BluetoothMapMessageListing listing = new BluetoothMapMessageListing();
+
+        MessageListingMerger.merge(Arrays.asList(sms, mms), 5, 10, listing);
+
+        assertThat(listing.getCount()).isEqualTo(10);
+        // The page and the element following it in each source
+        assertThat(sms.mRead).isEqualTo(16);
+        assertThat(mms.mRead).isEqualTo(1);
+    }
+
+    @Test
+    public void merge_unreadSkippedMessage_hasUnread() {
+        ListSource sms =
+                new ListSource(
+                        Arrays.asList(
+                                element(1, TYPE.SMS_GSM, 50, false),
+                                element(2, TYPE.SMS_GSM, 40, true)));
+        BluetoothMapMessageListing listing = new BluetoothMapMessageListing();
+
+        MessageListingMerger.merge(Arrays.asList(sms), 1, 1, listing);
+
+        assertThat(handles(listing)).containsExactly(2L);
+        assertThat(listing.hasUnread()).isTrue();
+    }
+
+    @Test
+    public void merge_offsetBeyondListing_isEmpty() {
+        ListSource sms = new ListSource(messages(TYPE.SMS_GSM, 0, 1000, 3));
+        BluetoothMapMessageListing listing = new BluetoothMapMessageListing();
+
+        MessageListingMerger.merge(Arrays.asList(sms), 5, 10, listing);
+
+        assertThat(listing.getCount()).isEqualTo(0);
+    }
+}
@@ -25,6 +25,9 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
 @MediumTest
 @RunWith(AndroidJUnit4.class)
 public class BmessageTest {
@@ -63,6 +66,65 @@ public class BmessageTest {
         Assert.assertNotNull(message);
     }
 
+    @Test
+    public void testStreamedMessage() {
+        Bmessage message =
+                BmessageParser.createBmessage(
+                        new ByteArrayInputStream(
+                                SIMPLE_MMS_MESSAGE.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertNotNull(message);
+        Assert.assertEquals("This is a new msg", message.getBodyContent());
+        Assert.assertEquals(1, message.getRecipients().size());
+    }
+
+    @Test
+    public void testMultiByteMessage() {
+        String body = "\u00e9t\u00e9 \u2713";
+        Bmessage message =
+                BmessageParser.createBmessage(
+                        bmessage(body, body.getBytes(StandardCharsets.UTF_8).length));
+        Assert.assertNotNull(message);
+        Assert.assertEquals(body, message.getBodyContent());
+    }
+
+    @Test
+    public void testCharLengthMessage() {
+        // Some servers count the characters of the message instead of its bytes.
+        String body = "\u00e9\u00e9\u00e9\u00e9\u00e9";
+        Bmessage message = BmessageParser.createBmessage(bmessage(body, body.length()));
+        Assert.assertNotNull(message);
+        Assert.assertEquals(body, message.getBodyContent());
+    }
+
+    @Test
+    public void testLargeStreamedMessage() {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 1024 * 1024) {
+            body.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit \u00e9\u2713\r\n");
+        }
+        String text = body.toString();
+        byte[] bytes =
+                bmessage(text, text.getBytes(StandardCharsets.UTF_8).length)
+                        .getBytes(StandardCharsets.UTF_8);
+
+        Bmessage streamed = BmessageParser.createBmessage(new ByteArrayInputStream(bytes));
+        Bmessage parsed = BmessageParser.createBmessage(new String(bytes, StandardCharsets.UTF_8));
+
+        Assert.assertNotNull(streamed);
+        Assert.assertNotNull(parsed);
+        Assert.assertEquals(text, streamed.getBodyContent());
+        Assert.assertEquals(parsed.getBodyContent(), streamed.getBodyContent());
+    }
+
+    private static String bmessage(String body, int length) {
+        return "BEGIN:BMSG\r\nVERSION:1.0\r\nSTATUS:READ\r\nTYPE:MMS\r\nFOLDER:null\r\n"
+                + "BEGIN:BENV\r\nBEGIN:BBODY\r\nCHARSET:UTF-8\r\nLENGTH:"
+                + (length + 22)
+                + "\r\nBEGIN:MSG\r\n"
+                + body
+                + "\r\nEND:MSG\r\nEND:BBODY\r\nEND:BENV\r\nEND:BMSG\r\n";
+    }
+
     @Test
     public void testParseWrongLengthMessage() {
         Bmessage message = BmessageParser.createBmessage(WRONG_LENGTH_MESSAGE);
@@ -36,6 +36,7 @@ import androidx.test.runner.AndroidJUnit4;
 
 import com.android.bluetooth.BluetoothMethodProxy;
 import com.android.bluetooth.R;
+import com.android.bluetooth.content_profiles.ContactLookupCache;
 
 import org.junit.After;
 import org.junit.Before;
@@ -67,6 +68,7 @@ public class BluetoothPbapVcardManagerTest {
     @Before
     public void setUp() {
         BluetoothMethodProxy.setInstanceForTesting(mPbapMethodProxy);
+        ContactLookupCache.setInstanceForTesting(null);
         mContext = InstrumentationRegistry.getTargetContext();
         mManager = new BluetoothPbapVcardManager(mContext);
     }
@@ -74,6 +76,7 @@ public class BluetoothPbapVcardManagerTest {
     @After
     public void tearDown() {
         BluetoothMethodProxy.setInstanceForTesting(null);
+        ContactLookupCache.setInstanceForTesting(null);
     }
 
     @Test
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+import android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import android.provider.ContactsContract.Data;
+import android.provider.ContactsContract.RawContacts;
+import android.provider.ContactsContract.RawContactsEntity;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.bluetooth.BluetoothMethodProxy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.List;
+import java.util.Map;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class RawContactEntityLoaderTest {
+    // Contact without any raw contact, as if it was deleted during the operation.
+    private static final long DELETED_CONTACT_ID = 7;
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Spy BluetoothMethodProxy mPbapMethodProxy = BluetoothMethodProxy.getInstance();
+
+    private ContentResolver mResolver;
+    private long mRawContactVersion = 1;
+
+    @Before
+    public void setUp() {
+        BluetoothMethodProxy.setInstanceForTesting(mPbapMethodProxy);
+        mResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        // Each contact has two raw contacts with a name each.
+        doAnswer(
+                        invocation -> {
+                            String[] selectionArgs = invocation.getArgument(4);
+                            MatrixCursor cursor =
+                                    new MatrixCursor(
+                                            new String[] {
+                                                RawContacts._ID,
+                                                RawContacts.CONTACT_ID,
+                                                RawContactsEntity.DATA_ID,
+                                                Data.MIMETYPE,
+                                                Data.DATA1
+                                            });
+                            for (String arg : selectionArgs) {
+                                long contactId = Long.parseLong(arg);
+                                if (contactId == DELETED_CONTACT_ID) {
+                                    continue;
+                                }
+                                for (int i = 0; i < 2; i++) {
+                                    long rawContactId = contactId * 10 + i;
+                                    cursor.addRow(
+                                            new Object[] {
+                                                rawContactId,
+                                                contactId,
+                                                rawContactId,
+                                                StructuredName.CONTENT_ITEM_TYPE,
+                                                "Name" + rawContactId
+                                            });
+                                }
+                            }
+                            return cursor;
+                        })
+                .when(mPbapMethodProxy)
+                .contentResolverQuery(
+                        any(), eq(RawContactsEntity.CONTENT_URI), any(), any(), any(), any());
+        doAnswer(
+                        invocation -> {
+                            String[] selectionArgs = invocation.getArgument(4);
+                            MatrixCursor cursor =
+                                    new MatrixCursor(
+                                            new String[] {
+                                                RawContacts.CONTACT_ID,
+                                                RawContacts._ID,
+                                                RawContacts.VERSION
+                                            });
+                            for (String arg : selectionArgs) {
+                                long contactId = Long.parseLong(arg);
+                                if (contactId != DELETED_CONTACT_ID) {
+                                    cursor.addRow(
+                                            new Object[] {
+                                                contactId, contactId * 10, mRawContactVersion
+                                            });
+                                }
+                            }
+                            return cursor;
+                        })
+                .when(mPbapMethodProxy)
+                .contentResolverQuery(
+                        any(), eq(RawContacts.CONTENT_URI), any(), any(), any(), any());
+    }
+
+    @After
+    public void tearDown() {
+        BluetoothMethodProxy.setInstanceForTesting(null);
+    }
+
+    private static long[] contactIds(int count) {
+        long[] contactIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            contactIds[i] = i + 1;
+        }
+        return contactIds;
+    }
+
+    @Test
+    public void get_groupsRawContactsByContact() {
+        RawContactEntityLoader loader = new RawContactEntityLoader(mResolver, contactIds(3));
+
+        Map<String, List<ContentValues>> entities = loader.get(1);
+
+        List<ContentValues> names = entities.get(StructuredName.CONTENT_ITEM_TYPE);
+        assertThat(names).hasSize(2);
+        assertThat(names.get(0).getAsString(Data.DATA1)).isEqualTo("Name20");
+        assertThat(names.get(1).getAsString(Data.DATA1)).isEqualTo("Name21");
+    }
+
+    @Test
+    public void get_loadsContactsByBatch() {
+        int count = RawContactEntityLoader.BATCH_SIZE + 1;
+        RawContactEntityLoader loader = new RawContactEntityLoader(mResolver, contactIds(count));
+
+        for (int i = 0; i < count; i++) {
+            if (i + 1 != DELETED_CONTACT_ID) {
+                assertThat(loader.get(i)).containsKey(StructuredName.CONTENT_ITEM_TYPE);
+            }
+        }
+
+        verify(mPbapMethodProxy, times(2))
+                .contentResolverQuery(
+                        any(), eq(RawContactsEntity.CONTENT_URI), any(), any(), any(), any());
+    }
+
+    @Test
+    public void get_deletedContact_returnsEmptyMap() {
+        RawContactEntityLoader loader = new RawContactEntityLoader(mResolver, contactIds(10));
+
+        assertThat(loader.get((int) DELETED_CONTACT_ID - 1)).isEmpty();
+    }
+
+    @Test
+    public void getVersion_changesWithRawContactVersion() {
+        long[] version = new RawContactEntityLoader(mResolver, contactIds(10)).getVersion(0);
+
+        mRawContactVersion++;
+        RawContactEntityLoader loader = new RawContactEntityLoader(mResolver, contactIds(10));
+
+        assertThat(version).asList().containsExactly(10L, 1L).inOrder();
+        assertThat(loader.getVersion(0)).asList().containsExactly(10L, 2L).inOrder();
+        assertThat(loader.getVersion(1)).asList().containsExactly(20L, 2L).inOrder();
+        assertThat(loader.getVersion((int) DELETED_CONTACT_ID - 1)).isNull();
+    }
+
+    @Test
+    public void getContactIds_readsCursorAndMovesToFirst() {
+        MatrixCursor cursor = new MatrixCursor(new String[] {Data.CONTACT_ID});
+        cursor.addRow(new Object[] {5L});
+        cursor.addRow(new Object[] {3L});
+
+        assertThat(RawContactEntityLoader.getContactIds(cursor)).asList().containsExactly(5L, 3L);
+        assertThat(cursor.getPosition()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class VCardCacheTest {
+    private static final long DB_IDENTIFIER = 1234;
+    private static final String KEY = VCardCache.key(1, "format");
+    private static final String VCARD = "BEGIN:VCARD\r\nEND:VCARD\r\n";
+
+    private final VCardCache mCache = new VCardCache(1024);
+    // ID and version of the raw contact of the contact.
+    private long[] mVersion;
+    private int mVersionReads;
+
+    @Before
+    public void setUp() {
+        mVersion = new long[] {10, 1};
+        mVersionReads = 0;
+    }
+
+    private String get(long generation) {
+        return mCache.get(
+                KEY,
+                generation,
+                () -> {
+                    mVersionReads++;
+                    return mVersion;
+                });
+    }
+
+    @Test
+    public void get_notCached_returnsNull() {
+        long generation = mCache.startPull(DB_IDENTIFIER);
+
+        assertThat(get(generation)).isNull();
+    }
+
+    @Test
+    public void get_noChange_returnsVCardWithoutReadingVersion() {
+        long generation = mCache.startPull(DB_IDENTIFIER);
+        mCache.put(KEY, generation, mVersion, VCARD);
+
+        generation = mCache.startPull(DB_IDENTIFIER);
+
+        assertThat(get(generation)).isEqualTo(VCARD);
+        assertThat(mVersionReads).isEqualTo(0);
+    }
+
+    @Test
+    public void get_contactsChangedButNotContact_checksVersionOnce() {
+        long generation = mCache.startPull(DB_IDENTIFIER);
+        mCache.put(KEY, generation, mVersion, VCARD);
+        mCache.onContactsChanged();
+
+        generation = mCache.startPull(DB_IDENTIFIER);
+        assertThat(get(generation)).isEqualTo(VCARD);
+        generation = mCache.startPull(DB_IDENTIFIER);
+        assertThat(get(generation)).isEqualTo(VCARD);
+
+        assertThat(mVersionReads).isEqualTo(1);
+    }
+
+    @Test
+    public void get_contactChanged_returnsNull() {
+        long generation = mCache.startPull(DB_IDENTIFIER);
+        mCache.put(KEY, generation, mVersion, VCARD);
+        mCache.onContactsChanged();
+        mVersion = new long[] {10, 2};
+
+        generation = mCache.startPull(DB_IDENTIFIER);
+
+        assertThat(get(generation)).isNull();
+    }
+
+    @Test
+    public void get_rawContactsChangedWithSameHash_returnsNull() {
+        // Both lists had the same 31-multiplier hash.
+        mVersion = new long[] {1, 31};
+        long generation = mCache.startPull(DB_IDENTIFIER);
+        mCache.put(KEY, generation, mVersion, VCARD);
+        mCache.onContactsChanged();
+        mVersion = new long[] {2, 0};
+
+        generation = mCache.startPull(DB_IDENTIFIER);
+
+        assertThat(get(generation)).isNull();
+    }
+
+    @Test
+    public void get_contactsChangedDuringPull_checksVersionAgain() {
+        long generation = mCache.startPull(DB_IDENTIFIER);
+        mCache.put(KEY, generation, mVersion, VCARD);
+        mCache.onContactsChanged();
+
+        generation = mCache.startPull(DB_IDENTIFIER);
+        mCache.onContactsChanged();
+        assertThat(get(generation)).isEqualTo(VCARD);
+        generation = mCache.startPull(DB_IDENTIFIER);
+        assertThat(get(generation)).isEqualTo(VCARD);
+
+        assertThat(mVersionReads).isEqualTo(2);
+    }
+
+    @Test
+    public void startPull_dbIdentifierChanged_dropsVCards() {
+        long generation = mCache.startPull(DB_IDENTIFIER);
+        mCache.put(KEY, generation, mVersion, VCARD);
+
+        generation = mCache.startPull(DB_IDENTIFIER + 1);
+
+        assertThat(get(generation)).isNull();
+    }
+
+    @Test
+    public void put_noVersion_notCached() {
+        long generation = mCache.startPull(DB_IDENTIFIER);
+        mCache.put(KEY, generation, null, VCARD);
+
+        assertThat(get(generation)).isNull();
+    }
+
+    @Test
+    public void put_overSize_evictsLeastRecentlyUsed() {
+        VCardCache cache =
+                new VCardCache(3 * (KEY.length() + VCARD.length() + 4 * mVersion.length));
+        long generation = cache.startPull(DB_IDENTIFIER);
+        for (int i = 1; i <= 4; i++) {
+            cache.put(VCardCache.key(i, "format"), generation, mVersion, VCARD);
+        }
+
+        assertThat(cache.get(VCardCache.key(1, "format"), generation, () -> mVersion)).isNull();
+        assertThat(cache.get(VCardCache.key(4, "format"), generation, () -> mVersion))
+                .isEqualTo(VCARD);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.obex.Operation;
+import com.android.obex.ResponseCodes;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class VCardPipelineTest {
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock private Operation mOperation;
+
+    private final ByteArrayOutputStream mOutputStream = new ByteArrayOutputStream();
+    private BluetoothPbapVcardManager mManager;
+
+    /** Composes a synthetic vCard per contact, failing or skipping some of them on request. */
+    private class SyntheticComposer implements VCardPipeline.Composer {
+        final int mCount;
+        int mFailAt = -1;
+        int mSkipAt = -1;
+        int mComposed;
+
+        SyntheticComposer(int count) {
+            mCount = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mComposed < mCount;
+        }
+
+        @Override
+        public String next() {
+            int index = mComposed++;
+            if (index == mFailAt) {
+                return null;
+            } else if (index == mSkipAt) {
+                return "";
+            }
+            return mManager.stripTelephoneNumber(vCard(index));
+        }
+    }
+
+    private static String vCard(int index) {
+        String separator = System.getProperty("line.separator");
+        return "BEGIN:VCARD"
+                + separator
+                + "VERSION:2.1"
+                + separator
+                + "N:Contact"
+                + index
+                + ";Test;;;"
+                + separator
+                + "FN:Test Contact"
+                + index
+                + separator
+                + "TEL;CELL:(650) 555-"
+                + (1000 + index % 9000)
+                + separator
+                + "EMAIL;HOME:contact"
+                + index
+                + "@example.com"
+                + separator
+                + "END:VCARD"
+                + separator;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mManager = new BluetoothPbapVcardManager(context);
+        when(mOperation.openOutputStream()).thenReturn(mOutputStream);
+    }
+
+    private HandlerForStringBuffer initBuffer() {
+        HandlerForStringBuffer buffer = new HandlerForStringBuffer(mOperation, null);
+        assertThat(buffer.init()).isTrue();
+        return buffer;
+    }
+
+    private String expectedOutput(int count, int skipAt) {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i != skipAt) {
+                expected.append(mManager.stripTelephoneNumber(vCard(i)));
+            }
+        }
+        return expected.toString();
+    }
+
+    @Test
+    public void run_sendsAllVCardsInOrder() {
+        int count = 1000;
+        SyntheticComposer composer = new SyntheticComposer(count);
+        composer.mSkipAt = 10;
+
+        int result = VCardPipeline.run(composer, initBuffer(), () -> false);
+
+        assertThat(result).isEqualTo(ResponseCodes.OBEX_HTTP_OK);
+        assertThat(mOutputStream.toString()).isEqualTo(expectedOutput(count, composer.mSkipAt));
+    }
+
+    @Test
+    public void run_noVCards_returnsOk() {
+        int result = VCardPipeline.run(new SyntheticComposer(0), initBuffer(), () -> false);
+
+        assertThat(result).isEqualTo(ResponseCodes.OBEX_HTTP_OK);
+        assertThat(mOutputStream.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void run_composerFails_returnsInternalError() {
+        SyntheticComposer composer = new SyntheticComposer(100);
+        composer.mFailAt = 50;
+
+        int result = VCardPipeline.run(composer, initBuffer(), () -> false);
+
+        assertThat(result).isEqualTo(ResponseCodes.OBEX_HTTP_INTERNAL_ERROR);
+    }
+
+    @Test
+    public void run_composerThrows_returnsInternalError() {
+        VCardPipeline.Composer composer =
+                new VCardPipeline.Composer() {
+                    @Override
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    @Override
+                    public String next() {
+                        throw new IllegalStateException();
+                    }
+                };
+
+        int result = VCardPipeline.run(composer, initBuffer(), () -> false);
+
+        assertThat(result).isEqualTo(ResponseCodes.OBEX_HTTP_INTERNAL_ERROR);
+    }
+
+    @Test
+    public void run_writeFails_returnsInternalError() throws Exception {
+        when(mOperation.openOutputStream())
+                .thenReturn(
+                        new OutputStream() {
+                            @Override
+                            public void write(int b) throws IOException {
+                                throw new IOException();
+                            }
+                        });
+
+        int result = VCardPipeline.run(new SyntheticComposer(10), initBuffer(), () -> false);
+
+        assertThat(result).isEqualTo(ResponseCodes.OBEX_HTTP_INTERNAL_ERROR);
+    }
+
+    @Test
+    public void run_aborted_stopsSending() {
+        SyntheticComposer composer = new SyntheticComposer(Integer.MAX_VALUE);
+
+        int result = VCardPipeline.run(composer, initBuffer(), () -> true);
+
+        assertThat(result).isEqualTo(ResponseCodes.OBEX_HTTP_OK);
+        assertThat(mOutputStream.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void run_manyVCards_matchesSequentialOutput() {
+        int count = 1_000;
+        HandlerForStringBuffer buffer = initBuffer();
+        SyntheticComposer composer = new SyntheticComposer(count);
+        while (composer.hasNext()) {
+            assertThat(buffer.writeVCard(composer.next())).isTrue();
+        }
+        byte[] sequential = mOutputStream.toByteArray();
+        mOutputStream.reset();
+
+        int result = VCardPipeline.run(new SyntheticComposer(count), buffer, () -> false);
+
+        assertThat(result).isEqualTo(ResponseCodes.OBEX_HTTP_OK);
+        assertThat(mOutputStream.toByteArray()).isEqualTo(sequential);
+        assertThat(new String(sequential, StandardCharsets.UTF_8))
+                .isEqualTo(expectedOutput(count, -1));
+    }
+}
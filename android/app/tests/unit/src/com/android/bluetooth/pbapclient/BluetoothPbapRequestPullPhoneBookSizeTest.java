@@ -22,6 +22,7 @@ import static com.google.common.truth.Truth.assertWithMessage;
 import androidx.test.filters.SmallTest;
 import androidx.test.runner.AndroidJUnit4;
 
+import com.android.bluetooth.ObexAppParameters;
 import com.android.obex.HeaderSet;
 
 import org.junit.Before;
@@ -51,4 +52,67 @@ public class BluetoothPbapRequestPullPhoneBookSizeTest {
             assertWithMessage("Exception should not happen.").fail();
         }
     }
+
+    @Test
+    public void readResponseHeaders_withoutVersion_noFolderVersion() {
+        mRequest.readResponseHeaders(new HeaderSet());
+
+        assertThat(mRequest.getFolderVersion()).isNull();
+    }
+
+    @Test
+    public void readResponseHeaders_withVersion_folderVersionChangesWithCounter() {
+        byte[] databaseIdentifier = new byte[16];
+        byte[] primaryVersion = new byte[16];
+        byte[] secondaryVersion = new byte[16];
+
+        mRequest.readResponseHeaders(
+                headerSet(databaseIdentifier, primaryVersion, secondaryVersion));
+        String folderVersion = mRequest.getFolderVersion();
+        primaryVersion[15] = 1;
+        mRequest.readResponseHeaders(
+                headerSet(databaseIdentifier, primaryVersion, secondaryVersion));
+
+        assertThat(folderVersion).isNotNull();
+        assertThat(mRequest.getFolderVersion()).isNotEqualTo(folderVersion);
+    }
+
+    @Test
+    public void readResponseHeaders_secondaryCounterChanged_folderVersionChanges() {
+        byte[] databaseIdentifier = new byte[16];
+        byte[] primaryVersion = new byte[16];
+        byte[] secondaryVersion = new byte[16];
+
+        mRequest.readResponseHeaders(
+                headerSet(databaseIdentifier, primaryVersion, secondaryVersion));
+        String folderVersion = mRequest.getFolderVersion();
+        secondaryVersion[15] = 1;
+        mRequest.readResponseHeaders(
+                headerSet(databaseIdentifier, primaryVersion, secondaryVersion));
+
+        assertThat(folderVersion).isNotNull();
+        assertThat(mRequest.getFolderVersion()).isNotEqualTo(folderVersion);
+    }
+
+    @Test
+    public void readResponseHeaders_withoutSecondaryVersion_noFolderVersion() {
+        mRequest.readResponseHeaders(headerSet(new byte[16], new byte[16], null));
+
+        assertThat(mRequest.getFolderVersion()).isNull();
+    }
+
+    private static HeaderSet headerSet(
+            byte[] databaseIdentifier, byte[] primaryVersion, byte[] secondaryVersion) {
+        HeaderSet headerSet = new HeaderSet();
+        ObexAppParameters oap = new ObexAppParameters();
+        oap.add(BluetoothPbapRequest.OAP_TAGID_DATABASE_IDENTIFIER, databaseIdentifier.clone());
+        oap.add(BluetoothPbapRequest.OAP_TAGID_PRIMARY_FOLDER_VERSION, primaryVersion.clone());
+        if (secondaryVersion != null) {
+            oap.add(
+                    BluetoothPbapRequest.OAP_TAGID_SECONDARY_FOLDER_VERSION,
+                    secondaryVersion.clone());
+        }
+        oap.addToHeaderSet(headerSet);
+        return headerSet;
+    }
 }
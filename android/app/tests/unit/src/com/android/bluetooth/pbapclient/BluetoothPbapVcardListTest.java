@@ -90,6 +90,41 @@ public class BluetoothPbapVcardListTest {
                                 (byte) -1));
     }
 
+    private static String vCard(String name, String tel) {
+        return "BEGIN:VCARD\r\nVERSION:3.0\r\nFN:" + name + "\r\nTEL:" + tel + "\r\nEND:VCARD\r\n";
+    }
+
+    @Test
+    public void getHashes_changeWithVcardContent() throws IOException {
+        String first = vCard("First", "555-0100");
+        String second = vCard("Second", "555-0100");
+        String changed = vCard("Second", "555-0101");
+
+        BluetoothPbapVcardList result =
+                new BluetoothPbapVcardList(
+                        ACCOUNT,
+                        new ByteArrayInputStream((first + second + changed + first).getBytes()),
+                        PbapClientConnectionHandler.VCARD_TYPE_30,
+                        /* hashEntries= */ true);
+
+        assertThat(result.getCount()).isEqualTo(4);
+        assertThat(result.getHashes()).hasSize(4);
+        assertThat(result.getHashes().get(0)).isNotEqualTo(result.getHashes().get(1));
+        assertThat(result.getHashes().get(1)).isNotEqualTo(result.getHashes().get(2));
+        assertThat(result.getHashes().get(3)).isEqualTo(result.getHashes().get(0));
+    }
+
+    @Test
+    public void getHashes_notHashed_returnsNull() throws IOException {
+        BluetoothPbapVcardList result =
+                new BluetoothPbapVcardList(
+                        ACCOUNT,
+                        new ByteArrayInputStream(vCard("First", "555-0100").getBytes()),
+                        PbapClientConnectionHandler.VCARD_TYPE_30);
+
+        assertThat(result.getHashes()).isNull();
+    }
+
     @Test
     public void test30ParserWith21Vcard_parsingSucceeds() throws IOException {
         InputStream fileStream =
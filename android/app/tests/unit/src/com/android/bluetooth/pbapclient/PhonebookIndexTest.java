@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbapclient;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+
+import android.accounts.Account;
+import android.database.MatrixCursor;
+import android.provider.ContactsContract.RawContacts;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.bluetooth.BluetoothMethodProxy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class PhonebookIndexTest {
+    private static final Account ACCOUNT = new Account("00:11:22:33:44:55", "test");
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Spy BluetoothMethodProxy mMethodProxy = BluetoothMethodProxy.getInstance();
+
+    @Before
+    public void setUp() {
+        BluetoothMethodProxy.setInstanceForTesting(mMethodProxy);
+    }
+
+    @After
+    public void tearDown() {
+        BluetoothMethodProxy.setInstanceForTesting(null);
+    }
+
+    @Test
+    public void load_readsHashesOfStoredContacts() {
+        MatrixCursor cursor = new MatrixCursor(new String[] {RawContacts._ID, RawContacts.SYNC1});
+        cursor.addRow(new Object[] {1L, "a"});
+        cursor.addRow(new Object[] {2L, "b"});
+        // Stored without a hash, never retained.
+        cursor.addRow(new Object[] {3L, null});
+        doReturn(cursor)
+                .when(mMethodProxy)
+                .contentResolverQuery(
+                        any(), eq(RawContacts.CONTENT_URI), any(), any(), any(), any());
+
+        PhonebookIndex index =
+                PhonebookIndex.load(
+                        InstrumentationRegistry.getTargetContext().getContentResolver(),
+                        ACCOUNT,
+                        PbapClientConnectionHandler.PB_PATH);
+
+        assertThat(index.getPath()).isEqualTo(PbapClientConnectionHandler.PB_PATH);
+        assertThat(index.getUnmatchedCount()).isEqualTo(2);
+        assertThat(index.retain("a")).isTrue();
+        assertThat(index.retain("c")).isFalse();
+        assertThat(index.getUnmatchedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void retain_identicalContacts_retainsEachOnce() {
+        PhonebookIndex index = new PhonebookIndex(PbapClientConnectionHandler.PB_PATH);
+        index.add(1, "a");
+        index.add(2, "a");
+
+        assertThat(index.retain("a")).isTrue();
+        assertThat(index.retain("a")).isTrue();
+        assertThat(index.retain("a")).isFalse();
+        assertThat(index.getUnmatchedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void deleteUnmatched_allRetained_doesNothing() {
+        PhonebookIndex index = new PhonebookIndex(PbapClientConnectionHandler.PB_PATH);
+        index.add(1, "a");
+        index.retain("a");
+
+        assertThat(index.deleteUnmatched(null)).isTrue();
+    }
+}
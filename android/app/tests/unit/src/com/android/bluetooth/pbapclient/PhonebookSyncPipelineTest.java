@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.bluetooth.pbapclient;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.accounts.Account;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.vcard.VCardEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class PhonebookSyncPipelineTest {
+    private static final Account ACCOUNT = new Account("00:11:22:33:44:55", "test");
+
+    /** Records the stored contacts, optionally waiting for a latch before storing each batch. */
+    private static class RecordingPullRequest extends PhonebookPullRequest {
+        final List<VCardEntry> mStored = new ArrayList<>();
+        final CountDownLatch mRelease;
+
+        RecordingPullRequest(CountDownLatch release) {
+            super(InstrumentationRegistry.getTargetContext());
+            mRelease = release;
+        }
+
+        @Override
+        public void onPullComplete() {
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            mStored.addAll(mEntries);
+        }
+    }
+
+    private static byte[] batch(int first, int count) {
+        StringBuilder vCards = new StringBuilder();
+        for (int i = first; i < first + count; i++) {
+            vCards.append("BEGIN:VCARD\r\n")
+                    .append("VERSION:3.0\r\n")
+                    .append("N:Contact")
+                    .append(i)
+                    .append(";Test;;;\r\n")
+                    .append("FN:Test Contact")
+                    .append(i)
+                    .append("\r\n")
+                    .append("TEL;TYPE=CELL:555")
+                    .append(i)
+                    .append("\r\n")
+                    .append("END:VCARD\r\n");
+        }
+        return vCards.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void finish_storesAllBatchesInOrder() throws Exception {
+        RecordingPullRequest processor = new RecordingPullRequest(new CountDownLatch(0));
+        PhonebookSyncPipeline pipeline =
+                new PhonebookSyncPipeline(
+                        ACCOUNT, PbapClientConnectionHandler.VCARD_TYPE_30, false, processor);
+        pipeline.start();
+
+        for (int i = 0; i < 5; i++) {
+            pipeline.submit(batch(i * 10, 10));
+        }
+        pipeline.submit(new byte[0]);
+
+        assertThat(pipeline.finish()).isEqualTo(50);
+        assertThat(pipeline.hasFailed()).isFalse();
+        assertThat(processor.mStored).hasSize(50);
+        for (int i = 0; i < 50; i++) {
+            assertThat(processor.mStored.get(i).getDisplayName()).isEqualTo("Test Contact" + i);
+        }
+    }
+
+    @Test
+    public void submit_slowInsert_blocksDownloads() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingPullRequest processor = new RecordingPullRequest(release);
+        PhonebookSyncPipeline pipeline =
+                new PhonebookSyncPipeline(
+                        ACCOUNT, PbapClientConnectionHandler.VCARD_TYPE_30, false, processor);
+        pipeline.start();
+        int numBatches = 20;
+        AtomicInteger submitted = new AtomicInteger();
+        Thread downloader =
+                new Thread(
+                        () -> {
+                            try {
+                                for (int i = 0; i < numBatches; i++) {
+                                    pipeline.submit(batch(i, 1));
+                                    submitted.incrementAndGet();
+                                }
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+        downloader.start();
+
+        Thread.sleep(200);
+        // Batches wait in both queues and in each stage.
+        assertThat(submitted.get()).isAtMost(2 * PhonebookSyncPipeline.MAX_PENDING_BATCHES + 2);
+
+        release.countDown();
+        downloader.join();
+        assertThat(pipeline.finish()).isEqualTo(numBatches);
+        assertThat(processor.mStored).hasSize(numBatches);
+    }
+
+    @Test
+    public void cancel_stopsStoring() throws Exception {
+        RecordingPullRequest processor = new RecordingPullRequest(new CountDownLatch(1));
+        PhonebookSyncPipeline pipeline =
+                new PhonebookSyncPipeline(
+                        ACCOUNT, PbapClientConnectionHandler.VCARD_TYPE_30, false, processor);
+        pipeline.start();
+        pipeline.submit(batch(0, 3));
+
+        pipeline.cancel();
+
+        assertThat(processor.mStored).isEmpty();
+    }
+}
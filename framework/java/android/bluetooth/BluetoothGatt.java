@@ -41,6 +41,7 @@ import com.android.bluetooth.flags.Flags;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -76,6 +77,14 @@ public final class BluetoothGatt implements BluetoothProfile {
     @UnsupportedAppUsage(maxTargetSdk = Build.VERSION_CODES.R, trackingBug = 170729553)
     private Boolean mDeviceBusy = false;
 
+    // Writes without response and prepared writes waiting for their callback. They are pipelined
+    // by the service, so they don't make the device busy. Guarded by mDeviceBusyLock.
+    private int mPipelinedWrites = 0;
+
+    // Whether a reliable write is in progress, its writes are prepared writes. Guarded by
+    // mDeviceBusyLock.
+    private boolean mReliableWrite = false;
+
     @UnsupportedAppUsage(maxTargetSdk = Build.VERSION_CODES.R, trackingBug = 170729553)
     private int mTransport;
 
@@ -402,6 +411,8 @@ public final class BluetoothGatt implements BluetoothProfile {
 
                     synchronized (mDeviceBusyLock) {
                         mDeviceBusy = false;
+                        mPipelinedWrites = 0;
+                        mReliableWrite = false;
                     }
                 }
 
@@ -550,8 +561,15 @@ public final class BluetoothGatt implements BluetoothProfile {
                         return;
                     }
 
+                    // Pipelined writes are never in flight along with a write request.
+                    final boolean pipelined;
                     synchronized (mDeviceBusyLock) {
-                        mDeviceBusy = false;
+                        pipelined = mPipelinedWrites > 0;
+                        if (pipelined) {
+                            mPipelinedWrites--;
+                        } else {
+                            mDeviceBusy = false;
+                        }
                     }
 
                     BluetoothGattCharacteristic characteristic =
@@ -587,6 +605,11 @@ public final class BluetoothGatt implements BluetoothProfile {
                                     Log.e(TAG, "", e);
                                 }
                             }
+                            if (pipelined && requestStatus == BluetoothStatusCodes.SUCCESS) {
+                                synchronized (mDeviceBusyLock) {
+                                    mPipelinedWrites++;
+                                }
+                            }
                             mAuthRetryState++;
                             return;
                         } catch (RemoteException e) {
@@ -639,6 +662,24 @@ public final class BluetoothGatt implements BluetoothProfile {
                             });
                 }
 
+                /**
+                 * Several notifications were coalesced by the service. Delivers them one by one.
+                 *
+                 * @hide
+                 */
+                @Override
+                public void onNotifyBatch(
+                        String address, int[] handles, byte[] values, int[] valueLengths) {
+                    int offset = 0;
+                    for (int i = 0; i < handles.length; i++) {
+                        onNotify(
+                                address,
+                                handles[i],
+                                Arrays.copyOfRange(values, offset, offset + valueLengths[i]));
+                        offset += valueLengths[i];
+                    }
+                }
+
                 /**
                  * Descriptor has been read.
                  *
@@ -1543,6 +1584,11 @@ public final class BluetoothGatt implements BluetoothProfile {
      * BluetoothGattCallback#onCharacteristicWrite} callback is invoked, reporting the result of the
      * operation.
      *
+     * <p>Writes without response, and the writes of a reliable write, may be issued before the
+     * previous ones completed, up to a limit after which {@link
+     * BluetoothStatusCodes#ERROR_GATT_WRITE_REQUEST_BUSY} is returned. Other writes are only issued
+     * once the previous write completed.
+     *
      * @param characteristic Characteristic to write on the remote device
      * @return whether the characteristic was successfully written to
      * @throws IllegalArgumentException if characteristic or value are null
@@ -1585,11 +1631,20 @@ public final class BluetoothGatt implements BluetoothProfile {
             throw new IllegalArgumentException("Service must have a non-null device");
         }
 
+        // Writes without response and prepared writes don't wait for each other's callback.
+        final boolean pipelined;
         synchronized (mDeviceBusyLock) {
-            if (mDeviceBusy) {
+            pipelined =
+                    writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                            || mReliableWrite;
+            if (mDeviceBusy || (!pipelined && mPipelinedWrites > 0)) {
                 return BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
             }
-            mDeviceBusy = true;
+            if (pipelined) {
+                mPipelinedWrites++;
+            } else {
+                mDeviceBusy = true;
+            }
         }
 
         int requestStatus = BluetoothStatusCodes.ERROR_UNKNOWN;
@@ -1615,22 +1670,29 @@ public final class BluetoothGatt implements BluetoothProfile {
             }
         } catch (RemoteException e) {
             Log.e(TAG, "", e);
-            synchronized (mDeviceBusyLock) {
-                mDeviceBusy = false;
-            }
+            releaseWrite(pipelined);
             throw e.rethrowAsRuntimeException();
         }
-        if (Flags.gattFixDeviceBusy()) {
+        if (pipelined || Flags.gattFixDeviceBusy()) {
             if (requestStatus != BluetoothStatusCodes.SUCCESS) {
-                synchronized (mDeviceBusyLock) {
-                    mDeviceBusy = false;
-                }
+                releaseWrite(pipelined);
             }
         }
 
         return requestStatus;
     }
 
+    /** Releases a characteristic write that won't be called back. */
+    private void releaseWrite(boolean pipelined) {
+        synchronized (mDeviceBusyLock) {
+            if (pipelined) {
+                mPipelinedWrites--;
+            } else {
+                mDeviceBusy = false;
+            }
+        }
+    }
+
     /**
      * Reads the value for a given descriptor from the associated remote device.
      *
@@ -1798,6 +1860,9 @@ public final class BluetoothGatt implements BluetoothProfile {
             Log.e(TAG, "", e);
             return false;
         }
+        synchronized (mDeviceBusyLock) {
+            mReliableWrite = true;
+        }
 
         return true;
     }
@@ -1821,8 +1886,9 @@ public final class BluetoothGatt implements BluetoothProfile {
         if (mService == null || mClientIf == 0) return false;
 
         synchronized (mDeviceBusyLock) {
-            if (mDeviceBusy) return false;
+            if (mDeviceBusy || mPipelinedWrites > 0) return false;
             mDeviceBusy = true;
+            mReliableWrite = false;
         }
 
         try {
@@ -1851,6 +1917,10 @@ public final class BluetoothGatt implements BluetoothProfile {
         if (VDBG) Log.d(TAG, "abortReliableWrite() - device: " + mDevice);
         if (mService == null || mClientIf == 0) return;
 
+        synchronized (mDeviceBusyLock) {
+            mReliableWrite = false;
+        }
+
         try {
             mService.endReliableWrite(mClientIf, mDevice.getAddress(), false, mAttributionSource);
         } catch (RemoteException e) {
@@ -606,12 +606,29 @@ public final class BluetoothLeScanner {
         @Override
         public void onBatchScanResults(final List<ScanResult> results) {
             Attributable.setAttributionSource(results, mAttributionSource);
+            // Results of a scan without report delay may be coalesced by the Bluetooth stack to
+            // save binder transactions. Deliver them one by one, as requested by the app.
+            final boolean unbatch = mSettings != null && mSettings.getReportDelayMillis() == 0;
+            if (unbatch) {
+                synchronized (this) {
+                    if (mScannerId <= 0) {
+                        return;
+                    }
+                }
+            }
             Handler handler = new Handler(Looper.getMainLooper());
             handler.post(
                     new Runnable() {
                         @Override
                         public void run() {
-                            mScanCallback.onBatchScanResults(results);
+                            if (!unbatch) {
+                                mScanCallback.onBatchScanResults(results);
+                                return;
+                            }
+                            for (ScanResult result : results) {
+                                mScanCallback.onScanResult(
+                                        ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result);
+                            }
                         }
                     });
         }